@@ -0,0 +1,222 @@
+package com.harbaoui.iot.sensor_data_service.auth;
+
+import com.harbaoui.iot.sensor_data_service.dto.DeviceChange;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Local copy of the device registry of user-service: API key hash -> device, owner and allowed sensors.
+ * <p>
+ * Entries live in one open-addressing table of primitive arrays: the SHA-256 of the key as four longs,
+ * the device and user ids, and the sorted sensor ids of each device. Readers work on an immutable snapshot
+ * and never lock; {@link #apply} builds the next snapshot from the current one and a batch of changes,
+ * and publishes it with a single volatile write. Changes are rare next to lookups, so the rebuild is cheap.
+ */
+@Component
+public class DeviceRegistry {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRegistry.class);
+
+    public enum Decision {
+        GRANTED,
+        UNKNOWN_KEY,
+        SENSOR_NOT_ALLOWED
+    }
+
+    private volatile Table table = Table.EMPTY;
+    private volatile boolean loaded;
+
+    // Decide whether the holder of this API key may publish a reading of this sensor
+    public Decision authorize(String apiKey, long sensorId) {
+        Table snapshot = table;
+        int slot = snapshot.find(hash(apiKey));
+        if (slot < 0) {
+            return Decision.UNKNOWN_KEY;
+        }
+        return Arrays.binarySearch(snapshot.sensors[slot], sensorId) >= 0 ? Decision.GRANTED : Decision.SENSOR_NOT_ALLOWED;
+    }
+
+    // Same for every reading of a batch; runs of the same sensor are checked once
+    public Decision authorize(String apiKey, ReadingBatch batch) {
+        Table snapshot = table;
+        int slot = snapshot.find(hash(apiKey));
+        if (slot < 0) {
+            return Decision.UNKNOWN_KEY;
+        }
+        long[] allowed = snapshot.sensors[slot];
+        for (int i = 0; i < batch.size(); i++) {
+            long sensorId = batch.sensorId(i);
+            if ((i == 0 || sensorId != batch.sensorId(i - 1)) && Arrays.binarySearch(allowed, sensorId) < 0) {
+                return Decision.SENSOR_NOT_ALLOWED;
+            }
+        }
+        return Decision.GRANTED;
+    }
+
+    // Owner of the device holding this API key, or -1 for an unknown key
+    public long userOf(String apiKey) {
+        Table snapshot = table;
+        int slot = snapshot.find(hash(apiKey));
+        return slot < 0 ? -1 : snapshot.userIds[slot];
+    }
+
+    // Apply changes in feed order and move to the given feed version
+    // Only one thread refreshes the registry; the lock only guards against overlapping manual calls.
+    public synchronized void apply(List<DeviceChange> changes, long version) {
+        Table current = table;
+        Map<Key, DeviceChange> latest = new HashMap<>();
+        for (DeviceChange change : changes) {
+            Key key = Key.fromHex(change.getKeyHash());
+            if (key == null) {
+                logger.warn("Ignoring device {} with a malformed key hash", change.getDeviceId());
+                continue;
+            }
+            latest.put(key, change);
+        }
+
+        int live = 0;
+        for (int slot = 0; slot < current.deviceIds.length; slot++) {
+            if (current.deviceIds[slot] != 0 && !latest.containsKey(current.key(slot))) {
+                live++;
+            }
+        }
+        for (DeviceChange change : latest.values()) {
+            if (!change.isRevoked()) {
+                live++;
+            }
+        }
+
+        Table next = new Table(live, Math.max(version, current.version));
+        for (int slot = 0; slot < current.deviceIds.length; slot++) {
+            if (current.deviceIds[slot] != 0 && !latest.containsKey(current.key(slot))) {
+                next.put(current.key(slot), current.deviceIds[slot], current.userIds[slot], current.sensors[slot]);
+            }
+        }
+        for (Map.Entry<Key, DeviceChange> entry : latest.entrySet()) {
+            DeviceChange change = entry.getValue();
+            if (!change.isRevoked()) {
+                long[] sensors = change.getSensorIds() == null ? new long[0] : change.getSensorIds().clone();
+                Arrays.sort(sensors);
+                next.put(entry.getKey(), change.getDeviceId(), change.getUserId(), sensors);
+            }
+        }
+        table = next;
+    }
+
+    // Called once the feed has been read to its end; until then lookups would wrongly refuse known devices
+    public void markLoaded() {
+        loaded = true;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Last feed version applied; the next pull asks for the changes after it
+    public long version() {
+        return table.version;
+    }
+
+    public int size() {
+        return table.size;
+    }
+
+    private static Key hash(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            ByteBuffer words = ByteBuffer.wrap(digest);
+            return new Key(words.getLong(), words.getLong(), words.getLong(), words.getLong());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    // The four words of a SHA-256, big-endian, as in the hex string of the feed
+    private record Key(long w0, long w1, long w2, long w3) {
+
+        static Key fromHex(String hex) {
+            if (hex == null || hex.length() != 64) {
+                return null;
+            }
+            try {
+                return new Key(Long.parseUnsignedLong(hex, 0, 16, 16), Long.parseUnsignedLong(hex, 16, 32, 16),
+                        Long.parseUnsignedLong(hex, 32, 48, 16), Long.parseUnsignedLong(hex, 48, 64, 16));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+
+    private static final class Table {
+
+        static final Table EMPTY = new Table(0, 0);
+
+        // Four words of the key hash per slot
+        final long[] hashes;
+        // 0 marks an empty slot; feed ids start at 1
+        final long[] deviceIds;
+        final long[] userIds;
+        final long[][] sensors;
+        final int mask;
+        final long version;
+        int size;
+
+        Table(int entries, long version) {
+            // At most half full, so a miss ends after a couple of probes
+            int capacity = Integer.highestOneBit(Math.max(8, entries * 2 - 1)) << 1;
+            this.hashes = new long[capacity * 4];
+            this.deviceIds = new long[capacity];
+            this.userIds = new long[capacity];
+            this.sensors = new long[capacity][];
+            this.mask = capacity - 1;
+            this.version = version;
+        }
+
+        // Slot of the key, or -1; the hash is already uniform, its first word picks the slot
+        int find(Key key) {
+            int slot = (int) key.w0() & mask;
+            while (deviceIds[slot] != 0) {
+                int base = slot * 4;
+                if (hashes[base] == key.w0() && hashes[base + 1] == key.w1()
+                        && hashes[base + 2] == key.w2() && hashes[base + 3] == key.w3()) {
+                    return slot;
+                }
+                slot = (slot + 1) & mask;
+            }
+            return -1;
+        }
+
+        Key key(int slot) {
+            int base = slot * 4;
+            return new Key(hashes[base], hashes[base + 1], hashes[base + 2], hashes[base + 3]);
+        }
+
+        // Only used while building, on keys known to be distinct
+        void put(Key key, long deviceId, long userId, long[] sensorIds) {
+            int slot = (int) key.w0() & mask;
+            while (deviceIds[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            int base = slot * 4;
+            hashes[base] = key.w0();
+            hashes[base + 1] = key.w1();
+            hashes[base + 2] = key.w2();
+            hashes[base + 3] = key.w3();
+            deviceIds[slot] = deviceId;
+            userIds[slot] = userId;
+            sensors[slot] = sensorIds;
+            size++;
+        }
+    }
+}
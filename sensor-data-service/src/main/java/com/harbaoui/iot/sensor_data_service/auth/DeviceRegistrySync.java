@@ -0,0 +1,81 @@
+package com.harbaoui.iot.sensor_data_service.auth;
+
+import com.harbaoui.iot.sensor_data_service.dto.DeviceChange;
+import com.harbaoui.iot.sensor_data_service.dto.DeviceChangePage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps {@link DeviceRegistry} current by pulling user-service's device change feed.
+ * Each pull asks for the changes after the last version applied, page by page until the feed is drained,
+ * and applies them in one rebuild. When user-service cannot be reached the registry keeps serving
+ * the last version it had, and the next pull catches up.
+ */
+@Component
+@ConditionalOnProperty(name = "auth.devices.enabled", havingValue = "true")
+public class DeviceRegistrySync {
+
+    private static final Logger logger = LoggerFactory.getLogger(DeviceRegistrySync.class);
+
+    private final DeviceRegistry deviceRegistry;
+    private final RestClient userServiceClient;
+    private final String syncSecret;
+    private final int pageSize;
+
+    public DeviceRegistrySync(DeviceRegistry deviceRegistry,
+                              @Qualifier("userServiceClient") RestClient userServiceClient,
+                              @Value("${auth.devices.sync-secret}") String syncSecret,
+                              @Value("${auth.devices.page-size:1000}") int pageSize) {
+        this.deviceRegistry = deviceRegistry;
+        this.userServiceClient = userServiceClient;
+        this.syncSecret = syncSecret;
+        this.pageSize = pageSize;
+    }
+
+    // Pull and apply the changes since the last version
+    // Returns the number of changes applied.
+    @Scheduled(fixedDelayString = "${auth.devices.refresh-ms:2000}")
+    public int refresh() {
+        List<DeviceChange> changes = new ArrayList<>();
+        long version = deviceRegistry.version();
+        try {
+            while (true) {
+                DeviceChangePage page = fetch(version);
+                if (page == null || page.getChanges() == null || page.getChanges().isEmpty()) {
+                    break;
+                }
+                changes.addAll(page.getChanges());
+                version = page.getVersion();
+            }
+        } catch (RestClientException e) {
+            logger.warn("Device registry refresh failed, still at version {}: {}", deviceRegistry.version(), e.getMessage());
+            return 0;
+        }
+
+        if (!changes.isEmpty()) {
+            deviceRegistry.apply(changes, version);
+            logger.info("Applied {} device changes, registry at version {} with {} devices",
+                    changes.size(), version, deviceRegistry.size());
+        }
+        deviceRegistry.markLoaded();
+        return changes.size();
+    }
+
+    private DeviceChangePage fetch(long since) {
+        return userServiceClient.get()
+                .uri(uri -> uri.path("/devices/changes").queryParam("since", since).queryParam("limit", pageSize).build())
+                .header("X-Sync-Secret", syncSecret)
+                .retrieve()
+                .body(DeviceChangePage.class);
+    }
+}
@@ -0,0 +1,226 @@
+package com.harbaoui.iot.sensor_data_service.cache;
+
+import com.harbaoui.iot.sensor_data_service.ingest.IngestListener;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.SensorReadingConsumer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Newest reading of every sensor, so "current state" reads never touch storage.
+ * <p>
+ * Entries live in striped open-addressing tables of primitive arrays: no boxed keys, no entry objects,
+ * and readers use optimistic {@link StampedLock} reads, so they do not block ingestion or each other.
+ * Every ingested batch updates the cache, and the newest timestamp always wins, so late readings
+ * never overwrite fresher ones. Nothing is loaded on startup: the first read of a sensor completes
+ * its entry from storage, and from then on the sensor is served from memory.
+ */
+@Component
+public class LastValueCache implements IngestListener {
+
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+    private static final byte EMPTY = 0;
+    // Seen on ingest since startup, storage may still hold a newer reading
+    private static final byte INGESTED = 1;
+    // Merged with storage, the entry is authoritative
+    private static final byte LOADED = 2;
+    // Loaded entries of sensors without readings carry this timestamp
+    private static final long ABSENT = Long.MIN_VALUE;
+
+    private final ReadingStore readingStore;
+    private final int maxSensors;
+    private final Stripe[] stripes = new Stripe[STRIPES];
+    private final AtomicInteger size = new AtomicInteger();
+
+    public LastValueCache(ReadingStore readingStore,
+                          @Value("${cache.latest.max-sensors:1000000}") int maxSensors) {
+        this.readingStore = readingStore;
+        this.maxSensors = maxSensors;
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    @Override
+    public void onIngest(ReadingBatch batch) {
+        for (int i = 0; i < batch.size(); i++) {
+            long sensorId = batch.sensorId(i);
+            stripeFor(sensorId).put(sensorId, batch.timestamp(i), batch.value(i), INGESTED, true);
+        }
+    }
+
+    // Hand the newest reading of each known sensor to the consumer, in the order of the ids
+    // One lookup per id once warm; the first unloaded id loads every unloaded id after it in one go.
+    public void latest(long[] sensorIds, SensorReadingConsumer consumer) {
+        for (int i = 0; i < sensorIds.length; i++) {
+            long sensorId = sensorIds[i];
+            if (!stripeFor(sensorId).read(sensorId, consumer)) {
+                load(unloadedFrom(sensorIds, i));
+                stripeFor(sensorId).read(sensorId, consumer);
+            }
+        }
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    private long[] unloadedFrom(long[] sensorIds, int start) {
+        long[] unloaded = new long[sensorIds.length - start];
+        int count = 0;
+        for (int i = start; i < sensorIds.length; i++) {
+            if (stripeFor(sensorIds[i]).state(sensorIds[i]) != LOADED) {
+                unloaded[count++] = sensorIds[i];
+            }
+        }
+        return Arrays.copyOf(unloaded, count);
+    }
+
+    // Merge the stored readings, then mark every id loaded, including those storage knows nothing about
+    private void load(long[] sensorIds) {
+        readingStore.latest(sensorIds, (sensorId, timestamp, value) ->
+                stripeFor(sensorId).put(sensorId, timestamp, value, LOADED, true));
+        boolean roomForAbsent = size.get() < maxSensors;
+        for (long sensorId : sensorIds) {
+            stripeFor(sensorId).put(sensorId, ABSENT, 0, LOADED, roomForAbsent);
+        }
+    }
+
+    private Stripe stripeFor(long sensorId) {
+        return stripes[(int) (mix(sensorId) >>> STRIPE_SHIFT)];
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+
+    // One open-addressing table; arrays are only replaced as a whole, by a resize under the write lock
+    private final class Stripe {
+
+        private final StampedLock lock = new StampedLock();
+        private Table table = new Table(64);
+
+        void put(long sensorId, long timestamp, double value, byte state, boolean mayInsert) {
+            long stamp = lock.writeLock();
+            try {
+                Table current = table;
+                int slot = current.find(sensorId);
+                if (current.states[slot] == EMPTY) {
+                    if (!mayInsert) {
+                        return;
+                    }
+                    if ((current.size + 1) * 2 > current.keys.length) {
+                        current = table = current.resize();
+                        slot = current.find(sensorId);
+                    }
+                    current.keys[slot] = sensorId;
+                    current.timestamps[slot] = ABSENT;
+                    current.size++;
+                    size.incrementAndGet();
+                }
+                if (timestamp > current.timestamps[slot]) {
+                    current.timestamps[slot] = timestamp;
+                    current.values[slot] = value;
+                }
+                if (state > current.states[slot]) {
+                    current.states[slot] = state;
+                }
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        byte state(long sensorId) {
+            long stamp = lock.tryOptimisticRead();
+            Table current = table;
+            byte state = current.states[current.find(sensorId)];
+            if (lock.validate(stamp)) {
+                return state;
+            }
+            stamp = lock.readLock();
+            try {
+                current = table;
+                return current.states[current.find(sensorId)];
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        // Returns false, without calling the consumer, while the entry is not loaded yet
+        boolean read(long sensorId, SensorReadingConsumer consumer) {
+            long stamp = lock.tryOptimisticRead();
+            Table current = table;
+            int slot = current.find(sensorId);
+            byte state = current.states[slot];
+            long timestamp = current.timestamps[slot];
+            double value = current.values[slot];
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    current = table;
+                    slot = current.find(sensorId);
+                    state = current.states[slot];
+                    timestamp = current.timestamps[slot];
+                    value = current.values[slot];
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (state != LOADED) {
+                return false;
+            }
+            if (timestamp != ABSENT) {
+                consumer.accept(sensorId, timestamp, value);
+            }
+            return true;
+        }
+    }
+
+    private static final class Table {
+
+        private final long[] keys;
+        private final long[] timestamps;
+        private final double[] values;
+        private final byte[] states;
+        private int size;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            timestamps = new long[capacity];
+            values = new double[capacity];
+            states = new byte[capacity];
+        }
+
+        // Slot holding the key, or the empty slot where it belongs; the table is at most half full
+        int find(long key) {
+            int mask = keys.length - 1;
+            int slot = (int) mix(key) & mask;
+            while (states[slot] != EMPTY && keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        Table resize() {
+            Table larger = new Table(keys.length * 2);
+            for (int i = 0; i < keys.length; i++) {
+                if (states[i] != EMPTY) {
+                    int slot = larger.find(keys[i]);
+                    larger.keys[slot] = keys[i];
+                    larger.timestamps[slot] = timestamps[i];
+                    larger.values[slot] = values[i];
+                    larger.states[slot] = states[i];
+                }
+            }
+            larger.size = size;
+            return larger;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.harbaoui.iot.sensor_data_service.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+
+/**
+ * Consistent-hash ring mapping sensor ids to cluster members.
+ * <p>
+ * Every member owns {@code virtualNodes} points of a 64-bit ring, derived from its id only, and a sensor
+ * belongs to the first point at or after its own hash. Every node computes the same owner from the same
+ * members, whatever order discovery lists them in, and when a member joins or leaves only the sensors of
+ * the arcs it gains or loses move, about 1/n of the fleet.
+ */
+public final class HashRing {
+
+    private final List<String> members;
+    // Sorted ring points, and the index in members of each point's owner
+    private final long[] points;
+    private final int[] owners;
+
+    public HashRing(Collection<String> members, int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs at least one virtual node per member");
+        }
+        this.members = List.copyOf(new TreeSet<>(members));
+        long[][] pairs = new long[this.members.size() * virtualNodes][];
+        int n = 0;
+        for (int m = 0; m < this.members.size(); m++) {
+            for (int v = 0; v < virtualNodes; v++) {
+                pairs[n++] = new long[] {hash(this.members.get(m) + "#" + v), m};
+            }
+        }
+        // Ties are broken by member id, so the rare colliding point has the same owner everywhere
+        Arrays.sort(pairs, (a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]));
+        this.points = new long[pairs.length];
+        this.owners = new int[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            points[i] = pairs[i][0];
+            owners[i] = (int) pairs[i][1];
+        }
+    }
+
+    // Member owning the sensor, or null for an empty ring
+    public String ownerOf(long sensorId) {
+        if (points.length == 0) {
+            return null;
+        }
+        int i = Arrays.binarySearch(points, fmix64(sensorId));
+        if (i < 0) {
+            i = -i - 1;
+        }
+        return members.get(owners[i == points.length ? 0 : i]);
+    }
+
+    public List<String> members() {
+        return members;
+    }
+
+    public boolean isEmpty() {
+        return members.isEmpty();
+    }
+
+    // FNV-1a over the UTF-8 bytes, spread over all 64 bits by the murmur3 finalizer
+    private static long hash(String key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return fmix64(h);
+    }
+
+    private static long fmix64(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+}
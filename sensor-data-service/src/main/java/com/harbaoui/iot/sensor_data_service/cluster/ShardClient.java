@@ -0,0 +1,147 @@
+package com.harbaoui.iot.sensor_data_service.cluster;
+
+import com.harbaoui.iot.sensor_data_service.dto.AggregateSeriesResponse;
+import com.harbaoui.iot.sensor_data_service.dto.BinaryIngestResponse;
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingResponse;
+import com.harbaoui.iot.sensor_data_service.exception.ShardUnavailableException;
+import com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoder;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.rollup.QuantileSketch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.util.UriComponentsBuilder;
+
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Calls to the other instances of the cluster, addressed directly by the URI discovery gave for them.
+ * Every call carries the forwarding header, so the receiving node serves it from its own data and never
+ * routes it again.
+ */
+@Component
+public class ShardClient {
+
+    public static final String FORWARDED_HEADER = "X-Shard-Forwarded";
+
+    private static final MediaType READINGS = MediaType.parseMediaType(BinaryReadingDecoder.CONTENT_TYPE);
+
+    private final RestClient restClient;
+    private final String secret;
+
+    public ShardClient(@Value("${cluster.sharding.secret:}") String secret,
+                       @Value("${cluster.sharding.timeout:5s}") Duration timeout) {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        this.restClient = RestClient.builder().requestFactory(requestFactory).build();
+        this.secret = secret;
+    }
+
+    // Hand readings to the node owning their sensors; returns the number it accepted
+    public int forward(URI member, ReadingBatch batch) {
+        ByteBuffer body = BinaryReadingDecoder.encode(batch);
+        BinaryIngestResponse response = call(member, () -> restClient.post()
+                .uri(member.resolve("/sensors/readings:batch"))
+                .header(FORWARDED_HEADER, secret)
+                .contentType(READINGS)
+                .body(Arrays.copyOfRange(body.array(), body.arrayOffset(), body.arrayOffset() + body.limit()))
+                .retrieve()
+                .body(BinaryIngestResponse.class));
+        return response == null ? 0 : response.getAccepted();
+    }
+
+    public List<ReadingResponse> readings(URI member, long sensorId, long from, long to, int limit) {
+        URI uri = UriComponentsBuilder.fromUri(member).path("/sensors/{id}/readings")
+                .queryParam("from", from).queryParam("to", to).queryParam("limit", limit)
+                .build(sensorId);
+        List<ReadingResponse> readings = call(member, () -> restClient.get().uri(uri)
+                .header(FORWARDED_HEADER, secret)
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<ReadingResponse>>() {
+                }));
+        return readings == null ? List.of() : readings;
+    }
+
+    // The ids go in the body, a query string of thousands of ids would exceed the header limit of the peer
+    public List<LatestReadingResponse> latest(URI member, long[] sensorIds) {
+        List<LatestReadingResponse> latest = call(member, () -> restClient.post()
+                .uri(member.resolve("/sensors/latest"))
+                .header(FORWARDED_HEADER, secret)
+                .contentType(MediaType.APPLICATION_JSON)
+                .accept(MediaType.APPLICATION_JSON)
+                .body(sensorIds)
+                .retrieve()
+                .body(new ParameterizedTypeReference<List<LatestReadingResponse>>() {
+                }));
+        return latest == null ? List.of() : latest;
+    }
+
+    public AggregateSeriesResponse aggregates(URI member, long sensorId, long from, long to, long step) {
+        URI uri = UriComponentsBuilder.fromUri(member).path("/sensors/{id}/aggregates")
+                .queryParam("from", from).queryParam("to", to).queryParam("step", step)
+                .build(sensorId);
+        return call(member, () -> restClient.get().uri(uri)
+                .header(FORWARDED_HEADER, secret)
+                .retrieve()
+                .body(AggregateSeriesResponse.class));
+    }
+
+    // The sketch of the window the member holds, see QuantileSketch#toBytes
+    public QuantileSketch sketch(URI member, long sensorId, long from, long to) {
+        URI uri = UriComponentsBuilder.fromUri(member).path("/sensors/{id}/quantiles:sketch")
+                .queryParam("from", from).queryParam("to", to)
+                .build(sensorId);
+        byte[] sketch = call(member, () -> restClient.get().uri(uri)
+                .header(FORWARDED_HEADER, secret)
+                .accept(MediaType.APPLICATION_OCTET_STREAM)
+                .retrieve()
+                .body(byte[].class));
+        if (sketch == null) {
+            throw new ShardUnavailableException("Instance " + member + " returned no sketch");
+        }
+        return QuantileSketch.fromBytes(sketch);
+    }
+
+    // Open the CSV export of the readings the member holds for the window; the caller closes the stream
+    public InputStream openExport(URI member, long sensorId, long from, long to) {
+        URI uri = UriComponentsBuilder.fromUri(member).path("/sensors/{id}/export")
+                .queryParam("from", from).queryParam("to", to).queryParam("format", "csv")
+                .build(sensorId);
+        return call(member, () -> restClient.get().uri(uri)
+                .header(FORWARDED_HEADER, secret)
+                .exchange((request, response) -> {
+                    if (!response.getStatusCode().is2xxSuccessful()) {
+                        response.close();
+                        throw new ShardUnavailableException("Instance " + member + " answered " + response.getStatusCode());
+                    }
+                    return new FilterInputStream(response.getBody()) {
+                        @Override
+                        public void close() {
+                            response.close();
+                        }
+                    };
+                }, false));
+    }
+
+    private static <T> T call(URI member, Supplier<T> request) {
+        try {
+            return request.get();
+        } catch (RestClientException e) {
+            throw new ShardUnavailableException("Instance " + member + " did not answer: " + e.getMessage());
+        }
+    }
+}
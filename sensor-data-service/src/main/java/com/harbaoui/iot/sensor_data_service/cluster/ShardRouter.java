@@ -0,0 +1,299 @@
+package com.harbaoui.iot.sensor_data_service.cluster;
+
+import com.harbaoui.iot.sensor_data_service.dto.AggregateResponse;
+import com.harbaoui.iot.sensor_data_service.dto.AggregateSeriesResponse;
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.dto.QuantileResponse;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingResponse;
+import com.harbaoui.iot.sensor_data_service.exception.ShardUnavailableException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.rollup.QuantileSketch;
+import com.harbaoui.iot.sensor_data_service.service.IngestionService;
+import com.harbaoui.iot.sensor_data_service.service.QuantileService;
+import com.harbaoui.iot.sensor_data_service.service.ReadingQueryService;
+import com.harbaoui.iot.sensor_data_service.service.RollupService;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Spreads sensors over the instances of the cluster.
+ * <p>
+ * Any node accepts readings: the batch is split by owner, each remote share is forwarded as one binary
+ * batch, and the local share takes the usual ingestion path, so every derived structure of a sensor
+ * (rollups, sketches, rules, live streams) lives on its owner, and live stream requests are redirected
+ * there. Readings are not moved when ownership changes, so range queries and exports fan out to every
+ * member and merge the answers, and percentile queries merge the quantile sketches each member builds
+ * for the window. Forwarded requests carry the shared secret and are always served locally, which keeps
+ * a stale ring on one node from bouncing a request around.
+ * <p>
+ * Delivery is at least once: when one share cannot be forwarded the request fails, and a retry
+ * stores again the shares that were accepted the first time.
+ */
+@Service
+public class ShardRouter {
+
+    private final ShardTopology topology;
+    private final ShardClient shardClient;
+    private final IngestionService ingestionService;
+    private final ReadingQueryService readingQueryService;
+    private final RollupService rollupService;
+    private final QuantileService quantileService;
+    private final byte[] secret;
+    private final int maxLimit;
+    private final ExecutorService fanout;
+
+    public ShardRouter(ShardTopology topology,
+                       ShardClient shardClient,
+                       IngestionService ingestionService,
+                       ReadingQueryService readingQueryService,
+                       RollupService rollupService,
+                       QuantileService quantileService,
+                       @Value("${cluster.sharding.secret:}") String secret,
+                       @Value("${cluster.sharding.fanout-threads:8}") int fanoutThreads,
+                       @Value("${query.max-limit:100000}") int maxLimit) {
+        if (topology.isEnabled() && secret.isBlank()) {
+            throw new IllegalStateException("cluster.sharding.secret must be set when sharding is enabled");
+        }
+        this.topology = topology;
+        this.shardClient = shardClient;
+        this.ingestionService = ingestionService;
+        this.readingQueryService = readingQueryService;
+        this.rollupService = rollupService;
+        this.quantileService = quantileService;
+        this.secret = secret.getBytes(StandardCharsets.UTF_8);
+        this.maxLimit = maxLimit;
+        AtomicInteger counter = new AtomicInteger();
+        this.fanout = Executors.newFixedThreadPool(fanoutThreads, runnable -> {
+            Thread thread = new Thread(runnable, "shard-fanout-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // True for a request sent by another member, judged by the secret of its forwarding header
+    public boolean isForwarded(String header) {
+        return secret.length > 0 && header != null
+                && MessageDigest.isEqual(secret, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Ingest the local share and forward the others to their owners; returns the number of readings accepted
+    public int ingest(ReadingBatch batch, boolean forwarded) {
+        if (!topology.isEnabled() || forwarded) {
+            return ingestionService.ingest(batch);
+        }
+        ReadingBatch local = null;
+        Map<URI, ReadingBatch> remote = new HashMap<>();
+        int i = 0;
+        while (i < batch.size()) {
+            long sensorId = batch.sensorId(i);
+            URI owner = topology.remoteOwnerOf(sensorId);
+            ReadingBatch share;
+            if (owner == null) {
+                share = local == null ? local = new ReadingBatch(batch.size()) : local;
+            } else {
+                share = remote.computeIfAbsent(owner, uri -> new ReadingBatch(16));
+            }
+            for (; i < batch.size() && batch.sensorId(i) == sensorId; i++) {
+                share.add(sensorId, batch.timestamp(i), batch.value(i));
+            }
+        }
+        if (remote.isEmpty()) {
+            return ingestionService.ingest(local);
+        }
+
+        List<CompletableFuture<Integer>> forwards = new ArrayList<>(remote.size());
+        remote.forEach((owner, share) ->
+                forwards.add(CompletableFuture.supplyAsync(() -> shardClient.forward(owner, share), fanout)));
+        int accepted = local == null ? 0 : ingestionService.ingest(local);
+        for (CompletableFuture<Integer> forward : forwards) {
+            accepted += join(forward);
+        }
+        return accepted;
+    }
+
+    // Readings of every member for the window, merged in timestamp order
+    public List<ReadingResponse> findReadings(long sensorId, long from, long to, int limit, boolean forwarded) {
+        List<ReadingResponse> local = readingQueryService.findReadings(sensorId, from, to, limit);
+        if (forwarded) {
+            return local;
+        }
+        List<List<ReadingResponse>> remote = fanOut(member -> shardClient.readings(member, sensorId, from, to, limit));
+        if (remote.isEmpty()) {
+            return local;
+        }
+        List<ReadingResponse> merged = new ArrayList<>(local);
+        remote.forEach(merged::addAll);
+        merged.sort(Comparator.comparingLong(ReadingResponse::getTimestamp));
+        int capped = Math.min(Math.max(limit, 1), maxLimit);
+        return merged.size() > capped ? new ArrayList<>(merged.subList(0, capped)) : merged;
+    }
+
+    // Newest reading of each sensor over every member, in the order of the ids
+    public List<LatestReadingResponse> findLatest(long[] sensorIds, boolean forwarded) {
+        List<LatestReadingResponse> local = readingQueryService.findLatest(sensorIds);
+        if (forwarded) {
+            return local;
+        }
+        List<List<LatestReadingResponse>> remote = fanOut(member -> shardClient.latest(member, sensorIds));
+        if (remote.isEmpty()) {
+            return local;
+        }
+        Map<Long, LatestReadingResponse> newest = new HashMap<>();
+        local.forEach(reading -> newest.merge(reading.getSensorId(), reading, ShardRouter::newer));
+        remote.forEach(readings -> readings.forEach(reading -> newest.merge(reading.getSensorId(), reading, ShardRouter::newer)));
+        Map<Long, LatestReadingResponse> ordered = new LinkedHashMap<>();
+        for (long sensorId : sensorIds) {
+            LatestReadingResponse reading = newest.get(sensorId);
+            if (reading != null) {
+                ordered.putIfAbsent(sensorId, reading);
+            }
+        }
+        return new ArrayList<>(ordered.values());
+    }
+
+    // Same as findLatest, as primitive arrays for the binary response
+    public ReadingBatch findLatestBatch(long[] sensorIds, boolean forwarded) {
+        if (forwarded || topology.remoteMembers().isEmpty()) {
+            return readingQueryService.findLatestBatch(sensorIds);
+        }
+        List<LatestReadingResponse> latest = findLatest(sensorIds, false);
+        ReadingBatch batch = new ReadingBatch(latest.size());
+        latest.forEach(reading -> batch.add(reading.getSensorId(), reading.getTimestamp(), reading.getValue()));
+        return batch;
+    }
+
+    // Buckets of every member, added together; count, sum, min and max merge exactly
+    public AggregateSeriesResponse aggregate(long sensorId, long from, long to, long step, boolean forwarded) {
+        AggregateSeriesResponse local = rollupService.aggregate(sensorId, from, to, step);
+        if (forwarded) {
+            return local;
+        }
+        List<AggregateSeriesResponse> remote = fanOut(member -> shardClient.aggregates(member, sensorId, from, to, step));
+        if (remote.isEmpty()) {
+            return local;
+        }
+        TreeMap<Long, AggregateResponse> buckets = new TreeMap<>();
+        local.getBuckets().forEach(bucket -> buckets.merge(bucket.getBucketStart(), bucket, ShardRouter::combine));
+        for (AggregateSeriesResponse series : remote) {
+            if (series != null && series.getBuckets() != null) {
+                series.getBuckets().forEach(bucket -> buckets.merge(bucket.getBucketStart(), bucket, ShardRouter::combine));
+            }
+        }
+        return new AggregateSeriesResponse(sensorId, step, local.getSource(), new ArrayList<>(buckets.values()));
+    }
+
+    // Percentiles over the sketches of every member, merged before any quantile is read
+    public QuantileResponse quantiles(long sensorId, long from, long to, double[] qs, boolean forwarded) {
+        if (forwarded) {
+            return quantileService.quantiles(sensorId, from, to, qs);
+        }
+        return quantileService.quantiles(sensorId, from, to, qs,
+                () -> fanOut(member -> shardClient.sketch(member, sensorId, from, to)));
+    }
+
+    // The sketch of the window held by this instance alone, for the member that merges them
+    public QuantileSketch sketch(long sensorId, long from, long to) {
+        return quantileService.sketch(sensorId, from, to);
+    }
+
+    // The member a client should stream live readings of the sensor from, null when it is this instance
+    // Readings are broadcast by the instance that ingests them, which is the owner of their sensor.
+    public URI streamOwner(long sensorId, boolean forwarded) {
+        return forwarded ? null : topology.remoteOwnerOf(sensorId);
+    }
+
+    // Open the exports of the window held by every other member, for ReadingExporter to merge with its own
+    // All are opened before the response starts, so an unreachable member fails the request with 503.
+    public List<InputStream> openExports(long sensorId, long from, long to, boolean forwarded) {
+        List<URI> members = forwarded ? List.of() : topology.remoteMembers();
+        List<CompletableFuture<InputStream>> calls = new ArrayList<>(members.size());
+        for (URI member : members) {
+            calls.add(CompletableFuture.supplyAsync(() -> shardClient.openExport(member, sensorId, from, to), fanout));
+        }
+        List<InputStream> exports = new ArrayList<>(calls.size());
+        RuntimeException failure = null;
+        for (CompletableFuture<InputStream> pending : calls) {
+            try {
+                exports.add(join(pending));
+            } catch (RuntimeException e) {
+                failure = failure == null ? e : failure;
+            }
+        }
+        if (failure != null) {
+            exports.forEach(ShardRouter::closeQuietly);
+            throw failure;
+        }
+        return exports;
+    }
+
+    @PreDestroy
+    public void close() {
+        fanout.shutdown();
+    }
+
+    private <T> List<T> fanOut(Function<URI, T> call) {
+        List<URI> members = topology.remoteMembers();
+        if (members.isEmpty()) {
+            return List.of();
+        }
+        List<CompletableFuture<T>> calls = new ArrayList<>(members.size());
+        for (URI member : members) {
+            calls.add(CompletableFuture.supplyAsync(() -> call.apply(member), fanout));
+        }
+        List<T> results = new ArrayList<>(calls.size());
+        for (CompletableFuture<T> pending : calls) {
+            results.add(join(pending));
+        }
+        return results;
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof ShardUnavailableException unavailable) {
+                throw unavailable;
+            }
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(InputStream export) {
+        try {
+            export.close();
+        } catch (IOException ignored) {
+            // The request fails anyway
+        }
+    }
+
+    private static LatestReadingResponse newer(LatestReadingResponse a, LatestReadingResponse b) {
+        return b.getTimestamp() > a.getTimestamp() ? b : a;
+    }
+
+    private static AggregateResponse combine(AggregateResponse a, AggregateResponse b) {
+        long count = a.getCount() + b.getCount();
+        double sum = a.getSum() + b.getSum();
+        return new AggregateResponse(a.getBucketStart(), count, sum, Math.min(a.getMin(), b.getMin()),
+                Math.max(a.getMax(), b.getMax()), count == 0 ? 0 : sum / count);
+    }
+}
@@ -0,0 +1,110 @@
+package com.harbaoui.iot.sensor_data_service.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+import org.springframework.cloud.client.serviceregistry.Registration;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Which instance owns which sensor: a {@link HashRing} over the instances of this service registered in
+ * Eureka, rebuilt when discovery reports a different set. This node is always on its own ring, so it keeps
+ * its share of the sensors while its registration propagates. Off unless {@code cluster.sharding.enabled}
+ * is set, in which case every sensor is local.
+ */
+@Component
+public class ShardTopology {
+
+    private static final Logger logger = LoggerFactory.getLogger(ShardTopology.class);
+
+    private final DiscoveryClient discoveryClient;
+    private final ObjectProvider<Registration> registration;
+    private final boolean enabled;
+    private final String serviceName;
+    private final int virtualNodes;
+    private volatile View view = new View(new HashRing(List.of(), 1), Map.of(), null);
+
+    public ShardTopology(DiscoveryClient discoveryClient,
+                         ObjectProvider<Registration> registration,
+                         @Value("${cluster.sharding.enabled:false}") boolean enabled,
+                         @Value("${spring.application.name}") String serviceName,
+                         @Value("${cluster.sharding.virtual-nodes:128}") int virtualNodes) {
+        this.discoveryClient = discoveryClient;
+        this.registration = registration;
+        this.enabled = enabled;
+        this.serviceName = serviceName;
+        this.virtualNodes = virtualNodes;
+    }
+
+    // Re-read the instances from discovery and rebuild the ring when they changed
+    @Scheduled(fixedDelayString = "${cluster.sharding.refresh-ms:5000}")
+    public void refresh() {
+        if (!enabled) {
+            return;
+        }
+        Map<String, URI> uris = new HashMap<>();
+        for (ServiceInstance instance : discoveryClient.getInstances(serviceName)) {
+            uris.put(instance.getInstanceId(), instance.getUri());
+        }
+        Registration self = registration.getIfAvailable();
+        update(self == null ? "local" : self.getInstanceId(), uris);
+    }
+
+    // Install the members, this node included, as the current ring
+    public void update(String selfId, Map<String, URI> uris) {
+        View current = view;
+        List<String> members = new ArrayList<>(uris.keySet());
+        if (!uris.containsKey(selfId)) {
+            members.add(selfId);
+        }
+        HashRing ring = new HashRing(members, virtualNodes);
+        if (ring.members().equals(current.ring.members()) && selfId.equals(current.selfId)) {
+            return;
+        }
+        view = new View(ring, Map.copyOf(uris), selfId);
+        logger.info("Shard ring has {} members: {}", ring.members().size(), ring.members());
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Base URI of the instance owning the sensor, or null when this node owns it
+    public URI remoteOwnerOf(long sensorId) {
+        View current = view;
+        String owner = current.ring.ownerOf(sensorId);
+        if (!enabled || owner == null || owner.equals(current.selfId)) {
+            return null;
+        }
+        return current.uris.get(owner);
+    }
+
+    // Base URIs of every other member, for queries that fan out
+    public List<URI> remoteMembers() {
+        View current = view;
+        if (!enabled) {
+            return List.of();
+        }
+        List<URI> remote = new ArrayList<>();
+        current.uris.forEach((id, uri) -> {
+            if (!id.equals(current.selfId)) {
+                remote.add(uri);
+            }
+        });
+        return remote;
+    }
+
+    // Ring and addresses replaced together, so a lookup never mixes two discovery rounds
+    private record View(HashRing ring, Map<String, URI> uris, String selfId) {
+    }
+}
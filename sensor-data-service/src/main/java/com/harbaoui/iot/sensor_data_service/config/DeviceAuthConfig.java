@@ -0,0 +1,26 @@
+package com.harbaoui.iot.sensor_data_service.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.client.loadbalancer.LoadBalanced;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestClient;
+
+// Client of user-service's device feed, resolved through Eureka; only built when device auth is on
+@Configuration
+@ConditionalOnProperty(name = "auth.devices.enabled", havingValue = "true")
+public class DeviceAuthConfig {
+
+    @Bean
+    @LoadBalanced
+    public RestClient.Builder userServiceClientBuilder() {
+        return RestClient.builder();
+    }
+
+    @Bean
+    public RestClient userServiceClient(@LoadBalanced RestClient.Builder userServiceClientBuilder,
+                                        @Value("${auth.devices.user-service-url:http://user-service}") String baseUrl) {
+        return userServiceClientBuilder.baseUrl(baseUrl).build();
+    }
+}
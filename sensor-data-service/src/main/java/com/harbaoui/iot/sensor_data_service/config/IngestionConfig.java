@@ -0,0 +1,34 @@
+package com.harbaoui.iot.sensor_data_service.config;
+
+import com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoder;
+import com.harbaoui.iot.sensor_data_service.ingest.DirectBufferPool;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingRingBuffer;
+import com.harbaoui.iot.sensor_data_service.ingest.WriteAheadLog;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+
+@Configuration
+public class IngestionConfig {
+
+    @Bean
+    public ReadingRingBuffer readingRingBuffer(@Value("${ingest.buffer.capacity:262144}") int capacity) {
+        return new ReadingRingBuffer(capacity);
+    }
+
+    @Bean
+    public WriteAheadLog writeAheadLog(@Value("${ingest.wal.dir:./data/wal}") Path directory,
+                                       @Value("${ingest.wal.segment-size:64MB}") DataSize segmentSize,
+                                       @Value("${ingest.wal.fsync:true}") boolean fsync) {
+        return new WriteAheadLog(directory, segmentSize.toBytes(), fsync);
+    }
+
+    @Bean
+    public BinaryReadingDecoder binaryReadingDecoder(@Value("${ingest.binary.buffer-size:64KB}") DataSize bufferSize,
+                                                     @Value("${ingest.binary.pooled-buffers:64}") int pooledBuffers) {
+        return new BinaryReadingDecoder(new DirectBufferPool((int) bufferSize.toBytes(), pooledBuffers));
+    }
+}
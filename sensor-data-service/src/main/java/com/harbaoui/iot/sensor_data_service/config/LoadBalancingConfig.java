@@ -0,0 +1,13 @@
+package com.harbaoui.iot.sensor_data_service.config;
+
+import com.harbaoui.iot.sensor_data_service.loadbalancer.LoadAwareLoadBalancerConfig;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.cloud.loadbalancer.annotation.LoadBalancerClients;
+import org.springframework.context.annotation.Configuration;
+
+// Routes every @LoadBalanced client (e.g. the device feed of user-service) with the load-aware balancer
+@Configuration
+@ConditionalOnProperty(name = "load.balancing.enabled", havingValue = "true", matchIfMissing = true)
+@LoadBalancerClients(defaultConfiguration = LoadAwareLoadBalancerConfig.class)
+public class LoadBalancingConfig {
+}
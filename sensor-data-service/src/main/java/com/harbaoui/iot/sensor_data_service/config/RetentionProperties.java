@@ -0,0 +1,58 @@
+package com.harbaoui.iot.sensor_data_service.config;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Retention settings bound from {@code retention.*}.
+ * A zero duration keeps that data forever; per-sensor policies only override the fields they set.
+ */
+@Data
+@ConfigurationProperties(prefix = "retention")
+public class RetentionProperties {
+
+    private boolean enabled = true;
+
+    // Rows deleted per statement, and pause between statements, so retention never hogs the database
+    private int chunkSize = 5000;
+    private Duration pauseBetweenChunks = Duration.ofMillis(50);
+
+    private Policy defaults = new Policy(Duration.ofDays(7), Duration.ofDays(90), Duration.ZERO, Duration.ZERO);
+
+    private Map<Long, Policy> sensors = new HashMap<>();
+
+    @Data
+    public static class Policy {
+        private Duration raw;
+        private Duration minute;
+        private Duration hour;
+        private Duration day;
+
+        public Policy() {
+        }
+
+        public Policy(Duration raw, Duration minute, Duration hour, Duration day) {
+            this.raw = raw;
+            this.minute = minute;
+            this.hour = hour;
+            this.day = day;
+        }
+    }
+
+    // Effective policy of a sensor: its overrides on top of the defaults
+    public Policy policyFor(long sensorId) {
+        Policy override = sensors.get(sensorId);
+        if (override == null) {
+            return defaults;
+        }
+        return new Policy(
+                override.getRaw() != null ? override.getRaw() : defaults.getRaw(),
+                override.getMinute() != null ? override.getMinute() : defaults.getMinute(),
+                override.getHour() != null ? override.getHour() : defaults.getHour(),
+                override.getDay() != null ? override.getDay() : defaults.getDay());
+    }
+}
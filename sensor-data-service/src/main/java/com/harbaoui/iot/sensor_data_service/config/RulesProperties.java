@@ -0,0 +1,33 @@
+package com.harbaoui.iot.sensor_data_service.config;
+
+import com.harbaoui.iot.sensor_data_service.rules.Metric;
+import com.harbaoui.iot.sensor_data_service.rules.Operator;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Alert rules bound from {@code rules.*}, compiled by the rules engine at startup.
+ */
+@Data
+@ConfigurationProperties(prefix = "rules")
+public class RulesProperties {
+
+    private List<Definition> definitions = new ArrayList<>();
+
+    // "metric of the sensor is operator threshold, continuously for hold-for"
+    @Data
+    public static class Definition {
+        private String id;
+        private List<Long> sensors = new ArrayList<>();
+        private Metric metric = Metric.VALUE;
+        // Sliding window of min, max and avg; unused for value
+        private Duration window = Duration.ZERO;
+        private Operator operator = Operator.ABOVE;
+        private Double threshold;
+        private Duration holdFor = Duration.ZERO;
+    }
+}
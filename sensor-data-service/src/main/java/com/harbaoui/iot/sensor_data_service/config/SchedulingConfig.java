@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.config;
+
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+@Configuration
+@EnableScheduling
+@EnableConfigurationProperties({RetentionProperties.class, RulesProperties.class})
+public class SchedulingConfig {
+}
@@ -0,0 +1,200 @@
+package com.harbaoui.iot.sensor_data_service.controller;
+
+import com.harbaoui.iot.sensor_data_service.cluster.ShardClient;
+import com.harbaoui.iot.sensor_data_service.cluster.ShardRouter;
+import com.harbaoui.iot.sensor_data_service.dto.AggregateSeriesResponse;
+import com.harbaoui.iot.sensor_data_service.dto.BatchIngestResponse;
+import com.harbaoui.iot.sensor_data_service.dto.BinaryIngestResponse;
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.dto.QuantileResponse;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingRequest;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingResponse;
+import com.harbaoui.iot.sensor_data_service.exception.InvalidQueryException;
+import com.harbaoui.iot.sensor_data_service.export.ExportFormat;
+import com.harbaoui.iot.sensor_data_service.export.ReadingExporter;
+import com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoder;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.service.DeviceAuthorizationService;
+import com.harbaoui.iot.sensor_data_service.service.IngestionService;
+import com.harbaoui.iot.sensor_data_service.stream.ReadingBroadcaster;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.List;
+
+@RestController
+@RequestMapping("/sensors")
+public class SensorController {
+
+    private final IngestionService ingestionService;
+    private final ShardRouter shardRouter;
+    private final ReadingBroadcaster readingBroadcaster;
+    private final ReadingExporter readingExporter;
+    private final BinaryReadingDecoder binaryReadingDecoder;
+    private final DeviceAuthorizationService deviceAuthorizationService;
+
+    public SensorController(IngestionService ingestionService,
+                            ShardRouter shardRouter,
+                            ReadingBroadcaster readingBroadcaster,
+                            ReadingExporter readingExporter,
+                            BinaryReadingDecoder binaryReadingDecoder,
+                            DeviceAuthorizationService deviceAuthorizationService) {
+        this.ingestionService = ingestionService;
+        this.shardRouter = shardRouter;
+        this.readingBroadcaster = readingBroadcaster;
+        this.readingExporter = readingExporter;
+        this.binaryReadingDecoder = binaryReadingDecoder;
+        this.deviceAuthorizationService = deviceAuthorizationService;
+    }
+
+    // Ingest a batch of readings
+    // This endpoint accepts thousands of readings for one sensor in a single request.
+    // It returns a 202 Accepted status once the readings are durable in the write-ahead log.
+    // With auth.devices.enabled, the X-Device-Key header must name a device allowed to publish for the sensor.
+    // With cluster.sharding.enabled, readings of a sensor owned by another instance are forwarded to it.
+    @PostMapping("/{id}/readings:batch")
+    public ResponseEntity<BatchIngestResponse> ingestBatch(@PathVariable("id") long sensorId,
+                                                           @RequestHeader(value = DeviceAuthorizationService.DEVICE_KEY_HEADER, required = false) String deviceKey,
+                                                           @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy,
+                                                           @RequestBody List<ReadingRequest> readings) {
+        boolean forwarded = shardRouter.isForwarded(forwardedBy);
+        if (!forwarded) {
+            deviceAuthorizationService.check(deviceKey, sensorId);
+        }
+        int accepted = shardRouter.ingest(ingestionService.toBatch(sensorId, readings), forwarded);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new BatchIngestResponse(sensorId, accepted));
+    }
+
+    // Ingest a binary batch of readings
+    // This endpoint takes the compact application/x-iot-readings body (see BinaryReadingDecoder), which may mix
+    // sensors, and feeds the same pipeline as the JSON endpoint without parsing any text.
+    @PostMapping(path = "/readings:batch", consumes = BinaryReadingDecoder.CONTENT_TYPE)
+    public ResponseEntity<BinaryIngestResponse> ingestBinaryBatch(HttpServletRequest request) throws IOException {
+        ReadingBatch batch = binaryReadingDecoder.decode(request.getInputStream(), ingestionService.maxBatchSize());
+        // Other instances forward readings they already authorized
+        boolean forwarded = shardRouter.isForwarded(request.getHeader(ShardClient.FORWARDED_HEADER));
+        if (!forwarded) {
+            deviceAuthorizationService.check(request.getHeader(DeviceAuthorizationService.DEVICE_KEY_HEADER), batch);
+        }
+        int accepted = shardRouter.ingest(batch, forwarded);
+        return ResponseEntity.status(HttpStatus.ACCEPTED).body(new BinaryIngestResponse(accepted));
+    }
+
+    // Get the readings of a sensor over a time window
+    // This endpoint returns the readings with from <= timestamp < to (epoch milliseconds), oldest first.
+    // With sharding, every instance is asked, since readings stay where they were written when ownership moves.
+    @GetMapping("/{id}/readings")
+    public ResponseEntity<List<ReadingResponse>> getReadings(@PathVariable("id") long sensorId,
+                                                             @RequestParam long from,
+                                                             @RequestParam long to,
+                                                             @RequestParam(defaultValue = "10000") int limit,
+                                                             @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return ResponseEntity.ok(shardRouter.findReadings(sensorId, from, to, limit, shardRouter.isForwarded(forwardedBy)));
+    }
+
+    // Get the newest reading of a few sensors
+    // This endpoint answers from memory; ids are comma-separated and sensors without readings are left out.
+    // Long id lists outgrow the URL limit of the server and go through POST /sensors/latest instead.
+    @GetMapping("/latest")
+    public ResponseEntity<List<LatestReadingResponse>> getLatest(@RequestParam long[] ids,
+                                                                 @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return ResponseEntity.ok(shardRouter.findLatest(ids, shardRouter.isForwarded(forwardedBy)));
+    }
+
+    // Get the newest reading of many sensors
+    // The ids are posted as a JSON array, so a request may name thousands of sensors.
+    @PostMapping(path = "/latest", consumes = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<List<LatestReadingResponse>> postLatest(@RequestBody long[] ids,
+                                                                  @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return ResponseEntity.ok(shardRouter.findLatest(ids, shardRouter.isForwarded(forwardedBy)));
+    }
+
+    // Get the newest reading of many sensors in the binary reading layout
+    // Chosen with Accept: application/x-iot-readings; avoids rendering thousands of doubles as text.
+    @PostMapping(path = "/latest", consumes = MediaType.APPLICATION_JSON_VALUE, produces = BinaryReadingDecoder.CONTENT_TYPE)
+    public ResponseEntity<byte[]> postLatestBinary(@RequestBody long[] ids,
+                                                   @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        ReadingBatch latest = shardRouter.findLatestBatch(ids, shardRouter.isForwarded(forwardedBy));
+        return ResponseEntity.ok(BinaryReadingDecoder.encode(latest).array());
+    }
+
+    // Get min/max/avg/count/sum of a sensor per time bucket
+    // The step (milliseconds) sets the bucket width; the coarsest matching rollup answers the query.
+    @GetMapping("/{id}/aggregates")
+    public ResponseEntity<AggregateSeriesResponse> getAggregates(@PathVariable("id") long sensorId,
+                                                                 @RequestParam long from,
+                                                                 @RequestParam long to,
+                                                                 @RequestParam long step,
+                                                                 @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return ResponseEntity.ok(shardRouter.aggregate(sensorId, from, to, step, shardRouter.isForwarded(forwardedBy)));
+    }
+
+    // Get percentiles of a sensor over a time window
+    // This endpoint merges hourly quantile sketches instead of sorting raw readings; q is comma-separated,
+    // e.g. q=0.5,0.95,0.99, and each value is within the reported relative accuracy of the exact percentile.
+    @GetMapping("/{id}/quantiles")
+    public ResponseEntity<QuantileResponse> getQuantiles(@PathVariable("id") long sensorId,
+                                                         @RequestParam double[] q,
+                                                         @RequestParam long from,
+                                                         @RequestParam long to,
+                                                         @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        return ResponseEntity.ok(shardRouter.quantiles(sensorId, from, to, q, shardRouter.isForwarded(forwardedBy)));
+    }
+
+    // Get the quantile sketch this instance holds for a sensor over a time window
+    // Used by the other members of the cluster, which merge the sketches of every member before answering
+    // a percentile query; the body is QuantileSketch#toBytes and never includes readings of other instances.
+    @GetMapping(path = "/{id}/quantiles:sketch", produces = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<byte[]> getQuantileSketch(@PathVariable("id") long sensorId,
+                                                    @RequestParam long from,
+                                                    @RequestParam long to) {
+        return ResponseEntity.ok(shardRouter.sketch(sensorId, from, to).toBytes());
+    }
+
+    // Stream new readings of a sensor
+    // This endpoint keeps a server-sent events connection open and pushes each ingested run of readings
+    // as a "readings" event; slow clients lose the oldest frames instead of slowing down ingestion.
+    // With sharding, a client asking another instance than the owner of the sensor is redirected to it.
+    @GetMapping(path = "/{id}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> stream(@PathVariable("id") long sensorId,
+                                             @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        URI owner = shardRouter.streamOwner(sensorId, shardRouter.isForwarded(forwardedBy));
+        if (owner != null) {
+            return ResponseEntity.status(HttpStatus.TEMPORARY_REDIRECT)
+                    .location(owner.resolve("/sensors/" + sensorId + "/stream"))
+                    .build();
+        }
+        return ResponseEntity.ok(readingBroadcaster.openSseStream(sensorId));
+    }
+
+    // Export the readings of a sensor
+    // This endpoint streams CSV or NDJSON straight from the store, without building the result in memory.
+    // With sharding, the exports of the other instances are merged into it in timestamp order.
+    @GetMapping("/{id}/export")
+    public ResponseEntity<StreamingResponseBody> export(@PathVariable("id") long sensorId,
+                                                        @RequestParam long from,
+                                                        @RequestParam long to,
+                                                        @RequestParam(defaultValue = "csv") String format,
+                                                        @RequestHeader(value = ShardClient.FORWARDED_HEADER, required = false) String forwardedBy) {
+        ExportFormat exportFormat = ExportFormat.fromName(format);
+        if (exportFormat == null || from >= to) {
+            throw new InvalidQueryException("'format' must be csv or ndjson and 'from' must be before 'to'");
+        }
+        List<InputStream> remoteExports = shardRouter.openExports(sensorId, from, to, shardRouter.isForwarded(forwardedBy));
+        StreamingResponseBody body = out -> readingExporter.export(sensorId, from, to, exportFormat, out, remoteExports);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"sensor-" + sensorId + "." + exportFormat.extension() + "\"")
+                .body(body);
+    }
+}
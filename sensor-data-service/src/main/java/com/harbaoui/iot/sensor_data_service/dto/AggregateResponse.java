@@ -0,0 +1,17 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregateResponse {
+    private long bucketStart;
+    private long count;
+    private double sum;
+    private double min;
+    private double max;
+    private double avg;
+}
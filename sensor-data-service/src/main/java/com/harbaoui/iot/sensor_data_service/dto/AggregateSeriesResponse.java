@@ -0,0 +1,18 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AggregateSeriesResponse {
+    private long sensorId;
+    private long step;
+    // Rollup the buckets were computed from, or RAW when the step is finer than any rollup
+    private String source;
+    private List<AggregateResponse> buckets;
+}
@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+@Data
+@AllArgsConstructor
+public class BatchIngestResponse {
+    private long sensorId;
+    private int accepted;
+}
@@ -0,0 +1,12 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BinaryIngestResponse {
+    private int accepted;
+}
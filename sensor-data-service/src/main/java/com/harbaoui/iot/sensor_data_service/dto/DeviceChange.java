@@ -0,0 +1,19 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Current state of one device, as published by user-service's /devices/changes feed
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceChange {
+    private long version;
+    private long deviceId;
+    private long userId;
+    // Hex SHA-256 of the device API key
+    private String keyHash;
+    private long[] sensorIds;
+    private boolean revoked;
+}
@@ -0,0 +1,14 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class LatestReadingResponse {
+    private long sensorId;
+    private long timestamp;
+    private double value;
+}
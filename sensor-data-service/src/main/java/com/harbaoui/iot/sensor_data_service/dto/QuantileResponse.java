@@ -0,0 +1,20 @@
+package com.harbaoui.iot.sensor_data_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class QuantileResponse {
+    private long sensorId;
+    private long from;
+    private long to;
+    private long count;
+    // Each value is within this fraction of the exact quantile; empty quantiles when there were no readings
+    private double relativeAccuracy;
+    private List<QuantileValue> quantiles;
+}
@@ -0,0 +1,29 @@
+package com.harbaoui.iot.sensor_data_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+@Entity
+@Table(name = "readings", indexes = {
+    @Index(name = "idx_readings_sensor_ts", columnList = "sensor_id, ts")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Reading {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sensor_id", nullable = false)
+    private long sensorId;
+
+    // Epoch milliseconds, kept as a plain BIGINT so batch inserts skip any temporal conversion
+    @Column(name = "ts", nullable = false)
+    private long timestamp;
+
+    @Column(name = "reading_value", nullable = false)
+    private double value;
+}
@@ -0,0 +1,43 @@
+package com.harbaoui.iot.sensor_data_service.entity;
+
+import com.harbaoui.iot.sensor_data_service.rollup.Resolution;
+import jakarta.persistence.*;
+import lombok.*;
+
+@Entity
+@Table(name = "reading_rollups", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_rollups_sensor_resolution_bucket", columnNames = {"sensor_id", "resolution", "bucket_start"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class RollupBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sensor_id", nullable = false)
+    private long sensorId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "resolution", nullable = false, length = 8)
+    private Resolution resolution;
+
+    // Epoch milliseconds of the bucket start
+    @Column(name = "bucket_start", nullable = false)
+    private long bucketStart;
+
+    @Column(name = "reading_count", nullable = false)
+    private long count;
+
+    @Column(name = "value_sum", nullable = false)
+    private double sum;
+
+    @Column(name = "value_min", nullable = false)
+    private double min;
+
+    @Column(name = "value_max", nullable = false)
+    private double max;
+}
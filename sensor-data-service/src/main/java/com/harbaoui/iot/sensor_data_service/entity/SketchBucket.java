@@ -0,0 +1,35 @@
+package com.harbaoui.iot.sensor_data_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Quantile sketch of the readings of one sensor in one hour; read and written by SketchRepository
+@Entity
+@Table(name = "reading_sketches", uniqueConstraints = {
+    @UniqueConstraint(name = "uk_sketches_sensor_bucket", columnNames = {"sensor_id", "bucket_start"})
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class SketchBucket {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "sensor_id", nullable = false)
+    private long sensorId;
+
+    // Epoch milliseconds of the hour start
+    @Column(name = "bucket_start", nullable = false)
+    private long bucketStart;
+
+    @Column(name = "reading_count", nullable = false)
+    private long count;
+
+    // QuantileSketch.toBytes(); a few hundred bytes for most sensors, at most ~20 KB
+    @Lob
+    @Column(name = "sketch", nullable = false, length = 1_048_576)
+    private byte[] sketch;
+}
@@ -0,0 +1,7 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+public class DeviceRegistryUnavailableException extends RuntimeException {
+    public DeviceRegistryUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,77 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@RestControllerAdvice
+public class GlobalExceptionHandler {
+
+    // Handle malformed or oversized ingestion batches
+    @ExceptionHandler(InvalidBatchException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidBatchException(InvalidBatchException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    // Handle invalid query parameters such as an empty time window
+    @ExceptionHandler(InvalidQueryException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidQueryException(InvalidQueryException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    // Ask clients to back off while the ingestion buffer is full
+    @ExceptionHandler(IngestionOverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleIngestionOverloadedException(IngestionOverloadedException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // Refuse ingestion without a known device key
+    @ExceptionHandler(UnknownDeviceException.class)
+    public ResponseEntity<Map<String, String>> handleUnknownDeviceException(UnknownDeviceException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.UNAUTHORIZED);
+    }
+
+    // Refuse readings of sensors the device was not granted
+    @ExceptionHandler(SensorNotAllowedException.class)
+    public ResponseEntity<Map<String, String>> handleSensorNotAllowedException(SensorNotAllowedException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.FORBIDDEN);
+    }
+
+    // Ask devices to retry until the device registry has been replicated
+    @ExceptionHandler(DeviceRegistryUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleDeviceRegistryUnavailableException(DeviceRegistryUnavailableException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // Ask clients to retry while another instance of the cluster cannot be reached
+    @ExceptionHandler(ShardUnavailableException.class)
+    public ResponseEntity<Map<String, String>> handleShardUnavailableException(ShardUnavailableException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // Fallback for other unhandled exceptions
+    @ExceptionHandler(Exception.class)
+    public ResponseEntity<Map<String, String>> handleGenericException(Exception ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", "Something went wrong! Please try again later.");
+        return new ResponseEntity<>(error, HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+}
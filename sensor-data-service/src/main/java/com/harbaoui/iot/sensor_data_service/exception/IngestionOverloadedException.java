@@ -0,0 +1,7 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+public class IngestionOverloadedException extends RuntimeException {
+    public IngestionOverloadedException(String message) {
+        super(message);
+    }
+}
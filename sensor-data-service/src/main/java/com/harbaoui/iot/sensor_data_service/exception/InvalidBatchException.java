@@ -0,0 +1,7 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+public class InvalidBatchException extends RuntimeException {
+    public InvalidBatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+public class InvalidQueryException extends RuntimeException {
+    public InvalidQueryException(String message) {
+        super(message);
+    }
+}
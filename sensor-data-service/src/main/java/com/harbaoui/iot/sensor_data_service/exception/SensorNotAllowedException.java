@@ -0,0 +1,7 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+public class SensorNotAllowedException extends RuntimeException {
+    public SensorNotAllowedException(String message) {
+        super(message);
+    }
+}
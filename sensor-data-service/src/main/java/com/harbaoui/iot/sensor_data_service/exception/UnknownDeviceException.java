@@ -0,0 +1,7 @@
+package com.harbaoui.iot.sensor_data_service.exception;
+
+public class UnknownDeviceException extends RuntimeException {
+    public UnknownDeviceException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,60 @@
+package com.harbaoui.iot.sensor_data_service.export;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Forward-only reader of a CSV export written by another instance, one reading at a time.
+ * The header line is skipped; values are printed by {@link Double#toString} and parse back exactly.
+ */
+class CsvReadingCursor implements Closeable {
+
+    private final BufferedReader reader;
+    private boolean started;
+    private long timestamp;
+    private double value;
+
+    CsvReadingCursor(InputStream in) {
+        this.reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.US_ASCII), 64 * 1024);
+    }
+
+    // Move to the next reading, false once the export is exhausted
+    boolean advance() throws IOException {
+        String line = reader.readLine();
+        if (!started) {
+            started = true;
+            line = line == null ? null : reader.readLine();
+        }
+        if (line == null || line.isEmpty()) {
+            return false;
+        }
+        int comma = line.indexOf(',');
+        if (comma < 0) {
+            throw new IOException("Malformed export line: " + line);
+        }
+        try {
+            timestamp = Long.parseLong(line, 0, comma, 10);
+            value = Double.parseDouble(line.substring(comma + 1));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed export line: " + line, e);
+        }
+        return true;
+    }
+
+    long timestamp() {
+        return timestamp;
+    }
+
+    double value() {
+        return value;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
@@ -0,0 +1,164 @@
+package com.harbaoui.iot.sensor_data_service.export;
+
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Streams a sensor's readings from the store's forward-only scan straight to an output stream.
+ * Each line is formatted into one reused buffer, so memory stays constant whatever the range size.
+ * With sharding, the exports other instances hold for the window are merged into the same stream.
+ */
+@Component
+public class ReadingExporter {
+
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final ReadingStore readingStore;
+
+    public ReadingExporter(ReadingStore readingStore) {
+        this.readingStore = readingStore;
+    }
+
+    // Write the readings with from <= timestamp < to, returns the number of readings written
+    public long export(long sensorId, long from, long to, ExportFormat format, OutputStream out) throws IOException {
+        return export(sensorId, from, to, format, out, List.of());
+    }
+
+    // Same, merging in timestamp order the CSV exports of the window written by other instances
+    // Each remote export is read one line ahead of the local scan, so memory stays constant here too.
+    // The streams are closed before returning.
+    public long export(long sensorId, long from, long to, ExportFormat format, OutputStream out,
+                       List<InputStream> remoteExports) throws IOException {
+        PriorityQueue<CsvReadingCursor> remote =
+                new PriorityQueue<>(Math.max(1, remoteExports.size()), Comparator.comparingLong(CsvReadingCursor::timestamp));
+        List<CsvReadingCursor> cursors = new ArrayList<>(remoteExports.size());
+        try {
+            for (InputStream export : remoteExports) {
+                CsvReadingCursor cursor = new CsvReadingCursor(export);
+                cursors.add(cursor);
+                if (cursor.advance()) {
+                    remote.add(cursor);
+                }
+            }
+            LineWriter writer = new LineWriter(out);
+            if (format == ExportFormat.CSV) {
+                writer.line().append("timestamp,value");
+                writer.endLine();
+            }
+            long[] written = new long[1];
+            try {
+                readingStore.scan(sensorId, from, to, (timestamp, value) -> {
+                    written[0] += writeRemoteBefore(remote, timestamp, sensorId, format, writer);
+                    write(writer, sensorId, timestamp, value, format);
+                    written[0]++;
+                    return true;
+                });
+                written[0] += writeRemoteBefore(remote, Long.MAX_VALUE, sensorId, format, writer);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            writer.flush();
+            return written[0];
+        } finally {
+            for (CsvReadingCursor cursor : cursors) {
+                cursor.close();
+            }
+            for (int i = cursors.size(); i < remoteExports.size(); i++) {
+                remoteExports.get(i).close();
+            }
+        }
+    }
+
+    // Write the remote readings older than the given timestamp, ahead of it
+    private static long writeRemoteBefore(PriorityQueue<CsvReadingCursor> remote, long timestamp, long sensorId,
+                                          ExportFormat format, LineWriter writer) {
+        long written = 0;
+        try {
+            while (!remote.isEmpty() && remote.peek().timestamp() < timestamp) {
+                CsvReadingCursor cursor = remote.poll();
+                write(writer, sensorId, cursor.timestamp(), cursor.value(), format);
+                written++;
+                if (cursor.advance()) {
+                    remote.add(cursor);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return written;
+    }
+
+    private static void write(LineWriter writer, long sensorId, long timestamp, double value, ExportFormat format) {
+        StringBuilder line = writer.line();
+        if (format == ExportFormat.CSV) {
+            line.append(timestamp).append(',').append(value);
+        } else {
+            line.append("{\"sensorId\":").append(sensorId)
+                    .append(",\"timestamp\":").append(timestamp)
+                    .append(",\"value\":");
+            // JSON has no literal for NaN or infinities
+            if (Double.isFinite(value)) {
+                line.append(value);
+            } else {
+                line.append("null");
+            }
+            line.append('}');
+        }
+        writer.endLine();
+    }
+
+    private static final class LineWriter {
+
+        private final OutputStream out;
+        private final StringBuilder line = new StringBuilder(128);
+        private final byte[] buffer = new byte[BUFFER_BYTES];
+        private int position;
+
+        LineWriter(OutputStream out) {
+            this.out = out;
+        }
+
+        StringBuilder line() {
+            line.setLength(0);
+            return line;
+        }
+
+        // Lines are ASCII only, so chars map one to one onto bytes
+        void endLine() {
+            line.append('\n');
+            if (position + line.length() > buffer.length) {
+                flushBuffer();
+            }
+            for (int i = 0; i < line.length(); i++) {
+                buffer[position++] = (byte) line.charAt(i);
+            }
+        }
+
+        void flush() throws IOException {
+            try {
+                flushBuffer();
+                out.flush();
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void flushBuffer() {
+            try {
+                out.write(buffer, 0, position);
+                position = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import com.harbaoui.iot.sensor_data_service.exception.InvalidBatchException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Decoder for the {@value #CONTENT_TYPE} body used by constrained devices and gateways.
+ * <p>
+ * Layout, big-endian: a 4-byte reading count, then exactly that many 24-byte readings of
+ * {@code sensorId (int64), timestamp (int64 epoch ms), value (float64)}. Readings of several
+ * sensors may share one body. The stream is read through a pooled direct buffer straight into
+ * the primitive arrays of a {@link ReadingBatch}, so decoding allocates nothing per reading.
+ */
+public class BinaryReadingDecoder {
+
+    public static final String CONTENT_TYPE = "application/x-iot-readings";
+    public static final int HEADER_BYTES = Integer.BYTES;
+    public static final int READING_BYTES = Long.BYTES + Long.BYTES + Double.BYTES;
+
+    private final DirectBufferPool bufferPool;
+
+    public BinaryReadingDecoder(DirectBufferPool bufferPool) {
+        if (bufferPool.bufferSize() < HEADER_BYTES + READING_BYTES) {
+            throw new IllegalArgumentException("Buffers must hold at least one reading and the header");
+        }
+        this.bufferPool = bufferPool;
+    }
+
+    // Decode a whole body, rejecting it when the count is out of range or does not match its length
+    public ReadingBatch decode(InputStream body, int maxReadings) throws IOException {
+        ReadableByteChannel channel = Channels.newChannel(body);
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            ReadingBatch batch = null;
+            int expected = -1;
+            boolean endOfStream = false;
+            while (!endOfStream) {
+                endOfStream = channel.read(buffer) < 0;
+                buffer.flip();
+                if (expected < 0 && buffer.remaining() >= HEADER_BYTES) {
+                    expected = buffer.getInt();
+                    if (expected <= 0 || expected > maxReadings) {
+                        throw new InvalidBatchException("Reading count must be between 1 and " + maxReadings);
+                    }
+                    batch = new ReadingBatch(expected);
+                }
+                if (batch != null) {
+                    while (buffer.remaining() >= READING_BYTES) {
+                        if (batch.size() == expected) {
+                            throw new InvalidBatchException("Body is longer than its " + expected + " readings");
+                        }
+                        batch.add(buffer.getLong(), buffer.getLong(), buffer.getDouble());
+                    }
+                }
+                buffer.compact();
+            }
+            if (batch == null || batch.size() != expected || buffer.position() != 0) {
+                throw new InvalidBatchException("Body is truncated or not a multiple of " + READING_BYTES + " bytes");
+            }
+            return batch;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    // Encode readings in the same layout, for clients and tests
+    public static ByteBuffer encode(ReadingBatch batch) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + batch.size() * READING_BYTES);
+        buffer.putInt(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            buffer.putLong(batch.sensorId(i)).putLong(batch.timestamp(i)).putDouble(batch.value(i));
+        }
+        return buffer.flip();
+    }
+}
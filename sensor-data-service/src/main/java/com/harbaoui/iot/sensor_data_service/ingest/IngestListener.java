@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+/**
+ * Hook for derived data maintained as readings are acknowledged.
+ * Called on the request thread right after the batch is logged, so implementations must be cheap
+ * and must not block on I/O.
+ */
+public interface IngestListener {
+
+    void onIngest(ReadingBatch batch);
+}
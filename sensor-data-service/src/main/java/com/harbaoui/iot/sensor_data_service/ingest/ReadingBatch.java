@@ -0,0 +1,61 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+/**
+ * A batch of readings held in parallel primitive arrays.
+ * Used on the ingestion path so that thousands of points cost three arrays
+ * instead of one object per reading.
+ */
+public class ReadingBatch {
+
+    private long[] sensorIds;
+    private long[] timestamps;
+    private double[] values;
+    private int size;
+
+    public ReadingBatch(int capacity) {
+        this.sensorIds = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+    }
+
+    public void add(long sensorId, long timestamp, double value) {
+        if (size == sensorIds.length) {
+            grow();
+        }
+        sensorIds[size] = sensorId;
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long sensorId(int i) {
+        return sensorIds[i];
+    }
+
+    public long timestamp(int i) {
+        return timestamps[i];
+    }
+
+    public double value(int i) {
+        return values[i];
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, sensorIds.length * 2);
+        sensorIds = java.util.Arrays.copyOf(sensorIds, capacity);
+        timestamps = java.util.Arrays.copyOf(timestamps, capacity);
+        values = java.util.Arrays.copyOf(values, capacity);
+    }
+}
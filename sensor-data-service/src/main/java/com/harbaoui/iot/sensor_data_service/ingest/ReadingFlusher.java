@@ -0,0 +1,181 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import com.harbaoui.iot.sensor_data_service.service.IngestionService;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drains the ring buffer into the reading store with group commits.
+ * Each flusher thread commits once it holds {@code ingest.flush.max-batch} readings
+ * or once its oldest pending reading is {@code ingest.flush.interval-ms} old,
+ * then releases the WAL segments those readings were logged to.
+ * Starts before the web server so leftover WAL segments are replayed before any request is accepted.
+ * Replay skips readings the store already holds and acknowledges the others like a fresh ingest,
+ * so the listeners (last values, rules, rollups, sketches) see each of them exactly once.
+ */
+@Component
+public class ReadingFlusher implements SmartLifecycle {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadingFlusher.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long MAX_RETRY_BACKOFF_MILLIS = 1000;
+
+    private final ReadingRingBuffer buffer;
+    private final WriteAheadLog writeAheadLog;
+    private final ReadingStore readingStore;
+    private final IngestionService ingestionService;
+    private final int threads;
+    private final int maxBatch;
+    private final long intervalNanos;
+    private final List<Thread> workers = new ArrayList<>();
+    private volatile boolean running;
+
+    public ReadingFlusher(ReadingRingBuffer buffer,
+                          WriteAheadLog writeAheadLog,
+                          ReadingStore readingStore,
+                          IngestionService ingestionService,
+                          @Value("${ingest.flush.threads:1}") int threads,
+                          @Value("${ingest.flush.max-batch:5000}") int maxBatch,
+                          @Value("${ingest.flush.interval-ms:50}") long intervalMillis) {
+        this.buffer = buffer;
+        this.writeAheadLog = writeAheadLog;
+        this.readingStore = readingStore;
+        this.ingestionService = ingestionService;
+        this.threads = threads;
+        this.maxBatch = maxBatch;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+    }
+
+    @Override
+    public void start() {
+        try {
+            writeAheadLog.recover(this::replay);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to recover the write-ahead log", e);
+        }
+        running = true;
+        for (int i = 0; i < threads; i++) {
+            Thread worker = new Thread(this::run, "reading-flusher-" + i);
+            worker.start();
+            workers.add(worker);
+        }
+    }
+
+    // Store the readings of a recovered batch that did not reach the store before the restart
+    // A reading already stored was acknowledged to the listeners before, replaying it would count it twice.
+    void replay(ReadingBatch batch) {
+        ReadingBatch absent = readingStore.absent(batch);
+        if (!absent.isEmpty()) {
+            readingStore.append(absent);
+            ingestionService.acknowledge(absent);
+        }
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        for (Thread worker : workers) {
+            try {
+                worker.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        workers.clear();
+        try {
+            writeAheadLog.close();
+        } catch (IOException e) {
+            logger.warn("Unable to close the write-ahead log: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Run before the embedded web server starts and stop after it has stopped
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 2048;
+    }
+
+    private void run() {
+        ReadingBatch batch = new ReadingBatch(maxBatch);
+        WalSegment[] owners = new WalSegment[maxBatch];
+        long firstReadingAt = 0;
+
+        while (running || buffer.size() > 0) {
+            boolean wasEmpty = batch.isEmpty();
+            buffer.drainTo(batch, owners, maxBatch - batch.size());
+            if (wasEmpty && !batch.isEmpty()) {
+                firstReadingAt = System.nanoTime();
+            }
+
+            boolean due = batch.size() == maxBatch
+                    || (!batch.isEmpty() && (System.nanoTime() - firstReadingAt >= intervalNanos || !running));
+            if (due) {
+                if (!commit(batch, owners)) {
+                    // Shutting down with the store unavailable, the WAL keeps these readings
+                    return;
+                }
+                batch.clear();
+            } else {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+    }
+
+    // Commit the batch in one store append, retrying with backoff until it succeeds or the flusher stops
+    private boolean commit(ReadingBatch batch, WalSegment[] owners) {
+        long backoff = 10;
+        while (true) {
+            try {
+                readingStore.append(batch);
+                break;
+            } catch (RuntimeException e) {
+                if (!running) {
+                    logger.error("Dropping flush of {} readings on shutdown, they remain in the WAL: {}",
+                            batch.size(), e.getMessage());
+                    return false;
+                }
+                logger.warn("Group commit of {} readings failed, retrying in {} ms: {}",
+                        batch.size(), backoff, e.getMessage());
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(backoff));
+                backoff = Math.min(backoff * 2, MAX_RETRY_BACKOFF_MILLIS);
+            }
+        }
+
+        releaseSegments(batch.size(), owners);
+        try {
+            writeAheadLog.rollIfNeeded();
+            writeAheadLog.reclaim();
+        } catch (IOException e) {
+            logger.warn("Unable to roll or reclaim WAL segments: {}", e.getMessage());
+        }
+        return true;
+    }
+
+    // Readings from one producer are contiguous, so count runs instead of touching the counter per reading
+    private static void releaseSegments(int size, WalSegment[] owners) {
+        int runStart = 0;
+        for (int i = 1; i <= size; i++) {
+            if (i == size || owners[i] != owners[runStart]) {
+                owners[runStart].markFlushed(i - runStart);
+                runStart = i;
+            }
+        }
+        java.util.Arrays.fill(owners, 0, size, null);
+    }
+}
@@ -0,0 +1,135 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded multi-producer / multi-consumer ring buffer of readings.
+ * Producers and consumers claim slots with a CAS on a shared cursor and publish
+ * through a per-slot sequence number, so neither side ever takes a lock.
+ * Slots keep the reading fields in primitive arrays plus the WAL segment the
+ * reading was logged to, which the flushers use to release segments.
+ * Producers may reserve room for a whole batch before logging it, so a batch is either
+ * refused up front or fits without waiting for a flush.
+ */
+public class ReadingRingBuffer {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final long[] sensorIds;
+    private final long[] timestamps;
+    private final double[] values;
+    private final WalSegment[] segments;
+    private final AtomicLong enqueuePosition = new AtomicLong();
+    private final AtomicLong dequeuePosition = new AtomicLong();
+    // Readings reserved or offered and not yet drained, never above capacity
+    private final AtomicLong reserved = new AtomicLong();
+
+    public ReadingRingBuffer(int requestedCapacity) {
+        int size = 2;
+        while (size < requestedCapacity) {
+            size <<= 1;
+        }
+        this.capacity = size;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.sensorIds = new long[capacity];
+        this.timestamps = new long[capacity];
+        this.values = new double[capacity];
+        this.segments = new WalSegment[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    // Append one reading, returns false when the buffer is full
+    public boolean offer(long sensorId, long timestamp, double value, WalSegment segment) {
+        if (!tryReserve(1)) {
+            return false;
+        }
+        put(sensorId, timestamp, value, segment);
+        return true;
+    }
+
+    // Reserve room for count readings, all or nothing; false when the buffer cannot take them all
+    public boolean tryReserve(int count) {
+        while (true) {
+            long current = reserved.get();
+            if (current + count > capacity) {
+                return false;
+            }
+            if (reserved.compareAndSet(current, current + count)) {
+                return true;
+            }
+        }
+    }
+
+    // Give back room reserved for readings that will not be put
+    public void cancelReservation(int count) {
+        reserved.addAndGet(-count);
+    }
+
+    // Append one reading into room reserved earlier
+    // Room was counted free only once a consumer handed its reading over, so this spins at most while
+    // another consumer finishes handing over the previous reading of the same slot.
+    public void put(long sensorId, long timestamp, double value, WalSegment segment) {
+        while (true) {
+            long position = enqueuePosition.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (enqueuePosition.compareAndSet(position, position + 1)) {
+                    sensorIds[index] = sensorId;
+                    timestamps[index] = timestamp;
+                    values[index] = value;
+                    segments[index] = segment;
+                    sequences.lazySet(index, position + 1);
+                    return;
+                }
+            } else if (difference < 0) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    // Move up to max readings into the batch, recording the owning WAL segment of each
+    // Returns the number of readings drained.
+    public int drainTo(ReadingBatch batch, WalSegment[] owners, int max) {
+        int drained = 0;
+        while (drained < max) {
+            long position = dequeuePosition.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0) {
+                if (dequeuePosition.compareAndSet(position, position + 1)) {
+                    owners[batch.size()] = segments[index];
+                    batch.add(sensorIds[index], timestamps[index], values[index]);
+                    segments[index] = null;
+                    sequences.lazySet(index, position + capacity);
+                    drained++;
+                }
+            } else if (difference < 0) {
+                break;
+            }
+        }
+        if (drained > 0) {
+            reserved.addAndGet(-drained);
+        }
+        return drained;
+    }
+
+    public int size() {
+        long size = enqueuePosition.get() - dequeuePosition.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    // Room neither reserved nor taken
+    public int remainingCapacity() {
+        return (int) Math.max(0, capacity - reserved.get());
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
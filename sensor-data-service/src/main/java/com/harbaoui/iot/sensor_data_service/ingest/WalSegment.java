@@ -0,0 +1,76 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One append-only file of the write-ahead log.
+ * Tracks how many readings were logged to it and how many of those have since
+ * been committed to the reading store; a sealed segment is deleted once both match.
+ */
+public class WalSegment {
+
+    private final long id;
+    private final Path path;
+    private final FileChannel channel;
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong appended = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+
+    WalSegment(long id, Path path) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    // APPEND mode makes each write land atomically at the end of the file, even from several threads
+    void write(ByteBuffer record, boolean fsync) throws IOException {
+        int length = record.remaining();
+        while (record.hasRemaining()) {
+            channel.write(record);
+        }
+        if (fsync) {
+            channel.force(false);
+        }
+        bytes.addAndGet(length);
+    }
+
+    void reserve(int readings) {
+        appended.addAndGet(readings);
+    }
+
+    void release(int readings) {
+        appended.addAndGet(-readings);
+    }
+
+    public void markFlushed(int readings) {
+        flushed.addAndGet(readings);
+    }
+
+    boolean isFullyFlushed() {
+        return flushed.get() == appended.get();
+    }
+
+    long bytes() {
+        return bytes.get();
+    }
+
+    long id() {
+        return id;
+    }
+
+    void delete() throws IOException {
+        channel.close();
+        Files.deleteIfExists(path);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,216 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only write-ahead log for acknowledged readings.
+ * A reading is acknowledged only after its record is in the current segment, so a
+ * crash between the acknowledgement and the store commit is repaired by
+ * replaying the remaining segments on the next start.
+ *
+ * Record layout: [int payload length][int CRC32C][payload], where the payload is
+ * a run of (long sensorId, long timestamp, double value) triples.
+ * Replay stops at the first truncated or corrupt record of a segment.
+ */
+public class WriteAheadLog {
+
+    public static final int READING_BYTES = 24;
+    private static final int HEADER_BYTES = 8;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final boolean fsync;
+    private final AtomicReference<WalSegment> current = new AtomicReference<>();
+    private final ConcurrentLinkedQueue<WalSegment> sealed = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock rollLock = new ReentrantLock();
+
+    public WriteAheadLog(Path directory, long segmentBytes, boolean fsync) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.fsync = fsync;
+    }
+
+    // Replay every segment left by a previous run, then open a fresh segment
+    // Segments are deleted only after the consumer returns, so a failed replay is retried next start.
+    public int recover(Consumer<ReadingBatch> consumer) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> leftovers = listSegments();
+        int replayed = 0;
+        long nextId = 0;
+        for (Path segment : leftovers) {
+            replayed += replay(segment, consumer);
+            nextId = Math.max(nextId, segmentId(segment) + 1);
+            Files.delete(segment);
+        }
+        if (replayed > 0) {
+            logger.info("Replayed {} readings from {} WAL segment(s)", replayed, leftovers.size());
+        }
+        current.set(new WalSegment(nextId, segmentPath(nextId)));
+        return replayed;
+    }
+
+    // Log the readings and return the segment they landed in
+    // The caller must hand every reading to the ring buffer tagged with that segment.
+    public WalSegment append(ReadingBatch batch) {
+        ByteBuffer record = encode(batch);
+        while (true) {
+            WalSegment segment = current.get();
+            segment.reserve(batch.size());
+            if (current.get() != segment) {
+                // Rolled between the read and the reservation, retry on the new segment
+                segment.release(batch.size());
+                continue;
+            }
+            try {
+                segment.write(record, fsync);
+                return segment;
+            } catch (IOException e) {
+                segment.release(batch.size());
+                throw new UncheckedIOException("Unable to append to write-ahead log", e);
+            }
+        }
+    }
+
+    // Seal the current segment once it is over the size limit
+    // Only flusher threads call this, producers never wait on it.
+    public void rollIfNeeded() throws IOException {
+        if (current.get().bytes() < segmentBytes || !rollLock.tryLock()) {
+            return;
+        }
+        try {
+            WalSegment segment = current.get();
+            if (segment.bytes() >= segmentBytes) {
+                current.set(new WalSegment(segment.id() + 1, segmentPath(segment.id() + 1)));
+                sealed.add(segment);
+            }
+        } finally {
+            rollLock.unlock();
+        }
+    }
+
+    // Delete sealed segments whose readings are all committed to the reading store
+    public void reclaim() throws IOException {
+        for (WalSegment segment : sealed) {
+            if (segment.isFullyFlushed() && sealed.remove(segment)) {
+                segment.delete();
+            }
+        }
+    }
+
+    public void close() throws IOException {
+        for (WalSegment segment : sealed) {
+            segment.close();
+        }
+        WalSegment segment = current.get();
+        if (segment != null) {
+            segment.close();
+        }
+    }
+
+    static ByteBuffer encode(ReadingBatch batch) {
+        int payloadBytes = batch.size() * READING_BYTES;
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + payloadBytes);
+        record.position(HEADER_BYTES);
+        for (int i = 0; i < batch.size(); i++) {
+            record.putLong(batch.sensorId(i));
+            record.putLong(batch.timestamp(i));
+            record.putDouble(batch.value(i));
+        }
+        CRC32C crc = new CRC32C();
+        crc.update(record.array(), HEADER_BYTES, payloadBytes);
+        record.putInt(0, payloadBytes);
+        record.putInt(4, (int) crc.getValue());
+        record.flip();
+        return record;
+    }
+
+    private int replay(Path path, Consumer<ReadingBatch> consumer) throws IOException {
+        int replayed = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (true) {
+                header.clear();
+                if (readFully(channel, header) < HEADER_BYTES) {
+                    break;
+                }
+                int payloadBytes = header.getInt(0);
+                int expectedCrc = header.getInt(4);
+                if (payloadBytes <= 0 || payloadBytes % READING_BYTES != 0
+                        || payloadBytes > channel.size() - channel.position()) {
+                    logger.warn("Truncated record in WAL segment {}, ignoring the tail", path.getFileName());
+                    break;
+                }
+                ByteBuffer payload = ByteBuffer.allocate(payloadBytes);
+                readFully(channel, payload);
+                CRC32C crc = new CRC32C();
+                crc.update(payload.array(), 0, payloadBytes);
+                if ((int) crc.getValue() != expectedCrc) {
+                    logger.warn("Corrupt record in WAL segment {}, ignoring the tail", path.getFileName());
+                    break;
+                }
+                payload.flip();
+                ReadingBatch batch = new ReadingBatch(payloadBytes / READING_BYTES);
+                while (payload.hasRemaining()) {
+                    batch.add(payload.getLong(), payload.getLong(), payload.getDouble());
+                }
+                consumer.accept(batch);
+                replayed += batch.size();
+            }
+        }
+        return replayed;
+    }
+
+    private static int readFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        int total = 0;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    private List<Path> listSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = new ArrayList<>(files
+                    .filter(p -> p.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(p -> p.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .toList());
+            segments.sort(Comparator.comparingLong(WriteAheadLog::segmentId));
+            return segments;
+        }
+    }
+
+    private Path segmentPath(long id) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private static long segmentId(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,60 @@
+package com.harbaoui.iot.sensor_data_service.load;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingRingBuffer;
+import com.netflix.appinfo.ApplicationInfoManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Publishes this instance's load in its Eureka metadata, for load-aware balancers:
+ * requests in flight, database flushes waiting in the ingestion buffer, recent p99 latency,
+ * and when the values were taken. The keys are the same as user-service's.
+ */
+@Component
+public class LoadMetadataPublisher {
+
+    public static final String IN_FLIGHT = "load.in-flight";
+    public static final String QUEUE = "load.queue";
+    public static final String P99_MS = "load.p99-ms";
+    public static final String UPDATED = "load.updated";
+
+    private final ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+    private final LoadTracker loadTracker;
+    private final ReadingRingBuffer buffer;
+    private final int flushBatch;
+    private final boolean enabled;
+
+    public LoadMetadataPublisher(ObjectProvider<ApplicationInfoManager> applicationInfoManager,
+                                 LoadTracker loadTracker,
+                                 ReadingRingBuffer buffer,
+                                 @Value("${ingest.flush.max-batch:5000}") int flushBatch,
+                                 @Value("${load.publish.enabled:true}") boolean enabled) {
+        this.applicationInfoManager = applicationInfoManager;
+        this.loadTracker = loadTracker;
+        this.buffer = buffer;
+        this.flushBatch = Math.max(1, flushBatch);
+        this.enabled = enabled;
+    }
+
+    // Take the current signals and hand them to the Eureka client
+    // The queue is counted in flush batches, so one unit is about one database round trip of work.
+    @Scheduled(fixedDelayString = "${load.publish.interval-ms:2000}")
+    public void publish() {
+        double p99 = loadTracker.rollP99();
+        ApplicationInfoManager manager = applicationInfoManager.getIfAvailable();
+        if (!enabled || manager == null) {
+            return;
+        }
+        int pendingFlushes = (buffer.size() + flushBatch - 1) / flushBatch;
+        manager.registerAppMetadata(Map.of(
+                IN_FLIGHT, Integer.toString(loadTracker.inFlight()),
+                QUEUE, Integer.toString(pendingFlushes),
+                P99_MS, String.format(Locale.ROOT, "%.3f", p99),
+                UPDATED, Long.toString(System.currentTimeMillis())));
+    }
+}
@@ -0,0 +1,158 @@
+package com.harbaoui.iot.sensor_data_service.loadbalancer;
+
+import com.harbaoui.iot.sensor_data_service.load.LoadMetadataPublisher;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.ServiceInstance;
+import org.springframework.cloud.client.loadbalancer.CompletionContext;
+import org.springframework.cloud.client.loadbalancer.DefaultResponse;
+import org.springframework.cloud.client.loadbalancer.EmptyResponse;
+import org.springframework.cloud.client.loadbalancer.LoadBalancerLifecycle;
+import org.springframework.cloud.client.loadbalancer.Request;
+import org.springframework.cloud.client.loadbalancer.Response;
+import org.springframework.cloud.loadbalancer.core.NoopServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.core.ReactorServiceInstanceLoadBalancer;
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.random.RandomGenerator;
+
+/**
+ * Power-of-two-choices balancer over the load signals instances publish in their Eureka metadata.
+ * <p>
+ * Each call draws two distinct instances at random and takes the cheaper one, where the cost is the
+ * expected wait: recent p99 latency times the work ahead of the request (in flight plus queued, as
+ * published, plus the requests this client has outstanding on the instance). The published signals
+ * are seconds old, the outstanding count is live, so a slowed instance is avoided as soon as this
+ * client's requests pile up on it, and the random draw keeps every client from herding onto the one
+ * instance that looked best in the last publication. Signals older than the stale limit are ignored.
+ */
+public class LoadAwareLoadBalancer implements ReactorServiceInstanceLoadBalancer,
+        LoadBalancerLifecycle<Object, Object, ServiceInstance> {
+
+    private final ObjectProvider<ServiceInstanceListSupplier> suppliers;
+    private final long staleAfterMillis;
+    private final LongSupplier clock;
+    private final RandomGenerator random;
+    private final Map<String, AtomicInteger> outstanding = new ConcurrentHashMap<>();
+
+    public LoadAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> suppliers, long staleAfterMillis) {
+        this(suppliers, staleAfterMillis, System::currentTimeMillis, null);
+    }
+
+    // A fixed clock and random source make simulations repeatable; a null source means ThreadLocalRandom
+    LoadAwareLoadBalancer(ObjectProvider<ServiceInstanceListSupplier> suppliers, long staleAfterMillis,
+                          LongSupplier clock, RandomGenerator random) {
+        this.suppliers = suppliers;
+        this.staleAfterMillis = staleAfterMillis;
+        this.clock = clock;
+        this.random = random;
+    }
+
+    @Override
+    public Mono<Response<ServiceInstance>> choose(Request request) {
+        ServiceInstanceListSupplier supplier = suppliers.getIfAvailable(NoopServiceInstanceListSupplier::new);
+        return supplier.get(request).next().map(instances -> {
+            ServiceInstance chosen = choose(instances);
+            return chosen == null ? new EmptyResponse() : new DefaultResponse(chosen);
+        });
+    }
+
+    // Two distinct instances at random, the one with the lower expected wait wins
+    ServiceInstance choose(List<ServiceInstance> instances) {
+        if (instances == null || instances.isEmpty()) {
+            return null;
+        }
+        if (instances.size() == 1) {
+            return instances.get(0);
+        }
+        RandomGenerator generator = random != null ? random : ThreadLocalRandom.current();
+        int first = generator.nextInt(instances.size());
+        int second = generator.nextInt(instances.size() - 1);
+        if (second >= first) {
+            second++;
+        }
+        ServiceInstance a = instances.get(first);
+        ServiceInstance b = instances.get(second);
+        long now = clock.getAsLong();
+        double latencyA = freshLatency(a, now);
+        double latencyB = freshLatency(b, now);
+        // An instance without recent samples is assumed as fast as the other, so it gets probed again
+        double fallback = Math.max(1, Math.max(latencyA, latencyB));
+        double costA = (latencyA > 0 ? latencyA : fallback) * (1 + workAhead(a, now));
+        double costB = (latencyB > 0 ? latencyB : fallback) * (1 + workAhead(b, now));
+        return costB < costA ? b : a;
+    }
+
+    @Override
+    public void onStart(Request<Object> request) {
+    }
+
+    @Override
+    public void onStartRequest(Request<Object> request, Response<ServiceInstance> lbResponse) {
+        if (lbResponse != null && lbResponse.hasServer()) {
+            started(lbResponse.getServer());
+        }
+    }
+
+    @Override
+    public void onComplete(CompletionContext<Object, ServiceInstance, Object> completionContext) {
+        Response<ServiceInstance> lbResponse = completionContext.getLoadBalancerResponse();
+        if (lbResponse != null && lbResponse.hasServer()) {
+            completed(lbResponse.getServer());
+        }
+    }
+
+    void started(ServiceInstance instance) {
+        outstanding.computeIfAbsent(instance.getInstanceId(), id -> new AtomicInteger()).incrementAndGet();
+    }
+
+    void completed(ServiceInstance instance) {
+        AtomicInteger count = outstanding.get(instance.getInstanceId());
+        if (count != null) {
+            count.updateAndGet(value -> Math.max(0, value - 1));
+        }
+    }
+
+    int outstanding(ServiceInstance instance) {
+        AtomicInteger count = outstanding.get(instance.getInstanceId());
+        return count == null ? 0 : count.get();
+    }
+
+    // Published p99 in milliseconds, or 0 when unknown, idle or stale
+    private double freshLatency(ServiceInstance instance, long now) {
+        return isFresh(instance, now) ? metadata(instance, LoadMetadataPublisher.P99_MS) : 0;
+    }
+
+    private double workAhead(ServiceInstance instance, long now) {
+        double work = outstanding(instance);
+        if (isFresh(instance, now)) {
+            work += metadata(instance, LoadMetadataPublisher.IN_FLIGHT) + metadata(instance, LoadMetadataPublisher.QUEUE);
+        }
+        return work;
+    }
+
+    private boolean isFresh(ServiceInstance instance, long now) {
+        double updated = metadata(instance, LoadMetadataPublisher.UPDATED);
+        return updated > 0 && now - (long) updated <= staleAfterMillis;
+    }
+
+    private static double metadata(ServiceInstance instance, String key) {
+        Map<String, String> metadata = instance.getMetadata();
+        String value = metadata == null ? null : metadata.get(key);
+        if (value == null) {
+            return 0;
+        }
+        try {
+            double parsed = Double.parseDouble(value);
+            return Double.isFinite(parsed) && parsed > 0 ? parsed : 0;
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.harbaoui.iot.sensor_data_service.loadbalancer;
+
+import org.springframework.cloud.loadbalancer.core.ServiceInstanceListSupplier;
+import org.springframework.cloud.loadbalancer.support.LoadBalancerClientFactory;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.Environment;
+
+import java.time.Duration;
+
+// Per-client configuration of the load-aware balancer; not a @Configuration, so component scanning leaves it
+// to the load balancer child contexts instead of applying it to the application context
+public class LoadAwareLoadBalancerConfig {
+
+    // Instances straight from the Eureka client's local registry, without the 35s cache of the default supplier,
+    // so new load metadata is used as soon as the registry has it
+    @Bean
+    public ServiceInstanceListSupplier loadAwareInstanceSupplier(ConfigurableApplicationContext context) {
+        return ServiceInstanceListSupplier.builder().withBlockingDiscoveryClient().build(context);
+    }
+
+    @Bean
+    public LoadAwareLoadBalancer loadAwareLoadBalancer(Environment environment,
+                                                       LoadBalancerClientFactory loadBalancerClientFactory) {
+        String serviceId = environment.getProperty(LoadBalancerClientFactory.PROPERTY_NAME);
+        Duration staleAfter = environment.getProperty("load.balancing.stale-after", Duration.class, Duration.ofSeconds(30));
+        return new LoadAwareLoadBalancer(
+                loadBalancerClientFactory.getLazyProvider(serviceId, ServiceInstanceListSupplier.class),
+                staleAfter.toMillis());
+    }
+}
@@ -0,0 +1,274 @@
+package com.harbaoui.iot.sensor_data_service.mqtt;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.harbaoui.iot.sensor_data_service.cluster.ShardRouter;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingRequest;
+import com.harbaoui.iot.sensor_data_service.exception.IngestionOverloadedException;
+import com.harbaoui.iot.sensor_data_service.exception.ShardUnavailableException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.eclipse.paho.client.mqttv3.IMqttDeliveryToken;
+import org.eclipse.paho.client.mqttv3.MqttAsyncClient;
+import org.eclipse.paho.client.mqttv3.MqttCallbackExtended;
+import org.eclipse.paho.client.mqttv3.MqttConnectOptions;
+import org.eclipse.paho.client.mqttv3.MqttException;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ingests readings that devices publish over MQTT, so a device publish does not cost an HTTP request.
+ * <p>
+ * Subscribes to a topic filter such as {@code sensors/+/readings}; the {@code +} level is the sensor id
+ * and the payload is one reading or an array of readings, in the JSON shape of the batch endpoint.
+ * Acknowledgements are manual and batched: up to {@code max-inflight} messages are held unacknowledged,
+ * ingested as one batch once the window or {@code max-batch-readings} fills (or on the flush timer),
+ * and only then acknowledged. With a persistent session the broker redelivers anything that was not
+ * acknowledged before a disconnect or crash, so delivery is at-least-once, like WAL replay.
+ * While ingestion reports overload the window is retried, not acknowledged, which stops reading
+ * from the socket and pushes back on the broker instead of dropping readings.
+ */
+@Component
+@ConditionalOnProperty(prefix = "mqtt", name = "enabled", havingValue = "true")
+public class MqttIngestionListener implements SmartLifecycle, MqttCallbackExtended {
+
+    private static final Logger logger = LoggerFactory.getLogger(MqttIngestionListener.class);
+    private static final String SHARED_PREFIX = "$share/";
+
+    private final ShardRouter shardRouter;
+    private final ObjectReader payloadReader;
+    private final String brokerUrl;
+    private final String clientId;
+    private final String topicFilter;
+    private final int qos;
+    private final boolean cleanSession;
+    private final int maxInflight;
+    private final int maxBatchReadings;
+    private final long overloadBackoffMs;
+    private final int sensorLevel;
+
+    // Current window, guarded by windowLock
+    // A lock rather than a monitor: flush() sleeps while ingestion is overloaded, and a virtual
+    // thread sleeping inside synchronized would pin its carrier thread.
+    private final ReentrantLock windowLock = new ReentrantLock();
+    private ReadingBatch pending;
+    private final int[] pendingMessageIds;
+    private final int[] pendingQos;
+    private int pendingMessages;
+
+    private MqttAsyncClient client;
+    private volatile boolean running;
+
+    public MqttIngestionListener(ShardRouter shardRouter,
+                                 ObjectMapper objectMapper,
+                                 @Value("${mqtt.broker-url:tcp://localhost:1883}") String brokerUrl,
+                                 @Value("${mqtt.client-id:sensor-data-service}") String clientId,
+                                 @Value("${mqtt.topic:sensors/+/readings}") String topicFilter,
+                                 @Value("${mqtt.qos:1}") int qos,
+                                 @Value("${mqtt.clean-session:false}") boolean cleanSession,
+                                 @Value("${mqtt.max-inflight:1000}") int maxInflight,
+                                 @Value("${mqtt.max-batch-readings:5000}") int maxBatchReadings,
+                                 @Value("${mqtt.overload-backoff-ms:100}") long overloadBackoffMs) {
+        this.shardRouter = shardRouter;
+        this.payloadReader = objectMapper.readerFor(ReadingRequest[].class)
+                .with(DeserializationFeature.ACCEPT_SINGLE_VALUE_AS_ARRAY);
+        this.brokerUrl = brokerUrl;
+        this.clientId = clientId;
+        this.topicFilter = topicFilter;
+        this.qos = qos;
+        this.cleanSession = cleanSession;
+        this.maxInflight = maxInflight;
+        this.maxBatchReadings = maxBatchReadings;
+        this.overloadBackoffMs = overloadBackoffMs;
+        this.sensorLevel = sensorLevel(topicFilter);
+        this.pending = new ReadingBatch(Math.min(maxBatchReadings, 1024));
+        this.pendingMessageIds = new int[maxInflight];
+        this.pendingQos = new int[maxInflight];
+    }
+
+    @Override
+    public void start() {
+        try {
+            client = new MqttAsyncClient(brokerUrl, clientId, new MemoryPersistence());
+            client.setManualAcks(true);
+            client.setCallback(this);
+            MqttConnectOptions options = new MqttConnectOptions();
+            options.setCleanSession(cleanSession);
+            options.setAutomaticReconnect(true);
+            client.connect(options).waitForCompletion();
+            running = true;
+        } catch (MqttException e) {
+            throw new IllegalStateException("Cannot connect to MQTT broker " + brokerUrl, e);
+        }
+    }
+
+    // Subscribe on every (re)connect, clean sessions forget their subscriptions
+    @Override
+    public void connectComplete(boolean reconnect, String serverURI) {
+        try {
+            client.subscribe(topicFilter, qos);
+            logger.info("Subscribed to {} on {}", topicFilter, serverURI);
+        } catch (MqttException e) {
+            logger.error("Cannot subscribe to {}: {}", topicFilter, e.getMessage());
+        }
+    }
+
+    // Called on the client's single callback thread
+    @Override
+    public void messageArrived(String topic, MqttMessage message) throws Exception {
+        ReadingRequest[] readings;
+        long sensorId;
+        try {
+            sensorId = sensorId(topic);
+            readings = payloadReader.readValue(message.getPayload());
+        } catch (IOException | RuntimeException e) {
+            // A malformed message would be redelivered forever, acknowledge and drop it
+            logger.warn("Dropping malformed MQTT message on {}: {}", topic, e.getMessage());
+            client.messageArrivedComplete(message.getId(), message.getQos());
+            return;
+        }
+
+        windowLock.lock();
+        try {
+            for (ReadingRequest reading : readings) {
+                pending.add(sensorId, reading.getTimestamp(), reading.getValue());
+            }
+            pendingMessageIds[pendingMessages] = message.getId();
+            pendingQos[pendingMessages] = message.getQos();
+            pendingMessages++;
+            if (pendingMessages == maxInflight || pending.size() >= maxBatchReadings) {
+                flush();
+            }
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    // Ingest the current window, then acknowledge its messages
+    @Scheduled(fixedDelayString = "${mqtt.flush-interval-ms:50}")
+    public void flush() {
+        windowLock.lock();
+        try {
+            if (pendingMessages == 0) {
+                return;
+            }
+            if (!pending.isEmpty() && !ingestWithBackoff(pending)) {
+                return;
+            }
+            try {
+                for (int i = 0; i < pendingMessages; i++) {
+                    client.messageArrivedComplete(pendingMessageIds[i], pendingQos[i]);
+                }
+            } catch (MqttException e) {
+                // The broker redelivers the rest after reconnecting, the readings are already in
+                logger.warn("Cannot acknowledge MQTT messages: {}", e.getMessage());
+            }
+            pending = new ReadingBatch(Math.min(maxBatchReadings, 1024));
+            pendingMessages = 0;
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    // Retry while overloaded or while the owner of some readings is unreachable; gives up only when stopping,
+    // leaving the window unacknowledged. Shares accepted by a failed attempt are stored again, as on redelivery.
+    private boolean ingestWithBackoff(ReadingBatch batch) {
+        while (running) {
+            try {
+                shardRouter.ingest(batch, false);
+                return true;
+            } catch (IngestionOverloadedException | ShardUnavailableException e) {
+                try {
+                    Thread.sleep(overloadBackoffMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Message ids of the lost connection are void, the broker redelivers the whole window
+    @Override
+    public void connectionLost(Throwable cause) {
+        logger.warn("Lost connection to MQTT broker: {}", cause.getMessage());
+        windowLock.lock();
+        try {
+            pending.clear();
+            pendingMessages = 0;
+        } finally {
+            windowLock.unlock();
+        }
+    }
+
+    @Override
+    public void deliveryComplete(IMqttDeliveryToken token) {
+        // Subscribe-only client
+    }
+
+    @Override
+    public void stop() {
+        try {
+            client.disconnect().waitForCompletion();
+        } catch (MqttException e) {
+            logger.warn("Cannot disconnect from MQTT broker: {}", e.getMessage());
+        }
+        // Flush after disconnecting so no new message races the last window
+        flush();
+        running = false;
+        try {
+            client.close();
+        } catch (MqttException e) {
+            logger.warn("Cannot close MQTT client: {}", e.getMessage());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // Stop before the ingestion flushers so the last window still reaches the store
+    @Override
+    public int getPhase() {
+        return DEFAULT_PHASE - 1024;
+    }
+
+    // Parse the level matched by the '+' of the filter without splitting the topic
+    long sensorId(String topic) {
+        int start = 0;
+        for (int level = 0; level < sensorLevel; level++) {
+            start = topic.indexOf('/', start) + 1;
+            if (start == 0) {
+                throw new IllegalArgumentException("Topic has no sensor level");
+            }
+        }
+        int end = topic.indexOf('/', start);
+        return Long.parseLong(topic, start, end < 0 ? topic.length() : end, 10);
+    }
+
+    private static int sensorLevel(String topicFilter) {
+        String filter = topicFilter;
+        if (filter.startsWith(SHARED_PREFIX)) {
+            filter = filter.substring(filter.indexOf('/', SHARED_PREFIX.length()) + 1);
+        }
+        String[] levels = filter.split("/");
+        for (int i = 0; i < levels.length; i++) {
+            if (levels[i].equals("+")) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("MQTT topic filter must have a '+' level for the sensor id: " + topicFilter);
+    }
+}
@@ -0,0 +1,55 @@
+package com.harbaoui.iot.sensor_data_service.repository;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * Writes readings with grouped JDBC inserts instead of one Hibernate save() per row.
+ * The statement is sent in chunks of {@code ingest.jdbc-batch-size} rows; on MySQL
+ * add {@code rewriteBatchedStatements=true} to the URL so each chunk becomes one multi-row INSERT.
+ */
+@Repository
+public class ReadingBatchRepository {
+
+    private static final String INSERT_SQL =
+            "INSERT INTO readings (sensor_id, ts, reading_value) VALUES (?, ?, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int jdbcBatchSize;
+
+    public ReadingBatchRepository(JdbcTemplate jdbcTemplate,
+                                  @Value("${ingest.jdbc-batch-size:1000}") int jdbcBatchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.jdbcBatchSize = jdbcBatchSize;
+    }
+
+    // Insert every reading of the batch, returns the number of rows written
+    public int insert(ReadingBatch batch) {
+        int written = 0;
+        for (int from = 0; from < batch.size(); from += jdbcBatchSize) {
+            int offset = from;
+            int count = Math.min(jdbcBatchSize, batch.size() - from);
+            jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+                @Override
+                public void setValues(PreparedStatement ps, int i) throws SQLException {
+                    ps.setLong(1, batch.sensorId(offset + i));
+                    ps.setLong(2, batch.timestamp(offset + i));
+                    ps.setDouble(3, batch.value(offset + i));
+                }
+
+                @Override
+                public int getBatchSize() {
+                    return count;
+                }
+            });
+            written += count;
+        }
+        return written;
+    }
+}
@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.repository;
+
+import com.harbaoui.iot.sensor_data_service.entity.Reading;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReadingRepository extends JpaRepository<Reading, Long> {
+
+    long countBySensorId(long sensorId);
+}
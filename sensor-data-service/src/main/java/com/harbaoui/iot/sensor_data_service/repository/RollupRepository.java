@@ -0,0 +1,110 @@
+package com.harbaoui.iot.sensor_data_service.repository;
+
+import com.harbaoui.iot.sensor_data_service.rollup.Aggregate;
+import com.harbaoui.iot.sensor_data_service.rollup.BucketKey;
+import com.harbaoui.iot.sensor_data_service.rollup.Resolution;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores rollup buckets in {@code reading_rollups}.
+ * Deltas are merged into the stored bucket with LEAST/GREATEST arithmetic, so late readings
+ * for an old bucket simply re-merge into it.
+ */
+@Repository
+public class RollupRepository {
+
+    private static final String MERGE_SQL =
+            "UPDATE reading_rollups SET reading_count = reading_count + ?, value_sum = value_sum + ?, "
+                    + "value_min = LEAST(value_min, ?), value_max = GREATEST(value_max, ?) "
+                    + "WHERE sensor_id = ? AND resolution = ? AND bucket_start = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO reading_rollups (sensor_id, resolution, bucket_start, reading_count, value_sum, value_min, value_max) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND_SQL =
+            "SELECT bucket_start, reading_count, value_sum, value_min, value_max FROM reading_rollups "
+                    + "WHERE sensor_id = ? AND resolution = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start";
+
+    private static final String EXPIRED_IDS_SQL =
+            "SELECT id FROM reading_rollups WHERE sensor_id = ? AND resolution = ? AND bucket_start < ? ORDER BY bucket_start";
+    // Estimated on-disk size of one bucket row with its share of the unique index
+    private static final long ESTIMATED_ROW_BYTES = 80;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public RollupRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Merge every delta into its stored bucket, inserting the buckets that do not exist yet
+    @Transactional
+    public void merge(Map<Long, ? extends Map<BucketKey, Aggregate>> deltas) {
+        List<Object[]> rows = new ArrayList<>();
+        deltas.forEach((sensorId, buckets) -> buckets.forEach((key, delta) -> rows.add(new Object[] {
+                sensorId, key.resolution().name(), key.bucketStart(), delta.count(), delta.sum(), delta.min(), delta.max()
+        })));
+
+        List<Object[]> updates = rows.stream()
+                .map(r -> new Object[] {r[3], r[4], r[5], r[6], r[0], r[1], r[2]})
+                .toList();
+        int[] updated = jdbcTemplate.batchUpdate(MERGE_SQL, updates);
+
+        List<Object[]> inserts = new ArrayList<>();
+        for (int i = 0; i < updated.length; i++) {
+            if (updated[i] == 0) {
+                inserts.add(rows.get(i));
+            }
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        }
+    }
+
+    public void find(long sensorId, Resolution resolution, long from, long to, BiConsumer<Long, Aggregate> consumer) {
+        jdbcTemplate.query(FIND_SQL, rs -> {
+            consumer.accept(rs.getLong(1),
+                    new Aggregate(rs.getLong(2), rs.getDouble(3), rs.getDouble(4), rs.getDouble(5)));
+        }, sensorId, resolution.name(), from, to);
+    }
+
+    public long[] sensorIds() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT sensor_id FROM reading_rollups", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Delete up to maxRows of the oldest buckets of one resolution that start before the cutoff
+    @Transactional
+    public Reclaimed deleteBefore(long sensorId, Resolution resolution, long cutoff, int maxRows) {
+        List<Long> ids = jdbcTemplate.execute((java.sql.Connection connection) -> {
+            try (PreparedStatement ps = connection.prepareStatement(EXPIRED_IDS_SQL)) {
+                ps.setMaxRows(maxRows);
+                ps.setLong(1, sensorId);
+                ps.setString(2, resolution.name());
+                ps.setLong(3, cutoff);
+                List<Long> selected = new ArrayList<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        selected.add(rs.getLong(1));
+                    }
+                }
+                return selected;
+            }
+        });
+        if (ids == null || ids.isEmpty()) {
+            return Reclaimed.NONE;
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        int deleted = jdbcTemplate.update("DELETE FROM reading_rollups WHERE id IN (" + placeholders + ")", ids.toArray());
+        return new Reclaimed(deleted, deleted * ESTIMATED_ROW_BYTES);
+    }
+}
@@ -0,0 +1,110 @@
+package com.harbaoui.iot.sensor_data_service.repository;
+
+import com.harbaoui.iot.sensor_data_service.rollup.QuantileSketch;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * Stores hourly quantile sketches in {@code reading_sketches}.
+ * A sketch cannot be merged in SQL, so a flush locks the stored rows it touches, merges the deltas into them
+ * in memory and writes them back; late readings for an old hour re-merge the same way.
+ */
+@Repository
+public class SketchRepository {
+
+    private static final String UPDATE_SQL =
+            "UPDATE reading_sketches SET reading_count = ?, sketch = ? WHERE sensor_id = ? AND bucket_start = ?";
+    private static final String INSERT_SQL =
+            "INSERT INTO reading_sketches (sensor_id, bucket_start, reading_count, sketch) VALUES (?, ?, ?, ?)";
+    private static final String FIND_SQL =
+            "SELECT bucket_start, sketch FROM reading_sketches "
+                    + "WHERE sensor_id = ? AND bucket_start >= ? AND bucket_start < ? ORDER BY bucket_start";
+    private static final String EXPIRED_SQL =
+            "SELECT id, OCTET_LENGTH(sketch) FROM reading_sketches WHERE sensor_id = ? AND bucket_start < ? "
+                    + "ORDER BY bucket_start LIMIT ?";
+    // Fixed columns and index share of a row, on top of the sketch itself
+    private static final long ESTIMATED_ROW_OVERHEAD_BYTES = 64;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public SketchRepository(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // Merge every delta into its stored sketch, inserting the buckets that do not exist yet
+    @Transactional
+    public void merge(Map<Long, ? extends Map<Long, QuantileSketch>> deltas) {
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> inserts = new ArrayList<>();
+        deltas.forEach((sensorId, buckets) -> {
+            Map<Long, QuantileSketch> stored = lockStored(sensorId, buckets.keySet());
+            buckets.forEach((bucketStart, delta) -> {
+                QuantileSketch sketch = stored.get(bucketStart);
+                if (sketch == null) {
+                    inserts.add(new Object[] {sensorId, bucketStart, delta.count(), delta.toBytes()});
+                } else {
+                    sketch.merge(delta);
+                    updates.add(new Object[] {sketch.count(), sketch.toBytes(), sensorId, bucketStart});
+                }
+            });
+        });
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(UPDATE_SQL, updates);
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(INSERT_SQL, inserts);
+        }
+    }
+
+    public void find(long sensorId, long from, long to, BiConsumer<Long, QuantileSketch> consumer) {
+        jdbcTemplate.query(FIND_SQL, rs -> {
+            consumer.accept(rs.getLong(1), QuantileSketch.fromBytes(rs.getBytes(2)));
+        }, sensorId, from, to);
+    }
+
+    public long[] sensorIds() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT sensor_id FROM reading_sketches", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Delete up to maxRows of the oldest sketches of a sensor that start before the cutoff
+    @Transactional
+    public Reclaimed deleteBefore(long sensorId, long cutoff, int maxRows) {
+        List<Long> ids = new ArrayList<>();
+        long[] bytes = new long[1];
+        jdbcTemplate.query(EXPIRED_SQL, rs -> {
+            ids.add(rs.getLong(1));
+            bytes[0] += rs.getLong(2) + ESTIMATED_ROW_OVERHEAD_BYTES;
+        }, sensorId, cutoff, maxRows);
+        if (ids.isEmpty()) {
+            return Reclaimed.NONE;
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        int deleted = jdbcTemplate.update("DELETE FROM reading_sketches WHERE id IN (" + placeholders + ")", ids.toArray());
+        return new Reclaimed(deleted, bytes[0]);
+    }
+
+    // Stored sketches of the given buckets, locked until the flush commits
+    private Map<Long, QuantileSketch> lockStored(long sensorId, Iterable<Long> bucketStarts) {
+        List<Object> args = new ArrayList<>();
+        args.add(sensorId);
+        bucketStarts.forEach(args::add);
+        String placeholders = String.join(",", Collections.nCopies(args.size() - 1, "?"));
+        Map<Long, QuantileSketch> stored = new HashMap<>();
+        jdbcTemplate.query("SELECT bucket_start, sketch FROM reading_sketches WHERE sensor_id = ? AND bucket_start IN ("
+                        + placeholders + ") FOR UPDATE",
+                rs -> {
+                    stored.put(rs.getLong(1), QuantileSketch.fromBytes(rs.getBytes(2)));
+                }, args.toArray());
+        return stored;
+    }
+}
@@ -0,0 +1,134 @@
+package com.harbaoui.iot.sensor_data_service.retention;
+
+import com.harbaoui.iot.sensor_data_service.config.RetentionProperties;
+import com.harbaoui.iot.sensor_data_service.repository.RollupRepository;
+import com.harbaoui.iot.sensor_data_service.repository.SketchRepository;
+import com.harbaoui.iot.sensor_data_service.rollup.Resolution;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Deletes raw readings, rollups and quantile sketches past their retention, in small chunks with a pause in between
+ * so it never holds long locks or starves ingestion of database connections.
+ * Publishes {@code retention.reclaimed.rows} and {@code retention.reclaimed.bytes}, tagged by data kind.
+ */
+@Service
+public class RetentionService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RetentionService.class);
+    private static final String RAW = "raw";
+    // Hourly quantile sketches follow the hour rollup policy
+    private static final String SKETCH = "sketch";
+
+    private final RetentionProperties properties;
+    private final ReadingStore readingStore;
+    private final RollupRepository rollupRepository;
+    private final SketchRepository sketchRepository;
+    private final Map<String, Counter> reclaimedRows = new HashMap<>();
+    private final Map<String, Counter> reclaimedBytes = new HashMap<>();
+
+    public RetentionService(RetentionProperties properties,
+                            ReadingStore readingStore,
+                            RollupRepository rollupRepository,
+                            SketchRepository sketchRepository,
+                            MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.readingStore = readingStore;
+        this.rollupRepository = rollupRepository;
+        this.sketchRepository = sketchRepository;
+        for (String kind : kinds()) {
+            reclaimedRows.put(kind, Counter.builder("retention.reclaimed.rows")
+                    .description("Rows deleted by retention").tag("data", kind).register(meterRegistry));
+            reclaimedBytes.put(kind, Counter.builder("retention.reclaimed.bytes")
+                    .description("Bytes freed by retention").baseUnit("bytes").tag("data", kind).register(meterRegistry));
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${retention.interval-ms:3600000}", initialDelayString = "${retention.initial-delay-ms:60000}")
+    public void enforce() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (long sensorId : readingStore.sensorIds()) {
+            Duration keep = properties.policyFor(sensorId).getRaw();
+            if (isBounded(keep)) {
+                long cutoff = now - keep.toMillis();
+                reclaim(RAW, () -> readingStore.deleteBefore(sensorId, cutoff, properties.getChunkSize()));
+            }
+        }
+        for (long sensorId : rollupRepository.sensorIds()) {
+            Map<Resolution, Duration> policy = rollupPolicy(properties.policyFor(sensorId));
+            policy.forEach((resolution, keep) -> {
+                if (isBounded(keep)) {
+                    long cutoff = now - keep.toMillis();
+                    reclaim(kind(resolution), () -> rollupRepository.deleteBefore(
+                            sensorId, resolution, cutoff, properties.getChunkSize()));
+                }
+            });
+        }
+        for (long sensorId : sketchRepository.sensorIds()) {
+            Duration keep = properties.policyFor(sensorId).getHour();
+            if (isBounded(keep)) {
+                long cutoff = now - keep.toMillis();
+                reclaim(SKETCH, () -> sketchRepository.deleteBefore(sensorId, cutoff, properties.getChunkSize()));
+            }
+        }
+    }
+
+    // Delete chunk after chunk until a short one signals the backlog is gone
+    private void reclaim(String kind, Supplier<Reclaimed> deleteChunk) {
+        while (true) {
+            Reclaimed reclaimed;
+            try {
+                reclaimed = deleteChunk.get();
+            } catch (RuntimeException e) {
+                logger.warn("Retention of {} data failed, will retry next run: {}", kind, e.getMessage());
+                return;
+            }
+            reclaimedRows.get(kind).increment(reclaimed.rows());
+            reclaimedBytes.get(kind).increment(reclaimed.bytes());
+            if (reclaimed.rows() < properties.getChunkSize()) {
+                return;
+            }
+            try {
+                Thread.sleep(properties.getPauseBetweenChunks().toMillis());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private static Map<Resolution, Duration> rollupPolicy(RetentionProperties.Policy policy) {
+        Map<Resolution, Duration> byResolution = new EnumMap<>(Resolution.class);
+        byResolution.put(Resolution.MINUTE, policy.getMinute());
+        byResolution.put(Resolution.HOUR, policy.getHour());
+        byResolution.put(Resolution.DAY, policy.getDay());
+        return byResolution;
+    }
+
+    private static boolean isBounded(Duration keep) {
+        return keep != null && !keep.isZero() && !keep.isNegative();
+    }
+
+    private static String kind(Resolution resolution) {
+        return resolution.name().toLowerCase();
+    }
+
+    private static String[] kinds() {
+        return new String[] {RAW, kind(Resolution.MINUTE), kind(Resolution.HOUR), kind(Resolution.DAY), SKETCH};
+    }
+}
@@ -0,0 +1,4 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+public record BucketKey(Resolution resolution, long bucketStart) {
+}
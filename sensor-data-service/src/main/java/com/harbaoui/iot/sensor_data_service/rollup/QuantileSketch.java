@@ -0,0 +1,295 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Mergeable quantile summary of the readings in one bucket, after DDSketch (Masson, Rim and Lee, VLDB 2019).
+ * <p>
+ * Values are counted in logarithmic bins of ratio {@code gamma = (1 + a) / (1 - a)}, where {@code a} is the
+ * relative accuracy: for any q, the estimate of the q-quantile is within {@code a * |v|} of the exact value
+ * {@code v} (the value of rank {@code q * (n - 1)} among the n readings), whatever the distribution and however
+ * many sketches were merged. Merging is exact, so a day assembled from 24 hour sketches is as accurate as one
+ * sketch fed the whole day. Negative values have their own bins and zero is counted apart.
+ * <p>
+ * Each side keeps at most {@code maxBins} contiguous bins; past that, its smallest magnitudes are folded into one
+ * bin, which only degrades the quantiles that fall there. With a = 1% and 2048 bins a side covers 17 orders
+ * of magnitude before that happens. Not thread-safe: callers merge under their own locking.
+ */
+public class QuantileSketch {
+
+    public static final double DEFAULT_RELATIVE_ACCURACY = 0.01;
+    public static final int DEFAULT_MAX_BINS = 2048;
+
+    private static final byte FORMAT = 1;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    // Magnitudes below this are counted as zero, so bin indexes stay small
+    private final double minIndexable;
+    private final Bins positive;
+    private final Bins negative;
+    private long zeroCount;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_RELATIVE_ACCURACY, DEFAULT_MAX_BINS);
+    }
+
+    public QuantileSketch(double relativeAccuracy, int maxBins) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be in (0, 1)");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+        this.minIndexable = Double.MIN_NORMAL * gamma;
+        this.positive = new Bins(maxBins);
+        this.negative = new Bins(maxBins);
+    }
+
+    // Count one value; NaN and infinities have no quantile and are ignored
+    public void add(double value) {
+        if (!Double.isFinite(value)) {
+            return;
+        }
+        if (value > minIndexable) {
+            positive.add(index(value), 1);
+        } else if (value < -minIndexable) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches of different relative accuracy");
+        }
+        positive.merge(other.positive);
+        negative.merge(other.negative);
+        zeroCount += other.zeroCount;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long count() {
+        return positive.total + negative.total + zeroCount;
+    }
+
+    public boolean isEmpty() {
+        return count() == 0;
+    }
+
+    public double relativeAccuracy() {
+        return relativeAccuracy;
+    }
+
+    // Estimate of the q-quantile, 0 <= q <= 1; NaN for an empty sketch
+    // The extremes are tracked exactly, so q = 0 and q = 1 return the true min and max.
+    public double quantile(double q) {
+        long count = count();
+        if (count == 0) {
+            return Double.NaN;
+        }
+        if (q <= 0) {
+            return min;
+        }
+        if (q >= 1) {
+            return max;
+        }
+        double rank = q * (count - 1);
+        double estimate;
+        if (rank < negative.total) {
+            // Ascending values start with the largest negative magnitudes
+            estimate = -value(negative.indexAtRank(negative.total - 1 - rank));
+        } else if (rank < negative.total + zeroCount) {
+            estimate = 0;
+        } else {
+            estimate = value(positive.indexAtRank(rank - negative.total - zeroCount));
+        }
+        return Math.max(min, Math.min(max, estimate));
+    }
+
+    public QuantileSketch copy() {
+        QuantileSketch copy = new QuantileSketch(relativeAccuracy, positive.maxBins);
+        copy.merge(this);
+        return copy;
+    }
+
+    // Compact form for storage: a header, then the counts of each side's bins as varints
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+        ByteBuffer header = ByteBuffer.allocate(37);
+        header.put(FORMAT).putDouble(relativeAccuracy).putInt(positive.maxBins)
+                .putDouble(min).putDouble(max).putLong(zeroCount);
+        out.write(header.array(), 0, header.position());
+        positive.writeTo(out);
+        negative.writeTo(out);
+        return out.toByteArray();
+    }
+
+    public static QuantileSketch fromBytes(byte[] bytes) {
+        ByteBuffer in = ByteBuffer.wrap(bytes);
+        if (in.get() != FORMAT) {
+            throw new IllegalArgumentException("Unknown sketch format");
+        }
+        QuantileSketch sketch = new QuantileSketch(in.getDouble(), in.getInt());
+        sketch.min = in.getDouble();
+        sketch.max = in.getDouble();
+        sketch.zeroCount = in.getLong();
+        sketch.positive.readFrom(in);
+        sketch.negative.readFrom(in);
+        return sketch;
+    }
+
+    private int index(double magnitude) {
+        return (int) Math.ceil(Math.log(magnitude) / logGamma);
+    }
+
+    // Representative of bin i, which holds (gamma^(i-1), gamma^i]: within the relative accuracy of all of them
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    /**
+     * Counts of contiguous bins of one sign, in a dense array that grows on demand.
+     * {@code counts[i]} is the count of bin {@code offset + i}.
+     */
+    private static final class Bins {
+
+        final int maxBins;
+        long[] counts = new long[0];
+        int offset;
+        int minIndex = Integer.MAX_VALUE;
+        int maxIndex = Integer.MIN_VALUE;
+        long total;
+
+        Bins(int maxBins) {
+            this.maxBins = maxBins;
+        }
+
+        void add(int index, long count) {
+            if (count == 0) {
+                return;
+            }
+            if (total == 0) {
+                minIndex = index;
+                maxIndex = index;
+                offset = index;
+                counts = new long[8];
+            } else if (index < minIndex || index > maxIndex) {
+                extend(Math.min(index, minIndex), Math.max(index, maxIndex));
+            }
+            // Folded away: counted with the smallest bin still kept
+            int slot = Math.max(index, minIndex) - offset;
+            counts[slot] += count;
+            total += count;
+        }
+
+        void merge(Bins other) {
+            for (int index = other.minIndex; index <= other.maxIndex && other.total > 0; index++) {
+                add(index, other.counts[index - other.offset]);
+            }
+        }
+
+        // Index of the bin holding the value of the given rank, counted from the smallest magnitude
+        int indexAtRank(double rank) {
+            long seen = 0;
+            for (int index = minIndex; index <= maxIndex; index++) {
+                seen += counts[index - offset];
+                if (seen > rank) {
+                    return index;
+                }
+            }
+            return maxIndex;
+        }
+
+        // Make room for [low, high], folding the lowest bins if the span would exceed maxBins
+        private void extend(int low, int high) {
+            if (high - low + 1 > maxBins) {
+                int newMin = high - maxBins + 1;
+                long folded = 0;
+                for (int index = minIndex; index < Math.min(newMin, maxIndex + 1); index++) {
+                    folded += counts[index - offset];
+                    counts[index - offset] = 0;
+                }
+                low = newMin;
+                if (minIndex < newMin) {
+                    resize(low, high);
+                    counts[newMin - offset] += folded;
+                    minIndex = newMin;
+                    maxIndex = Math.max(maxIndex, high);
+                    return;
+                }
+            }
+            resize(low, high);
+            minIndex = low;
+            maxIndex = high;
+        }
+
+        // Reallocate so [low, high] fits, with some headroom on both ends, keeping the counts in place
+        private void resize(int low, int high) {
+            if (low >= offset && high < offset + counts.length) {
+                return;
+            }
+            int span = high - low + 1;
+            int length = Math.min(maxBins, Math.max(span + span / 2, 8));
+            int newOffset = Math.max(low - (length - span) / 2, high - length + 1);
+            newOffset = Math.min(newOffset, low);
+            long[] resized = new long[length];
+            for (int index = Math.max(minIndex, newOffset); index <= maxIndex && index < newOffset + length; index++) {
+                resized[index - newOffset] = counts[index - offset];
+            }
+            counts = resized;
+            offset = newOffset;
+        }
+
+        void writeTo(ByteArrayOutputStream out) {
+            if (total == 0) {
+                writeVarint(out, 0);
+                return;
+            }
+            writeVarint(out, maxIndex - minIndex + 1);
+            writeVarint(out, ((long) minIndex << 1) ^ (minIndex >> 31));
+            for (int index = minIndex; index <= maxIndex; index++) {
+                writeVarint(out, counts[index - offset]);
+            }
+        }
+
+        void readFrom(ByteBuffer in) {
+            int bins = (int) readVarint(in);
+            if (bins == 0) {
+                return;
+            }
+            long zigzag = readVarint(in);
+            int first = (int) ((zigzag >>> 1) ^ -(zigzag & 1));
+            for (int i = 0; i < bins; i++) {
+                add(first + i, readVarint(in));
+            }
+        }
+
+        private static void writeVarint(ByteArrayOutputStream out, long value) {
+            while ((value & ~0x7FL) != 0) {
+                out.write((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            out.write((int) value);
+        }
+
+        private static long readVarint(ByteBuffer in) {
+            long value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = in.get();
+                value |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+/**
+ * Bucket widths maintained by the rollup pipeline, finest first.
+ */
+public enum Resolution {
+    MINUTE(60_000L),
+    HOUR(3_600_000L),
+    DAY(86_400_000L);
+
+    private final long millis;
+
+    Resolution(long millis) {
+        this.millis = millis;
+    }
+
+    public long millis() {
+        return millis;
+    }
+
+    public long bucketOf(long timestamp) {
+        return Math.floorDiv(timestamp, millis) * millis;
+    }
+
+    // Coarsest resolution whose buckets tile the step exactly, or null if even minutes do not
+    public static Resolution coarsestFor(long stepMillis) {
+        Resolution best = null;
+        for (Resolution resolution : values()) {
+            if (stepMillis >= resolution.millis && stepMillis % resolution.millis == 0) {
+                best = resolution;
+            }
+        }
+        return best;
+    }
+}
@@ -0,0 +1,90 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Rollup deltas accumulated since the last flush, per sensor and bucket.
+ * Ingest threads merge under the shared side of a read/write lock; the flusher swaps the
+ * whole map under the exclusive side, so no delta is lost between a merge and a drain.
+ */
+public class RollupAccumulator {
+
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private ConcurrentHashMap<Long, ConcurrentHashMap<BucketKey, Aggregate>> pending = new ConcurrentHashMap<>();
+
+    // Pre-aggregate the batch locally, so shared maps are touched once per bucket rather than per reading
+    public void add(ReadingBatch batch) {
+        Map<Long, Map<BucketKey, Aggregate>> local = new HashMap<>();
+        Map<BucketKey, Aggregate> buckets = null;
+        long currentSensor = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (buckets == null || batch.sensorId(i) != currentSensor) {
+                currentSensor = batch.sensorId(i);
+                buckets = local.computeIfAbsent(currentSensor, id -> new HashMap<>());
+            }
+            for (Resolution resolution : Resolution.values()) {
+                buckets.computeIfAbsent(new BucketKey(resolution, resolution.bucketOf(batch.timestamp(i))),
+                        key -> new Aggregate()).add(batch.value(i));
+            }
+        }
+        merge(local);
+    }
+
+    public void merge(Map<Long, ? extends Map<BucketKey, Aggregate>> deltas) {
+        swapLock.readLock().lock();
+        try {
+            deltas.forEach((sensorId, buckets) -> {
+                ConcurrentHashMap<BucketKey, Aggregate> target =
+                        pending.computeIfAbsent(sensorId, id -> new ConcurrentHashMap<>());
+                buckets.forEach((key, delta) -> target.merge(key, delta, (existing, added) -> {
+                    existing.merge(added);
+                    return existing;
+                }));
+            });
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // Take every pending delta, leaving the accumulator empty
+    public Map<Long, ConcurrentHashMap<BucketKey, Aggregate>> drain() {
+        swapLock.writeLock().lock();
+        try {
+            Map<Long, ConcurrentHashMap<BucketKey, Aggregate>> drained = pending;
+            pending = new ConcurrentHashMap<>();
+            return drained;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    // Copies of the pending deltas of one sensor and resolution with from <= bucket start < to
+    public void forEachPending(long sensorId, Resolution resolution, long from, long to,
+                               BiConsumer<Long, Aggregate> consumer) {
+        swapLock.readLock().lock();
+        try {
+            ConcurrentHashMap<BucketKey, Aggregate> buckets = pending.get(sensorId);
+            if (buckets == null) {
+                return;
+            }
+            for (BucketKey key : buckets.keySet()) {
+                if (key.resolution() != resolution || key.bucketStart() < from || key.bucketStart() >= to) {
+                    continue;
+                }
+                buckets.computeIfPresent(key, (k, aggregate) -> {
+                    consumer.accept(k.bucketStart(),
+                            new Aggregate(aggregate.count(), aggregate.sum(), aggregate.min(), aggregate.max()));
+                    return aggregate;
+                });
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+
+/**
+ * Quantile sketch deltas accumulated since the last flush, per sensor and hour bucket.
+ * Same scheme as {@link RollupAccumulator}: ingest threads merge under the shared side of a read/write lock,
+ * the flusher swaps the whole map under the exclusive side.
+ */
+public class SketchAccumulator {
+
+    private final ReentrantReadWriteLock swapLock = new ReentrantReadWriteLock();
+    private final double relativeAccuracy;
+    private final int maxBins;
+    private ConcurrentHashMap<Long, ConcurrentHashMap<Long, QuantileSketch>> pending = new ConcurrentHashMap<>();
+
+    public SketchAccumulator(double relativeAccuracy, int maxBins) {
+        this.relativeAccuracy = relativeAccuracy;
+        this.maxBins = maxBins;
+    }
+
+    // Sketch the batch locally, so shared maps are touched once per bucket rather than per reading
+    public void add(ReadingBatch batch) {
+        Map<Long, Map<Long, QuantileSketch>> local = new HashMap<>();
+        Map<Long, QuantileSketch> buckets = null;
+        long currentSensor = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (buckets == null || batch.sensorId(i) != currentSensor) {
+                currentSensor = batch.sensorId(i);
+                buckets = local.computeIfAbsent(currentSensor, id -> new HashMap<>());
+            }
+            buckets.computeIfAbsent(Resolution.HOUR.bucketOf(batch.timestamp(i)), b -> newSketch()).add(batch.value(i));
+        }
+        merge(local);
+    }
+
+    public QuantileSketch newSketch() {
+        return new QuantileSketch(relativeAccuracy, maxBins);
+    }
+
+    public void merge(Map<Long, ? extends Map<Long, QuantileSketch>> deltas) {
+        swapLock.readLock().lock();
+        try {
+            deltas.forEach((sensorId, buckets) -> {
+                ConcurrentHashMap<Long, QuantileSketch> target =
+                        pending.computeIfAbsent(sensorId, id -> new ConcurrentHashMap<>());
+                buckets.forEach((bucketStart, delta) -> target.merge(bucketStart, delta, (existing, added) -> {
+                    existing.merge(added);
+                    return existing;
+                }));
+            });
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+
+    // Take every pending delta, leaving the accumulator empty
+    public Map<Long, ConcurrentHashMap<Long, QuantileSketch>> drain() {
+        swapLock.writeLock().lock();
+        try {
+            Map<Long, ConcurrentHashMap<Long, QuantileSketch>> drained = pending;
+            pending = new ConcurrentHashMap<>();
+            return drained;
+        } finally {
+            swapLock.writeLock().unlock();
+        }
+    }
+
+    // Copies of the pending deltas of one sensor with from <= bucket start < to
+    public void forEachPending(long sensorId, long from, long to, BiConsumer<Long, QuantileSketch> consumer) {
+        swapLock.readLock().lock();
+        try {
+            ConcurrentHashMap<Long, QuantileSketch> buckets = pending.get(sensorId);
+            if (buckets == null) {
+                return;
+            }
+            for (Long bucketStart : buckets.keySet()) {
+                if (bucketStart < from || bucketStart >= to) {
+                    continue;
+                }
+                buckets.computeIfPresent(bucketStart, (start, sketch) -> {
+                    consumer.accept(start, sketch.copy());
+                    return sketch;
+                });
+            }
+        } finally {
+            swapLock.readLock().unlock();
+        }
+    }
+}
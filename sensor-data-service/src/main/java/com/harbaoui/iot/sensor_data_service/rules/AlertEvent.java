@@ -0,0 +1,19 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A rule starting or ceasing to hold for one sensor, at the timestamp of the reading that changed it.
+ * The value is the evaluated metric, e.g. the window average for an avg rule.
+ */
+@Data
+@AllArgsConstructor
+public class AlertEvent {
+    private String ruleId;
+    private long sensorId;
+    private AlertStatus status;
+    private long timestamp;
+    private double value;
+    private double threshold;
+}
@@ -0,0 +1,10 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+/**
+ * Destination of alert events, e.g. a log, a message broker or a notification service.
+ * Called on the ingest thread, so implementations must be cheap and hand slow work off.
+ */
+public interface AlertSink {
+
+    void onAlert(AlertEvent event);
+}
@@ -0,0 +1,6 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+public enum AlertStatus {
+    FIRING,
+    RESOLVED
+}
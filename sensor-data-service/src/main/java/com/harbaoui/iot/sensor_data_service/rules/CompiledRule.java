@@ -0,0 +1,115 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import com.harbaoui.iot.sensor_data_service.config.RulesProperties;
+
+import java.util.Objects;
+
+/**
+ * A validated rule with its durations in milliseconds, shared by the states of all its sensors.
+ */
+public final class CompiledRule {
+
+    // Slots of a sliding window; its edges are exact to one slot, 1/16 of the window
+    static final int WINDOW_SLOTS = 16;
+
+    private final String id;
+    private final Metric metric;
+    private final Operator operator;
+    private final double threshold;
+    private final long windowMillis;
+    private final long slotMillis;
+    private final long holdForMillis;
+
+    private CompiledRule(String id, Metric metric, Operator operator, double threshold, long windowMillis, long holdForMillis) {
+        this.id = id;
+        this.metric = metric;
+        this.operator = operator;
+        this.threshold = threshold;
+        this.windowMillis = windowMillis;
+        this.slotMillis = windowMillis == 0 ? 0 : (windowMillis + WINDOW_SLOTS - 1) / WINDOW_SLOTS;
+        this.holdForMillis = holdForMillis;
+    }
+
+    // Rejects incomplete definitions, so a typo in the configuration fails startup instead of never alerting
+    public static CompiledRule compile(RulesProperties.Definition definition) {
+        String id = definition.getId();
+        if (id == null || id.isBlank()) {
+            throw new IllegalArgumentException("Every rule needs an id");
+        }
+        if (definition.getSensors() == null || definition.getSensors().isEmpty()) {
+            throw new IllegalArgumentException("Rule " + id + " has no sensors");
+        }
+        if (definition.getMetric() == null || definition.getOperator() == null) {
+            throw new IllegalArgumentException("Rule " + id + " needs a metric and an operator");
+        }
+        if (definition.getThreshold() == null || !Double.isFinite(definition.getThreshold())) {
+            throw new IllegalArgumentException("Rule " + id + " needs a finite threshold");
+        }
+        long windowMillis = definition.getWindow() == null ? 0 : definition.getWindow().toMillis();
+        if (definition.getMetric() == Metric.VALUE) {
+            windowMillis = 0;
+        } else if (windowMillis <= 0) {
+            throw new IllegalArgumentException("Rule " + id + " needs a window for " + definition.getMetric());
+        }
+        long holdForMillis = definition.getHoldFor() == null ? 0 : definition.getHoldFor().toMillis();
+        if (holdForMillis < 0) {
+            throw new IllegalArgumentException("Rule " + id + " has a negative hold-for");
+        }
+        return new CompiledRule(id, definition.getMetric(), definition.getOperator(), definition.getThreshold(),
+                windowMillis, holdForMillis);
+    }
+
+    public String id() {
+        return id;
+    }
+
+    RuleState newState(long sensorId) {
+        return new RuleState(this, sensorId, windowMillis == 0 ? 0 : WINDOW_SLOTS);
+    }
+
+    // Advance the state by one reading; returns the event when the rule starts or stops holding, otherwise null
+    // The caller holds the lock of the sensor. Readings older than the last one evaluated are skipped.
+    AlertEvent evaluate(RuleState state, long timestamp, double value) {
+        if (timestamp < state.lastTimestamp || !Double.isFinite(value)) {
+            return null;
+        }
+        state.lastTimestamp = timestamp;
+        double current = windowMillis == 0 ? value : state.addToWindow(metric, slotMillis, timestamp, value);
+
+        if (!operator.test(current, threshold)) {
+            state.since = RuleState.NEVER;
+            if (state.firing) {
+                state.firing = false;
+                return new AlertEvent(id, state.sensorId, AlertStatus.RESOLVED, timestamp, current, threshold);
+            }
+            return null;
+        }
+        if (state.since == RuleState.NEVER) {
+            state.since = timestamp;
+        }
+        if (!state.firing && timestamp - state.since >= holdForMillis) {
+            state.firing = true;
+            return new AlertEvent(id, state.sensorId, AlertStatus.FIRING, timestamp, current, threshold);
+        }
+        return null;
+    }
+
+    // Same id and same semantics, so the state built by one is valid for the other
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CompiledRule other)) {
+            return false;
+        }
+        return id.equals(other.id) && metric == other.metric && operator == other.operator
+                && Double.compare(threshold, other.threshold) == 0 && windowMillis == other.windowMillis
+                && holdForMillis == other.holdForMillis;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, metric, operator, threshold, windowMillis, holdForMillis);
+    }
+}
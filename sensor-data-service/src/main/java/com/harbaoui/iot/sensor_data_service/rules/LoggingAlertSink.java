@@ -0,0 +1,17 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+@Component
+public class LoggingAlertSink implements AlertSink {
+
+    private static final Logger logger = LoggerFactory.getLogger(LoggingAlertSink.class);
+
+    @Override
+    public void onAlert(AlertEvent event) {
+        logger.info("Rule {} {} for sensor {} at {}: {} (threshold {})", event.getRuleId(), event.getStatus(),
+                event.getSensorId(), event.getTimestamp(), event.getValue(), event.getThreshold());
+    }
+}
@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+/**
+ * What a rule compares with its threshold: the reading itself, or an aggregate over a sliding window ending at it.
+ */
+public enum Metric {
+    VALUE,
+    MIN,
+    MAX,
+    AVG
+}
@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+public enum Operator {
+    ABOVE,
+    BELOW;
+
+    // Strict comparison, NaN never matches
+    public boolean test(double metric, double threshold) {
+        return this == ABOVE ? metric > threshold : metric < threshold;
+    }
+}
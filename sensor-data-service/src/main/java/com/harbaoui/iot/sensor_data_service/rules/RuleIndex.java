@@ -0,0 +1,81 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Immutable map sensor id -> states of the rules covering that sensor, in an open-addressing table
+ * of primitive keys. A lookup is one hash and a short probe, so the cost of a reading only depends
+ * on the rules of its own sensor, not on how many rules exist.
+ */
+final class RuleIndex {
+
+    static final RuleIndex EMPTY = new RuleIndex(Map.of(), 0);
+
+    private static final RuleState[] NONE = new RuleState[0];
+
+    private final long[] keys;
+    private final RuleState[][] states;
+    private final int mask;
+    private final int ruleCount;
+
+    RuleIndex(Map<Long, List<RuleState>> bySensor, int ruleCount) {
+        // At most half full, so a miss ends after a couple of probes
+        int capacity = Integer.highestOneBit(Math.max(8, bySensor.size() * 2 - 1)) << 1;
+        this.keys = new long[capacity];
+        this.states = new RuleState[capacity][];
+        this.mask = capacity - 1;
+        this.ruleCount = ruleCount;
+        for (Map.Entry<Long, List<RuleState>> entry : bySensor.entrySet()) {
+            int slot = slot(entry.getKey());
+            keys[slot] = entry.getKey();
+            states[slot] = entry.getValue().toArray(NONE);
+        }
+    }
+
+    // States of the rules covering the sensor, empty if none does
+    RuleState[] statesOf(long sensorId) {
+        RuleState[] found = states[slot(sensorId)];
+        return found == null ? NONE : found;
+    }
+
+    // Visit every state, to carry unchanged ones over to the next index
+    void forEach(Consumer<RuleState> consumer) {
+        for (RuleState[] sensorStates : states) {
+            if (sensorStates != null) {
+                for (RuleState state : sensorStates) {
+                    consumer.accept(state);
+                }
+            }
+        }
+    }
+
+    int ruleCount() {
+        return ruleCount;
+    }
+
+    int sensorCount() {
+        int count = 0;
+        for (RuleState[] sensorStates : states) {
+            if (sensorStates != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Slot holding the key, or the empty slot where it belongs
+    private int slot(long key) {
+        int slot = (int) mix(key) & mask;
+        while (states[slot] != null && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private static long mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 32);
+    }
+}
@@ -0,0 +1,76 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import java.util.Arrays;
+
+/**
+ * Evaluation state of one rule for one sensor: a few scalars, plus for windowed rules a ring of
+ * fixed time slots holding the count, sum, min and max of the readings that fell in each slot.
+ * The window is the last {@link CompiledRule#WINDOW_SLOTS} slots, so its memory is constant
+ * whatever the reading rate, at the price of edges rounded to one slot.
+ */
+final class RuleState {
+
+    static final long NEVER = Long.MIN_VALUE;
+
+    final CompiledRule rule;
+    final long sensorId;
+    long lastTimestamp = NEVER;
+    // Timestamp since which the condition holds without interruption
+    long since = NEVER;
+    boolean firing;
+
+    private final long[] slotEpochs;
+    private final int[] counts;
+    private final double[] sums;
+    private final double[] mins;
+    private final double[] maxs;
+
+    RuleState(CompiledRule rule, long sensorId, int slots) {
+        this.rule = rule;
+        this.sensorId = sensorId;
+        this.slotEpochs = new long[slots];
+        this.counts = new int[slots];
+        this.sums = new double[slots];
+        this.mins = new double[slots];
+        this.maxs = new double[slots];
+        Arrays.fill(slotEpochs, NEVER);
+    }
+
+    // Add the reading to its slot and return the metric over the slots still inside the window
+    double addToWindow(Metric metric, long slotMillis, long timestamp, double value) {
+        int slots = slotEpochs.length;
+        long epoch = Math.floorDiv(timestamp, slotMillis);
+        int slot = (int) Math.floorMod(epoch, (long) slots);
+        if (slotEpochs[slot] != epoch) {
+            slotEpochs[slot] = epoch;
+            counts[slot] = 0;
+            sums[slot] = 0;
+            mins[slot] = Double.POSITIVE_INFINITY;
+            maxs[slot] = Double.NEGATIVE_INFINITY;
+        }
+        counts[slot]++;
+        sums[slot] += value;
+        mins[slot] = Math.min(mins[slot], value);
+        maxs[slot] = Math.max(maxs[slot], value);
+
+        long count = 0;
+        double sum = 0;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < slots; i++) {
+            // Slots of older epochs were left behind by a gap in the readings
+            if (slotEpochs[i] > epoch - slots) {
+                count += counts[i];
+                sum += sums[i];
+                min = Math.min(min, mins[i]);
+                max = Math.max(max, maxs[i]);
+            }
+        }
+        return switch (metric) {
+            case MIN -> min;
+            case MAX -> max;
+            case AVG -> sum / count;
+            case VALUE -> value;
+        };
+    }
+}
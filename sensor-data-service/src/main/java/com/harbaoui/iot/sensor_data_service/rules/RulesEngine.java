@@ -0,0 +1,134 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import com.harbaoui.iot.sensor_data_service.config.RulesProperties;
+import com.harbaoui.iot.sensor_data_service.ingest.IngestListener;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Evaluates alert rules inline on the ingest path, instead of polling storage.
+ * <p>
+ * Rules are compiled once into a {@link RuleIndex} keyed by sensor id, holding one compact
+ * {@link RuleState} per rule and sensor, so each reading costs one lookup plus the rules of its own
+ * sensor. Readings of a sensor are evaluated under one of a fixed set of striped locks, and alerts
+ * go to every {@link AlertSink} once the lock is released.
+ */
+@Component
+public class RulesEngine implements IngestListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RulesEngine.class);
+    private static final int STRIPES = 64;
+    private static final int STRIPE_SHIFT = Long.SIZE - Integer.numberOfTrailingZeros(STRIPES);
+
+    private final List<AlertSink> sinks;
+    private final ReentrantLock[] locks = new ReentrantLock[STRIPES];
+    private volatile RuleIndex index = RuleIndex.EMPTY;
+
+    public RulesEngine(RulesProperties properties, List<AlertSink> sinks) {
+        this.sinks = sinks;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new ReentrantLock();
+        }
+        replace(properties.getDefinitions());
+    }
+
+    // Compile the rules and swap them in; rules left unchanged keep their state, so they neither re-fire nor forget
+    public synchronized void replace(List<RulesProperties.Definition> definitions) {
+        Map<String, CompiledRule> rules = new HashMap<>();
+        Map<Long, List<RuleState>> bySensor = new HashMap<>();
+        Map<String, Map<Long, RuleState>> previous = new HashMap<>();
+        index.forEach(state -> previous.computeIfAbsent(state.rule.id(), id -> new HashMap<>()).put(state.sensorId, state));
+
+        for (RulesProperties.Definition definition : definitions) {
+            CompiledRule rule = CompiledRule.compile(definition);
+            if (rules.putIfAbsent(rule.id(), rule) != null) {
+                throw new IllegalArgumentException("Duplicate rule id " + rule.id());
+            }
+            Map<Long, RuleState> kept = previous.getOrDefault(rule.id(), Map.of());
+            Set<Long> sensors = new HashSet<>(definition.getSensors());
+            for (long sensorId : sensors) {
+                RuleState state = kept.get(sensorId);
+                if (state == null || !state.rule.equals(rule)) {
+                    state = rule.newState(sensorId);
+                }
+                bySensor.computeIfAbsent(sensorId, id -> new ArrayList<>()).add(state);
+            }
+        }
+        index = new RuleIndex(bySensor, rules.size());
+        logger.info("Loaded {} alert rules over {} sensors", rules.size(), bySensor.size());
+    }
+
+    @Override
+    public void onIngest(ReadingBatch batch) {
+        RuleIndex snapshot = index;
+        List<AlertEvent> events = null;
+        int i = 0;
+        while (i < batch.size()) {
+            long sensorId = batch.sensorId(i);
+            int runStart = i;
+            while (i < batch.size() && batch.sensorId(i) == sensorId) {
+                i++;
+            }
+            RuleState[] states = snapshot.statesOf(sensorId);
+            if (states.length == 0) {
+                continue;
+            }
+            ReentrantLock lock = lockFor(sensorId);
+            lock.lock();
+            try {
+                for (int r = runStart; r < i; r++) {
+                    for (RuleState state : states) {
+                        AlertEvent event = state.rule.evaluate(state, batch.timestamp(r), batch.value(r));
+                        if (event != null) {
+                            if (events == null) {
+                                events = new ArrayList<>();
+                            }
+                            events.add(event);
+                        }
+                    }
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        if (events != null) {
+            publish(events);
+        }
+    }
+
+    public int ruleCount() {
+        return index.ruleCount();
+    }
+
+    public int sensorCount() {
+        return index.sensorCount();
+    }
+
+    // One failing sink must not keep the alert from the others
+    private void publish(List<AlertEvent> events) {
+        for (AlertEvent event : events) {
+            for (AlertSink sink : sinks) {
+                try {
+                    sink.onAlert(event);
+                } catch (RuntimeException e) {
+                    logger.warn("Alert sink {} failed: {}", sink.getClass().getSimpleName(), e.getMessage());
+                }
+            }
+        }
+    }
+
+    private ReentrantLock lockFor(long sensorId) {
+        long h = sensorId * 0x9E3779B97F4A7C15L;
+        return locks[(int) ((h ^ (h >>> 32)) >>> STRIPE_SHIFT)];
+    }
+}
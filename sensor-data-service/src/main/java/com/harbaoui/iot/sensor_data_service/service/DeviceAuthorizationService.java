@@ -0,0 +1,55 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.auth.DeviceRegistry;
+import com.harbaoui.iot.sensor_data_service.exception.DeviceRegistryUnavailableException;
+import com.harbaoui.iot.sensor_data_service.exception.SensorNotAllowedException;
+import com.harbaoui.iot.sensor_data_service.exception.UnknownDeviceException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Authorizes HTTP ingestion against the local {@link DeviceRegistry}: a memory lookup, no call to user-service.
+ * Off unless {@code auth.devices.enabled} is set, in which case every ingest request must carry the API key
+ * of a device allowed to publish for all of its sensors.
+ */
+@Service
+public class DeviceAuthorizationService {
+
+    public static final String DEVICE_KEY_HEADER = "X-Device-Key";
+
+    private final DeviceRegistry deviceRegistry;
+    private final boolean enabled;
+
+    public DeviceAuthorizationService(DeviceRegistry deviceRegistry,
+                                      @Value("${auth.devices.enabled:false}") boolean enabled) {
+        this.deviceRegistry = deviceRegistry;
+        this.enabled = enabled;
+    }
+
+    // Check a request that only carries readings of one sensor
+    public void check(String apiKey, long sensorId) {
+        if (enabled) {
+            requireGranted(apiKey == null ? DeviceRegistry.Decision.UNKNOWN_KEY : deviceRegistry.authorize(apiKey, sensorId));
+        }
+    }
+
+    // Check a request that may mix sensors
+    public void check(String apiKey, ReadingBatch batch) {
+        if (enabled) {
+            requireGranted(apiKey == null ? DeviceRegistry.Decision.UNKNOWN_KEY : deviceRegistry.authorize(apiKey, batch));
+        }
+    }
+
+    private void requireGranted(DeviceRegistry.Decision decision) {
+        if (!deviceRegistry.isLoaded()) {
+            throw new DeviceRegistryUnavailableException("Device registry is not loaded yet, please retry later");
+        }
+        if (decision == DeviceRegistry.Decision.UNKNOWN_KEY) {
+            throw new UnknownDeviceException("Missing or unknown " + DEVICE_KEY_HEADER);
+        }
+        if (decision == DeviceRegistry.Decision.SENSOR_NOT_ALLOWED) {
+            throw new SensorNotAllowedException("This device may not publish readings for every sensor of the request");
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.dto.QuantileResponse;
+import com.harbaoui.iot.sensor_data_service.dto.QuantileValue;
+import com.harbaoui.iot.sensor_data_service.exception.InvalidQueryException;
+import com.harbaoui.iot.sensor_data_service.ingest.IngestListener;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.SketchRepository;
+import com.harbaoui.iot.sensor_data_service.rollup.QuantileSketch;
+import com.harbaoui.iot.sensor_data_service.rollup.Resolution;
+import com.harbaoui.iot.sensor_data_service.rollup.SketchAccumulator;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+/**
+ * Maintains an hourly quantile sketch per sensor as readings are acknowledged, and answers percentile queries
+ * by merging them instead of sorting raw readings.
+ * Deltas are accumulated in memory and merged into {@code reading_sketches} every
+ * {@code quantiles.flush-interval-ms}, like the rollups, under the same flush lock. Every answer is within
+ * {@code quantiles.relative-accuracy} of the exact quantile, relative to its magnitude (see {@link QuantileSketch}).
+ */
+@Service
+public class QuantileService implements IngestListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(QuantileService.class);
+    private static final long HOUR = Resolution.HOUR.millis();
+    private static final int MAX_QUANTILES = 32;
+
+    private final SketchAccumulator accumulator;
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final SketchRepository sketchRepository;
+    private final ReadingStore readingStore;
+    private final int maxBuckets;
+
+    public QuantileService(SketchRepository sketchRepository,
+                           ReadingStore readingStore,
+                           @Value("${quantiles.relative-accuracy:0.01}") double relativeAccuracy,
+                           @Value("${quantiles.max-bins:2048}") int maxBins,
+                           @Value("${quantiles.max-buckets:8784}") int maxBuckets) {
+        this.accumulator = new SketchAccumulator(relativeAccuracy, maxBins);
+        this.sketchRepository = sketchRepository;
+        this.readingStore = readingStore;
+        this.maxBuckets = maxBuckets;
+    }
+
+    @Override
+    public void onIngest(ReadingBatch batch) {
+        accumulator.add(batch);
+    }
+
+    // Merge pending sketches into the sketch table; on failure they go back to the accumulator
+    @Scheduled(fixedDelayString = "${quantiles.flush-interval-ms:5000}")
+    // Drained sketches stay visible to queries: they wait on the lock until the merge has committed
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            Map<Long, ConcurrentHashMap<Long, QuantileSketch>> deltas = accumulator.drain();
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                sketchRepository.merge(deltas);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to flush quantile sketches for {} sensor(s), will retry: {}", deltas.size(), e.getMessage());
+                accumulator.merge(deltas);
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    // Quantiles of the readings of a sensor in [from, to)
+    public QuantileResponse quantiles(long sensorId, long from, long to, double[] qs) {
+        return quantiles(sensorId, from, to, qs, List::of);
+    }
+
+    // Same, with the sketches other instances built for the window merged in before any quantile is read
+    // Sketches merge exactly, so the answer keeps the accuracy of a single sketch over all the readings.
+    public QuantileResponse quantiles(long sensorId, long from, long to, double[] qs,
+                                      Supplier<List<QuantileSketch>> remote) {
+        if (qs == null || qs.length == 0 || qs.length > MAX_QUANTILES) {
+            throw new InvalidQueryException("'q' must list between 1 and " + MAX_QUANTILES + " quantiles");
+        }
+        for (double q : qs) {
+            if (!(q >= 0 && q <= 1)) {
+                throw new InvalidQueryException("Quantiles must be between 0 and 1");
+            }
+        }
+        QuantileSketch merged = sketch(sensorId, from, to);
+        for (QuantileSketch sketch : remote.get()) {
+            merged.merge(sketch);
+        }
+
+        List<QuantileValue> values = new ArrayList<>(qs.length);
+        if (!merged.isEmpty()) {
+            for (double q : qs) {
+                values.add(new QuantileValue(q, merged.quantile(q)));
+            }
+        }
+        return new QuantileResponse(sensorId, from, to, merged.count(), merged.relativeAccuracy(), values);
+    }
+
+    // One sketch of the readings of a sensor in [from, to) held by this instance
+    // Whole hours come from the stored and pending sketches; the partial hours at either end are sketched
+    // from raw readings, so the window is honoured exactly as long as raw readings are retained.
+    public QuantileSketch sketch(long sensorId, long from, long to) {
+        if (from >= to) {
+            throw new InvalidQueryException("'from' must be before 'to'");
+        }
+        long firstHour = Math.floorDiv(from + HOUR - 1, HOUR) * HOUR;
+        long lastHour = Math.floorDiv(to, HOUR) * HOUR;
+        if ((lastHour - firstHour) / HOUR > maxBuckets) {
+            throw new InvalidQueryException("Query spans more than " + maxBuckets + " hours");
+        }
+
+        QuantileSketch merged = accumulator.newSketch();
+        if (firstHour < lastHour) {
+            flushLock.readLock().lock();
+            try {
+                sketchRepository.find(sensorId, firstHour, lastHour, (bucketStart, sketch) -> merged.merge(sketch));
+                accumulator.forEachPending(sensorId, firstHour, lastHour, (bucketStart, sketch) -> merged.merge(sketch));
+            } finally {
+                flushLock.readLock().unlock();
+            }
+            scanRaw(sensorId, from, firstHour, merged);
+            scanRaw(sensorId, lastHour, to, merged);
+        } else {
+            scanRaw(sensorId, from, to, merged);
+        }
+        return merged;
+    }
+
+    private void scanRaw(long sensorId, long from, long to, QuantileSketch sketch) {
+        if (from < to) {
+            readingStore.scan(sensorId, from, to, (timestamp, value) -> {
+                sketch.add(value);
+                return true;
+            });
+        }
+    }
+}
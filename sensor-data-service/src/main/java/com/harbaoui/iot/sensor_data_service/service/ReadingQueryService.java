@@ -0,0 +1,71 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.cache.LastValueCache;
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingResponse;
+import com.harbaoui.iot.sensor_data_service.exception.InvalidQueryException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Service
+public class ReadingQueryService {
+
+    private final ReadingStore readingStore;
+    private final LastValueCache lastValueCache;
+    private final int maxLimit;
+    private final int maxLatestIds;
+
+    public ReadingQueryService(ReadingStore readingStore,
+                               LastValueCache lastValueCache,
+                               @Value("${query.max-limit:100000}") int maxLimit,
+                               @Value("${query.max-latest-ids:10000}") int maxLatestIds) {
+        this.readingStore = readingStore;
+        this.lastValueCache = lastValueCache;
+        this.maxLimit = maxLimit;
+        this.maxLatestIds = maxLatestIds;
+    }
+
+    // Find the readings of a sensor in [from, to)
+    // Returns at most limit readings in timestamp order.
+    public List<ReadingResponse> findReadings(long sensorId, long from, long to, int limit) {
+        if (from >= to) {
+            throw new InvalidQueryException("'from' must be before 'to'");
+        }
+        int capped = Math.min(Math.max(limit, 1), maxLimit);
+        List<ReadingResponse> readings = new ArrayList<>();
+        readingStore.scan(sensorId, from, to, (timestamp, value) -> {
+            readings.add(new ReadingResponse(timestamp, value));
+            return readings.size() < capped;
+        });
+        return readings;
+    }
+
+    // Find the newest reading of each sensor
+    // Served from the last-value cache; sensors without readings are left out.
+    public List<LatestReadingResponse> findLatest(long[] sensorIds) {
+        checkLatestIds(sensorIds);
+        List<LatestReadingResponse> latest = new ArrayList<>(sensorIds.length);
+        lastValueCache.latest(sensorIds, (sensorId, timestamp, value) ->
+                latest.add(new LatestReadingResponse(sensorId, timestamp, value)));
+        return latest;
+    }
+
+    // Same as findLatest, as primitive arrays for the binary response
+    public ReadingBatch findLatestBatch(long[] sensorIds) {
+        checkLatestIds(sensorIds);
+        ReadingBatch latest = new ReadingBatch(sensorIds.length);
+        lastValueCache.latest(sensorIds, latest::add);
+        return latest;
+    }
+
+    private void checkLatestIds(long[] sensorIds) {
+        if (sensorIds == null || sensorIds.length == 0 || sensorIds.length > maxLatestIds) {
+            throw new InvalidQueryException("A latest query must list between 1 and " + maxLatestIds + " sensor ids");
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.dto.AggregateResponse;
+import com.harbaoui.iot.sensor_data_service.dto.AggregateSeriesResponse;
+import com.harbaoui.iot.sensor_data_service.exception.InvalidQueryException;
+import com.harbaoui.iot.sensor_data_service.ingest.IngestListener;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.RollupRepository;
+import com.harbaoui.iot.sensor_data_service.rollup.Aggregate;
+import com.harbaoui.iot.sensor_data_service.rollup.BucketKey;
+import com.harbaoui.iot.sensor_data_service.rollup.Resolution;
+import com.harbaoui.iot.sensor_data_service.rollup.RollupAccumulator;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Maintains per-minute, per-hour and per-day min/max/sum/count rollups as readings are acknowledged.
+ * Deltas are accumulated in memory and merged into {@code reading_rollups} every
+ * {@code rollup.flush-interval-ms}; late readings re-merge into the bucket they belong to.
+ * Deltas not yet flushed when the process dies are lost, the raw readings are not.
+ * A flush holds the write side of {@code flushLock} from the drain until the merge has committed,
+ * so a query reads every delta exactly once: either still pending or already in the table.
+ */
+@Service
+public class RollupService implements IngestListener {
+
+    private static final Logger logger = LoggerFactory.getLogger(RollupService.class);
+
+    private final RollupAccumulator accumulator = new RollupAccumulator();
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final RollupRepository rollupRepository;
+    private final ReadingStore readingStore;
+    private final int maxBuckets;
+
+    public RollupService(RollupRepository rollupRepository,
+                         ReadingStore readingStore,
+                         @Value("${rollup.max-buckets:10000}") int maxBuckets) {
+        this.rollupRepository = rollupRepository;
+        this.readingStore = readingStore;
+        this.maxBuckets = maxBuckets;
+    }
+
+    @Override
+    public void onIngest(ReadingBatch batch) {
+        accumulator.add(batch);
+    }
+
+    // Merge pending deltas into the rollup table; on failure they go back to the accumulator
+    @Scheduled(fixedDelayString = "${rollup.flush-interval-ms:5000}")
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            Map<Long, ConcurrentHashMap<BucketKey, Aggregate>> deltas = accumulator.drain();
+            if (deltas.isEmpty()) {
+                return;
+            }
+            try {
+                rollupRepository.merge(deltas);
+            } catch (RuntimeException e) {
+                logger.warn("Unable to flush rollups for {} sensor(s), will retry: {}", deltas.size(), e.getMessage());
+                accumulator.merge(deltas);
+            }
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    // Aggregate the readings of a sensor in [from, to) into buckets of step milliseconds
+    // Reads the coarsest rollup that tiles the step for the buckets that lie wholly inside the window, and scans
+    // raw readings for the partial ones at either end and for sub-minute steps, so the window is honoured exactly
+    // as long as raw readings are retained.
+    public AggregateSeriesResponse aggregate(long sensorId, long from, long to, long step) {
+        if (step <= 0 || from >= to) {
+            throw new InvalidQueryException("'step' must be positive and 'from' must be before 'to'");
+        }
+        long alignedFrom = Math.floorDiv(from, step) * step;
+        if ((to - alignedFrom) / step > maxBuckets) {
+            throw new InvalidQueryException("Query spans more than " + maxBuckets + " buckets, use a larger step");
+        }
+
+        TreeMap<Long, Aggregate> buckets = new TreeMap<>();
+        Resolution resolution = Resolution.coarsestFor(step);
+        if (resolution == null) {
+            scanRaw(sensorId, from, to, step, buckets);
+        } else {
+            long width = resolution.millis();
+            long firstBucket = Math.floorDiv(from + width - 1, width) * width;
+            long lastBucket = Math.floorDiv(to, width) * width;
+            if (firstBucket < lastBucket) {
+                flushLock.readLock().lock();
+                try {
+                    rollupRepository.find(sensorId, resolution, firstBucket, lastBucket,
+                            (bucketStart, aggregate) -> mergeInto(buckets, Math.floorDiv(bucketStart, step) * step, aggregate));
+                    accumulator.forEachPending(sensorId, resolution, firstBucket, lastBucket,
+                            (bucketStart, aggregate) -> mergeInto(buckets, Math.floorDiv(bucketStart, step) * step, aggregate));
+                } finally {
+                    flushLock.readLock().unlock();
+                }
+                scanRaw(sensorId, from, firstBucket, step, buckets);
+                scanRaw(sensorId, lastBucket, to, step, buckets);
+            } else {
+                scanRaw(sensorId, from, to, step, buckets);
+            }
+        }
+
+        List<AggregateResponse> response = new ArrayList<>(buckets.size());
+        buckets.forEach((bucketStart, aggregate) -> response.add(new AggregateResponse(bucketStart,
+                aggregate.count(), aggregate.sum(), aggregate.min(), aggregate.max(), aggregate.average())));
+        return new AggregateSeriesResponse(sensorId, step, resolution == null ? "RAW" : resolution.name(), response);
+    }
+
+    private void scanRaw(long sensorId, long from, long to, long step, TreeMap<Long, Aggregate> buckets) {
+        if (from < to) {
+            readingStore.scan(sensorId, from, to, (timestamp, value) -> {
+                buckets.computeIfAbsent(Math.floorDiv(timestamp, step) * step, b -> new Aggregate()).add(value);
+                return true;
+            });
+        }
+    }
+
+    private static void mergeInto(TreeMap<Long, Aggregate> buckets, long bucketStart, Aggregate aggregate) {
+        buckets.merge(bucketStart, aggregate, (existing, added) -> {
+            existing.merge(added);
+            return existing;
+        });
+    }
+}
@@ -0,0 +1,124 @@
+package com.harbaoui.iot.sensor_data_service.store;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.ReadingBatchRepository;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Row-per-reading storage in the {@code readings} table.
+ * Scans read rows {@value #FETCH_SIZE} at a time; on MySQL the fetch size is only honoured with
+ * {@code useCursorFetch=true} in the URL, otherwise the driver loads the whole result first.
+ * Reclaimed bytes are an estimate, the database frees pages on its own schedule.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "jdbc", matchIfMissing = true)
+public class JdbcReadingStore implements ReadingStore {
+
+    private static final String SCAN_SQL =
+            "SELECT ts, reading_value FROM readings WHERE sensor_id = ? AND ts >= ? AND ts < ? ORDER BY ts";
+    private static final String EXPIRED_IDS_SQL =
+            "SELECT id FROM readings WHERE sensor_id = ? AND ts < ? ORDER BY ts";
+    private static final String LATEST_SQL =
+            "SELECT r.sensor_id, r.ts, r.reading_value FROM readings r"
+            + " JOIN (SELECT sensor_id, MAX(ts) AS max_ts FROM readings WHERE sensor_id IN (%s) GROUP BY sensor_id) m"
+            + " ON r.sensor_id = m.sensor_id AND r.ts = m.max_ts";
+    private static final int FETCH_SIZE = 1000;
+    // Ids per latest query, keeps the IN list within every driver's parameter limit
+    private static final int LATEST_IDS_PER_QUERY = 500;
+    // Estimated on-disk size of one row with its share of the (sensor_id, ts) index
+    private static final long ESTIMATED_ROW_BYTES = 100;
+
+    private final ReadingBatchRepository readingBatchRepository;
+    private final JdbcTemplate jdbcTemplate;
+
+    public JdbcReadingStore(ReadingBatchRepository readingBatchRepository, JdbcTemplate jdbcTemplate) {
+        this.readingBatchRepository = readingBatchRepository;
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // One transaction per group commit
+    @Override
+    @Transactional
+    public void append(ReadingBatch batch) {
+        readingBatchRepository.insert(batch);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void scan(long sensorId, long from, long to, ReadingConsumer consumer) {
+        jdbcTemplate.execute((java.sql.Connection connection) -> {
+            try (PreparedStatement ps = connection.prepareStatement(SCAN_SQL)) {
+                ps.setFetchSize(FETCH_SIZE);
+                ps.setLong(1, sensorId);
+                ps.setLong(2, from);
+                ps.setLong(3, to);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        if (!consumer.accept(rs.getLong(1), rs.getDouble(2))) {
+                            break;
+                        }
+                    }
+                }
+            }
+            return null;
+        });
+    }
+
+    // MAX(ts) per sensor is a single index probe on (sensor_id, ts)
+    @Override
+    @Transactional(readOnly = true)
+    public void latest(long[] sensorIds, SensorReadingConsumer consumer) {
+        for (int start = 0; start < sensorIds.length; start += LATEST_IDS_PER_QUERY) {
+            int end = Math.min(sensorIds.length, start + LATEST_IDS_PER_QUERY);
+            String sql = String.format(LATEST_SQL, String.join(",", Collections.nCopies(end - start, "?")));
+            Object[] ids = new Object[end - start];
+            for (int i = start; i < end; i++) {
+                ids[i - start] = sensorIds[i];
+            }
+            jdbcTemplate.query(sql, rs -> {
+                consumer.accept(rs.getLong(1), rs.getLong(2), rs.getDouble(3));
+            }, ids);
+        }
+    }
+
+    @Override
+    public long[] sensorIds() {
+        return jdbcTemplate.queryForList("SELECT DISTINCT sensor_id FROM readings", Long.class)
+                .stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Select a bounded chunk of ids through the (sensor_id, ts) index, then delete exactly those rows
+    @Override
+    @Transactional
+    public Reclaimed deleteBefore(long sensorId, long cutoff, int maxRows) {
+        List<Long> ids = jdbcTemplate.execute((java.sql.Connection connection) -> {
+            try (PreparedStatement ps = connection.prepareStatement(EXPIRED_IDS_SQL)) {
+                ps.setMaxRows(maxRows);
+                ps.setLong(1, sensorId);
+                ps.setLong(2, cutoff);
+                List<Long> selected = new ArrayList<>();
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        selected.add(rs.getLong(1));
+                    }
+                }
+                return selected;
+            }
+        });
+        if (ids == null || ids.isEmpty()) {
+            return Reclaimed.NONE;
+        }
+        String placeholders = String.join(",", Collections.nCopies(ids.size(), "?"));
+        int deleted = jdbcTemplate.update("DELETE FROM readings WHERE id IN (" + placeholders + ")", ids.toArray());
+        return new Reclaimed(deleted, deleted * ESTIMATED_ROW_BYTES);
+    }
+}
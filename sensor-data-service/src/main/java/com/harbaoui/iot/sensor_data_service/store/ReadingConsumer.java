@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.store;
+
+/**
+ * Receives readings from a {@link ReadingStore} scan without boxing them.
+ */
+@FunctionalInterface
+public interface ReadingConsumer {
+
+    // Return false to stop the scan
+    boolean accept(long timestamp, double value);
+}
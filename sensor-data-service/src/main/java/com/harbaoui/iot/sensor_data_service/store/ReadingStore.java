@@ -0,0 +1,66 @@
+package com.harbaoui.iot.sensor_data_service.store;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Persistence engine for sensor readings.
+ * Selected with {@code storage.engine}: {@code jdbc} keeps one row per reading in the
+ * {@code readings} table, {@code chunked} uses the compressed time-chunked file engine.
+ */
+public interface ReadingStore {
+
+    // Persist the batch; the readings must be durable when this returns
+    void append(ReadingBatch batch);
+
+    // Stream the readings of one sensor with from <= timestamp < to, in timestamp order
+    // Stops early as soon as the consumer returns false.
+    void scan(long sensorId, long from, long to, ReadingConsumer consumer);
+
+    // Newest stored reading of each of the sensors; sensors without readings are skipped
+    void latest(long[] sensorIds, SensorReadingConsumer consumer);
+
+    // Ids of every sensor with stored readings
+    long[] sensorIds();
+
+    // Readings of the batch that are not stored yet, matched on sensor id and timestamp
+    // Used to replay the WAL idempotently: a reading stored n times cancels n replayed copies.
+    default ReadingBatch absent(ReadingBatch batch) {
+        Map<Long, long[]> windows = new HashMap<>();
+        for (int i = 0; i < batch.size(); i++) {
+            long timestamp = batch.timestamp(i);
+            long[] window = windows.computeIfAbsent(batch.sensorId(i), id -> new long[] {timestamp, timestamp});
+            window[0] = Math.min(window[0], timestamp);
+            window[1] = Math.max(window[1], timestamp);
+        }
+        Map<Long, Map<Long, Integer>> stored = new HashMap<>();
+        windows.forEach((sensorId, window) -> {
+            Map<Long, Integer> counts = new HashMap<>();
+            scan(sensorId, window[0], window[1] + 1, (timestamp, value) -> {
+                counts.merge(timestamp, 1, Integer::sum);
+                return true;
+            });
+            stored.put(sensorId, counts);
+        });
+
+        ReadingBatch absent = new ReadingBatch(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            Map<Long, Integer> counts = stored.get(batch.sensorId(i));
+            Integer left = counts.get(batch.timestamp(i));
+            if (left == null) {
+                absent.add(batch.sensorId(i), batch.timestamp(i), batch.value(i));
+            } else if (left == 1) {
+                counts.remove(batch.timestamp(i));
+            } else {
+                counts.put(batch.timestamp(i), left - 1);
+            }
+        }
+        return absent;
+    }
+
+    // Delete up to roughly maxRows of the sensor's oldest readings with timestamp < cutoff
+    // Called repeatedly by retention until fewer than maxRows rows come back.
+    Reclaimed deleteBefore(long sensorId, long cutoff, int maxRows);
+}
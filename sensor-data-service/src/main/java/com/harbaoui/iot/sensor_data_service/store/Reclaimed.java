@@ -0,0 +1,9 @@
+package com.harbaoui.iot.sensor_data_service.store;
+
+/**
+ * Rows and bytes freed by one retention delete.
+ */
+public record Reclaimed(long rows, long bytes) {
+
+    public static final Reclaimed NONE = new Reclaimed(0, 0);
+}
@@ -0,0 +1,10 @@
+package com.harbaoui.iot.sensor_data_service.store;
+
+/**
+ * Receives readings of several sensors from a {@link ReadingStore} without boxing them.
+ */
+@FunctionalInterface
+public interface SensorReadingConsumer {
+
+    void accept(long sensorId, long timestamp, double value);
+}
@@ -0,0 +1,119 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Forward-only decoder for a chunk written by {@link ChunkEncoder}.
+ * Reads straight from the (memory-mapped) buffer without copying it.
+ */
+public class ChunkDecoder {
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private int decoded;
+    private long current;
+    private int available;
+    private long timestamp;
+    private long delta;
+    private long bits;
+    private int leading;
+    private int trailing;
+
+    public ChunkDecoder(ByteBuffer chunk) {
+        this.buffer = chunk.duplicate();
+        if (buffer.getInt() != ChunkEncoder.MAGIC) {
+            throw new IllegalStateException("Not a reading chunk");
+        }
+        this.count = buffer.getInt();
+        buffer.position(buffer.position() + 16);
+    }
+
+    public boolean hasNext() {
+        return decoded < count;
+    }
+
+    // Advance to the next point, read it through timestamp() and value()
+    public void next() {
+        if (decoded == 0) {
+            timestamp = readBits(64);
+            bits = readBits(64);
+        } else {
+            delta += readDeltaOfDelta();
+            timestamp += delta;
+            readValue();
+        }
+        decoded++;
+    }
+
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public double value() {
+        return Double.longBitsToDouble(bits);
+    }
+
+    private long readDeltaOfDelta() {
+        if (readBits(1) == 0) {
+            return 0;
+        }
+        if (readBits(1) == 0) {
+            return readBits(7) - 63;
+        }
+        if (readBits(1) == 0) {
+            return readBits(9) - 255;
+        }
+        if (readBits(1) == 0) {
+            return readBits(12) - 2047;
+        }
+        return readBits(64);
+    }
+
+    private void readValue() {
+        if (readBits(1) == 0) {
+            return;
+        }
+        if (readBits(1) == 1) {
+            leading = (int) readBits(5);
+            int significant = (int) readBits(6);
+            if (significant == 0) {
+                significant = 64;
+            }
+            trailing = 64 - leading - significant;
+        }
+        int significant = 64 - leading - trailing;
+        bits ^= readBits(significant) << trailing;
+    }
+
+    private long readBits(int count) {
+        long result = 0;
+        while (count > 0) {
+            if (available == 0) {
+                refill();
+            }
+            int take = Math.min(count, available);
+            long chunk = (current >>> (available - take)) & (take == 64 ? -1L : (1L << take) - 1);
+            result = take == 64 ? chunk : (result << take) | chunk;
+            available -= take;
+            count -= take;
+        }
+        return result;
+    }
+
+    private void refill() {
+        if (buffer.remaining() >= 8) {
+            current = buffer.getLong();
+            available = 64;
+            return;
+        }
+        int remaining = buffer.remaining();
+        if (remaining == 0) {
+            throw new IllegalStateException("Chunk is truncated");
+        }
+        current = 0;
+        for (int i = 0; i < remaining; i++) {
+            current = (current << 8) | (buffer.get() & 0xFF);
+        }
+        available = remaining * 8;
+    }
+}
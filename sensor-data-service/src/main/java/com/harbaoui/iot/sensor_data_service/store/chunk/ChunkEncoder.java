@@ -0,0 +1,124 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Gorilla-style encoder for one chunk of (timestamp, value) points in timestamp order.
+ * Timestamps are stored as delta-of-deltas in variable-width buckets and values as the
+ * XOR with the previous value, keeping only the meaningful bits. Regular sampling
+ * intervals and slowly changing values compress to a few bits per point.
+ *
+ * Chunk layout: [int magic][int count][long first ts][long last ts][bit stream].
+ */
+public class ChunkEncoder {
+
+    static final int MAGIC = 0x47524C31;
+    static final int HEADER_BYTES = 24;
+
+    private long[] words = new long[64];
+    private long bitPosition;
+    private int count;
+    private long firstTimestamp;
+    private long previousTimestamp;
+    private long previousDelta;
+    private long previousBits;
+    private int previousLeading = -1;
+    private int previousTrailing;
+
+    public void append(long timestamp, double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            writeBits(timestamp, 64);
+            writeBits(bits, 64);
+        } else {
+            long delta = timestamp - previousTimestamp;
+            writeDeltaOfDelta(delta - previousDelta);
+            writeValue(bits);
+            previousDelta = delta;
+        }
+        previousTimestamp = timestamp;
+        previousBits = bits;
+        count++;
+    }
+
+    public int count() {
+        return count;
+    }
+
+    // Header followed by the bit stream, trimmed to the last used byte
+    public ByteBuffer toByteBuffer() {
+        int streamBytes = (int) ((bitPosition + 7) >>> 3);
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + ((streamBytes + 7) & ~7));
+        buffer.putInt(MAGIC).putInt(count).putLong(firstTimestamp).putLong(previousTimestamp);
+        for (int i = 0; i < (streamBytes + 7) >>> 3; i++) {
+            buffer.putLong(words[i]);
+        }
+        buffer.flip();
+        buffer.limit(HEADER_BYTES + streamBytes);
+        return buffer;
+    }
+
+    // '0' for an unchanged interval, otherwise a prefix selecting a 7, 9, 12 or 64 bit field
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            writeBits(0b0, 1);
+        } else if (deltaOfDelta >= -63 && deltaOfDelta <= 64) {
+            writeBits(0b10, 2);
+            writeBits(deltaOfDelta + 63, 7);
+        } else if (deltaOfDelta >= -255 && deltaOfDelta <= 256) {
+            writeBits(0b110, 3);
+            writeBits(deltaOfDelta + 255, 9);
+        } else if (deltaOfDelta >= -2047 && deltaOfDelta <= 2048) {
+            writeBits(0b1110, 4);
+            writeBits(deltaOfDelta + 2047, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(deltaOfDelta, 64);
+        }
+    }
+
+    // '0' for a repeated value, '10' to reuse the previous bit window, '11' to open a new one
+    private void writeValue(long bits) {
+        long xor = bits ^ previousBits;
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+            writeBits(0b10, 2);
+            writeBits(xor >>> previousTrailing, 64 - previousLeading - previousTrailing);
+        } else {
+            int significant = 64 - leading - trailing;
+            writeBits(0b11, 2);
+            writeBits(leading, 5);
+            writeBits(significant == 64 ? 0 : significant, 6);
+            writeBits(xor >>> trailing, significant);
+            previousLeading = leading;
+            previousTrailing = trailing;
+        }
+    }
+
+    // Append the low `bits` bits of value, most significant first
+    private void writeBits(long value, int bits) {
+        if (bits < 64) {
+            value &= (1L << bits) - 1;
+        }
+        int index = (int) (bitPosition >>> 6);
+        int free = 64 - (int) (bitPosition & 63);
+        if (index + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        if (bits <= free) {
+            words[index] |= value << (free - bits);
+        } else {
+            int spill = bits - free;
+            words[index] |= value >>> spill;
+            words[index + 1] |= value << (64 - spill);
+        }
+        bitPosition += bits;
+    }
+}
@@ -0,0 +1,183 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+import com.harbaoui.iot.sensor_data_service.store.SensorReadingConsumer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Native time-series engine: one directory per sensor holding fixed time-window chunks.
+ * Open windows are kept raw in memory and in a head file; once a window is older than
+ * {@code storage.chunked.seal-delay} it is Gorilla-compressed into an immutable chunk
+ * file that is memory-mapped for range scans. Late points for a sealed window reopen it.
+ * Sealed chunks take a few bytes per point instead of a ~100 byte row.
+ */
+@Component
+@ConditionalOnProperty(name = "storage.engine", havingValue = "chunked")
+public class ChunkedReadingStore implements ReadingStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChunkedReadingStore.class);
+
+    private final Path directory;
+    private final long chunkMillis;
+    private final long sealDelayMillis;
+    private final ConcurrentHashMap<Long, SensorSeries> series = new ConcurrentHashMap<>();
+
+    public ChunkedReadingStore(@Value("${storage.chunked.dir:./data/chunks}") Path directory,
+                               @Value("${storage.chunked.chunk-duration:2h}") Duration chunkDuration,
+                               @Value("${storage.chunked.seal-delay:10m}") Duration sealDelay) {
+        this.directory = directory;
+        this.chunkMillis = chunkDuration.toMillis();
+        this.sealDelayMillis = sealDelay.toMillis();
+    }
+
+    @PostConstruct
+    public void load() throws IOException {
+        Files.createDirectories(directory);
+        try (Stream<Path> sensors = Files.list(directory)) {
+            for (Path sensorDirectory : sensors.filter(Files::isDirectory).toList()) {
+                long sensorId = Long.parseLong(sensorDirectory.getFileName().toString());
+                SensorSeries loaded = new SensorSeries(sensorDirectory, chunkMillis);
+                loaded.load();
+                series.put(sensorId, loaded);
+            }
+        }
+        logger.info("Loaded {} sensor series from {}", series.size(), directory);
+    }
+
+    // Readings of one sensor arrive in runs, so the series lock is taken once per run
+    @Override
+    public void append(ReadingBatch batch) {
+        int i = 0;
+        List<OpenChunk> touched = new ArrayList<>();
+        while (i < batch.size()) {
+            long sensorId = batch.sensorId(i);
+            SensorSeries target = seriesFor(sensorId);
+            target.lock();
+            try {
+                touched.clear();
+                for (; i < batch.size() && batch.sensorId(i) == sensorId; i++) {
+                    OpenChunk chunk = target.add(batch.timestamp(i), batch.value(i));
+                    if (touched.isEmpty() || touched.get(touched.size() - 1) != chunk) {
+                        touched.add(chunk);
+                    }
+                }
+                for (OpenChunk chunk : touched) {
+                    chunk.sync();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Unable to append readings for sensor " + sensorId, e);
+            } finally {
+                target.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void scan(long sensorId, long from, long to, ReadingConsumer consumer) {
+        SensorSeries target = series.get(sensorId);
+        if (target != null) {
+            target.scan(from, to, consumer);
+        }
+    }
+
+    @Override
+    public void latest(long[] sensorIds, SensorReadingConsumer consumer) {
+        for (long sensorId : sensorIds) {
+            SensorSeries target = series.get(sensorId);
+            if (target != null) {
+                target.latest((timestamp, value) -> {
+                    consumer.accept(sensorId, timestamp, value);
+                    return true;
+                });
+            }
+        }
+    }
+
+    @Override
+    public long[] sensorIds() {
+        return series.keySet().stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Whole windows are dropped, a window is only deleted once it lies entirely before the cutoff
+    @Override
+    public Reclaimed deleteBefore(long sensorId, long cutoff, int maxRows) {
+        SensorSeries target = series.get(sensorId);
+        if (target == null) {
+            return Reclaimed.NONE;
+        }
+        try {
+            return target.deleteBefore(cutoff, maxRows);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to delete expired chunks of sensor " + sensorId, e);
+        }
+    }
+
+    // Seal windows that ended more than seal-delay ago
+    @Scheduled(fixedDelayString = "${storage.chunked.seal-interval:60000}")
+    public void sealExpiredChunks() {
+        long cutoff = System.currentTimeMillis() - sealDelayMillis;
+        int sealed = 0;
+        for (var entry : series.entrySet()) {
+            try {
+                sealed += entry.getValue().sealBefore(cutoff);
+            } catch (IOException e) {
+                logger.warn("Unable to seal chunks of sensor {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+        if (sealed > 0) {
+            logger.debug("Sealed {} chunk(s)", sealed);
+        }
+    }
+
+    // Compressed bytes held by sealed chunks
+    public long sealedBytes() {
+        return series.values().stream().mapToLong(SensorSeries::sealedBytes).sum();
+    }
+
+    @PreDestroy
+    public void close() {
+        for (SensorSeries target : series.values()) {
+            try {
+                target.close();
+            } catch (IOException e) {
+                logger.warn("Unable to close sensor series: {}", e.getMessage());
+            }
+        }
+    }
+
+    private SensorSeries seriesFor(long sensorId) {
+        SensorSeries existing = series.get(sensorId);
+        if (existing != null) {
+            return existing;
+        }
+        return series.computeIfAbsent(sensorId, id -> {
+            SensorSeries created = new SensorSeries(directory.resolve(Long.toString(id)), chunkMillis);
+            try {
+                created.load();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return created;
+        });
+    }
+}
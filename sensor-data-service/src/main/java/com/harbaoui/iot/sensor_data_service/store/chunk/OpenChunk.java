@@ -0,0 +1,150 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Chunk still receiving points. Points are kept uncompressed in memory and appended
+ * to a raw head file (16 bytes per point) so they are durable before the chunk is sealed.
+ * Callers hold the owning series lock.
+ */
+class OpenChunk {
+
+    static final int POINT_BYTES = 16;
+
+    private final Path headPath;
+    private final FileChannel head;
+    private long[] timestamps = new long[256];
+    private double[] values = new double[256];
+    private int size;
+    private int persisted;
+    private boolean sorted = true;
+    private boolean closed;
+
+    private OpenChunk(Path headPath, FileChannel head) {
+        this.headPath = headPath;
+        this.head = head;
+    }
+
+    static OpenChunk create(Path headPath) throws IOException {
+        return new OpenChunk(headPath, FileChannel.open(headPath,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+    }
+
+    // Reload the points of a head file left by a previous run; a torn last point is dropped
+    static OpenChunk load(Path headPath) throws IOException {
+        byte[] bytes = Files.readAllBytes(headPath);
+        int points = bytes.length / POINT_BYTES;
+        try (FileChannel channel = FileChannel.open(headPath, StandardOpenOption.WRITE)) {
+            channel.truncate((long) points * POINT_BYTES);
+        }
+        OpenChunk chunk = create(headPath);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        for (int i = 0; i < points; i++) {
+            chunk.add(buffer.getLong(), buffer.getDouble());
+        }
+        chunk.persisted = chunk.size;
+        return chunk;
+    }
+
+    void add(long timestamp, double value) {
+        if (size == timestamps.length) {
+            timestamps = Arrays.copyOf(timestamps, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        if (size > 0 && timestamp < timestamps[size - 1]) {
+            sorted = false;
+        }
+        timestamps[size] = timestamp;
+        values[size] = value;
+        size++;
+    }
+
+    // Write and fsync the points added since the last sync
+    void sync() throws IOException {
+        if (closed || persisted == size) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((size - persisted) * POINT_BYTES);
+        for (int i = persisted; i < size; i++) {
+            buffer.putLong(timestamps[i]).putDouble(values[i]);
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            head.write(buffer);
+        }
+        head.force(false);
+        persisted = size;
+    }
+
+    // Points in timestamp order; sorts in place the first time after out-of-order arrivals
+    int sortedView(long[][] timestampsOut, double[][] valuesOut) {
+        if (!sorted) {
+            sortByTimestamp();
+        }
+        timestampsOut[0] = timestamps;
+        valuesOut[0] = values;
+        return size;
+    }
+
+    ChunkEncoder encode() {
+        if (!sorted) {
+            sortByTimestamp();
+        }
+        ChunkEncoder encoder = new ChunkEncoder();
+        for (int i = 0; i < size; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        return encoder;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long sizeBytes() {
+        return (long) size * POINT_BYTES;
+    }
+
+    long lastTimestamp() {
+        long last = Long.MIN_VALUE;
+        for (int i = 0; i < size; i++) {
+            last = Math.max(last, timestamps[i]);
+        }
+        return last;
+    }
+
+    void close() throws IOException {
+        closed = true;
+        head.close();
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(headPath);
+    }
+
+    // Sorting changes the in-memory order only; persisted tracks a count, not positions
+    private void sortByTimestamp() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        long[] ts = timestamps;
+        Arrays.sort(order, (a, b) -> Long.compare(ts[a], ts[b]));
+        long[] sortedTimestamps = new long[timestamps.length];
+        double[] sortedValues = new double[values.length];
+        for (int i = 0; i < size; i++) {
+            sortedTimestamps[i] = timestamps[order[i]];
+            sortedValues[i] = values[order[i]];
+        }
+        timestamps = sortedTimestamps;
+        values = sortedValues;
+        sorted = true;
+    }
+}
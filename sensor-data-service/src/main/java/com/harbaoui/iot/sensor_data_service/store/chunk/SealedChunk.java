@@ -0,0 +1,74 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Immutable, memory-mapped chunk file. Safe to scan without holding the series lock.
+ */
+class SealedChunk {
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+
+    private SealedChunk(Path path, MappedByteBuffer buffer) {
+        this.path = path;
+        this.buffer = buffer;
+        this.count = buffer.getInt(4);
+        this.firstTimestamp = buffer.getLong(8);
+        this.lastTimestamp = buffer.getLong(16);
+    }
+
+    static SealedChunk map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new SealedChunk(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Returns false if the consumer asked to stop
+    boolean scan(long from, long to, ReadingConsumer consumer) {
+        if (lastTimestamp < from || firstTimestamp >= to) {
+            return true;
+        }
+        ChunkDecoder decoder = new ChunkDecoder(buffer);
+        while (decoder.hasNext()) {
+            decoder.next();
+            long timestamp = decoder.timestamp();
+            if (timestamp >= to) {
+                return true;
+            }
+            if (timestamp >= from && !consumer.accept(timestamp, decoder.value())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int count() {
+        return count;
+    }
+
+    long sizeBytes() {
+        return buffer.capacity();
+    }
+
+    long lastTimestamp() {
+        return lastTimestamp;
+    }
+
+    ChunkDecoder decoder() {
+        return new ChunkDecoder(buffer);
+    }
+}
@@ -0,0 +1,284 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * All chunks of one sensor, keyed by the start of their time window.
+ * A window is either open (in memory plus head file) or sealed (compressed, mapped), never both.
+ */
+class SensorSeries {
+
+    private static final String CHUNK_SUFFIX = ".chunk";
+    private static final String HEAD_SUFFIX = ".head";
+
+    private final Path directory;
+    private final long chunkMillis;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final NavigableMap<Long, SealedChunk> sealed = new TreeMap<>();
+    private final NavigableMap<Long, OpenChunk> open = new TreeMap<>();
+
+    SensorSeries(Path directory, long chunkMillis) {
+        this.directory = directory;
+        this.chunkMillis = chunkMillis;
+    }
+
+    // Map sealed chunks and reload head files; a head file wins over a chunk of the same window
+    void load() throws IOException {
+        Files.createDirectories(directory);
+        try (var files = Files.list(directory)) {
+            for (Path path : files.toList()) {
+                String name = path.getFileName().toString();
+                if (name.endsWith(HEAD_SUFFIX)) {
+                    open.put(windowOf(name, HEAD_SUFFIX), OpenChunk.load(path));
+                } else if (name.endsWith(CHUNK_SUFFIX)) {
+                    sealed.put(windowOf(name, CHUNK_SUFFIX), SealedChunk.map(path));
+                } else if (name.endsWith(".tmp")) {
+                    Files.delete(path);
+                }
+            }
+        }
+        for (Long window : open.keySet()) {
+            SealedChunk stale = sealed.remove(window);
+            if (stale != null) {
+                Files.deleteIfExists(stale.path());
+            }
+        }
+    }
+
+    void lock() {
+        lock.lock();
+    }
+
+    void unlock() {
+        lock.unlock();
+    }
+
+    // Caller holds the lock; returns the open chunk the point went to
+    OpenChunk add(long timestamp, double value) throws IOException {
+        long window = Math.floorDiv(timestamp, chunkMillis) * chunkMillis;
+        OpenChunk chunk = open.get(window);
+        if (chunk == null) {
+            chunk = sealed.containsKey(window) ? reopen(window) : OpenChunk.create(path(window, HEAD_SUFFIX));
+            open.put(window, chunk);
+        }
+        chunk.add(timestamp, value);
+        return chunk;
+    }
+
+    // Compress every open chunk whose window ended before the cutoff; returns the number sealed
+    int sealBefore(long cutoff) throws IOException {
+        lock.lock();
+        try {
+            int count = 0;
+            for (Long window : new ArrayList<>(open.headMap(cutoff - chunkMillis, true).keySet())) {
+                seal(window);
+                count++;
+            }
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void scan(long from, long to, ReadingConsumer consumer) {
+        long fromWindow = Math.floorDiv(from, chunkMillis) * chunkMillis;
+        List<Function<ReadingConsumer, Boolean>> sources = new ArrayList<>();
+        lock.lock();
+        try {
+            TreeSet<Long> windows = new TreeSet<>(sealed.subMap(fromWindow, true, to, false).keySet());
+            windows.addAll(open.subMap(fromWindow, true, to, false).keySet());
+            for (Long window : windows) {
+                SealedChunk chunk = sealed.get(window);
+                if (chunk != null) {
+                    sources.add(c -> chunk.scan(from, to, c));
+                } else {
+                    Snapshot snapshot = Snapshot.of(open.get(window), from, to);
+                    sources.add(snapshot::scan);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        for (Function<ReadingConsumer, Boolean> source : sources) {
+            if (!source.apply(consumer)) {
+                return;
+            }
+        }
+    }
+
+    // Hand the newest point to the consumer, if the series has any
+    void latest(ReadingConsumer consumer) {
+        long window;
+        lock.lock();
+        try {
+            Long newestSealed = sealed.isEmpty() ? null : sealed.lastKey();
+            Long newestOpen = open.isEmpty() ? null : open.lastKey();
+            if (newestSealed == null && newestOpen == null) {
+                return;
+            }
+            window = newestSealed == null ? newestOpen : newestOpen == null ? newestSealed : Math.max(newestSealed, newestOpen);
+        } finally {
+            lock.unlock();
+        }
+        long[] newest = {Long.MIN_VALUE, 0};
+        scan(window, window + chunkMillis, (timestamp, value) -> {
+            newest[0] = timestamp;
+            newest[1] = Double.doubleToRawLongBits(value);
+            return true;
+        });
+        if (newest[0] != Long.MIN_VALUE) {
+            consumer.accept(newest[0], Double.longBitsToDouble(newest[1]));
+        }
+    }
+
+    // Drop windows that end at or before the cutoff, oldest first, until about maxRows points are gone
+    Reclaimed deleteBefore(long cutoff, int maxRows) throws IOException {
+        lock.lock();
+        try {
+            long rows = 0;
+            long bytes = 0;
+            long lastExpiredWindow = cutoff - chunkMillis;
+            while (rows < maxRows) {
+                Long sealedWindow = sealed.isEmpty() ? null : sealed.firstKey();
+                Long openWindow = open.isEmpty() ? null : open.firstKey();
+                boolean takeSealed = sealedWindow != null && (openWindow == null || sealedWindow < openWindow);
+                Long window = takeSealed ? sealedWindow : openWindow;
+                if (window == null || window > lastExpiredWindow) {
+                    break;
+                }
+                if (takeSealed) {
+                    SealedChunk chunk = sealed.remove(window);
+                    Files.deleteIfExists(chunk.path());
+                    rows += chunk.count();
+                    bytes += chunk.sizeBytes();
+                } else {
+                    OpenChunk chunk = open.remove(window);
+                    rows += chunk.size();
+                    bytes += chunk.sizeBytes();
+                    chunk.delete();
+                }
+            }
+            return new Reclaimed(rows, bytes);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long sealedBytes() {
+        lock.lock();
+        try {
+            return sealed.values().stream().mapToLong(SealedChunk::sizeBytes).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() throws IOException {
+        lock.lock();
+        try {
+            for (OpenChunk chunk : open.values()) {
+                chunk.sync();
+                chunk.close();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void seal(long window) throws IOException {
+        OpenChunk chunk = open.get(window);
+        chunk.sync();
+        ByteBuffer bytes = chunk.encode().toByteBuffer();
+        Path target = path(window, CHUNK_SUFFIX);
+        Path temporary = directory.resolve(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (bytes.hasRemaining()) {
+                channel.write(bytes);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        sealed.put(window, SealedChunk.map(target));
+        open.remove(window);
+        chunk.delete();
+    }
+
+    // Late data for a sealed window: decode it back into a new head file, then drop the chunk file
+    private OpenChunk reopen(long window) throws IOException {
+        SealedChunk chunk = sealed.get(window);
+        OpenChunk reopened = OpenChunk.create(path(window, HEAD_SUFFIX));
+        ChunkDecoder decoder = chunk.decoder();
+        while (decoder.hasNext()) {
+            decoder.next();
+            reopened.add(decoder.timestamp(), decoder.value());
+        }
+        reopened.sync();
+        sealed.remove(window);
+        Files.deleteIfExists(chunk.path());
+        return reopened;
+    }
+
+    private static int lowerBound(long[] timestamps, int size, long key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timestamps[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private Path path(long window, String suffix) {
+        return directory.resolve(window + suffix);
+    }
+
+    private static long windowOf(String name, String suffix) {
+        return Long.parseLong(name.substring(0, name.length() - suffix.length()));
+    }
+
+    // In-range points of an open chunk, copied so the scan can run outside the lock
+    private record Snapshot(long[] timestamps, double[] values) {
+
+        static Snapshot of(OpenChunk chunk, long from, long to) {
+            long[][] timestamps = new long[1][];
+            double[][] values = new double[1][];
+            int size = chunk.sortedView(timestamps, values);
+            int start = lowerBound(timestamps[0], size, from);
+            int end = lowerBound(timestamps[0], size, to);
+            return new Snapshot(Arrays.copyOfRange(timestamps[0], start, end),
+                    Arrays.copyOfRange(values[0], start, end));
+        }
+
+        boolean scan(ReadingConsumer consumer) {
+            for (int i = 0; i < timestamps.length; i++) {
+                if (!consumer.accept(timestamps[i], values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
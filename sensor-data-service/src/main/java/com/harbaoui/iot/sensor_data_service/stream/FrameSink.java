@@ -0,0 +1,13 @@
+package com.harbaoui.iot.sensor_data_service.stream;
+
+import java.io.IOException;
+
+/**
+ * Transport a subscriber writes its frames to, e.g. an SSE connection.
+ */
+public interface FrameSink {
+
+    void send(String frame) throws IOException;
+
+    void close();
+}
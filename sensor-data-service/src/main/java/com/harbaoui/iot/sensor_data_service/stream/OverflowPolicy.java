@@ -0,0 +1,11 @@
+package com.harbaoui.iot.sensor_data_service.stream;
+
+/**
+ * What a subscriber queue does when a slow consumer lets it fill up.
+ */
+public enum OverflowPolicy {
+    // Discard the oldest queued frame to make room for the new one
+    DROP_OLDEST,
+    // Keep only the newest frame, a slow dashboard always jumps to the current state
+    CONFLATE
+}
@@ -0,0 +1,125 @@
+package com.harbaoui.iot.sensor_data_service.stream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingResponse;
+import com.harbaoui.iot.sensor_data_service.ingest.IngestListener;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fans newly acknowledged readings out to live subscribers.
+ * Each sensor has one topic: a run of readings is serialized once and the same frame is queued
+ * for every subscriber of that sensor, instead of per connection work.
+ */
+@Component
+public class ReadingBroadcaster implements IngestListener {
+
+    private final ObjectMapper objectMapper;
+    private final OverflowPolicy policy;
+    private final int queueCapacity;
+    private final long timeoutMillis;
+    private final ExecutorService sender;
+    private final ConcurrentHashMap<Long, CopyOnWriteArrayList<Subscriber>> topics = new ConcurrentHashMap<>();
+
+    public ReadingBroadcaster(ObjectMapper objectMapper,
+                              @Value("${stream.overflow-policy:DROP_OLDEST}") OverflowPolicy policy,
+                              @Value("${stream.queue-capacity:64}") int queueCapacity,
+                              @Value("${stream.sender-threads:4}") int senderThreads,
+                              @Value("${stream.timeout:30m}") Duration timeout) {
+        this.objectMapper = objectMapper;
+        this.policy = policy;
+        this.queueCapacity = queueCapacity;
+        this.timeoutMillis = timeout.toMillis();
+        AtomicInteger counter = new AtomicInteger();
+        this.sender = Executors.newFixedThreadPool(senderThreads, runnable -> {
+            Thread thread = new Thread(runnable, "stream-sender-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public Subscriber subscribe(long sensorId, FrameSink sink) {
+        Subscriber subscriber = new Subscriber(sink, policy, queueCapacity, sender,
+                closed -> unsubscribe(sensorId, closed));
+        topics.compute(sensorId, (id, topic) -> {
+            CopyOnWriteArrayList<Subscriber> target = topic == null ? new CopyOnWriteArrayList<>() : topic;
+            target.add(subscriber);
+            return target;
+        });
+        return subscriber;
+    }
+
+    // Open a server-sent events stream of the sensor's new readings
+    public SseEmitter openSseStream(long sensorId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = subscribe(sensorId, new SseFrameSink(emitter));
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        return emitter;
+    }
+
+    public int subscriberCount(long sensorId) {
+        List<Subscriber> topic = topics.get(sensorId);
+        return topic == null ? 0 : topic.size();
+    }
+
+    @Override
+    public void onIngest(ReadingBatch batch) {
+        int i = 0;
+        while (i < batch.size()) {
+            long sensorId = batch.sensorId(i);
+            int runStart = i;
+            while (i < batch.size() && batch.sensorId(i) == sensorId) {
+                i++;
+            }
+            List<Subscriber> topic = topics.get(sensorId);
+            if (topic == null || topic.isEmpty()) {
+                continue;
+            }
+            String frame = serialize(batch, runStart, i);
+            for (Subscriber subscriber : topic) {
+                subscriber.publish(frame);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        topics.values().forEach(topic -> topic.forEach(Subscriber::close));
+        sender.shutdown();
+    }
+
+    private void unsubscribe(long sensorId, Subscriber subscriber) {
+        topics.computeIfPresent(sensorId, (id, topic) -> {
+            topic.remove(subscriber);
+            return topic.isEmpty() ? null : topic;
+        });
+    }
+
+    private String serialize(ReadingBatch batch, int from, int to) {
+        List<ReadingResponse> readings = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            readings.add(new ReadingResponse(batch.timestamp(i), batch.value(i)));
+        }
+        try {
+            return objectMapper.writeValueAsString(readings);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unable to serialize readings", e);
+        }
+    }
+}
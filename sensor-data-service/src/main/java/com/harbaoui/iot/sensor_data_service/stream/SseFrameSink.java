@@ -0,0 +1,28 @@
+package com.harbaoui.iot.sensor_data_service.stream;
+
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+
+/**
+ * Writes frames as {@code readings} events on a server-sent events connection.
+ */
+public class SseFrameSink implements FrameSink {
+
+    private final SseEmitter emitter;
+
+    public SseFrameSink(SseEmitter emitter) {
+        this.emitter = emitter;
+    }
+
+    @Override
+    public void send(String frame) throws IOException {
+        emitter.send(SseEmitter.event().name("readings").data(frame, MediaType.APPLICATION_JSON));
+    }
+
+    @Override
+    public void close() {
+        emitter.complete();
+    }
+}
@@ -0,0 +1,79 @@
+package com.harbaoui.iot.sensor_data_service.stream;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * One live connection. Frames wait in a bounded queue and are written by a shared sender pool,
+ * at most one drain task per subscriber at a time, so a slow client only ever delays itself.
+ */
+public class Subscriber {
+
+    private final FrameSink sink;
+    private final ArrayBlockingQueue<String> queue;
+    private final Executor sender;
+    private final Consumer<Subscriber> onClose;
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final AtomicLong dropped = new AtomicLong();
+
+    public Subscriber(FrameSink sink, OverflowPolicy policy, int capacity, Executor sender,
+                      Consumer<Subscriber> onClose) {
+        this.sink = sink;
+        this.queue = new ArrayBlockingQueue<>(policy == OverflowPolicy.CONFLATE ? 1 : capacity);
+        this.sender = sender;
+        this.onClose = onClose;
+    }
+
+    // Queue a frame without ever blocking the publisher
+    public void publish(String frame) {
+        if (closed.get()) {
+            return;
+        }
+        while (!queue.offer(frame)) {
+            if (queue.poll() != null) {
+                dropped.incrementAndGet();
+            }
+        }
+        scheduleDrain();
+    }
+
+    public long dropped() {
+        return dropped.get();
+    }
+
+    public void close() {
+        if (closed.compareAndSet(false, true)) {
+            queue.clear();
+            sink.close();
+            onClose.accept(this);
+        }
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            sender.execute(this::drain);
+        }
+    }
+
+    private void drain() {
+        try {
+            String frame;
+            while (!closed.get() && (frame = queue.poll()) != null) {
+                sink.send(frame);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+        } finally {
+            draining.set(false);
+        }
+        // A frame published after the last poll but before the flag was cleared still needs a drain
+        if (!closed.get() && !queue.isEmpty()) {
+            scheduleDrain();
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.harbaoui.iot.sensor_data_service.auth;
+
+import com.harbaoui.iot.sensor_data_service.auth.DeviceRegistry.Decision;
+import com.harbaoui.iot.sensor_data_service.dto.DeviceChange;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class DeviceRegistryTest {
+
+    @Test
+    void shouldFollowUpdatesAndRevocationsFromTheFeed() throws Exception {
+        // Given a device of user 5 allowed for sensors 7 and 42
+        DeviceRegistry registry = new DeviceRegistry();
+        registry.apply(List.of(change(1, 10, "key-a", false, 42, 7)), 1);
+
+        // Then it may publish for those sensors only
+        assertEquals(Decision.GRANTED, registry.authorize("key-a", 7));
+        assertEquals(Decision.SENSOR_NOT_ALLOWED, registry.authorize("key-a", 8));
+        assertEquals(Decision.UNKNOWN_KEY, registry.authorize("key-b", 7));
+        assertEquals(5, registry.userOf("key-a"));
+        assertEquals(Decision.GRANTED, registry.authorize("key-a", batch(7, 7, 42, 42)));
+        assertEquals(Decision.SENSOR_NOT_ALLOWED, registry.authorize("key-a", batch(7, 7, 9)));
+
+        // When the device is moved to sensor 9, then revoked in a later delta
+        registry.apply(List.of(change(2, 10, "key-a", false, 9), change(3, 11, "key-b", false, 1)), 3);
+        assertEquals(Decision.GRANTED, registry.authorize("key-a", 9));
+        assertEquals(Decision.SENSOR_NOT_ALLOWED, registry.authorize("key-a", 7));
+        registry.apply(List.of(change(4, 10, "key-a", true)), 4);
+
+        // Then only the other device is left, and the registry remembers where the feed stopped
+        assertEquals(Decision.UNKNOWN_KEY, registry.authorize("key-a", 9));
+        assertEquals(Decision.GRANTED, registry.authorize("key-b", 1));
+        assertEquals(1, registry.size());
+        assertEquals(4, registry.version());
+    }
+
+    @Test
+    void shouldKeepEveryDeviceWhenGrowingAndApplyOnlyTheLatestChangeOfEach() throws Exception {
+        // Given fifty thousand devices delivered in several pages, the last one repeating earlier devices
+        DeviceRegistry registry = new DeviceRegistry();
+        int devices = 50_000;
+        long version = 0;
+        for (int page = 0; page < 5; page++) {
+            List<DeviceChange> changes = new ArrayList<>();
+            for (int i = page * 10_000; i < (page + 1) * 10_000; i++) {
+                changes.add(change(++version, i + 1, "key-" + i, false, i));
+            }
+            registry.apply(changes, version);
+        }
+        List<DeviceChange> repeats = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            repeats.add(change(++version, i + 1, "key-" + i, false, -1));
+            repeats.add(change(++version, i + 1, "key-" + i, false, i, 1_000_000 + i));
+        }
+        registry.apply(repeats, version);
+
+        // Then each device is found with its latest sensors
+        assertEquals(devices, registry.size());
+        for (int i = 0; i < devices; i++) {
+            assertEquals(Decision.GRANTED, registry.authorize("key-" + i, i));
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(Decision.GRANTED, registry.authorize("key-" + i, 1_000_000 + i));
+            assertEquals(Decision.SENSOR_NOT_ALLOWED, registry.authorize("key-" + i, -1));
+        }
+        assertEquals(version, registry.version());
+    }
+
+    private static DeviceChange change(long version, long deviceId, String apiKey, boolean revoked, long... sensorIds)
+            throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+        return new DeviceChange(version, deviceId, 5, HexFormat.of().formatHex(digest), sensorIds, revoked);
+    }
+
+    private static ReadingBatch batch(long... sensorIds) {
+        ReadingBatch batch = new ReadingBatch(sensorIds.length);
+        for (long sensorId : sensorIds) {
+            batch.add(sensorId, 1_700_000_000_000L, 1.0);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,61 @@
+package com.harbaoui.iot.sensor_data_service.cache;
+
+import com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoder;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.service.ReadingQueryService;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.mockito.Mockito.mock;
+
+/**
+ * Latency of a bulk latest-value lookup plus rendering of the binary response, answered from the cache.
+ * Not a unit test: wall-clock numbers depend on the machine, so it is run by hand from the module directory:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.harbaoui.iot.sensor_data_service.cache.LastValueCacheBenchmark 10000
+ * </pre>
+ */
+public class LastValueCacheBenchmark {
+
+    private static final int WARMUP_RUNS = 2_000;
+    private static final int MEASURED_RUNS = 1_000;
+
+    public static void main(String[] args) {
+        int sensors = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        ReadingStore readingStore = mock(ReadingStore.class);
+        LastValueCache cache = new LastValueCache(readingStore, sensors * 2);
+        ReadingQueryService queryService = new ReadingQueryService(readingStore, cache, 100, sensors);
+        long[] ids = new long[sensors];
+        ReadingBatch batch = new ReadingBatch(sensors);
+        for (int i = 0; i < sensors; i++) {
+            ids[i] = 1_000_000L + i * 7L;
+            batch.add(ids[i], 1_700_000_000_000L + i, i / 10.0);
+        }
+        cache.onIngest(batch);
+        queryService.findLatest(ids);
+
+        long[] samples = new long[MEASURED_RUNS];
+        long checksum = 0;
+        for (int run = -WARMUP_RUNS; run < samples.length; run++) {
+            long start = System.nanoTime();
+            ByteBuffer body = BinaryReadingDecoder.encode(queryService.findLatestBatch(ids));
+            long elapsed = System.nanoTime() - start;
+            checksum += body.limit();
+            if (run >= 0) {
+                samples[run] = elapsed;
+            }
+        }
+
+        Arrays.sort(samples);
+        System.out.printf("Latest of %d sensors: median %d us, p90 %d us, p99 %d us (checksum %d)%n",
+                sensors,
+                samples[samples.length / 2] / 1000,
+                samples[samples.length * 9 / 10] / 1000,
+                samples[samples.length * 99 / 100] / 1000,
+                checksum);
+    }
+}
@@ -0,0 +1,87 @@
+package com.harbaoui.iot.sensor_data_service.cache;
+
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoder;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.service.ReadingQueryService;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.SensorReadingConsumer;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+public class LastValueCacheTest {
+
+    private static final int SENSORS = 10_000;
+
+    private final ReadingStore readingStore = mock(ReadingStore.class);
+
+    @Test
+    void shouldKeepNewestReadingAndCompleteEntriesFromStorageOnce() {
+        // Given storage knows a newer reading of sensor 1 than the late one ingested after startup
+        doAnswer(invocation -> {
+            long[] ids = invocation.getArgument(0);
+            SensorReadingConsumer consumer = invocation.getArgument(1);
+            if (Arrays.stream(ids).anyMatch(id -> id == 1L)) {
+                consumer.accept(1L, 500L, 5.0);
+            }
+            return null;
+        }).when(readingStore).latest(any(), any());
+        LastValueCache cache = new LastValueCache(readingStore, 1000);
+        ReadingBatch batch = new ReadingBatch(3);
+        batch.add(1L, 100L, 1.0);
+        batch.add(2L, 200L, 2.0);
+        batch.add(2L, 150L, 1.5);
+        cache.onIngest(batch);
+
+        // When
+        List<LatestReadingResponse> first = new ReadingQueryService(readingStore, cache, 100, 100)
+                .findLatest(new long[] {1L, 2L, 3L});
+        List<LatestReadingResponse> second = new ReadingQueryService(readingStore, cache, 100, 100)
+                .findLatest(new long[] {3L, 2L, 1L});
+
+        // Then sensor 3 has no reading, and storage was only asked the first time
+        assertEquals(List.of(new LatestReadingResponse(1L, 500L, 5.0), new LatestReadingResponse(2L, 200L, 2.0)), first);
+        assertEquals(List.of(new LatestReadingResponse(2L, 200L, 2.0), new LatestReadingResponse(1L, 500L, 5.0)), second);
+        verify(readingStore, times(1)).latest(any(), any());
+    }
+
+    @Test
+    void shouldAnswerTenThousandIdsFromMemory() {
+        // Given ten thousand sensors, loaded once
+        LastValueCache cache = new LastValueCache(readingStore, SENSORS * 2);
+        ReadingQueryService queryService = new ReadingQueryService(readingStore, cache, 100, SENSORS);
+        long[] ids = new long[SENSORS];
+        ReadingBatch batch = new ReadingBatch(SENSORS);
+        for (int i = 0; i < SENSORS; i++) {
+            ids[i] = 1_000_000L + i * 7L;
+            batch.add(ids[i], 1_700_000_000_000L + i, i / 10.0);
+        }
+        cache.onIngest(batch);
+
+        // When the binary response is rendered twice
+        ByteBuffer first = BinaryReadingDecoder.encode(queryService.findLatestBatch(ids));
+        ByteBuffer second = BinaryReadingDecoder.encode(queryService.findLatestBatch(ids));
+
+        // Then every sensor is answered in request order, and storage was asked only once
+        assertEquals(SENSORS, cache.size());
+        assertEquals(BinaryReadingDecoder.HEADER_BYTES + SENSORS * BinaryReadingDecoder.READING_BYTES, first.limit());
+        assertEquals(first, second);
+        assertEquals(SENSORS, first.getInt(0));
+        for (int i = 0; i < SENSORS; i++) {
+            int offset = BinaryReadingDecoder.HEADER_BYTES + i * BinaryReadingDecoder.READING_BYTES;
+            assertEquals(ids[i], first.getLong(offset));
+            assertEquals(1_700_000_000_000L + i, first.getLong(offset + 8));
+        }
+        verify(readingStore, times(1)).latest(any(), any());
+    }
+}
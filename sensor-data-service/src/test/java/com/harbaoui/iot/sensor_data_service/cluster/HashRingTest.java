@@ -0,0 +1,70 @@
+package com.harbaoui.iot.sensor_data_service.cluster;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HashRingTest {
+
+    private static final int SENSORS = 100_000;
+    private static final List<String> MEMBERS = List.of("node-a:8081", "node-b:8081", "node-c:8081", "node-d:8081");
+
+    @Test
+    void shouldSpreadSensorsEvenlyWhateverTheMemberOrder() {
+        HashRing ring = new HashRing(MEMBERS, 128);
+        HashRing reordered = new HashRing(List.of(MEMBERS.get(2), MEMBERS.get(0), MEMBERS.get(3), MEMBERS.get(1)), 128);
+
+        Map<String, Integer> owned = new HashMap<>();
+        for (long sensorId = 1; sensorId <= SENSORS; sensorId++) {
+            String owner = ring.ownerOf(sensorId);
+            assertEquals(owner, reordered.ownerOf(sensorId));
+            owned.merge(owner, 1, Integer::sum);
+        }
+
+        // Each of four members owns a quarter, give or take a fifth of it
+        assertEquals(MEMBERS.size(), owned.size());
+        owned.values().forEach(count -> assertTrue(Math.abs(count - SENSORS / 4) < SENSORS / 20, "Owned " + count));
+    }
+
+    @Test
+    void shouldOnlyMoveSensorsToAJoiningMember() {
+        HashRing before = new HashRing(MEMBERS, 128);
+        HashRing after = new HashRing(List.of("node-a:8081", "node-b:8081", "node-c:8081", "node-d:8081", "node-e:8081"), 128);
+
+        int moved = 0;
+        for (long sensorId = 1; sensorId <= SENSORS; sensorId++) {
+            String owner = after.ownerOf(sensorId);
+            if (!owner.equals(before.ownerOf(sensorId))) {
+                assertEquals("node-e:8081", owner);
+                moved++;
+            }
+        }
+
+        // About a fifth of the fleet, all of it to the new member
+        assertTrue(moved > SENSORS * 0.15 && moved < SENSORS * 0.25, "Moved " + moved);
+    }
+
+    @Test
+    void shouldOnlyMoveTheSensorsOfALeavingMember() {
+        HashRing before = new HashRing(MEMBERS, 128);
+        HashRing after = new HashRing(MEMBERS.subList(0, 3), 128);
+
+        for (long sensorId = 1; sensorId <= SENSORS; sensorId++) {
+            String owner = before.ownerOf(sensorId);
+            if (!owner.equals("node-d:8081")) {
+                assertEquals(owner, after.ownerOf(sensorId));
+            }
+        }
+    }
+
+    @Test
+    void shouldHaveNoOwnerWhenEmpty() {
+        assertNull(new HashRing(List.of(), 128).ownerOf(42L));
+    }
+}
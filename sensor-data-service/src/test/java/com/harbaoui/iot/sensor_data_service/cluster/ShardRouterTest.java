@@ -0,0 +1,175 @@
+package com.harbaoui.iot.sensor_data_service.cluster;
+
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.dto.QuantileResponse;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingResponse;
+import com.harbaoui.iot.sensor_data_service.exception.ShardUnavailableException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.SketchRepository;
+import com.harbaoui.iot.sensor_data_service.rollup.QuantileSketch;
+import com.harbaoui.iot.sensor_data_service.service.IngestionService;
+import com.harbaoui.iot.sensor_data_service.service.QuantileService;
+import com.harbaoui.iot.sensor_data_service.service.ReadingQueryService;
+import com.harbaoui.iot.sensor_data_service.service.RollupService;
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cloud.client.discovery.DiscoveryClient;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class ShardRouterTest {
+
+    private static final URI SELF = URI.create("http://node-a:8081");
+    private static final URI PEER = URI.create("http://node-b:8081");
+    private static final String SECRET = "cluster-secret";
+
+    private final ShardClient shardClient = mock(ShardClient.class);
+    private final IngestionService ingestionService = mock(IngestionService.class);
+    private final ReadingQueryService readingQueryService = mock(ReadingQueryService.class);
+    private final List<ReadingBatch> local = new ArrayList<>();
+    private final List<ReadingBatch> forwarded = new ArrayList<>();
+    private ShardTopology topology;
+    private ShardRouter router;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        topology = new ShardTopology(mock(DiscoveryClient.class), mock(ObjectProvider.class), true, "sensor-data-service", 128);
+        topology.update("node-a", Map.of("node-a", SELF, "node-b", PEER));
+        router = new ShardRouter(topology, shardClient, ingestionService, readingQueryService,
+                mock(RollupService.class), mock(QuantileService.class), SECRET, 2, 100_000);
+        doAnswer(invocation -> {
+            ReadingBatch batch = invocation.getArgument(0);
+            local.add(batch);
+            return batch.size();
+        }).when(ingestionService).ingest(any(ReadingBatch.class));
+        doAnswer(invocation -> {
+            ReadingBatch batch = invocation.getArgument(1);
+            forwarded.add(batch);
+            return batch.size();
+        }).when(shardClient).forward(eq(PEER), any(ReadingBatch.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        router.close();
+    }
+
+    @Test
+    void shouldIngestLocalSensorsAndForwardTheOthersInOneBatch() {
+        // Given a batch of 100 sensors, three readings each
+        ReadingBatch batch = new ReadingBatch(300);
+        for (long sensorId = 1; sensorId <= 100; sensorId++) {
+            for (int i = 0; i < 3; i++) {
+                batch.add(sensorId, i, sensorId);
+            }
+        }
+
+        // When
+        int accepted = router.ingest(batch, false);
+
+        // Then every reading went to its owner, remote ones in a single request
+        assertEquals(300, accepted);
+        assertEquals(1, local.size());
+        assertEquals(1, forwarded.size());
+        assertEquals(300, local.get(0).size() + forwarded.get(0).size());
+        for (int i = 0; i < local.get(0).size(); i++) {
+            assertNull(topology.remoteOwnerOf(local.get(0).sensorId(i)));
+        }
+        for (int i = 0; i < forwarded.get(0).size(); i++) {
+            assertEquals(PEER, topology.remoteOwnerOf(forwarded.get(0).sensorId(i)));
+        }
+    }
+
+    @Test
+    void shouldServeForwardedRequestsLocally() {
+        ReadingBatch batch = new ReadingBatch(100);
+        for (long sensorId = 1; sensorId <= 100; sensorId++) {
+            batch.add(sensorId, 0, 0);
+        }
+
+        assertTrue(router.isForwarded(SECRET));
+        assertFalse(router.isForwarded("guess"));
+        assertEquals(100, router.ingest(batch, true));
+        verify(shardClient, never()).forward(any(), any());
+    }
+
+    @Test
+    void shouldFailWhenAnOwnerIsUnreachable() {
+        when(shardClient.forward(eq(PEER), any(ReadingBatch.class))).thenThrow(new ShardUnavailableException("down"));
+        ReadingBatch batch = new ReadingBatch(100);
+        for (long sensorId = 1; sensorId <= 100; sensorId++) {
+            batch.add(sensorId, 0, 0);
+        }
+
+        assertThrows(ShardUnavailableException.class, () -> router.ingest(batch, false));
+    }
+
+    @Test
+    void shouldMergeRangeQueriesAndLatestReadingsOfEveryMember() {
+        when(readingQueryService.findReadings(7L, 0, 100, 3))
+                .thenReturn(List.of(new ReadingResponse(10, 1), new ReadingResponse(30, 3)));
+        when(shardClient.readings(PEER, 7L, 0, 100, 3))
+                .thenReturn(List.of(new ReadingResponse(20, 2), new ReadingResponse(40, 4)));
+        when(readingQueryService.findLatest(any()))
+                .thenReturn(List.of(new LatestReadingResponse(7L, 30, 3), new LatestReadingResponse(8L, 50, 5)));
+        when(shardClient.latest(eq(PEER), any())).thenReturn(List.of(new LatestReadingResponse(7L, 40, 4)));
+
+        List<ReadingResponse> readings = router.findReadings(7L, 0, 100, 3, false);
+        List<LatestReadingResponse> latest = router.findLatest(new long[] {8L, 7L, 9L}, false);
+
+        assertEquals(List.of(10L, 20L, 30L), readings.stream().map(ReadingResponse::getTimestamp).toList());
+        assertEquals(List.of(new LatestReadingResponse(8L, 50, 5), new LatestReadingResponse(7L, 40, 4)), latest);
+    }
+
+    @Test
+    void shouldMergeQuantileSketchesOfEveryMember() {
+        // Given values 1..50 stored here and 51..100 on the peer, which was the owner before a rebalance
+        ReadingStore readingStore = mock(ReadingStore.class);
+        doAnswer(invocation -> {
+            ReadingConsumer consumer = invocation.getArgument(3);
+            for (int i = 1; i <= 50; i++) {
+                consumer.accept(i, i);
+            }
+            return null;
+        }).when(readingStore).scan(eq(7L), eq(0L), eq(1000L), any());
+        QuantileSketch peerSketch = new QuantileSketch();
+        for (int i = 51; i <= 100; i++) {
+            peerSketch.add(i);
+        }
+        when(shardClient.sketch(PEER, 7L, 0, 1000)).thenReturn(peerSketch);
+        QuantileService quantileService = new QuantileService(mock(SketchRepository.class), readingStore, 0.01, 2048, 8784);
+        ShardRouter quantileRouter = new ShardRouter(topology, shardClient, ingestionService, readingQueryService,
+                mock(RollupService.class), quantileService, SECRET, 2, 100_000);
+
+        // When
+        QuantileResponse response = quantileRouter.quantiles(7L, 0, 1000, new double[] {0, 0.5, 1}, false);
+        quantileRouter.close();
+
+        // Then the percentiles are those of all hundred values
+        assertEquals(100, response.getCount());
+        assertEquals(1.0, response.getQuantiles().get(0).getValue());
+        assertEquals(50.5, response.getQuantiles().get(1).getValue(), 50.5 * 0.01 + 0.5);
+        assertEquals(100.0, response.getQuantiles().get(2).getValue());
+    }
+}
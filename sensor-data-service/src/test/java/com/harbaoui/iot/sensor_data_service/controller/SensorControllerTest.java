@@ -0,0 +1,109 @@
+package com.harbaoui.iot.sensor_data_service.controller;
+
+import com.harbaoui.iot.sensor_data_service.cluster.ShardRouter;
+import com.harbaoui.iot.sensor_data_service.dto.LatestReadingResponse;
+import com.harbaoui.iot.sensor_data_service.export.ReadingExporter;
+import com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoder;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.service.DeviceAuthorizationService;
+import com.harbaoui.iot.sensor_data_service.service.IngestionService;
+import com.harbaoui.iot.sensor_data_service.stream.ReadingBroadcaster;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.StringJoiner;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@WebMvcTest(SensorController.class)
+public class SensorControllerTest {
+
+    private static final int SENSORS = 10_000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @MockitoBean
+    private ShardRouter shardRouter;
+
+    @MockitoBean
+    private IngestionService ingestionService;
+
+    @MockitoBean
+    private ReadingBroadcaster readingBroadcaster;
+
+    @MockitoBean
+    private ReadingExporter readingExporter;
+
+    @MockitoBean
+    private BinaryReadingDecoder binaryReadingDecoder;
+
+    @MockitoBean
+    private DeviceAuthorizationService deviceAuthorizationService;
+
+    @Test
+    void shouldTakeTenThousandLatestIdsFromTheBodyAndAnswerInBinary() throws Exception {
+        // Given ten thousand sensors with a reading each, far more ids than fit in a URL
+        long[] ids = new long[SENSORS];
+        StringJoiner json = new StringJoiner(",", "[", "]");
+        ReadingBatch latest = new ReadingBatch(SENSORS);
+        for (int i = 0; i < SENSORS; i++) {
+            ids[i] = 1_000_000_000L + i * 7L;
+            json.add(Long.toString(ids[i]));
+            latest.add(ids[i], 1_700_000_000_000L + i, i / 10.0);
+        }
+        when(shardRouter.findLatestBatch(any(), anyBoolean())).thenReturn(latest);
+
+        // When the ids are posted with a binary Accept header
+        byte[] body = mockMvc.perform(post("/sensors/latest")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .accept(BinaryReadingDecoder.CONTENT_TYPE)
+                        .content(json.toString()))
+                .andExpect(status().isOk())
+                .andExpect(content().contentType(BinaryReadingDecoder.CONTENT_TYPE))
+                .andReturn().getResponse().getContentAsByteArray();
+
+        // Then every id reached the router in order, and every reading came back in the binary layout
+        ArgumentCaptor<long[]> requested = ArgumentCaptor.forClass(long[].class);
+        verify(shardRouter).findLatestBatch(requested.capture(), eq(false));
+        assertArrayEquals(ids, requested.getValue());
+        assertEquals(BinaryReadingDecoder.HEADER_BYTES + SENSORS * BinaryReadingDecoder.READING_BYTES, body.length);
+        ByteBuffer buffer = ByteBuffer.wrap(body);
+        assertEquals(SENSORS, buffer.getInt());
+        assertEquals(ids[0], buffer.getLong());
+    }
+
+    @Test
+    void shouldAnswerPostedLatestIdsInJsonByDefault() throws Exception {
+        // Given one of two sensors has a reading
+        when(shardRouter.findLatest(any(), anyBoolean())).thenReturn(List.of(new LatestReadingResponse(2L, 20L, 2.5)));
+
+        // When / Then the JSON answer leaves out the sensor without readings
+        mockMvc.perform(post("/sensors/latest")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("[1, 2]"))
+                .andExpect(status().isOk())
+                .andExpect(content().contentTypeCompatibleWith(MediaType.APPLICATION_JSON))
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].sensorId").value(2))
+                .andExpect(jsonPath("$[0].value").value(2.5));
+        verify(shardRouter).findLatest(new long[] {1L, 2L}, false);
+    }
+}
@@ -0,0 +1,129 @@
+package com.harbaoui.iot.sensor_data_service.export;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.ReadingBatchRepository;
+import com.harbaoui.iot.sensor_data_service.store.JdbcReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+import com.harbaoui.iot.sensor_data_service.store.SensorReadingConsumer;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Exports through the JDBC store's forward-only scan: lines must reach the client while the result set
+ * is still being read, not once every row has been collected.
+ */
+@DataJpaTest
+@Import({JdbcReadingStore.class, ReadingBatchRepository.class})
+@TestPropertySource(properties = "spring.jpa.show-sql=false")
+public class JdbcReadingExportTest {
+
+    private static final int POINTS = 100_000;
+
+    @Autowired
+    private JdbcReadingStore readingStore;
+
+    @Autowired
+    private ReadingBatchRepository readingBatchRepository;
+
+    @Test
+    void shouldWriteRowsToTheClientWhileTheScanIsStillReadingThem() throws IOException {
+        // Given 100k readings of sensor 1, and readings of sensor 2 in the same window
+        ReadingBatch batch = new ReadingBatch(POINTS + 10);
+        for (int i = 0; i < POINTS; i++) {
+            batch.add(1L, 1_000L + i, i % 100 + 0.5);
+        }
+        for (int i = 0; i < 10; i++) {
+            batch.add(2L, 1_000L + i, -1.0);
+        }
+        readingBatchRepository.insert(batch);
+        CountingStore store = new CountingStore(readingStore);
+        FirstWriteOutputStream out = new FirstWriteOutputStream(store);
+
+        // When
+        long written = new ReadingExporter(store).export(1L, 0, Long.MAX_VALUE, ExportFormat.CSV, out);
+
+        // Then every row of the sensor is exported, and the first bytes left before a tenth of them were read
+        assertEquals(POINTS, written);
+        assertEquals(POINTS + 1, out.lines);
+        assertTrue(out.rowsReadAtFirstWrite > 0 && out.rowsReadAtFirstWrite < POINTS / 10,
+                "first write after " + out.rowsReadAtFirstWrite + " rows");
+    }
+
+    // Counts the rows the scan hands out
+    private static class CountingStore implements ReadingStore {
+
+        private final ReadingStore delegate;
+        private long rowsRead;
+
+        CountingStore(ReadingStore delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void append(ReadingBatch batch) {
+            delegate.append(batch);
+        }
+
+        @Override
+        public void scan(long sensorId, long from, long to, ReadingConsumer consumer) {
+            delegate.scan(sensorId, from, to, (timestamp, value) -> {
+                rowsRead++;
+                return consumer.accept(timestamp, value);
+            });
+        }
+
+        @Override
+        public void latest(long[] sensorIds, SensorReadingConsumer consumer) {
+            delegate.latest(sensorIds, consumer);
+        }
+
+        @Override
+        public long[] sensorIds() {
+            return delegate.sensorIds();
+        }
+
+        @Override
+        public Reclaimed deleteBefore(long sensorId, long cutoff, int maxRows) {
+            return delegate.deleteBefore(sensorId, cutoff, maxRows);
+        }
+    }
+
+    private static class FirstWriteOutputStream extends OutputStream {
+
+        private final CountingStore store;
+        private long rowsReadAtFirstWrite = -1;
+        private long lines;
+
+        FirstWriteOutputStream(CountingStore store) {
+            this.store = store;
+        }
+
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            if (rowsReadAtFirstWrite < 0) {
+                rowsReadAtFirstWrite = store.rowsRead;
+            }
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
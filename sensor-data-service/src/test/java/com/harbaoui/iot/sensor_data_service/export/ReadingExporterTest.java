@@ -0,0 +1,124 @@
+package com.harbaoui.iot.sensor_data_service.export;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import com.harbaoui.iot.sensor_data_service.store.Reclaimed;
+import com.harbaoui.iot.sensor_data_service.store.SensorReadingConsumer;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Runs under the module's test heap limit (-Xmx256m in the pom): ten million readings
+ * would need well over that if they were ever materialized as a list.
+ */
+public class ReadingExporterTest {
+
+    private static final long POINTS = 10_000_000L;
+
+    @Test
+    void shouldStreamTenMillionPointsInConstantMemory() throws IOException {
+        // Given a store that generates points on the fly
+        ReadingExporter exporter = new ReadingExporter(new SyntheticStore());
+        CountingOutputStream out = new CountingOutputStream();
+
+        // When
+        long written = exporter.export(1L, 0, POINTS, ExportFormat.CSV, out);
+
+        // Then
+        assertEquals(POINTS, written);
+        assertEquals(POINTS + 1, out.lines);
+        assertTrue(Runtime.getRuntime().maxMemory() < 512L * 1024 * 1024, "Test must run with a small heap");
+    }
+
+    @Test
+    void shouldWriteNdjsonLines() throws IOException {
+        ReadingExporter exporter = new ReadingExporter(new SyntheticStore());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exporter.export(9L, 10, 12, ExportFormat.NDJSON, out);
+
+        assertEquals("{\"sensorId\":9,\"timestamp\":10,\"value\":10.5}\n"
+                + "{\"sensorId\":9,\"timestamp\":11,\"value\":11.5}\n", out.toString());
+    }
+
+    @Test
+    void shouldMergeExportsOfOtherInstancesInTimestampOrder() throws IOException {
+        // Given this instance holds readings 10 and 11, and two others hold earlier, interleaved and later ones
+        ReadingExporter exporter = new ReadingExporter(new SyntheticStore());
+        ByteArrayInputStream before = csv("timestamp,value\n5,1.25\n10,2.0\n");
+        ByteArrayInputStream after = csv("timestamp,value\n11,NaN\n20,3.0\n");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // When
+        long written = exporter.export(9L, 10, 12, ExportFormat.CSV, out, List.of(before, after));
+
+        // Then
+        assertEquals(6, written);
+        assertEquals("timestamp,value\n5,1.25\n10,10.5\n10,2.0\n11,11.5\n11,NaN\n20,3.0\n", out.toString());
+    }
+
+    private static ByteArrayInputStream csv(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static class SyntheticStore implements ReadingStore {
+
+        @Override
+        public void append(ReadingBatch batch) {
+        }
+
+        @Override
+        public void scan(long sensorId, long from, long to, ReadingConsumer consumer) {
+            for (long timestamp = from; timestamp < to; timestamp++) {
+                if (!consumer.accept(timestamp, (timestamp % 100) + 0.5)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void latest(long[] sensorIds, SensorReadingConsumer consumer) {
+        }
+
+        @Override
+        public long[] sensorIds() {
+            return new long[0];
+        }
+
+        @Override
+        public Reclaimed deleteBefore(long sensorId, long cutoff, int maxRows) {
+            return Reclaimed.NONE;
+        }
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long lines;
+
+        @Override
+        public void write(int b) {
+            if (b == '\n') {
+                lines++;
+            }
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n') {
+                    lines++;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.sensor_data_service.dto.ReadingRequest;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * CPU time to turn a million readings into batches, from binary bodies against JSON bodies bound to DTOs
+ * the way the JSON endpoint does it.
+ * Not a unit test: CPU numbers depend on the machine, so it is run by hand from the module directory:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.harbaoui.iot.sensor_data_service.ingest.BinaryReadingDecoderBenchmark 1000000 50000
+ * </pre>
+ */
+public class BinaryReadingDecoderBenchmark {
+
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) throws IOException {
+        int readings = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int perBody = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+        int bodies = readings / perBody;
+        byte[] binaryBody = BinaryReadingDecoder.encode(readings(perBody)).array();
+        byte[] jsonBody = json(readings(perBody)).getBytes(StandardCharsets.UTF_8);
+        ObjectMapper objectMapper = new ObjectMapper();
+        BinaryReadingDecoder decoder = new BinaryReadingDecoder(new DirectBufferPool(64 * 1024, 4));
+
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            decodeBinary(decoder, binaryBody, bodies, perBody);
+            decodeJson(objectMapper, jsonBody, bodies);
+        }
+
+        long binaryCpu = Long.MAX_VALUE;
+        long jsonCpu = Long.MAX_VALUE;
+        for (int run = 0; run < MEASURED_RUNS; run++) {
+            binaryCpu = Math.min(binaryCpu, cpuNanos(() -> decodeBinary(decoder, binaryBody, bodies, perBody)));
+            jsonCpu = Math.min(jsonCpu, cpuNanos(() -> decodeJson(objectMapper, jsonBody, bodies)));
+        }
+
+        System.out.printf("%d bodies of %d readings (%d bytes binary, %d bytes JSON)%n",
+                bodies, perBody, binaryBody.length, jsonBody.length);
+        System.out.printf("Best CPU time: binary %.1f ms, json %.1f ms (%.1fx)%n",
+                binaryCpu / 1e6, jsonCpu / 1e6, (double) jsonCpu / binaryCpu);
+    }
+
+    private static void decodeBinary(BinaryReadingDecoder decoder, byte[] body, int bodies, int perBody)
+            throws IOException {
+        for (int i = 0; i < bodies; i++) {
+            decoder.decode(new ByteArrayInputStream(body), perBody);
+        }
+    }
+
+    // What the JSON endpoint does: bind to DTOs, then copy them into a batch
+    private static void decodeJson(ObjectMapper objectMapper, byte[] body, int bodies) throws IOException {
+        for (int i = 0; i < bodies; i++) {
+            List<ReadingRequest> requests = objectMapper.readValue(body, new TypeReference<List<ReadingRequest>>() { });
+            ReadingBatch batch = new ReadingBatch(requests.size());
+            for (ReadingRequest request : requests) {
+                batch.add(7L, request.getTimestamp(), request.getValue());
+            }
+        }
+    }
+
+    private static long cpuNanos(IoTask task) throws IOException {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        task.run();
+        return threads.getCurrentThreadCpuTime() - start;
+    }
+
+    private static ReadingBatch readings(int count) {
+        ReadingBatch batch = new ReadingBatch(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(7L, 1_700_000_000_000L + i * 1_000L, 20 + (i % 1000) / 100.0);
+        }
+        return batch;
+    }
+
+    private static String json(ReadingBatch batch) {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < batch.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"timestamp\":").append(batch.timestamp(i)).append(",\"value\":").append(batch.value(i)).append('}');
+        }
+        return json.append(']').toString();
+    }
+
+    private interface IoTask {
+        void run() throws IOException;
+    }
+}
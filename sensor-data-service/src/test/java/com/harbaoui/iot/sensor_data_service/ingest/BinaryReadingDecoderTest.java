@@ -0,0 +1,59 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import com.harbaoui.iot.sensor_data_service.exception.InvalidBatchException;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class BinaryReadingDecoderTest {
+
+    private static final int MAX_BATCH = 50_000;
+
+    // Small buffers so that readings straddle buffer boundaries
+    private final BinaryReadingDecoder decoder = new BinaryReadingDecoder(new DirectBufferPool(100, 4));
+
+    @Test
+    void shouldDecodeReadingsOfSeveralSensors() throws IOException {
+        ReadingBatch sent = new ReadingBatch(3);
+        sent.add(1L, 1_000L, 20.5);
+        sent.add(2L, 1_001L, -3.25);
+        sent.add(1L, 1_002L, Double.MAX_VALUE);
+
+        ReadingBatch decoded = decoder.decode(stream(BinaryReadingDecoder.encode(sent)), MAX_BATCH);
+
+        assertEquals(3, decoded.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(sent.sensorId(i), decoded.sensorId(i));
+            assertEquals(sent.timestamp(i), decoded.timestamp(i));
+            assertEquals(sent.value(i), decoded.value(i));
+        }
+    }
+
+    @Test
+    void shouldRejectMalformedBodies() {
+        ReadingBatch sent = new ReadingBatch(2);
+        sent.add(1L, 1L, 1.0);
+        sent.add(1L, 2L, 2.0);
+        byte[] body = BinaryReadingDecoder.encode(sent).array();
+
+        // Truncated, trailing bytes, empty, and a count above the limit
+        assertThrows(InvalidBatchException.class,
+                () -> decoder.decode(new ByteArrayInputStream(Arrays.copyOf(body, body.length - 1)), MAX_BATCH));
+        assertThrows(InvalidBatchException.class,
+                () -> decoder.decode(new ByteArrayInputStream(Arrays.copyOf(body, body.length + 24)), MAX_BATCH));
+        assertThrows(InvalidBatchException.class,
+                () -> decoder.decode(new ByteArrayInputStream(new byte[0]), MAX_BATCH));
+        assertThrows(InvalidBatchException.class,
+                () -> decoder.decode(new ByteArrayInputStream(body), 1));
+    }
+
+    private static ByteArrayInputStream stream(ByteBuffer buffer) {
+        return new ByteArrayInputStream(buffer.array(), 0, buffer.limit());
+    }
+}
@@ -0,0 +1,71 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import com.harbaoui.iot.sensor_data_service.service.IngestionService;
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class ReadingFlusherTest {
+
+    private final ReadingStore readingStore = mock(ReadingStore.class, CALLS_REAL_METHODS);
+    private final IngestionService ingestionService = mock(IngestionService.class);
+    private final ReadingFlusher flusher = new ReadingFlusher(
+            new ReadingRingBuffer(8), mock(WriteAheadLog.class), readingStore, ingestionService, 1, 10, 50);
+
+    @Test
+    void shouldReplayOnlyReadingsMissingFromTheStoreThroughTheListeners() {
+        // Given sensor 1 already stored the reading at 10 once, and sensor 2 nothing
+        doAnswer(invocation -> {
+            long sensorId = invocation.getArgument(0);
+            ReadingConsumer consumer = invocation.getArgument(3);
+            if (sensorId == 1L) {
+                consumer.accept(10L, 1.0);
+            }
+            return null;
+        }).when(readingStore).scan(anyLong(), anyLong(), anyLong(), any());
+
+        // When a recovered batch holds that reading twice, a newer one of sensor 1 and one of sensor 2
+        ReadingBatch recovered = new ReadingBatch(4);
+        recovered.add(1L, 10L, 1.0);
+        recovered.add(1L, 10L, 1.0);
+        recovered.add(1L, 20L, 2.0);
+        recovered.add(2L, 10L, 3.0);
+        flusher.replay(recovered);
+
+        // Then the stored copy is skipped, and the three others are stored and acknowledged once
+        ArgumentCaptor<ReadingBatch> stored = ArgumentCaptor.forClass(ReadingBatch.class);
+        verify(readingStore).append(stored.capture());
+        verify(ingestionService).acknowledge(stored.getValue());
+        ReadingBatch replayed = stored.getValue();
+        assertEquals(3, replayed.size());
+        assertEquals(10L, replayed.timestamp(0));
+        assertEquals(20L, replayed.timestamp(1));
+        assertEquals(2L, replayed.sensorId(2));
+    }
+
+    @Test
+    void shouldNotAcknowledgeABatchTheStoreAlreadyHolds() {
+        doAnswer(invocation -> {
+            ReadingConsumer consumer = invocation.getArgument(3);
+            consumer.accept(10L, 1.0);
+            return null;
+        }).when(readingStore).scan(anyLong(), anyLong(), anyLong(), any());
+
+        ReadingBatch recovered = new ReadingBatch(1);
+        recovered.add(1L, 10L, 1.0);
+        flusher.replay(recovered);
+
+        verify(readingStore, never()).append(any());
+        verify(ingestionService, never()).acknowledge(any());
+    }
+}
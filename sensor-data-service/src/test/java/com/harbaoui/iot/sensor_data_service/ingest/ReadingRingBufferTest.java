@@ -0,0 +1,90 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadingRingBufferTest {
+
+    @Test
+    void shouldRejectOfferWhenFull() {
+        ReadingRingBuffer buffer = new ReadingRingBuffer(4);
+
+        for (int i = 0; i < 4; i++) {
+            buffer.offer(1L, i, i, null);
+        }
+
+        assertFalse(buffer.offer(1L, 5, 5, null));
+        assertEquals(0, buffer.remainingCapacity());
+    }
+
+    @Test
+    void shouldReserveRoomForWholeBatchesOnly() {
+        ReadingRingBuffer buffer = new ReadingRingBuffer(4);
+
+        // A batch of three holds its room, so a second batch or a second single reading does not fit
+        assertTrue(buffer.tryReserve(3));
+        assertFalse(buffer.tryReserve(2));
+        assertTrue(buffer.offer(1L, 0, 0, null));
+        assertFalse(buffer.offer(1L, 1, 1, null));
+
+        // Once the batch gives its room back, only the offered reading takes any
+        buffer.cancelReservation(3);
+        assertEquals(3, buffer.remainingCapacity());
+        assertTrue(buffer.tryReserve(3));
+    }
+
+    @Test
+    void shouldDeliverEveryReadingExactlyOnceAcrossThreads() throws InterruptedException {
+        // Given four producers and two consumers sharing a small buffer
+        ReadingRingBuffer buffer = new ReadingRingBuffer(1024);
+        int producers = 4;
+        int perProducer = 50_000;
+        long[] sums = new long[2];
+        AtomicInteger delivered = new AtomicInteger();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            long sensorId = p;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < perProducer; i++) {
+                    while (!buffer.offer(sensorId, i, i, null)) {
+                        Thread.onSpinWait();
+                    }
+                }
+            }));
+        }
+        for (int c = 0; c < 2; c++) {
+            int consumer = c;
+            threads.add(new Thread(() -> {
+                ReadingBatch batch = new ReadingBatch(256);
+                WalSegment[] owners = new WalSegment[256];
+                while (delivered.get() < producers * perProducer) {
+                    batch.clear();
+                    buffer.drainTo(batch, owners, 256);
+                    for (int i = 0; i < batch.size(); i++) {
+                        sums[consumer] += batch.timestamp(i);
+                    }
+                    delivered.addAndGet(batch.size());
+                }
+            }));
+        }
+
+        // When
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join(30_000);
+        }
+
+        // Then
+        long expectedSum = (long) producers * perProducer * (perProducer - 1) / 2;
+        assertEquals(producers * perProducer, delivered.get());
+        assertEquals(expectedSum, sums[0] + sums[1]);
+    }
+}
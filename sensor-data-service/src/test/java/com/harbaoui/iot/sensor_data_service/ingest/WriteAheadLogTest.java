@@ -0,0 +1,101 @@
+package com.harbaoui.iot.sensor_data_service.ingest;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class WriteAheadLogTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReplayAcknowledgedReadingsAfterCrash() throws IOException {
+        // Given readings acknowledged but never flushed
+        WriteAheadLog wal = new WriteAheadLog(directory, 1024 * 1024, true);
+        wal.recover(batch -> { });
+        wal.append(batch(1L, 3));
+        wal.append(batch(2L, 2));
+        wal.close();
+
+        // When the service restarts
+        List<ReadingBatch> replayed = new ArrayList<>();
+        int count = new WriteAheadLog(directory, 1024 * 1024, true).recover(replayed::add);
+
+        // Then
+        assertEquals(5, count);
+        assertEquals(2, replayed.size());
+        assertEquals(2L, replayed.get(1).sensorId(0));
+        assertEquals(1001L, replayed.get(1).timestamp(1));
+        assertEquals(1.5, replayed.get(0).value(1));
+    }
+
+    @Test
+    void shouldIgnoreTornRecordAtTheTail() throws IOException {
+        // Given a record cut short by the crash
+        WriteAheadLog wal = new WriteAheadLog(directory, 1024 * 1024, true);
+        wal.recover(batch -> { });
+        wal.append(batch(1L, 3));
+        wal.close();
+        Path segment = singleSegment();
+        ByteBuffer torn = WriteAheadLog.encode(batch(2L, 4));
+        torn.limit(torn.limit() - 10);
+        Files.write(segment, java.util.Arrays.copyOf(torn.array(), torn.limit()), StandardOpenOption.APPEND);
+
+        // When
+        int count = new WriteAheadLog(directory, 1024 * 1024, true).recover(batch -> { });
+
+        // Then
+        assertEquals(3, count);
+    }
+
+    @Test
+    void shouldDeleteSealedSegmentOnceFlushed() throws IOException {
+        // Given a tiny segment size so every append fills the segment
+        WriteAheadLog wal = new WriteAheadLog(directory, 16, false);
+        wal.recover(batch -> { });
+        WalSegment segment = wal.append(batch(1L, 2));
+        wal.rollIfNeeded();
+
+        // When
+        wal.reclaim();
+        long beforeFlush = countSegments();
+        segment.markFlushed(2);
+        wal.reclaim();
+
+        // Then
+        assertEquals(2, beforeFlush);
+        assertEquals(1, countSegments());
+        wal.close();
+    }
+
+    private static ReadingBatch batch(long sensorId, int size) {
+        ReadingBatch batch = new ReadingBatch(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(sensorId, 1000L + i, 1.0 + i * 0.5);
+        }
+        return batch;
+    }
+
+    private Path singleSegment() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.findFirst().orElseThrow();
+        }
+    }
+
+    private long countSegments() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.count();
+        }
+    }
+}
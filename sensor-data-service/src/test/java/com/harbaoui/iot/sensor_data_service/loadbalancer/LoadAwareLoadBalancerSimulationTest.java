@@ -0,0 +1,207 @@
+package com.harbaoui.iot.sensor_data_service.loadbalancer;
+
+import com.harbaoui.iot.sensor_data_service.load.LoadMetadataPublisher;
+import com.harbaoui.iot.sensor_data_service.load.LoadTracker;
+import org.junit.jupiter.api.Test;
+import org.springframework.cloud.client.DefaultServiceInstance;
+import org.springframework.cloud.client.ServiceInstance;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.function.LongSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Discrete-event simulation of one client calling four instances, one of them slowed down eightfold.
+ * Each instance has four workers and an unbounded queue, and publishes its load every two seconds;
+ * the client only sees a publication five seconds later, as through Eureka.
+ */
+public class LoadAwareLoadBalancerSimulationTest {
+
+    private static final int INSTANCES = 4;
+    private static final int WORKERS = 4;
+    private static final double SERVICE_MS = 10;
+    private static final long PUBLISH_INTERVAL_MS = 2_000;
+    private static final long VISIBILITY_LAG_MS = 5_000;
+    private static final int REQUESTS = 200_000;
+
+    @Test
+    void shouldCutTheTailLatencyWhenOneInstanceIsSlowedDown() {
+        // Given 0.8 requests/ms: under round robin the slow instance gets 0.2/ms, four times what it can serve
+        double roundRobin = p99(8, true, RoundRobin::new);
+        double loadAware = p99(8, true, LoadAware::new);
+        double withoutMetadata = p99(8, false, LoadAware::new);
+
+        // Then the load-aware balancer keeps the tail near the healthy service time, the published
+        // signals help beyond what the client knows alone, and round robin queues without bound
+        assertTrue(loadAware * 10 < roundRobin, "load-aware " + loadAware + " vs round robin " + roundRobin);
+        assertTrue(loadAware <= withoutMetadata, "load-aware " + loadAware + " vs outstanding only " + withoutMetadata);
+        assertTrue(loadAware < 15 * SERVICE_MS, "load-aware p99 " + loadAware);
+    }
+
+    @Test
+    void shouldNotHurtAHealthyFleet() {
+        double roundRobin = p99(1, true, RoundRobin::new);
+        double loadAware = p99(1, true, LoadAware::new);
+        assertTrue(loadAware <= roundRobin * 1.1, "load-aware " + loadAware + " vs round robin " + roundRobin);
+    }
+
+    // p99 latency in ms seen by the client when instance 0 serves slowdown times slower
+    private static double p99(double slowdown, boolean publish, BalancerFactory balancers) {
+        Random random = new Random(7);
+        long[] now = {0};
+        List<ServiceInstance> instances = new ArrayList<>();
+        Server[] servers = new Server[INSTANCES];
+        for (int i = 0; i < INSTANCES; i++) {
+            instances.add(new DefaultServiceInstance("node-" + i, "user-service", "node-" + i, 8080, false, new HashMap<>()));
+            servers[i] = new Server(i == 0 ? SERVICE_MS * slowdown : SERVICE_MS);
+        }
+        Balancer balancer = balancers.create(instances, () -> now[0], random);
+
+        PriorityQueue<double[]> events = new PriorityQueue<>((a, b) -> Double.compare(a[0], b[0]));
+        // Event: {time, kind, instance, sent at}; kinds: 0 arrival, 1 completion, 2 publication, 3 visible
+        events.add(new double[] {0, 0, -1, 0});
+        events.add(new double[] {PUBLISH_INTERVAL_MS, 2, -1, 0});
+        List<Map<String, String>> pendingPublications = new ArrayList<>();
+        double[] latencies = new double[REQUESTS];
+        int sent = 0;
+        int completed = 0;
+
+        while (completed < REQUESTS) {
+            double[] event = events.poll();
+            now[0] = (long) event[0];
+            switch ((int) event[1]) {
+                case 0 -> {
+                    int target = balancer.choose();
+                    servers[target].arrive(event[0], target, events, random);
+                    if (++sent < REQUESTS) {
+                        events.add(new double[] {event[0] - Math.log(1 - random.nextDouble()) / 0.8, 0, -1, 0});
+                    }
+                }
+                case 1 -> {
+                    int target = (int) event[2];
+                    double latency = event[0] - event[3];
+                    latencies[completed++] = latency;
+                    balancer.completed(instances.get(target));
+                    servers[target].complete(event[0], latency, target, events, random);
+                }
+                case 2 -> {
+                    if (publish) {
+                        for (int i = 0; i < INSTANCES; i++) {
+                            pendingPublications.add(servers[i].publish(now[0]));
+                        }
+                        events.add(new double[] {event[0] + VISIBILITY_LAG_MS, 3, -1, 0});
+                    }
+                    events.add(new double[] {event[0] + PUBLISH_INTERVAL_MS, 2, -1, 0});
+                }
+                default -> {
+                    for (int i = 0; i < INSTANCES; i++) {
+                        instances.get(i).getMetadata().putAll(pendingPublications.remove(0));
+                    }
+                }
+            }
+        }
+        Arrays.sort(latencies);
+        return latencies[(int) Math.ceil(REQUESTS * 0.99) - 1];
+    }
+
+    private interface BalancerFactory {
+        Balancer create(List<ServiceInstance> instances, LongSupplier clock, Random random);
+    }
+
+    private interface Balancer {
+        // Index of the instance the next request goes to
+        int choose();
+
+        default void completed(ServiceInstance instance) {
+        }
+    }
+
+    // What Eureka clients do by default
+    private static final class RoundRobin implements Balancer {
+        private final int size;
+        private int next;
+
+        RoundRobin(List<ServiceInstance> instances, LongSupplier clock, Random random) {
+            this.size = instances.size();
+        }
+
+        @Override
+        public int choose() {
+            return next++ % size;
+        }
+    }
+
+    // The balancer under test, told about each request's start and end as the load balancer client would
+    private static final class LoadAware implements Balancer {
+        private final List<ServiceInstance> instances;
+        private final LoadAwareLoadBalancer balancer;
+
+        LoadAware(List<ServiceInstance> instances, LongSupplier clock, Random random) {
+            this.instances = instances;
+            this.balancer = new LoadAwareLoadBalancer(null, 30_000, clock, random);
+        }
+
+        @Override
+        public int choose() {
+            ServiceInstance chosen = balancer.choose(instances);
+            balancer.started(chosen);
+            return instances.indexOf(chosen);
+        }
+
+        @Override
+        public void completed(ServiceInstance instance) {
+            balancer.completed(instance);
+        }
+    }
+
+    // Workers with exponential service times, a FIFO queue, and the same load signals as the real publisher
+    private static final class Server {
+        private final double meanServiceMs;
+        private final ArrayDeque<Double> queue = new ArrayDeque<>();
+        private final LoadTracker tracker = new LoadTracker();
+        private int busy;
+
+        Server(double meanServiceMs) {
+            this.meanServiceMs = meanServiceMs;
+        }
+
+        void arrive(double time, int index, PriorityQueue<double[]> events, Random random) {
+            if (busy < WORKERS) {
+                busy++;
+                events.add(new double[] {time + service(random), 1, index, time});
+            } else {
+                queue.add(time);
+            }
+        }
+
+        void complete(double time, double latency, int index, PriorityQueue<double[]> events, Random random) {
+            tracker.record((long) (latency * 1_000_000));
+            Double waiting = queue.poll();
+            if (waiting == null) {
+                busy--;
+            } else {
+                events.add(new double[] {time + service(random), 1, index, waiting});
+            }
+        }
+
+        Map<String, String> publish(long now) {
+            return Map.of(
+                    LoadMetadataPublisher.IN_FLIGHT, Integer.toString(busy + queue.size()),
+                    LoadMetadataPublisher.QUEUE, "0",
+                    LoadMetadataPublisher.P99_MS, Double.toString(tracker.rollP99()),
+                    LoadMetadataPublisher.UPDATED, Long.toString(now));
+        }
+
+        private double service(Random random) {
+            return -Math.log(1 - random.nextDouble()) * meanServiceMs;
+        }
+    }
+}
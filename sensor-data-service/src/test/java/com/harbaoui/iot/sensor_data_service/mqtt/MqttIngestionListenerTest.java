@@ -0,0 +1,169 @@
+package com.harbaoui.iot.sensor_data_service.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.sensor_data_service.cluster.ShardRouter;
+import com.harbaoui.iot.sensor_data_service.exception.IngestionOverloadedException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import io.moquette.broker.Server;
+import io.moquette.broker.config.MemoryConfig;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class MqttIngestionListenerTest {
+
+    private Server broker;
+    private String brokerUrl;
+    private MqttClient device;
+    private MqttIngestionListener listener;
+
+    private final ShardRouter shardRouter = mock(ShardRouter.class);
+    private final List<ReadingBatch> ingested = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        // Given an embedded broker on a free port
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Properties properties = new Properties();
+        properties.setProperty("host", "127.0.0.1");
+        properties.setProperty("port", Integer.toString(port));
+        properties.setProperty("websocket_port", "disabled");
+        properties.setProperty("allow_anonymous", "true");
+        properties.setProperty("persistence_enabled", "false");
+        properties.setProperty("telemetry_enabled", "false");
+        broker = new Server();
+        broker.startServer(new MemoryConfig(properties));
+        brokerUrl = "tcp://127.0.0.1:" + port;
+
+        device = new MqttClient(brokerUrl, "device", new MemoryPersistence());
+        device.connect();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (listener != null && listener.isRunning()) {
+            listener.stop();
+        }
+        device.disconnect();
+        device.close();
+        broker.stopServer();
+    }
+
+    @Test
+    void shouldIngestPublishesOfManySensorsInBatchedWindows() throws Exception {
+        doAnswer(invocation -> {
+            ReadingBatch batch = invocation.getArgument(0);
+            ingested.add(batch);
+            return batch.size();
+        }).when(shardRouter).ingest(any(ReadingBatch.class), eq(false));
+        listener = startListener(50);
+
+        // When 500 devices publish one reading each, and one device publishes an array and a malformed payload
+        for (int sensorId = 0; sensorId < 500; sensorId++) {
+            publish("sensors/" + sensorId + "/readings", "{\"timestamp\":" + (1000 + sensorId) + ",\"value\":" + sensorId + ".5}");
+        }
+        publish("sensors/not-a-number/readings", "{\"timestamp\":1,\"value\":1}");
+        publish("sensors/900/readings", "[{\"timestamp\":1,\"value\":1},{\"timestamp\":2,\"value\":2}]");
+
+        // Then every valid reading is ingested once, in windows of at most 50 messages
+        awaitReadings(502);
+        long sensorSum = 0;
+        for (ReadingBatch batch : ingested) {
+            assertTrue(batch.size() <= 51);
+            for (int i = 0; i < batch.size(); i++) {
+                sensorSum += batch.sensorId(i);
+                if (batch.sensorId(i) < 500) {
+                    assertEquals(batch.sensorId(i) + 0.5, batch.value(i));
+                    assertEquals(1000 + batch.sensorId(i), batch.timestamp(i));
+                }
+            }
+        }
+        assertEquals(499L * 500 / 2 + 1800, sensorSum);
+        assertTrue(ingested.size() >= 10);
+    }
+
+    @Test
+    void shouldRetryWindowWhileIngestionIsOverloaded() throws Exception {
+        // Given ingestion rejects the first two attempts
+        AtomicInteger attempts = new AtomicInteger();
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() <= 2) {
+                throw new IngestionOverloadedException("full");
+            }
+            ReadingBatch batch = invocation.getArgument(0);
+            ingested.add(batch);
+            return batch.size();
+        }).when(shardRouter).ingest(any(ReadingBatch.class), eq(false));
+        listener = startListener(10);
+
+        // When
+        for (int i = 0; i < 10; i++) {
+            publish("sensors/7/readings", "{\"timestamp\":" + i + ",\"value\":1}");
+        }
+
+        // Then nothing is lost
+        awaitReadings(10);
+        assertEquals(1, ingested.size());
+        assertTrue(attempts.get() >= 3);
+    }
+
+    private MqttIngestionListener startListener(int maxInflight) {
+        MqttIngestionListener started = new MqttIngestionListener(shardRouter, new ObjectMapper(), brokerUrl,
+                "sensor-data-service", "sensors/+/readings", 1, true, maxInflight, 5000, 10);
+        started.start();
+        // Let the subscription reach the broker before devices publish
+        waitUntil(() -> broker.listConnectedClients().size() == 2);
+        sleep(200);
+        return started;
+    }
+
+    private void publish(String topic, String payload) throws Exception {
+        device.publish(topic, payload.getBytes(StandardCharsets.UTF_8), 1, false);
+    }
+
+    // The listener flushes partial windows on a timer in the application, drive it here
+    private void awaitReadings(int expected) {
+        waitUntil(() -> {
+            listener.flush();
+            return ingested.stream().mapToInt(ReadingBatch::size).sum() >= expected;
+        });
+        assertEquals(expected, ingested.stream().mapToInt(ReadingBatch::size).sum());
+    }
+
+    private static void waitUntil(java.util.function.BooleanSupplier condition) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Timed out");
+            sleep(20);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
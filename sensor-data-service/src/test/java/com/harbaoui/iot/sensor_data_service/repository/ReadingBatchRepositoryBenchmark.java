@@ -0,0 +1,68 @@
+package com.harbaoui.iot.sensor_data_service.repository;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.h2.Driver;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SimpleDriverDataSource;
+
+import java.util.Arrays;
+
+/**
+ * Insert rate of gateway-sized flushes through the grouped JDBC inserts, against an in-memory H2 database
+ * shaped like the readings table. The service target is 50k rows/s (see IngestionService).
+ * Not a unit test: wall-clock numbers depend on the machine, so it is run by hand from the module directory:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.harbaoui.iot.sensor_data_service.repository.ReadingBatchRepositoryBenchmark 10 20000 1000
+ * </pre>
+ */
+public class ReadingBatchRepositoryBenchmark {
+
+    private static final int WARMUP_RUNS = 3;
+    private static final int MEASURED_RUNS = 5;
+
+    public static void main(String[] args) {
+        int flushes = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        int pointsPerFlush = args.length > 1 ? Integer.parseInt(args[1]) : 20_000;
+        int jdbcBatchSize = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(new SimpleDriverDataSource(
+                new Driver(), "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1", "sa", ""));
+        jdbcTemplate.execute("CREATE TABLE readings (id BIGINT AUTO_INCREMENT PRIMARY KEY, "
+                + "sensor_id BIGINT NOT NULL, ts BIGINT NOT NULL, reading_value DOUBLE NOT NULL)");
+        jdbcTemplate.execute("CREATE INDEX idx_readings_sensor_ts ON readings (sensor_id, ts)");
+        ReadingBatchRepository repository = new ReadingBatchRepository(jdbcTemplate, jdbcBatchSize);
+        ReadingBatch[] batches = new ReadingBatch[flushes];
+        for (int i = 0; i < flushes; i++) {
+            batches[i] = batch(i, pointsPerFlush);
+        }
+
+        double[] samples = new double[MEASURED_RUNS];
+        for (int run = -WARMUP_RUNS; run < MEASURED_RUNS; run++) {
+            jdbcTemplate.execute("TRUNCATE TABLE readings");
+            long start = System.nanoTime();
+            int written = 0;
+            for (ReadingBatch batch : batches) {
+                written += repository.insert(batch);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            if (run >= 0) {
+                samples[run] = written / seconds;
+            }
+        }
+
+        Arrays.sort(samples);
+        System.out.printf("%d flushes of %d readings, JDBC batches of %d: median %.0f rows/s (min %.0f, max %.0f)%n",
+                flushes, pointsPerFlush, jdbcBatchSize, samples[MEASURED_RUNS / 2], samples[0],
+                samples[MEASURED_RUNS - 1]);
+    }
+
+    private static ReadingBatch batch(long sensorId, int size) {
+        ReadingBatch batch = new ReadingBatch(size);
+        long start = 1_700_000_000_000L;
+        for (int i = 0; i < size; i++) {
+            batch.add(sensorId, start + i, 20.0 + (i % 100) / 10.0);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,48 @@
+package com.harbaoui.iot.sensor_data_service.repository;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@Import(ReadingBatchRepository.class)
+@TestPropertySource(properties = "spring.jpa.show-sql=false")
+public class ReadingBatchRepositoryTest {
+
+    @Autowired
+    private ReadingBatchRepository readingBatchRepository;
+
+    @Autowired
+    private ReadingRepository readingRepository;
+
+    @Test
+    void shouldInsertEveryReadingOfGatewayFlushes() {
+        // Given ten gateway flushes of 20k points each
+        int flushes = 10;
+        int pointsPerFlush = 20_000;
+
+        // When
+        int written = 0;
+        for (int i = 0; i < flushes; i++) {
+            written += readingBatchRepository.insert(batch(i, pointsPerFlush));
+        }
+
+        // Then
+        assertEquals(flushes * pointsPerFlush, written);
+        assertEquals(pointsPerFlush, readingRepository.countBySensorId(3L));
+    }
+
+    private static ReadingBatch batch(long sensorId, int size) {
+        ReadingBatch batch = new ReadingBatch(size);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < size; i++) {
+            batch.add(sensorId, now + i, 20.0 + (i % 100) / 10.0);
+        }
+        return batch;
+    }
+}
@@ -0,0 +1,117 @@
+package com.harbaoui.iot.sensor_data_service.retention;
+
+import com.harbaoui.iot.sensor_data_service.config.RetentionProperties;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.ReadingBatchRepository;
+import com.harbaoui.iot.sensor_data_service.repository.ReadingRepository;
+import com.harbaoui.iot.sensor_data_service.repository.RollupRepository;
+import com.harbaoui.iot.sensor_data_service.repository.SketchRepository;
+import com.harbaoui.iot.sensor_data_service.rollup.QuantileSketch;
+import com.harbaoui.iot.sensor_data_service.store.JdbcReadingStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.Duration;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@DataJpaTest
+@Import({JdbcReadingStore.class, ReadingBatchRepository.class, RollupRepository.class, SketchRepository.class})
+@TestPropertySource(properties = "spring.jpa.show-sql=false")
+public class RetentionServiceTest {
+
+    private static final long DAY = 86_400_000L;
+
+    @Autowired
+    private JdbcReadingStore readingStore;
+
+    @Autowired
+    private ReadingRepository readingRepository;
+
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    @Autowired
+    private SketchRepository sketchRepository;
+
+    private RetentionProperties properties;
+    private SimpleMeterRegistry meterRegistry;
+    private RetentionService retentionService;
+
+    @BeforeEach
+    void setUp() {
+        properties = new RetentionProperties();
+        properties.setChunkSize(100);
+        properties.setPauseBetweenChunks(Duration.ZERO);
+        meterRegistry = new SimpleMeterRegistry();
+        retentionService = new RetentionService(properties, readingStore, rollupRepository, sketchRepository, meterRegistry);
+    }
+
+    @Test
+    void shouldDeleteExpiredRawReadingsInChunksAndCountThem() {
+        // Given 250 readings ten days old and 10 fresh ones, with the default 7 day raw retention
+        long now = System.currentTimeMillis();
+        ReadingBatch batch = new ReadingBatch(260);
+        for (int i = 0; i < 250; i++) {
+            batch.add(1L, now - 10 * DAY + i, i);
+        }
+        for (int i = 0; i < 10; i++) {
+            batch.add(1L, now - i, i);
+        }
+        readingStore.append(batch);
+
+        // When
+        retentionService.enforce();
+
+        // Then
+        assertEquals(10, readingRepository.countBySensorId(1L));
+        assertEquals(250.0, meterRegistry.get("retention.reclaimed.rows").tag("data", "raw").counter().count());
+    }
+
+    @Test
+    void shouldHonourPerSensorOverrides() {
+        // Given sensor 2 keeps raw data forever while sensor 3 uses the defaults
+        RetentionProperties.Policy keepForever = new RetentionProperties.Policy();
+        keepForever.setRaw(Duration.ZERO);
+        properties.getSensors().put(2L, keepForever);
+        long old = System.currentTimeMillis() - 30 * DAY;
+        ReadingBatch batch = new ReadingBatch(2);
+        batch.add(2L, old, 1.0);
+        batch.add(3L, old, 1.0);
+        readingStore.append(batch);
+
+        // When
+        retentionService.enforce();
+
+        // Then
+        assertEquals(1, readingRepository.countBySensorId(2L));
+        assertEquals(0, readingRepository.countBySensorId(3L));
+        assertEquals(Duration.ofDays(90), properties.policyFor(2L).getMinute());
+    }
+
+    @Test
+    void shouldDeleteSketchesPastTheHourRetention() {
+        // Given hourly sketches of 40 and 2 days ago, with hour rollups kept for 30 days
+        properties.getDefaults().setHour(Duration.ofDays(30));
+        long hour = 3_600_000L;
+        long now = System.currentTimeMillis() / hour * hour;
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(1.0);
+        sketchRepository.merge(Map.of(4L, Map.of(now - 40 * DAY, sketch, now - 2 * DAY, sketch)));
+
+        // When
+        retentionService.enforce();
+
+        // Then only the recent one is left
+        long[] left = {0};
+        sketchRepository.find(4L, 0, Long.MAX_VALUE, (bucketStart, stored) -> left[0]++);
+        assertEquals(1, left[0]);
+        assertEquals(1.0, meterRegistry.get("retention.reclaimed.rows").tag("data", "sketch").counter().count());
+    }
+}
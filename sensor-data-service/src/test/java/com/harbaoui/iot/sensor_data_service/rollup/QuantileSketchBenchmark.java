@@ -0,0 +1,95 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Cost of answering percentiles from hourly sketches against sorting the raw readings: add time per value,
+ * serialized size of an hour sketch, merge of every hour plus the quantile lookups, an exact sort of the same
+ * values, and the relative error of the sketch against the exact answer.
+ * Not a unit test: wall-clock numbers depend on the machine, so it is run by hand from the module directory:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.harbaoui.iot.sensor_data_service.rollup.QuantileSketchBenchmark 1000000 24
+ * </pre>
+ */
+public class QuantileSketchBenchmark {
+
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99};
+    private static final int WARMUP_RUNS = 5;
+    private static final int MEASURED_RUNS = 11;
+
+    public static void main(String[] args) {
+        int values = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int hours = args.length > 1 ? Integer.parseInt(args[1]) : 24;
+        double[] readings = new double[values];
+        Random random = new Random(42);
+        for (int i = 0; i < values; i++) {
+            readings[i] = Math.exp(random.nextGaussian());
+        }
+
+        long addNanos = Long.MAX_VALUE;
+        QuantileSketch[] sketches = null;
+        for (int run = 0; run < WARMUP_RUNS; run++) {
+            long start = System.nanoTime();
+            sketches = sketchByHour(readings, hours);
+            addNanos = Math.min(addNanos, System.nanoTime() - start);
+        }
+        long bytes = 0;
+        for (QuantileSketch sketch : sketches) {
+            bytes += sketch.toBytes().length;
+        }
+
+        long[] sketchSamples = new long[MEASURED_RUNS];
+        long[] sortSamples = new long[MEASURED_RUNS];
+        double[] approximate = new double[QUANTILES.length];
+        double[] exact = new double[QUANTILES.length];
+        for (int run = -WARMUP_RUNS; run < MEASURED_RUNS; run++) {
+            long start = System.nanoTime();
+            QuantileSketch merged = new QuantileSketch();
+            for (QuantileSketch sketch : sketches) {
+                merged.merge(QuantileSketch.fromBytes(sketch.toBytes()));
+            }
+            for (int q = 0; q < QUANTILES.length; q++) {
+                approximate[q] = merged.quantile(QUANTILES[q]);
+            }
+            long sketched = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double[] sorted = readings.clone();
+            Arrays.sort(sorted);
+            for (int q = 0; q < QUANTILES.length; q++) {
+                exact[q] = sorted[(int) Math.ceil(QUANTILES[q] * sorted.length) - 1];
+            }
+            long sortedNanos = System.nanoTime() - start;
+            if (run >= 0) {
+                sketchSamples[run] = sketched;
+                sortSamples[run] = sortedNanos;
+            }
+        }
+
+        Arrays.sort(sketchSamples);
+        Arrays.sort(sortSamples);
+        System.out.printf("%d values over %d hours: %.0f ns per add, %d bytes per hour sketch%n",
+                values, hours, (double) addNanos / values, bytes / hours);
+        System.out.printf("Merge and query: median %.2f ms; exact sort: median %.2f ms%n",
+                sketchSamples[MEASURED_RUNS / 2] / 1e6, sortSamples[MEASURED_RUNS / 2] / 1e6);
+        for (int q = 0; q < QUANTILES.length; q++) {
+            System.out.printf("p%d: sketch %.5f, exact %.5f, error %.2f%%%n", Math.round(QUANTILES[q] * 100),
+                    approximate[q], exact[q], 100 * Math.abs(approximate[q] - exact[q]) / exact[q]);
+        }
+    }
+
+    // Readings are spread evenly over the hours, like a sensor reporting at a steady rate
+    private static QuantileSketch[] sketchByHour(double[] readings, int hours) {
+        QuantileSketch[] sketches = new QuantileSketch[hours];
+        for (int h = 0; h < hours; h++) {
+            sketches[h] = new QuantileSketch();
+        }
+        for (int i = 0; i < readings.length; i++) {
+            sketches[(int) ((long) i * hours / readings.length)].add(readings[i]);
+        }
+        return sketches;
+    }
+}
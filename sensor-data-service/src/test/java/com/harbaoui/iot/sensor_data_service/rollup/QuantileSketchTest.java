@@ -0,0 +1,101 @@
+package com.harbaoui.iot.sensor_data_service.rollup;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class QuantileSketchTest {
+
+    private static final double[] QUANTILES = {0, 0.01, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99, 0.999, 1};
+
+    @Test
+    void shouldStayWithinRelativeAccuracyOnSkewedAndSignedData() {
+        Random random = new Random(42);
+        // Latency-like (log-normal), vibration-like (normal around zero) and integer counters with many repeats
+        double[][] datasets = new double[3][100_000];
+        for (int i = 0; i < 100_000; i++) {
+            datasets[0][i] = Math.exp(3 + 1.5 * random.nextGaussian());
+            datasets[1][i] = 0.2 * random.nextGaussian();
+            datasets[2][i] = random.nextInt(20);
+        }
+        for (double[] values : datasets) {
+            QuantileSketch sketch = new QuantileSketch();
+            for (double value : values) {
+                sketch.add(value);
+            }
+            assertWithinAccuracy(values, sketch);
+        }
+    }
+
+    @Test
+    void shouldGiveTheSameAnswerMergedAsFedAtOnceAndAfterARoundTrip() {
+        // Given 24 hourly sketches and one sketch of the whole day
+        Random random = new Random(7);
+        double[] values = new double[240_000];
+        QuantileSketch day = new QuantileSketch();
+        QuantileSketch merged = new QuantileSketch();
+        for (int hour = 0; hour < 24; hour++) {
+            QuantileSketch hourly = new QuantileSketch();
+            for (int i = 0; i < 10_000; i++) {
+                double value = 100 + hour + 10 * random.nextGaussian();
+                values[hour * 10_000 + i] = value;
+                hourly.add(value);
+                day.add(value);
+            }
+            merged.merge(QuantileSketch.fromBytes(hourly.toBytes()));
+        }
+
+        // Then merging loses nothing
+        assertEquals(day.count(), merged.count());
+        for (double q : QUANTILES) {
+            assertEquals(day.quantile(q), merged.quantile(q));
+        }
+        assertWithinAccuracy(values, merged);
+        assertTrue(merged.toBytes().length < 1_000, "Serialized size " + merged.toBytes().length);
+    }
+
+    @Test
+    void shouldKeepTheHighQuantilesAccurateWhenFoldingLowMagnitudes() {
+        // Given values spanning far more bins than allowed
+        QuantileSketch sketch = new QuantileSketch(0.01, 64);
+        double[] values = new double[10_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Math.pow(10, i % 20 - 10);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        // Then the top of the distribution is still within the accuracy, only the bottom is folded
+        double exact = values[(int) Math.floor(0.99 * (values.length - 1))];
+        assertEquals(exact, sketch.quantile(0.99), exact * 0.01);
+        assertEquals(values[0], sketch.quantile(0));
+        assertEquals(values.length, QuantileSketch.fromBytes(sketch.toBytes()).count());
+    }
+
+    @Test
+    void shouldIgnoreNonFiniteValuesAndAnswerNaNWhenEmpty() {
+        QuantileSketch sketch = new QuantileSketch();
+        assertTrue(Double.isNaN(sketch.quantile(0.5)));
+        sketch.add(Double.NaN);
+        sketch.add(Double.POSITIVE_INFINITY);
+        sketch.add(0);
+        assertEquals(1, sketch.count());
+        assertEquals(0.0, sketch.quantile(0.5));
+    }
+
+    // Each estimate must be within the relative accuracy of the exact value of rank q * (n - 1)
+    static void assertWithinAccuracy(double[] values, QuantileSketch sketch) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        for (double q : QUANTILES) {
+            double exact = sorted[(int) Math.floor(q * (sorted.length - 1))];
+            double estimate = sketch.quantile(q);
+            assertTrue(Math.abs(estimate - exact) <= sketch.relativeAccuracy() * Math.abs(exact) + 1e-12,
+                    "q=" + q + " exact=" + exact + " estimate=" + estimate);
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.harbaoui.iot.sensor_data_service.rules;
+
+import com.harbaoui.iot.sensor_data_service.config.RulesProperties;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class RulesEngineTest {
+
+    private static final long MINUTE = 60_000L;
+
+    private final List<AlertEvent> alerts = new ArrayList<>();
+
+    @Test
+    void shouldFireOnceTheThresholdHeldForTheDurationAndResolveWhenItDrops() {
+        // Given "temperature > 80 for 5 minutes"
+        RulesEngine engine = engine(rule("overheat", Metric.VALUE, null, Operator.ABOVE, 80, Duration.ofMinutes(5), 1L));
+
+        // When the sensor reports 85 every minute for 7 minutes, then 70
+        for (int minute = 0; minute <= 6; minute++) {
+            engine.onIngest(batch(1L, minute * MINUTE, 85));
+        }
+        engine.onIngest(batch(1L, 7 * MINUTE, 70));
+
+        // Then one alert at the fifth minute, and one resolution
+        assertEquals(2, alerts.size());
+        assertEquals(AlertStatus.FIRING, alerts.get(0).getStatus());
+        assertEquals(5 * MINUTE, alerts.get(0).getTimestamp());
+        assertEquals(AlertStatus.RESOLVED, alerts.get(1).getStatus());
+        assertEquals(7 * MINUTE, alerts.get(1).getTimestamp());
+    }
+
+    @Test
+    void shouldRestartTheDurationWhenTheConditionIsInterrupted() {
+        RulesEngine engine = engine(rule("overheat", Metric.VALUE, null, Operator.ABOVE, 80, Duration.ofMinutes(5), 1L));
+
+        ReadingBatch batch = new ReadingBatch(10);
+        for (int minute = 0; minute < 10; minute++) {
+            batch.add(1L, minute * MINUTE, minute == 4 ? 79 : 81);
+        }
+        engine.onIngest(batch);
+
+        // Above from minute 5 on, so five minutes later is past the batch
+        assertTrue(alerts.isEmpty());
+    }
+
+    @Test
+    void shouldEvaluateSlidingWindowAggregates() {
+        // Given an average and a minimum over 10 minutes
+        RulesEngine engine = engine(
+                rule("avg-high", Metric.AVG, Duration.ofMinutes(10), Operator.ABOVE, 50, Duration.ZERO, 1L),
+                rule("min-low", Metric.MIN, Duration.ofMinutes(10), Operator.BELOW, 0, Duration.ZERO, 1L));
+
+        // When one spike and one dip are followed by ten quiet minutes
+        engine.onIngest(batch(1L, 0, -5));
+        engine.onIngest(batch(1L, MINUTE, 200));
+        for (int minute = 2; minute <= 13; minute++) {
+            engine.onIngest(batch(1L, minute * MINUTE, 10));
+        }
+
+        // Then the dip fires at once, the average crosses 50 with the spike, and both resolve once out of the window
+        List<String> seen = alerts.stream().map(alert -> alert.getRuleId() + " " + alert.getStatus()).toList();
+        assertEquals(List.of("min-low FIRING", "avg-high FIRING", "avg-high RESOLVED", "min-low RESOLVED"), seen);
+        assertEquals(97.5, alerts.get(1).getValue(), 1e-9);
+        assertTrue(alerts.get(3).getTimestamp() >= 10 * MINUTE && alerts.get(3).getTimestamp() <= 11 * MINUTE);
+    }
+
+    @Test
+    void shouldOnlyEvaluateTheRulesOfTheReadingsSensors() {
+        // Given one rule per sensor for many sensors, and a rule shared by two
+        List<RulesProperties.Definition> definitions = new ArrayList<>();
+        for (long sensorId = 1; sensorId <= 10_000; sensorId++) {
+            definitions.add(rule("high-" + sensorId, Metric.VALUE, null, Operator.ABOVE, sensorId, Duration.ZERO, sensorId));
+        }
+        definitions.add(rule("shared", Metric.VALUE, null, Operator.BELOW, 0, Duration.ZERO, 3L, 4L));
+        RulesEngine engine = new RulesEngine(properties(definitions), List.of(alerts::add));
+
+        // When
+        ReadingBatch batch = new ReadingBatch(3);
+        batch.add(3L, 0, 3.5);
+        batch.add(4L, 0, -1);
+        batch.add(20_000L, 0, 1e9);
+        engine.onIngest(batch);
+
+        // Then
+        assertEquals(10_001, engine.ruleCount());
+        assertEquals(10_000, engine.sensorCount());
+        List<String> seen = alerts.stream().map(alert -> alert.getRuleId() + "@" + alert.getSensorId()).toList();
+        assertEquals(List.of("high-3@3", "shared@4"), seen);
+    }
+
+    @Test
+    void shouldKeepTheStateOfUnchangedRulesOnReplace() {
+        RulesProperties.Definition overheat = rule("overheat", Metric.VALUE, null, Operator.ABOVE, 80, Duration.ZERO, 1L);
+        RulesEngine engine = engine(overheat);
+        engine.onIngest(batch(1L, 0, 90));
+
+        // Firing is remembered, so the rule does not fire again, while a changed rule starts over
+        engine.replace(List.of(overheat, rule("cold", Metric.VALUE, null, Operator.BELOW, 0, Duration.ZERO, 1L)));
+        engine.onIngest(batch(1L, MINUTE, 91));
+        engine.replace(List.of(rule("overheat", Metric.VALUE, null, Operator.ABOVE, 85, Duration.ZERO, 1L)));
+        engine.onIngest(batch(1L, 2 * MINUTE, 92));
+
+        assertEquals(2, alerts.size());
+        assertEquals(85, alerts.get(1).getThreshold());
+    }
+
+    @Test
+    void shouldRejectIncompleteRules() {
+        assertThrows(IllegalArgumentException.class,
+                () -> engine(rule("avg", Metric.AVG, null, Operator.ABOVE, 1, Duration.ZERO, 1L)));
+        assertThrows(IllegalArgumentException.class,
+                () -> engine(rule("none", Metric.VALUE, null, Operator.ABOVE, 1, Duration.ZERO)));
+        assertThrows(IllegalArgumentException.class, () -> engine(
+                rule("twice", Metric.VALUE, null, Operator.ABOVE, 1, Duration.ZERO, 1L),
+                rule("twice", Metric.VALUE, null, Operator.BELOW, 1, Duration.ZERO, 2L)));
+    }
+
+    private RulesEngine engine(RulesProperties.Definition... definitions) {
+        return new RulesEngine(properties(List.of(definitions)), List.of(alerts::add));
+    }
+
+    private static RulesProperties properties(List<RulesProperties.Definition> definitions) {
+        RulesProperties properties = new RulesProperties();
+        properties.setDefinitions(definitions);
+        return properties;
+    }
+
+    private static RulesProperties.Definition rule(String id, Metric metric, Duration window, Operator operator,
+                                                   double threshold, Duration holdFor, Long... sensors) {
+        RulesProperties.Definition definition = new RulesProperties.Definition();
+        definition.setId(id);
+        definition.setSensors(List.of(sensors));
+        definition.setMetric(metric);
+        definition.setWindow(window);
+        definition.setOperator(operator);
+        definition.setThreshold(threshold);
+        definition.setHoldFor(holdFor);
+        return definition;
+    }
+
+    private static ReadingBatch batch(long sensorId, long timestamp, double value) {
+        ReadingBatch batch = new ReadingBatch(1);
+        batch.add(sensorId, timestamp, value);
+        return batch;
+    }
+}
@@ -0,0 +1,63 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.exception.IngestionOverloadedException;
+import com.harbaoui.iot.sensor_data_service.exception.InvalidBatchException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingRingBuffer;
+import com.harbaoui.iot.sensor_data_service.ingest.WriteAheadLog;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class IngestionServiceTest {
+
+    private final ReadingRingBuffer buffer = new ReadingRingBuffer(8);
+    private final WriteAheadLog writeAheadLog = mock(WriteAheadLog.class);
+    private final IngestionService ingestionService = new IngestionService(buffer, writeAheadLog, List.of(), 100);
+
+    @Test
+    void shouldRefuseBatchesThatNeverFitWithBadRequest() {
+        assertThrows(InvalidBatchException.class, () -> ingestionService.ingest(readings(9)));
+        verify(writeAheadLog, never()).append(any());
+    }
+
+    @Test
+    void shouldRefuseBatchesThatDoNotFitNowWithoutLoggingThem() {
+        // Given the buffer holds six readings the flushers have not taken yet
+        assertEquals(6, ingestionService.ingest(readings(6)));
+
+        // When / Then a batch of three is refused at once and never logged, while one of two still fits
+        assertThrows(IngestionOverloadedException.class, () -> ingestionService.ingest(readings(3)));
+        assertEquals(2, ingestionService.ingest(readings(2)));
+        verify(writeAheadLog, times(2)).append(any());
+        assertEquals(8, buffer.size());
+    }
+
+    @Test
+    void shouldGiveRoomBackWhenTheLogFails() {
+        when(writeAheadLog.append(any())).thenThrow(new UncheckedIOException(new IOException("disk full")));
+
+        assertThrows(UncheckedIOException.class, () -> ingestionService.ingest(readings(8)));
+
+        assertEquals(8, buffer.remainingCapacity());
+    }
+
+    private static ReadingBatch readings(int count) {
+        ReadingBatch batch = new ReadingBatch(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(1L, i, i);
+        }
+        return batch;
+    }
+}
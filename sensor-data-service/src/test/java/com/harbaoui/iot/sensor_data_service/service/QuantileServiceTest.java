@@ -0,0 +1,114 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.dto.QuantileResponse;
+import com.harbaoui.iot.sensor_data_service.exception.InvalidQueryException;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.ReadingBatchRepository;
+import com.harbaoui.iot.sensor_data_service.repository.SketchRepository;
+import com.harbaoui.iot.sensor_data_service.store.JdbcReadingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@DataJpaTest
+@Import({SketchRepository.class, JdbcReadingStore.class, ReadingBatchRepository.class})
+@TestPropertySource(properties = "spring.jpa.show-sql=false")
+public class QuantileServiceTest {
+
+    private static final long MINUTE = 60_000L;
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY_START = 1_577_836_800_000L;
+
+    @Autowired
+    private SketchRepository sketchRepository;
+
+    @Autowired
+    private JdbcReadingStore readingStore;
+
+    private QuantileService quantileService;
+
+    @BeforeEach
+    void setUp() {
+        quantileService = new QuantileService(sketchRepository, readingStore, 0.01, 2048, 8784);
+    }
+
+    @Test
+    void shouldMergeHourSketchesAndSketchPartialHoursFromRawReadings() {
+        // Given one reading per minute for three hours, stored raw and sketched, the last hour not flushed yet
+        ReadingBatch flushed = minutes(0, 120);
+        ReadingBatch pending = minutes(120, 180);
+        ingest(flushed);
+        quantileService.flush();
+        ingest(pending);
+
+        // When the window starts and ends in the middle of an hour
+        long from = DAY_START + 30 * MINUTE;
+        long to = DAY_START + 2 * HOUR + 30 * MINUTE;
+        QuantileResponse response = quantileService.quantiles(7L, from, to, new double[] {0.5, 0.99, 1});
+
+        // Then exactly the readings of the window count, and each percentile is within 1% of the exact one
+        assertEquals(120, response.getCount());
+        double[] exact = new double[120];
+        for (int i = 0; i < 120; i++) {
+            exact[i] = value(30 + i);
+        }
+        Arrays.sort(exact);
+        assertWithinOnePercent(exact[(int) Math.floor(0.5 * 119)], response.getQuantiles().get(0).getValue());
+        assertWithinOnePercent(exact[(int) Math.floor(0.99 * 119)], response.getQuantiles().get(1).getValue());
+        assertEquals(exact[119], response.getQuantiles().get(2).getValue());
+    }
+
+    @Test
+    void shouldRemergeLateReadingsIntoFlushedHours() {
+        // Given an hour flushed twice
+        ingest(minutes(0, 30));
+        quantileService.flush();
+        ingest(minutes(30, 60));
+        quantileService.flush();
+
+        // When
+        QuantileResponse response = quantileService.quantiles(7L, DAY_START, DAY_START + HOUR, new double[] {0});
+
+        // Then both deltas are in the stored sketch
+        assertEquals(60, response.getCount());
+        assertEquals(value(0), response.getQuantiles().get(0).getValue());
+    }
+
+    @Test
+    void shouldRejectQuantilesOutsideZeroToOne() {
+        assertThrows(InvalidQueryException.class,
+                () -> quantileService.quantiles(7L, DAY_START, DAY_START + HOUR, new double[] {0.5, 1.5}));
+        assertTrue(quantileService.quantiles(8L, DAY_START, DAY_START + HOUR, new double[] {0.5}).getQuantiles().isEmpty());
+    }
+
+    private void ingest(ReadingBatch batch) {
+        readingStore.append(batch);
+        quantileService.onIngest(batch);
+    }
+
+    private static ReadingBatch minutes(int first, int last) {
+        ReadingBatch batch = new ReadingBatch(last - first);
+        for (int i = first; i < last; i++) {
+            batch.add(7L, DAY_START + i * MINUTE, value(i));
+        }
+        return batch;
+    }
+
+    // A skewed, latency-like series
+    private static double value(int minute) {
+        return 5 + Math.pow(minute % 37, 2) / 3.0;
+    }
+
+    private static void assertWithinOnePercent(double exact, double estimate) {
+        assertTrue(Math.abs(estimate - exact) <= 0.01 * Math.abs(exact), "exact=" + exact + " estimate=" + estimate);
+    }
+}
@@ -0,0 +1,179 @@
+package com.harbaoui.iot.sensor_data_service.service;
+
+import com.harbaoui.iot.sensor_data_service.dto.AggregateResponse;
+import com.harbaoui.iot.sensor_data_service.dto.AggregateSeriesResponse;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import com.harbaoui.iot.sensor_data_service.repository.RollupRepository;
+import com.harbaoui.iot.sensor_data_service.rollup.Aggregate;
+import com.harbaoui.iot.sensor_data_service.rollup.BucketKey;
+import com.harbaoui.iot.sensor_data_service.rollup.Resolution;
+import com.harbaoui.iot.sensor_data_service.store.ReadingConsumer;
+import com.harbaoui.iot.sensor_data_service.store.ReadingStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BiConsumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+@DataJpaTest
+@Import(RollupRepository.class)
+@TestPropertySource(properties = "spring.jpa.show-sql=false")
+public class RollupServiceTest {
+
+    private static final long HOUR = 3_600_000L;
+    private static final long DAY_START = 1_577_836_800_000L;
+
+    @Autowired
+    private RollupRepository rollupRepository;
+
+    private final ReadingStore readingStore = mock(ReadingStore.class);
+    private RollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        rollupService = new RollupService(rollupRepository, readingStore, 10_000);
+    }
+
+    @Test
+    void shouldAnswerHourlyStepsFromHourRollups() {
+        // Given one reading per minute for two hours
+        ReadingBatch batch = new ReadingBatch(120);
+        for (int i = 0; i < 120; i++) {
+            batch.add(5L, DAY_START + i * 60_000L, i);
+        }
+        rollupService.onIngest(batch);
+        rollupService.flush();
+
+        // When
+        AggregateSeriesResponse series = rollupService.aggregate(5L, DAY_START, DAY_START + 2 * HOUR, HOUR);
+
+        // Then
+        assertEquals("HOUR", series.getSource());
+        assertEquals(2, series.getBuckets().size());
+        AggregateResponse second = series.getBuckets().get(1);
+        assertEquals(60, second.getCount());
+        assertEquals(60.0, second.getMin());
+        assertEquals(119.0, second.getMax());
+        assertEquals(89.5, second.getAvg());
+    }
+
+    @Test
+    void shouldRemergeLateReadingsIntoFlushedBuckets() {
+        // Given a flushed bucket
+        ReadingBatch onTime = new ReadingBatch(1);
+        onTime.add(6L, DAY_START + 10_000, 10.0);
+        rollupService.onIngest(onTime);
+        rollupService.flush();
+
+        // When a late reading for the same minute arrives, before and after the next flush
+        ReadingBatch late = new ReadingBatch(1);
+        late.add(6L, DAY_START + 20_000, -4.0);
+        rollupService.onIngest(late);
+        AggregateResponse pending = rollupService.aggregate(6L, DAY_START, DAY_START + HOUR, 60_000).getBuckets().get(0);
+        rollupService.flush();
+        AggregateResponse flushed = rollupService.aggregate(6L, DAY_START, DAY_START + HOUR, 60_000).getBuckets().get(0);
+
+        // Then
+        assertEquals(2, pending.getCount());
+        assertEquals(2, flushed.getCount());
+        assertEquals(-4.0, flushed.getMin());
+        assertEquals(6.0, flushed.getSum());
+    }
+
+    @Test
+    void shouldPickCoarsestTilingResolution() {
+        assertEquals("DAY", rollupService.aggregate(1L, DAY_START, DAY_START + 7 * 24 * HOUR, 24 * HOUR).getSource());
+        assertEquals("HOUR", rollupService.aggregate(1L, DAY_START, DAY_START + 24 * HOUR, 6 * HOUR).getSource());
+        assertEquals("MINUTE", rollupService.aggregate(1L, DAY_START, DAY_START + HOUR, 120_000).getSource());
+        assertEquals("RAW", rollupService.aggregate(1L, DAY_START, DAY_START + HOUR, 10_000).getSource());
+    }
+
+    @Test
+    void shouldScanRawReadingsForPartialBucketsAtTheEdges() {
+        // Given one reading per minute for three hours, stored raw and rolled up
+        ReadingBatch batch = new ReadingBatch(180);
+        for (int i = 0; i < 180; i++) {
+            batch.add(7L, DAY_START + i * 60_000L, 1.0);
+        }
+        rollupService.onIngest(batch);
+        rollupService.flush();
+        doAnswer(invocation -> {
+            long from = invocation.getArgument(1);
+            long to = invocation.getArgument(2);
+            ReadingConsumer consumer = invocation.getArgument(3);
+            for (int i = 0; i < batch.size(); i++) {
+                if (batch.timestamp(i) >= from && batch.timestamp(i) < to) {
+                    consumer.accept(batch.timestamp(i), batch.value(i));
+                }
+            }
+            return null;
+        }).when(readingStore).scan(eq(7L), anyLong(), anyLong(), any());
+
+        // When the window starts half an hour into the first hour and ends ten minutes into the third
+        AggregateSeriesResponse series = rollupService.aggregate(7L, DAY_START + HOUR / 2, DAY_START + 2 * HOUR + 600_000L, HOUR);
+
+        // Then the partial hours hold only the readings inside the window
+        assertEquals(3, series.getBuckets().size());
+        assertEquals(30, series.getBuckets().get(0).getCount());
+        assertEquals(60, series.getBuckets().get(1).getCount());
+        assertEquals(10, series.getBuckets().get(2).getCount());
+    }
+
+    @Test
+    void shouldKeepDrainedDeltasVisibleUntilTheirMergeCommits() throws Exception {
+        // Given a rollup table whose merge is caught half way
+        Map<Long, Aggregate> table = new ConcurrentHashMap<>();
+        RollupRepository slowRepository = mock(RollupRepository.class);
+        RollupService service = new RollupService(slowRepository, readingStore, 10_000);
+        AtomicReference<AggregateSeriesResponse> seen = new AtomicReference<>();
+        CountDownLatch queried = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            Thread query = new Thread(() -> {
+                seen.set(service.aggregate(8L, DAY_START, DAY_START + HOUR, HOUR));
+                queried.countDown();
+            });
+            query.start();
+            while (query.getState() != Thread.State.WAITING && query.getState() != Thread.State.TERMINATED) {
+                Thread.onSpinWait();
+            }
+            Map<Long, Map<BucketKey, Aggregate>> deltas = invocation.getArgument(0);
+            deltas.get(8L).forEach((key, aggregate) -> {
+                if (key.resolution() == Resolution.HOUR) {
+                    table.put(key.bucketStart(), aggregate);
+                }
+            });
+            return null;
+        }).when(slowRepository).merge(any());
+        doAnswer(invocation -> {
+            BiConsumer<Long, Aggregate> consumer = invocation.getArgument(4);
+            table.forEach(consumer);
+            return null;
+        }).when(slowRepository).find(eq(8L), eq(Resolution.HOUR), anyLong(), anyLong(), any());
+        ReadingBatch batch = new ReadingBatch(1);
+        batch.add(8L, DAY_START, 1.0);
+        service.onIngest(batch);
+
+        // When a query runs while the drained deltas are being merged
+        service.flush();
+
+        // Then it counts the reading once it can no longer miss it
+        assertTrue(queried.await(10, TimeUnit.SECONDS));
+        assertEquals(1, seen.get().getBuckets().get(0).getCount());
+    }
+}
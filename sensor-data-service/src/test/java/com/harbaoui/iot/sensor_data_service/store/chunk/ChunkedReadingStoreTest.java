@@ -0,0 +1,105 @@
+package com.harbaoui.iot.sensor_data_service.store.chunk;
+
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ChunkedReadingStoreTest {
+
+    // 2020-01-01T00:00:00Z, far enough in the past for every window to be sealed
+    private static final long START = 1_577_836_800_000L;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldRoundTripIrregularPoints() {
+        // Given jittered timestamps, gaps and awkward values
+        Random random = new Random(42);
+        long[] timestamps = new long[10_000];
+        double[] values = new double[timestamps.length];
+        long timestamp = START;
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamp += i % 1000 == 0 ? 3_600_000 : 1000 + random.nextInt(50) - 25;
+            timestamps[i] = timestamp;
+            values[i] = i % 777 == 0 ? Double.NaN : random.nextGaussian() * 1e6;
+        }
+
+        // When
+        ChunkEncoder encoder = new ChunkEncoder();
+        for (int i = 0; i < timestamps.length; i++) {
+            encoder.append(timestamps[i], values[i]);
+        }
+        ChunkDecoder decoder = new ChunkDecoder(encoder.toByteBuffer());
+
+        // Then
+        for (int i = 0; i < timestamps.length; i++) {
+            decoder.next();
+            assertEquals(timestamps[i], decoder.timestamp());
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decoder.value()));
+        }
+    }
+
+    @Test
+    void shouldCompressSealedChunksAndScanRanges() throws IOException {
+        // Given a day of one-second temperature samples
+        ChunkedReadingStore store = newStore();
+        int points = 86_400;
+        ReadingBatch batch = new ReadingBatch(points);
+        for (int i = 0; i < points; i++) {
+            batch.add(1L, START + i * 1000L, Math.round(200 + 50 * Math.sin(i / 3600.0)) / 10.0);
+        }
+        store.append(batch);
+
+        // When
+        store.sealExpiredChunks();
+        double bytesPerPoint = (double) store.sealedBytes() / points;
+        List<Long> scanned = new ArrayList<>();
+        store.scan(1L, START + 7_199_000, START + 7_202_000, (timestamp, value) -> scanned.add(timestamp));
+
+        // Then
+        assertTrue(bytesPerPoint < 10, "Expected at least 10x smaller than a ~100 byte row: " + bytesPerPoint);
+        assertEquals(List.of(START + 7_199_000, START + 7_200_000, START + 7_201_000), scanned);
+        store.close();
+    }
+
+    @Test
+    void shouldMergeLateDataAndSurviveRestart() throws IOException {
+        // Given a sealed window
+        ChunkedReadingStore store = newStore();
+        ReadingBatch batch = new ReadingBatch(3);
+        batch.add(7L, START, 1.0);
+        batch.add(7L, START + 2000, 3.0);
+        store.append(batch);
+        store.sealExpiredChunks();
+
+        // When a late point arrives and the service restarts
+        ReadingBatch late = new ReadingBatch(1);
+        late.add(7L, START + 1000, 2.0);
+        store.append(late);
+        store.close();
+        ChunkedReadingStore restarted = newStore();
+        List<Double> values = new ArrayList<>();
+        restarted.scan(7L, START, START + 10_000, (timestamp, value) -> values.add(value));
+
+        // Then
+        assertEquals(List.of(1.0, 2.0, 3.0), values);
+        restarted.close();
+    }
+
+    private ChunkedReadingStore newStore() throws IOException {
+        ChunkedReadingStore store = new ChunkedReadingStore(directory, Duration.ofHours(2), Duration.ofMinutes(10));
+        store.load();
+        return store;
+    }
+}
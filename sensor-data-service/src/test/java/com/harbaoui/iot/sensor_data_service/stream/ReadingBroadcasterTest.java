@@ -0,0 +1,130 @@
+package com.harbaoui.iot.sensor_data_service.stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.sensor_data_service.ingest.ReadingBatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ReadingBroadcasterTest {
+
+    private ReadingBroadcaster broadcaster;
+
+    @AfterEach
+    void tearDown() {
+        broadcaster.close();
+    }
+
+    @Test
+    void shouldDropOldestFramesForSlowSubscriberOnly() throws InterruptedException {
+        // Given a fast and a stalled subscriber on the same sensor
+        broadcaster = new ReadingBroadcaster(new ObjectMapper(), OverflowPolicy.DROP_OLDEST, 4, 2, Duration.ofMinutes(1));
+        RecordingSink fast = new RecordingSink(null);
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink(release);
+        broadcaster.subscribe(1L, fast);
+        Subscriber slowSubscriber = broadcaster.subscribe(1L, slow);
+
+        // When twenty runs are published while the slow client is stuck on the first frame
+        for (int i = 0; i < 20; i++) {
+            int published = i + 1;
+            broadcaster.onIngest(batch(1L, i));
+            waitFor(() -> fast.frames.size() == published);
+        }
+        release.countDown();
+        waitFor(() -> slow.frames.size() == 5);
+
+        // Then the fast client saw everything and the slow one the first frame plus the newest four
+        assertEquals(20, fast.frames.size());
+        assertEquals("[{\"timestamp\":19,\"value\":19.0}]", slow.frames.get(4));
+        assertEquals(15, slowSubscriber.dropped());
+    }
+
+    @Test
+    void shouldConflateToNewestFrame() throws InterruptedException {
+        broadcaster = new ReadingBroadcaster(new ObjectMapper(), OverflowPolicy.CONFLATE, 64, 1, Duration.ofMinutes(1));
+        CountDownLatch release = new CountDownLatch(1);
+        RecordingSink slow = new RecordingSink(release);
+        broadcaster.subscribe(2L, slow);
+
+        // The first frame must reach the sink, so the rest pile up behind it
+        broadcaster.onIngest(batch(2L, 0));
+        waitFor(() -> slow.frames.size() == 1);
+        for (int i = 1; i < 10; i++) {
+            broadcaster.onIngest(batch(2L, i));
+        }
+        release.countDown();
+        waitFor(() -> slow.frames.size() == 2);
+
+        assertEquals("[{\"timestamp\":9,\"value\":9.0}]", slow.frames.get(1));
+    }
+
+    @Test
+    void shouldRemoveSubscriberWhenSendFails() throws InterruptedException {
+        broadcaster = new ReadingBroadcaster(new ObjectMapper(), OverflowPolicy.DROP_OLDEST, 4, 1, Duration.ofMinutes(1));
+        broadcaster.subscribe(3L, new FrameSink() {
+            @Override
+            public void send(String frame) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+
+        broadcaster.onIngest(batch(3L, 0));
+        waitFor(() -> broadcaster.subscriberCount(3L) == 0);
+
+        assertEquals(0, broadcaster.subscriberCount(3L));
+    }
+
+    private static ReadingBatch batch(long sensorId, int i) {
+        ReadingBatch batch = new ReadingBatch(1);
+        batch.add(sensorId, i, i);
+        return batch;
+    }
+
+    private static void waitFor(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean(), "Condition not met in time");
+    }
+
+    private static class RecordingSink implements FrameSink {
+
+        private final List<String> frames = new CopyOnWriteArrayList<>();
+        private final CountDownLatch gate;
+
+        RecordingSink(CountDownLatch gate) {
+            this.gate = gate;
+        }
+
+        @Override
+        public void send(String frame) {
+            frames.add(frame);
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
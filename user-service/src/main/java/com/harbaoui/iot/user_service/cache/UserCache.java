@@ -0,0 +1,80 @@
+package com.harbaoui.iot.user_service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Read-through cache of users by email and by id, in front of {@link UserRepository}.
+ * Both caches are bounded (W-TinyLFU eviction) and entries expire after {@code users.cache.ttl-ms},
+ * which also bounds how long a write made by another instance stays invisible.
+ * Only users that exist are cached; a miss always reaches the database.
+ * Whoever changes or deletes a user must call {@link #evict(User)} or {@link #evictAll()} once the
+ * change is committed. Cached users are shared between threads and must not be modified.
+ * Hit/miss/eviction counts are published as the {@code cache.*} meters, tagged {@code cache=users.byEmail|users.byId}.
+ */
+@Component
+public class UserCache {
+
+    private final UserRepository userRepository;
+    private final Cache<String, User> byEmail;
+    private final Cache<Long, User> byId;
+
+    public UserCache(UserRepository userRepository,
+                     MeterRegistry meterRegistry,
+                     @Value("${users.cache.max-size:10000}") long maxSize,
+                     @Value("${users.cache.ttl-ms:300000}") long ttlMillis) {
+        this.userRepository = userRepository;
+        this.byEmail = build(maxSize, ttlMillis);
+        this.byId = build(maxSize, ttlMillis);
+        CaffeineCacheMetrics.monitor(meterRegistry, byEmail, "users.byEmail");
+        CaffeineCacheMetrics.monitor(meterRegistry, byId, "users.byId");
+    }
+
+    private static <K> Cache<K, User> build(long maxSize, long ttlMillis) {
+        return Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofMillis(ttlMillis))
+                .recordStats()
+                .build();
+    }
+
+    public Optional<User> findByEmail(String email) {
+        User user = byEmail.get(email, key -> userRepository.findByEmail(key).orElse(null));
+        if (user != null) {
+            byId.put(user.getId(), user);
+        }
+        return Optional.ofNullable(user);
+    }
+
+    public Optional<User> findById(Long id) {
+        User user = byId.get(id, key -> userRepository.findById(key).orElse(null));
+        if (user != null) {
+            byEmail.put(user.getEmail(), user);
+        }
+        return Optional.ofNullable(user);
+    }
+
+    // Forget a user under both keys
+    public void evict(User user) {
+        if (user.getEmail() != null) {
+            byEmail.invalidate(user.getEmail());
+        }
+        if (user.getId() != null) {
+            byId.invalidate(user.getId());
+        }
+    }
+
+    public void evictAll() {
+        byEmail.invalidateAll();
+        byId.invalidateAll();
+    }
+}
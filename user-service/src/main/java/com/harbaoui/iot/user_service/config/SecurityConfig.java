@@ -1,9 +1,13 @@
 package com.harbaoui.iot.user_service.config;
 
 import com.harbaoui.iot.user_service.jwt.JwtAuthenticationFilter;
+import com.harbaoui.iot.user_service.ratelimit.RateLimitFilter;
+import com.harbaoui.iot.user_service.ratelimit.RateLimitProperties;
 
 import jakarta.ws.rs.HttpMethod;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.authentication.AuthenticationManager;
@@ -18,12 +22,15 @@ import org.springframework.security.web.authentication.UsernamePasswordAuthentic
 
 @Configuration
 @EnableWebSecurity
+@EnableConfigurationProperties(RateLimitProperties.class)
 public class SecurityConfig {
 
     private final JwtAuthenticationFilter jwtAuthFilter;
+    private final RateLimitFilter rateLimitFilter;
 
-    public SecurityConfig(JwtAuthenticationFilter jwtAuthFilter) {
+    public SecurityConfig(JwtAuthenticationFilter jwtAuthFilter, RateLimitFilter rateLimitFilter) {
         this.jwtAuthFilter = jwtAuthFilter;
+        this.rateLimitFilter = rateLimitFilter;
     }
 
     @Bean
@@ -34,12 +41,16 @@ public class SecurityConfig {
 
             // Allow public access to registration/login endpoints
             .authorizeHttpRequests(auth -> auth
+                // Bulk creation of users and outbound mails, for administrators only
+                .requestMatchers("/users/import").hasRole("ADMIN")
                 .requestMatchers(
                     HttpMethod.POST, "/users/*",
                     HttpMethod.GET, "users/*",
                     HttpMethod.DELETE,"/users/*"
                     
                 ).permitAll()  
+                // Pulled by other services with the shared sync secret, checked by the controller
+                .requestMatchers("/devices/changes").permitAll()
                 .anyRequest().authenticated()  
             )
             
@@ -47,14 +58,18 @@ public class SecurityConfig {
             .formLogin(AbstractHttpConfigurer::disable)  
             
             // Add JWT filter
-            .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class);
+            .addFilterBefore(jwtAuthFilter, UsernamePasswordAuthenticationFilter.class)
+
+            // Refuse login/register bursts before any lookup or hashing
+            .addFilterBefore(rateLimitFilter, JwtAuthenticationFilter.class);
 
         return http.build();
     }
 
+    // Hashes made with another strength are upgraded on the next successful login
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${security.bcrypt.strength:10}") int strength) {
+        return new BCryptPasswordEncoder(strength);
     }
 
     @Bean
@@ -0,0 +1,81 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.harbaoui.iot.user_service.dto.DeviceChangePage;
+import com.harbaoui.iot.user_service.dto.DeviceRegistration;
+import com.harbaoui.iot.user_service.dto.DeviceRequest;
+import com.harbaoui.iot.user_service.entity.Device;
+import com.harbaoui.iot.user_service.jwt.JwtPrincipal;
+import com.harbaoui.iot.user_service.service.DeviceService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.*;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.List;
+
+@RestController
+@RequestMapping("/devices")
+public class DeviceController {
+
+    static final String SYNC_SECRET_HEADER = "X-Sync-Secret";
+
+    private final DeviceService deviceService;
+    private final byte[] syncSecret;
+
+    public DeviceController(DeviceService deviceService,
+                            @Value("${devices.sync.secret:}") String syncSecret) {
+        this.deviceService = deviceService;
+        this.syncSecret = syncSecret.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Register a device
+    // This endpoint creates a device of the authenticated user for the given sensors.
+    // It returns a 201 Created status with the API key of the device, which is shown only this once.
+    @PostMapping
+    public ResponseEntity<DeviceRegistration> register(@AuthenticationPrincipal JwtPrincipal principal,
+                                                       @RequestBody DeviceRequest request) {
+        DeviceRegistration registration = deviceService.register(principal.userId(), request.getName(), request.getSensorIds());
+        return ResponseEntity.status(HttpStatus.CREATED).body(registration);
+    }
+
+    // List devices
+    // This endpoint returns the active devices of the authenticated user, without their keys.
+    @GetMapping
+    public ResponseEntity<List<Device>> getDevices(@AuthenticationPrincipal JwtPrincipal principal) {
+        return ResponseEntity.ok(deviceService.findDevices(principal.userId()));
+    }
+
+    // Replace the sensors of a device
+    // It returns a 404 Not Found status if the device does not exist or belongs to another user.
+    @PutMapping("/{id}/sensors")
+    public ResponseEntity<Device> updateSensors(@AuthenticationPrincipal JwtPrincipal principal,
+                                                @PathVariable long id,
+                                                @RequestBody List<Long> sensorIds) {
+        return ResponseEntity.ok(deviceService.updateSensors(principal.userId(), id, sensorIds));
+    }
+
+    // Revoke a device
+    // Its API key stops working once the services that replicate the registry pull the change.
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> revoke(@AuthenticationPrincipal JwtPrincipal principal, @PathVariable long id) {
+        deviceService.revoke(principal.userId(), id);
+        return ResponseEntity.noContent().build();
+    }
+
+    // Device change feed
+    // This endpoint is pulled by sensor-data-service to keep its copy of the registry current.
+    // It is not behind a user token; callers present the shared devices.sync.secret instead.
+    @GetMapping("/changes")
+    public ResponseEntity<DeviceChangePage> getChanges(@RequestHeader(value = SYNC_SECRET_HEADER, required = false) String secret,
+                                                       @RequestParam(defaultValue = "0") long since,
+                                                       @RequestParam(defaultValue = "1000") int limit) {
+        if (syncSecret.length == 0 || secret == null
+                || !MessageDigest.isEqual(syncSecret, secret.getBytes(StandardCharsets.UTF_8))) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).build();
+        }
+        return ResponseEntity.ok(deviceService.findChanges(since, limit));
+    }
+}
@@ -1,55 +1,110 @@
 package com.harbaoui.iot.user_service.controller;
 
 import com.harbaoui.iot.user_service.entity.User;
-import com.harbaoui.iot.user_service.exception.AccountNotVerifiedException;
+import com.harbaoui.iot.user_service.exception.HashingOverloadedException;
 import com.harbaoui.iot.user_service.exception.InvalidCredentialsException;
 import com.harbaoui.iot.user_service.exception.UserAlreadyExistsException;
+import com.harbaoui.iot.user_service.service.UserImportService;
 import com.harbaoui.iot.user_service.service.UserService;
 import com.harbaoui.iot.user_service.dto.LoginRequest;
 import com.harbaoui.iot.user_service.dto.LoginResponse;
+import com.harbaoui.iot.user_service.dto.UserImportReport;
+import com.harbaoui.iot.user_service.dto.UserPage;
+import com.harbaoui.iot.user_service.dto.UserSummary;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import lombok.RequiredArgsConstructor;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping("/users")
 @RequiredArgsConstructor
 public class UserController {
 
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
     private final UserService userService;
+    private final UserImportService userImportService;
+    private final ObjectMapper objectMapper;
 
 
     // Create a user
     // This endpoint is used to register a new user.
     // It accepts a User object in the request body and returns the created user with a 201 Created status.
     // If the email already exists, it returns a 400 Bad Request status.
+    // If the password hashing pool is saturated, it returns a 503 Service Unavailable status.
     @PostMapping ("/register")
-    public ResponseEntity<?> register(@RequestBody User user) {
-        try {
-            User savedUser = userService.saveUser(user);
-            return ResponseEntity.status(HttpStatus.CREATED).body(savedUser);
-        } catch (UserAlreadyExistsException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        } catch (InvalidCredentialsException e) {
-            return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
-        } catch (Exception e) {
+    public CompletableFuture<ResponseEntity<?>> register(@RequestBody User user) {
+        return userService.saveUser(user).handle((savedUser, error) -> {
+            if (error == null) {
+                return ResponseEntity.status(HttpStatus.CREATED).body(savedUser);
+            }
+            Throwable e = unwrap(error);
+            if (e instanceof UserAlreadyExistsException || e instanceof InvalidCredentialsException) {
+                return ResponseEntity.status(HttpStatus.BAD_REQUEST).body(e.getMessage());
+            }
+            if (e instanceof HashingOverloadedException) {
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Something went wrong!");
-        }
+        });
     }
     
 
+    // Import users
+    // This endpoint is used to create many users at once from a CSV file (header email,name,password,phoneNumber).
+    // It returns a 200 OK response with how many users were created or rejected and the import rate.
+    // Verification emails are queued and sent in the background.
+    @PostMapping(value = "/import", consumes = "text/csv")
+    public ResponseEntity<UserImportReport> importCsv(InputStream body) throws IOException {
+        return ResponseEntity.ok(userImportService.importCsv(body));
+    }
+
+    // Import users
+    // Same as above, with one JSON user object per line (NDJSON).
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ResponseEntity<UserImportReport> importNdjson(InputStream body) throws IOException {
+        return ResponseEntity.ok(userImportService.importNdjson(body));
+    }
+
     // Find all users
     // This endpoint is used to retrieve all users from the database.
-    // It returns a 200 OK response with a list of users.
+    // It returns a 200 OK response with a JSON array of users, streamed page by page,
+    // so memory stays bounded whatever the size of the table. Password hashes are never included.
     @GetMapping ("/all")
-    public ResponseEntity<List<User>> getAllUsers() {
-        List<User> users = userService.getAllUsers();
-        return ResponseEntity.ok(users);
+    public ResponseEntity<StreamingResponseBody> getAllUsers() {
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> writeAllUsers(out, true));
+    }
+
+    // Page through users
+    // This endpoint is used to list users with a cursor: pass the nextCursor of a page as "after" to get the next one.
+    // It returns a 200 OK response with at most "limit" users, capped by users.page.max-size.
+    @GetMapping("/page")
+    public ResponseEntity<UserPage> getUserPage(@RequestParam(defaultValue = "0") long after,
+                                                @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(userService.findUserPage(after, limit));
+    }
+
+    // Export users
+    // This endpoint is used by admin exports; it streams every user as one JSON object per line (NDJSON).
+    @GetMapping(value = "/export", produces = "application/x-ndjson")
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        return ResponseEntity.ok()
+                .contentType(NDJSON)
+                .body(out -> writeAllUsers(out, false));
     }
 
     // Get a user by ID
@@ -104,23 +159,57 @@ public class UserController {
     
     // Login
     // This endpoint is used to authenticate a user and generate a JWT token.
+    // The request thread is released while the password is checked on the hashing pool.
     @PostMapping("/login")
-    public ResponseEntity<?> login(@RequestBody LoginRequest request) {
-        try {
-            // Delegate the login process to UserService
-            String token = userService.login(request);
-    
-            // Return the generated token in the response
-            return ResponseEntity.ok(new LoginResponse(token));
-        } catch (AccountNotVerifiedException e) {
-            // Handle unverified account scenario
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
-        } catch (RuntimeException e) {
-            // Handle user not found or invalid credentials scenario
-            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
-        } catch (Exception e) {
+    public CompletableFuture<ResponseEntity<?>> login(@RequestBody LoginRequest request) {
+        // Delegate the login process to UserService
+        return userService.login(request).handle((token, error) -> {
+            if (error == null) {
+                // Return the generated token in the response
+                return ResponseEntity.ok(new LoginResponse(token));
+            }
+            Throwable e = unwrap(error);
+            if (e instanceof HashingOverloadedException) {
+                // Too many logins in flight, ask the client to retry
+                return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
+            }
+            if (e instanceof RuntimeException) {
+                // Handle unverified account, user not found or invalid credentials scenario
+                return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(e.getMessage());
+            }
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Something went wrong!");
+        });
+    }
+
+    // Write every user, one keyset page at a time, as a JSON array or as one JSON object per line
+    private void writeAllUsers(OutputStream out, boolean jsonArray) throws IOException {
+        if (jsonArray) {
+            out.write('[');
         }
+        boolean first = true;
+        Long cursor = 0L;
+        while (cursor != null) {
+            UserPage page = userService.findUserPage(cursor, Integer.MAX_VALUE);
+            for (UserSummary user : page.getUsers()) {
+                if (jsonArray && !first) {
+                    out.write(',');
+                }
+                out.write(objectMapper.writeValueAsBytes(user));
+                if (!jsonArray) {
+                    out.write('\n');
+                }
+                first = false;
+            }
+            out.flush();
+            cursor = page.getNextCursor();
+        }
+        if (jsonArray) {
+            out.write(']');
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
     }
     
     
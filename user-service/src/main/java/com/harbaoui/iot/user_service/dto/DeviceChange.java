@@ -0,0 +1,20 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Current state of one device, as shipped to services that replicate the device registry
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceChange {
+    private long version;
+    private long deviceId;
+    private long userId;
+    private String keyHash;
+    private List<Long> sensorIds;
+    private boolean revoked;
+}
@@ -0,0 +1,14 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Changes after a version, oldest first; pass version as "since" to get the next page, until changes is empty
+@Data
+@AllArgsConstructor
+public class DeviceChangePage {
+    private List<DeviceChange> changes;
+    private long version;
+}
@@ -0,0 +1,16 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// A newly registered device; apiKey is never shown again, only its hash is stored
+@Data
+@AllArgsConstructor
+public class DeviceRegistration {
+    private Long id;
+    private String name;
+    private List<Long> sensorIds;
+    private String apiKey;
+}
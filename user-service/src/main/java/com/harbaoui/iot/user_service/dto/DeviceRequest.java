@@ -0,0 +1,15 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceRequest {
+    private String name;
+    private List<Long> sensorIds;
+}
@@ -0,0 +1,19 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// Outcome of a bulk import; errors lists the first rejected rows with their line number
+@Data
+@AllArgsConstructor
+public class UserImportReport {
+    private int received;
+    private int created;
+    private int duplicates;
+    private int invalid;
+    private long elapsedMs;
+    private double usersPerSecond;
+    private List<String> errors;
+}
@@ -0,0 +1,12 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.Data;
+
+// One user of an import file; NDJSON lines use the same field names as the CSV header
+@Data
+public class UserImportRow {
+    private String email;
+    private String name;
+    private String password;
+    private String phoneNumber;
+}
@@ -0,0 +1,14 @@
+package com.harbaoui.iot.user_service.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+// One page of users; pass nextCursor as "after" to get the next one, null on the last page
+@Data
+@AllArgsConstructor
+public class UserPage {
+    private List<UserSummary> users;
+    private Long nextCursor;
+}
@@ -0,0 +1,49 @@
+package com.harbaoui.iot.user_service.entity;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A device allowed to publish readings for some sensors of its owner
+@Entity
+@Table(name = "devices", indexes = {
+        @Index(name = "idx_devices_version", columnList = "version", unique = true),
+        @Index(name = "idx_devices_user", columnList = "userId")
+})
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class Device {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // A plain id rather than a relation: deleting the user revokes its devices instead of cascading
+    @Column(nullable = false)
+    private Long userId;
+
+    private String name;
+
+    // SHA-256 of the API key, in hex; the key itself is only returned once, on registration
+    @JsonIgnore
+    @Column(nullable = false, unique = true, length = 64)
+    private String apiKeyHash;
+
+    @Column(nullable = false, length = 4000)
+    @Convert(converter = SensorIdsConverter.class)
+    @Builder.Default
+    private List<Long> sensorIds = new ArrayList<>();
+
+    // Revoked devices keep their row so the change feed can tell consumers to drop them
+    @Builder.Default
+    private boolean revoked = false;
+
+    // Position in the device change feed; every change takes the next value of DeviceVersion
+    @Column(nullable = false)
+    private long version;
+}
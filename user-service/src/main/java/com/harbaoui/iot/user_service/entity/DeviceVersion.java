@@ -0,0 +1,22 @@
+package com.harbaoui.iot.user_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+// Single-row counter of the device change feed
+// Incrementing it locks the row until commit, so versions become visible in the order they were taken.
+@Entity
+@Table(name = "device_version")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeviceVersion {
+
+    public static final int ID = 1;
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false)
+    private long lastVersion;
+}
@@ -0,0 +1,46 @@
+package com.harbaoui.iot.user_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.springframework.data.domain.Persistable;
+
+// The user a sensor id belongs to: the first one whose device listed it
+// Only that user's devices may publish for it; the claim is released when the user is deleted.
+@Entity
+@Table(name = "sensor_claims", indexes = @Index(name = "idx_sensor_claims_user", columnList = "userId"))
+@Getter
+@NoArgsConstructor
+public class SensorClaim implements Persistable<Long> {
+
+    @Id
+    private Long sensorId;
+
+    @Column(nullable = false)
+    private Long userId;
+
+    // A new claim is always inserted, so a concurrent claim of the same sensor fails on the primary key
+    // instead of being overwritten by a merge
+    @Transient
+    private boolean stored;
+
+    public SensorClaim(Long sensorId, Long userId) {
+        this.sensorId = sensorId;
+        this.userId = userId;
+    }
+
+    @Override
+    public Long getId() {
+        return sensorId;
+    }
+
+    @Override
+    public boolean isNew() {
+        return !stored;
+    }
+
+    @PostLoad
+    @PostPersist
+    void markStored() {
+        stored = true;
+    }
+}
@@ -0,0 +1,29 @@
+package com.harbaoui.iot.user_service.entity;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// Stores a list of sensor ids as one comma-separated column, the way the change feed ships it
+@Converter
+public class SensorIdsConverter implements AttributeConverter<List<Long>, String> {
+
+    @Override
+    public String convertToDatabaseColumn(List<Long> sensorIds) {
+        return sensorIds == null ? "" : sensorIds.stream().map(String::valueOf).collect(Collectors.joining(","));
+    }
+
+    @Override
+    public List<Long> convertToEntityAttribute(String column) {
+        List<Long> sensorIds = new ArrayList<>();
+        if (column != null && !column.isEmpty()) {
+            for (String id : column.split(",")) {
+                sensorIds.add(Long.parseLong(id));
+            }
+        }
+        return sensorIds;
+    }
+}
@@ -1,12 +1,15 @@
 package com.harbaoui.iot.user_service.entity;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.persistence.*;
 import lombok.*;
 import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 @Entity
 @Table(name = "users")
@@ -25,6 +28,8 @@ public class User implements UserDetails {
 
     private String name;
 
+    // Accepted on registration, never written back in a response
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password;
 
     private String phoneNumber;
@@ -33,12 +38,17 @@ public class User implements UserDetails {
     @Builder.Default
     private boolean isVerified = false;
 
+    // Granted ROLE_ADMIN, e.g. for bulk imports; set in the database only, never bound from a request
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    @Column(nullable = false)
+    @Builder.Default
+    private boolean isAdmin = false;
+
     // === Implemented methods from UserDetails ===
 
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
-        // You can later implement roles/authorities properly.
-        return Collections.emptyList();
+        return isAdmin ? List.of(new SimpleGrantedAuthority("ROLE_ADMIN")) : Collections.emptyList();
     }
 
     @Override
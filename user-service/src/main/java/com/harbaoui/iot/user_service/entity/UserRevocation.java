@@ -0,0 +1,27 @@
+package com.harbaoui.iot.user_service.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+
+import java.time.Instant;
+
+// Tokens of the user issued up to revokedAt are refused; kept only as long as such a token can live
+@Entity
+@Table(name = "user_revocations", indexes = @Index(name = "idx_user_revocations_revoked_at", columnList = "revokedAt"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class UserRevocation {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // Null revokes the tokens of every user
+    private Long userId;
+
+    // An instant rather than a LocalDateTime: it is compared with the epoch-based iat of tokens on every instance
+    @Column(nullable = false)
+    private Instant revokedAt;
+}
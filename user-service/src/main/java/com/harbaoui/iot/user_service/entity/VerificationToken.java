@@ -6,6 +6,7 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
+@Table(indexes = @Index(name = "idx_verification_token_expiry", columnList = "expiryDate"))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -16,6 +17,8 @@ public class VerificationToken {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
+    // Random UUID in its 36-char text form, as sent in the verification link
+    @Column(nullable = false, unique = true, length = 36)
     private String token;
 
     private LocalDateTime expiryDate;
@@ -0,0 +1,7 @@
+package com.harbaoui.iot.user_service.exception;
+
+public class DeviceNotFoundException extends RuntimeException {
+    public DeviceNotFoundException(String message) {
+        super(message);
+    }
+}
@@ -19,6 +19,38 @@ public class GlobalExceptionHandler {
         return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
     }
 
+    // Ask clients to back off while the password hashing pool is saturated
+    @ExceptionHandler(HashingOverloadedException.class)
+    public ResponseEntity<Map<String, String>> handleHashingOverloadedException(HashingOverloadedException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    // Reject an import file that cannot be processed at all
+    @ExceptionHandler(InvalidImportException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidImportException(InvalidImportException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
+    // Devices of other users are reported as missing, not as forbidden
+    @ExceptionHandler(DeviceNotFoundException.class)
+    public ResponseEntity<Map<String, String>> handleDeviceNotFoundException(DeviceNotFoundException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.NOT_FOUND);
+    }
+
+    // Reject a device without sensors or with too many of them
+    @ExceptionHandler(InvalidDeviceException.class)
+    public ResponseEntity<Map<String, String>> handleInvalidDeviceException(InvalidDeviceException ex) {
+        Map<String, String> error = new HashMap<>();
+        error.put("error", ex.getMessage());
+        return new ResponseEntity<>(error, HttpStatus.BAD_REQUEST);
+    }
+
     // You can add other exception handlers here for different errors as needed
 
     // Fallback for other unhandled exceptions
@@ -0,0 +1,7 @@
+package com.harbaoui.iot.user_service.exception;
+
+public class HashingOverloadedException extends RuntimeException {
+    public HashingOverloadedException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.harbaoui.iot.user_service.exception;
+
+public class InvalidDeviceException extends RuntimeException {
+    public InvalidDeviceException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.harbaoui.iot.user_service.exception;
+
+public class InvalidImportException extends RuntimeException {
+    public InvalidImportException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,22 @@
+package com.harbaoui.iot.user_service.jwt;
+
+import org.springframework.security.core.GrantedAuthority;
+
+import java.security.Principal;
+import java.util.List;
+
+/**
+ * The authenticated user as described by the claims of a verified token, without a database lookup.
+ * {@link #getName()} is the email, so {@code Authentication.getName()} is unchanged.
+ */
+public record JwtPrincipal(long userId,
+                           String email,
+                           boolean verified,
+                           List<GrantedAuthority> authorities,
+                           long issuedAt) implements Principal {
+
+    @Override
+    public String getName() {
+        return email;
+    }
+}
@@ -1,61 +1,72 @@
 package com.harbaoui.iot.user_service.jwt;
 
+import com.harbaoui.iot.user_service.entity.User;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.MalformedJwtException;
 import io.jsonwebtoken.security.Keys;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.stereotype.Service;
 import javax.crypto.SecretKey;
 import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.Date;
-
-
-
-
+import java.util.List;
 
 @Service
 public class JwtService {
 
-    @Value("${jwt.secret}")
-    private String secretKey;
+    public static final long TOKEN_LIFETIME_MILLIS = 86400000;
 
-    
+    static final String USER_ID_CLAIM = "uid";
+    static final String VERIFIED_CLAIM = "verified";
+    static final String AUTHORITIES_CLAIM = "authorities";
 
-    private SecretKey getSigningKey() {
+    // Decoded once; the parser is immutable and thread-safe, so every request shares it
+    private final SecretKey signingKey;
+    private final JwtParser parser;
+
+    public JwtService(@Value("${jwt.secret}") String secretKey) {
         byte[] decodedKey = Base64.getDecoder().decode(secretKey.getBytes(StandardCharsets.UTF_8));
-        return Keys.hmacShaKeyFor(decodedKey);
+        this.signingKey = Keys.hmacShaKeyFor(decodedKey);
+        this.parser = Jwts.parser().verifyWith(signingKey).build();
     }
 
-    
-
-    public String generateJwtToken(String email) {
+    // The claims carry everything the authentication filter needs, so it never has to load the user
+    public String generateJwtToken(User user) {
+        List<String> authorities = user.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList();
+        long now = System.currentTimeMillis();
         return Jwts.builder()
-                .subject(email)
-                .issuedAt(new Date())
-                .expiration(new Date(System.currentTimeMillis() + 86400000))
-                .signWith(getSigningKey())
+                .subject(user.getEmail())
+                .claim(USER_ID_CLAIM, user.getId())
+                .claim(VERIFIED_CLAIM, user.isVerified())
+                .claim(AUTHORITIES_CLAIM, authorities)
+                .issuedAt(new Date(now))
+                .expiration(new Date(now + TOKEN_LIFETIME_MILLIS))
+                .signWith(signingKey)
                 .compact();
     }
 
-    public boolean validateJwtToken(String token) {
-        try {
-            Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    // Verify the signature and expiry and return the claims, in a single parse
+    // Throws JwtException (or IllegalArgumentException for blank input) when the token is not valid.
+    public Claims parseVerifiedClaims(String token) {
+        return parser.parseSignedClaims(token).getPayload();
     }
 
-    public String extractUsername(String token) {
-        Claims claims = Jwts.parser()
-                .verifyWith(getSigningKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
-        return claims.getSubject();
+    // Build the principal from the claims of a token that passed parseVerifiedClaims
+    // Tokens issued before the claims were added have no user id and are refused: their holders log in again.
+    public JwtPrincipal toPrincipal(Claims claims) {
+        Long userId = claims.get(USER_ID_CLAIM, Long.class);
+        if (userId == null || claims.getSubject() == null || claims.getIssuedAt() == null) {
+            throw new MalformedJwtException("Token lacks the user claims");
+        }
+        List<?> names = claims.get(AUTHORITIES_CLAIM, List.class);
+        List<GrantedAuthority> authorities = names == null ? List.of()
+                : names.stream().<GrantedAuthority>map(name -> new SimpleGrantedAuthority(name.toString())).toList();
+        return new JwtPrincipal(userId, claims.getSubject(), Boolean.TRUE.equals(claims.get(VERIFIED_CLAIM, Boolean.class)),
+                authorities, claims.getIssuedAt().getTime());
     }
 }
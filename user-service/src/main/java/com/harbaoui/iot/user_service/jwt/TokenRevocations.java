@@ -0,0 +1,127 @@
+package com.harbaoui.iot.user_service.jwt;
+
+import com.harbaoui.iot.user_service.entity.UserRevocation;
+import com.harbaoui.iot.user_service.repository.UserRevocationRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Denylist of users whose tokens must stop working before they expire, e.g. because the user was deleted.
+ * Checking a token is a hash lookup; the database is only read by {@link #refresh()} every
+ * {@code jwt.revocation.refresh-ms}, to pick up revocations made by other instances.
+ * Each refresh reads again the revocations of the last {@code jwt.revocation.overlap} before the newest one
+ * it applied: a revocation stamped earlier may commit after a later one was read, and applying it twice is harmless.
+ * An entry is dropped once every token it could refuse has expired, so the list stays small.
+ */
+@Component
+public class TokenRevocations {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocations.class);
+
+    private final UserRevocationRepository userRevocationRepository;
+    private final int batchSize;
+    // User id -> epoch millis up to which its tokens are refused
+    private final Map<Long, Long> revokedAt = new ConcurrentHashMap<>();
+    // Tokens of every user issued up to this instant are refused
+    private final AtomicLong allRevokedAt = new AtomicLong(Long.MIN_VALUE);
+    private final Duration overlap;
+    // Newest revocation instant already applied; only touched by refresh
+    private Instant watermark = Instant.EPOCH;
+
+    public TokenRevocations(UserRevocationRepository userRevocationRepository,
+                            @Value("${jwt.revocation.batch-size:1000}") int batchSize,
+                            @Value("${jwt.revocation.overlap:1m}") Duration overlap) {
+        this.userRevocationRepository = userRevocationRepository;
+        this.batchSize = batchSize;
+        this.overlap = overlap;
+    }
+
+    // Whether the token behind this principal was issued before its user was revoked
+    // JWT issue times have a one-second resolution, so a token issued in the same second is refused too.
+    public boolean isRevoked(JwtPrincipal principal) {
+        if (principal.issuedAt() <= allRevokedAt.get()) {
+            return true;
+        }
+        Long until = revokedAt.get(principal.userId());
+        return until != null && principal.issuedAt() <= until;
+    }
+
+    // Refuse every token issued so far to this user, here at once and on other instances at their next refresh
+    public void revoke(long userId) {
+        record(userId);
+    }
+
+    // Refuse every token issued so far to any user
+    public void revokeAll() {
+        record(null);
+    }
+
+    // Apply revocations recorded since the last refresh, and forget those no unexpired token can predate
+    // Returns the number of revocations read, including those read again from the overlap.
+    @Scheduled(fixedDelayString = "${jwt.revocation.refresh-ms:5000}")
+    public synchronized int refresh() {
+        int read = 0;
+        Instant afterRevokedAt = watermark.minus(overlap);
+        long afterId = 0;
+        List<UserRevocation> revocations;
+        do {
+            revocations = userRevocationRepository.findAfter(afterRevokedAt, afterId, PageRequest.of(0, batchSize));
+            for (UserRevocation revocation : revocations) {
+                apply(revocation.getUserId(), revocation.getRevokedAt().toEpochMilli());
+                afterRevokedAt = revocation.getRevokedAt();
+                afterId = revocation.getId();
+            }
+            read += revocations.size();
+        } while (revocations.size() == batchSize);
+        if (afterRevokedAt.isAfter(watermark)) {
+            watermark = afterRevokedAt;
+        }
+
+        long cutoff = System.currentTimeMillis() - JwtService.TOKEN_LIFETIME_MILLIS;
+        revokedAt.values().removeIf(until -> until < cutoff);
+        return read;
+    }
+
+    // Delete revocations older than the token lifetime; any instance may run it, the delete is idempotent
+    @Scheduled(fixedDelayString = "${jwt.revocation.purge-interval-ms:3600000}",
+            initialDelayString = "${jwt.revocation.purge-initial-delay-ms:60000}")
+    public int purgeExpired() {
+        int deleted = userRevocationRepository.deleteRevokedBefore(
+                Instant.now().minusMillis(JwtService.TOKEN_LIFETIME_MILLIS));
+        if (deleted > 0) {
+            logger.info("Purged {} expired user revocations", deleted);
+        }
+        return deleted;
+    }
+
+    public int size() {
+        return revokedAt.size();
+    }
+
+    // Stored at millisecond precision, which every database keeps, so the refresh keyset compares exactly
+    private void record(Long userId) {
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        userRevocationRepository.save(UserRevocation.builder().userId(userId).revokedAt(now).build());
+        apply(userId, now.toEpochMilli());
+    }
+
+    private void apply(Long userId, long until) {
+        if (userId == null) {
+            allRevokedAt.accumulateAndGet(until, Math::max);
+        } else {
+            revokedAt.merge(userId, until, Math::max);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.harbaoui.iot.user_service.jwt;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tokens that already passed signature verification, with the principal built from their claims.
+ * A repeated request with the same token costs one hash lookup instead of a parse and an HMAC.
+ * An entry never outlives its token, and lives at most {@code jwt.cache.ttl-ms}; revoked users are
+ * refused by {@link TokenRevocations}, which the filter checks on hits as well.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final long ttlMillis;
+
+    public VerifiedTokenCache(@Value("${jwt.cache.max-entries:10000}") int maxEntries,
+                              @Value("${jwt.cache.ttl-ms:300000}") long ttlMillis) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlMillis;
+    }
+
+    // Principal of a verified, unexpired token, or null
+    public JwtPrincipal get(String token) {
+        Entry entry = entries.get(token);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.expiresAt() <= System.currentTimeMillis()) {
+            entries.remove(token, entry);
+            return null;
+        }
+        return entry.principal();
+    }
+
+    public void put(String token, JwtPrincipal principal, long tokenExpiresAt) {
+        long now = System.currentTimeMillis();
+        long expiresAt = Math.min(tokenExpiresAt, now + ttlMillis);
+        if (expiresAt <= now) {
+            return;
+        }
+        if (entries.size() >= maxEntries) {
+            makeRoom(now);
+        }
+        entries.put(token, new Entry(principal, expiresAt));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // Purge expired entries; if the cache is still full, drop an arbitrary tenth of it
+    private void makeRoom(long now) {
+        entries.values().removeIf(entry -> entry.expiresAt() <= now);
+        int toDrop = entries.size() - maxEntries + Math.max(1, maxEntries / 10);
+        Iterator<String> tokens = entries.keySet().iterator();
+        while (toDrop-- > 0 && tokens.hasNext()) {
+            tokens.next();
+            tokens.remove();
+        }
+    }
+
+    private record Entry(JwtPrincipal principal, long expiresAt) {
+    }
+}
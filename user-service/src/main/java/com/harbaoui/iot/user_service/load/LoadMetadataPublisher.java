@@ -0,0 +1,56 @@
+package com.harbaoui.iot.user_service.load;
+
+import com.harbaoui.iot.user_service.service.PasswordHashingService;
+import com.netflix.appinfo.ApplicationInfoManager;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Publishes this instance's load in its Eureka metadata, for load-aware balancers of other services:
+ * requests in flight, BCrypt tasks queued, recent p99 latency, and when the values were taken.
+ * Eureka ships the metadata with the next re-registration, so consumers see it a few seconds late
+ * and must combine it with what they know themselves.
+ */
+@Component
+public class LoadMetadataPublisher {
+
+    public static final String IN_FLIGHT = "load.in-flight";
+    public static final String QUEUE = "load.queue";
+    public static final String P99_MS = "load.p99-ms";
+    public static final String UPDATED = "load.updated";
+
+    private final ObjectProvider<ApplicationInfoManager> applicationInfoManager;
+    private final LoadTracker loadTracker;
+    private final PasswordHashingService passwordHashingService;
+    private final boolean enabled;
+
+    public LoadMetadataPublisher(ObjectProvider<ApplicationInfoManager> applicationInfoManager,
+                                 LoadTracker loadTracker,
+                                 PasswordHashingService passwordHashingService,
+                                 @Value("${load.publish.enabled:true}") boolean enabled) {
+        this.applicationInfoManager = applicationInfoManager;
+        this.loadTracker = loadTracker;
+        this.passwordHashingService = passwordHashingService;
+        this.enabled = enabled;
+    }
+
+    // Take the current signals and hand them to the Eureka client
+    @Scheduled(fixedDelayString = "${load.publish.interval-ms:2000}")
+    public void publish() {
+        double p99 = loadTracker.rollP99();
+        ApplicationInfoManager manager = applicationInfoManager.getIfAvailable();
+        if (!enabled || manager == null) {
+            return;
+        }
+        manager.registerAppMetadata(Map.of(
+                IN_FLIGHT, Integer.toString(loadTracker.inFlight()),
+                QUEUE, Integer.toString(passwordHashingService.queuedTasks()),
+                P99_MS, String.format(Locale.ROOT, "%.3f", p99),
+                UPDATED, Long.toString(System.currentTimeMillis())));
+    }
+}
@@ -0,0 +1,152 @@
+package com.harbaoui.iot.user_service.load;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts requests in flight and keeps their recent latency distribution, for the load signals
+ * published to Eureka. Runs first, so the time includes security, rate limiting and BCrypt.
+ * A request that goes async, like a login waiting for the hashing pool, stays in flight until its
+ * async context completes, times out or fails, and is timed up to that point.
+ * <p>
+ * Latencies go to log-scaled buckets (four per doubling from 100 us, ~19% wide), in a ring of
+ * {@value #SLOTS} slots advanced at every publication, so the p99 covers the last few intervals
+ * and costs one atomic increment per request.
+ */
+@Component
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class LoadTracker extends OncePerRequestFilter {
+
+    static final int SLOTS = 5;
+    private static final int BUCKETS = 64;
+    private static final double BASE_MICROS = 100;
+    private static final double BUCKETS_PER_DOUBLING = 4;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLongArray[] slots = new AtomicLongArray[SLOTS];
+    private volatile int current;
+
+    public LoadTracker() {
+        for (int i = 0; i < SLOTS; i++) {
+            slots[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean async = false;
+        try {
+            filterChain.doFilter(request, response);
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new Completion(start));
+                async = true;
+            }
+        } finally {
+            if (!async) {
+                finish(start);
+            }
+        }
+    }
+
+    private void finish(long start) {
+        record(System.nanoTime() - start);
+        inFlight.decrementAndGet();
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public void record(long nanos) {
+        slots[current].incrementAndGet(bucketOf(nanos / 1000.0));
+    }
+
+    // p99 in milliseconds over the recent slots, then start a new slot; 0 when nothing was recorded
+    public double rollP99() {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (AtomicLongArray slot : slots) {
+            for (int b = 0; b < BUCKETS; b++) {
+                long count = slot.get(b);
+                counts[b] += count;
+                total += count;
+            }
+        }
+        int next = (current + 1) % SLOTS;
+        for (int b = 0; b < BUCKETS; b++) {
+            slots[next].set(b, 0);
+        }
+        current = next;
+
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * 0.99);
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return upperBoundMicros(b) / 1000.0;
+            }
+        }
+        return upperBoundMicros(BUCKETS - 1) / 1000.0;
+    }
+
+    // Ends an async request once, however its async context ends
+    private class Completion implements AsyncListener {
+
+        private final long start;
+
+        Completion(long start) {
+            this.start = start;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            finish(start);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        // A new async cycle drops the listeners of the previous one
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            event.getAsyncContext().addListener(this);
+        }
+    }
+
+    private static int bucketOf(double micros) {
+        if (micros <= BASE_MICROS) {
+            return 0;
+        }
+        int bucket = 1 + (int) (BUCKETS_PER_DOUBLING * Math.log(micros / BASE_MICROS) / Math.log(2));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    private static double upperBoundMicros(int bucket) {
+        return BASE_MICROS * Math.pow(2, bucket / BUCKETS_PER_DOUBLING);
+    }
+}
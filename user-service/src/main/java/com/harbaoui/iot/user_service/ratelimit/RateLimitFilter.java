@@ -0,0 +1,150 @@
+package com.harbaoui.iot.user_service.ratelimit;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Rate limits POST /users/login and /users/register per client IP and per email, ahead of the JWT
+ * filter, so credential stuffing is refused before any database lookup or BCrypt work.
+ * The IP is checked first, without reading the body; only then is the small JSON body read to find
+ * the email, and replayed to the controller. Refused requests get 429 with Retry-After and are
+ * counted in {@code ratelimit.rejected}, tagged by endpoint and key (ip or email).
+ * The IP is the connection's address unless {@code rate-limit.client-ip-header} names the header a
+ * trusted reverse proxy sets; behind a proxy, the connection's address would put every client in
+ * one bucket.
+ */
+@Component
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final RateLimitProperties properties;
+    private final Rule login;
+    private final Rule register;
+
+    public RateLimitFilter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.login = new Rule("login", properties.getLogin(), properties.getSlots(), meterRegistry);
+        this.register = new Rule("register", properties.getRegister(), properties.getSlots(), meterRegistry);
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !properties.isEnabled() || !"POST".equals(request.getMethod()) || rule(request) == null;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request,
+                                    HttpServletResponse response,
+                                    FilterChain filterChain)
+            throws ServletException, IOException {
+        Rule rule = rule(request);
+
+        long retryAfter = rule.perIp.tryAcquire(clientIp(request));
+        if (retryAfter > 0) {
+            rule.rejectedByIp.increment();
+            reject(response, retryAfter);
+            return;
+        }
+
+        byte[] body = request.getInputStream().readNBytes(properties.getMaxBodyBytes() + 1);
+        if (body.length > properties.getMaxBodyBytes()) {
+            response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+            return;
+        }
+        String email = email(body);
+        if (email != null) {
+            retryAfter = rule.perEmail.tryAcquire(email.trim().toLowerCase(Locale.ROOT));
+            if (retryAfter > 0) {
+                rule.rejectedByEmail.increment();
+                reject(response, retryAfter);
+                return;
+            }
+        }
+
+        filterChain.doFilter(new CachedBodyRequest(request, body), response);
+    }
+
+    private Rule rule(HttpServletRequest request) {
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return switch (path) {
+            case "/users/login" -> login;
+            case "/users/register" -> register;
+            default -> null;
+        };
+    }
+
+    // Last entry of the proxy's header, which the proxy appended itself; earlier ones are client-supplied
+    private String clientIp(HttpServletRequest request) {
+        String header = properties.getClientIpHeader();
+        String forwarded = header == null || header.isEmpty() ? null : request.getHeader(header);
+        if (forwarded == null || forwarded.isBlank()) {
+            return request.getRemoteAddr();
+        }
+        return forwarded.substring(forwarded.lastIndexOf(',') + 1).trim();
+    }
+
+    private static void reject(HttpServletResponse response, long retryAfterMillis) throws IOException {
+        response.setStatus(429);
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString((retryAfterMillis + 999) / 1000));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.getWriter().write("{\"error\":\"Too many attempts, please retry later\"}");
+    }
+
+    // Top-level "email" field of a JSON body, or null; the controller reports malformed bodies
+    private static String email(byte[] body) {
+        try (JsonParser parser = JSON.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return null;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("email".equals(field) && value == JsonToken.VALUE_STRING) {
+                    return parser.getText();
+                }
+                parser.skipChildren();
+            }
+            return null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // The two limiters of one endpoint and their rejection counters
+    private static final class Rule {
+        final TokenBucketLimiter perIp;
+        final TokenBucketLimiter perEmail;
+        final Counter rejectedByIp;
+        final Counter rejectedByEmail;
+
+        Rule(String endpoint, RateLimitProperties.Endpoint limits, int slots, MeterRegistry meterRegistry) {
+            this.perIp = new TokenBucketLimiter(slots, limits.getPerIp().getCapacity(), limits.getPerIp().getRefillPerMinute());
+            this.perEmail = new TokenBucketLimiter(slots, limits.getPerEmail().getCapacity(), limits.getPerEmail().getRefillPerMinute());
+            this.rejectedByIp = rejected(meterRegistry, endpoint, "ip");
+            this.rejectedByEmail = rejected(meterRegistry, endpoint, "email");
+        }
+
+        private static Counter rejected(MeterRegistry meterRegistry, String endpoint, String key) {
+            return Counter.builder("ratelimit.rejected")
+                    .description("Requests refused by the rate limiter")
+                    .tag("endpoint", endpoint)
+                    .tag("key", key)
+                    .register(meterRegistry);
+        }
+    }
+}
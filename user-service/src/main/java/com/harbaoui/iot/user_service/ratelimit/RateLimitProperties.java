@@ -0,0 +1,47 @@
+package com.harbaoui.iot.user_service.ratelimit;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+// Token bucket limits of the unauthenticated credential endpoints, per client IP and per email
+@Data
+@ConfigurationProperties("rate-limit")
+public class RateLimitProperties {
+
+    private boolean enabled = true;
+
+    // Buckets per limiter (rounded up to a power of two); bounds memory at 12 bytes per bucket.
+    // Keys are told apart by a 48-bit hash: two keys share a bucket about twice in 2^32 new keys.
+    private int slots = 16384;
+
+    // Header carrying the client IP from a trusted reverse proxy, e.g. X-Forwarded-For; the last
+    // address in it (the one the proxy saw) is the per-IP key. Empty uses the connection's address.
+    // Only set it when every request goes through that proxy, or callers can choose their own key.
+    private String clientIpHeader = "";
+
+    // Larger login/register bodies are refused before they are parsed
+    private int maxBodyBytes = 8192;
+
+    private Endpoint login = new Endpoint(new Limit(20, 20), new Limit(5, 5));
+
+    private Endpoint register = new Endpoint(new Limit(10, 10), new Limit(3, 3));
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Endpoint {
+        private Limit perIp;
+        private Limit perEmail;
+    }
+
+    // Burst of "capacity" requests, then "refillPerMinute" requests per minute
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Limit {
+        private int capacity;
+        private int refillPerMinute;
+    }
+}
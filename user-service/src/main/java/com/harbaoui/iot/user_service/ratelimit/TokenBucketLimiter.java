@@ -0,0 +1,128 @@
+package com.harbaoui.iot.user_service.ratelimit;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Token buckets for an unbounded set of keys in a fixed amount of memory, without locks.
+ * Each bucket is one long in an array: a 16-bit key tag, the token count in 1/16ths of a token, and
+ * the 32-bit time of its last refill; it is updated with a single CAS. A parallel int array holds
+ * 32 more bits of the key's hash, so a key only matches a bucket when all 48 bits agree: a new key
+ * shares another key's bucket with a probability of about 2 in 2^32, instead of 2 in 2^16.
+ * A key can live in one of two slots. A new key takes the one that was idle the longest and starts
+ * with a full bucket, so when the table is full the least active keys are forgotten first.
+ */
+public class TokenBucketLimiter {
+
+    private static final long SCALE = 16;
+    private static final long MAX_SCALED_TOKENS = 0xFFFF;
+
+    private final AtomicLongArray slots;
+    // Written before the state is claimed; a slot matches when both its fingerprint and tag agree
+    private final AtomicIntegerArray fingerprints;
+    // Random per limiter, so nobody can pick keys that share a victim's buckets
+    private final long seed = ThreadLocalRandom.current().nextLong();
+    private final int mask;
+    private final long capacity;
+    // Scaled tokens gained per millisecond
+    private final double refillRate;
+
+    public TokenBucketLimiter(int slots, int capacity, int refillPerMinute) {
+        if (capacity < 1 || capacity * SCALE > MAX_SCALED_TOKENS) {
+            throw new IllegalArgumentException("capacity must be between 1 and " + MAX_SCALED_TOKENS / SCALE);
+        }
+        if (refillPerMinute < 1) {
+            throw new IllegalArgumentException("refillPerMinute must be positive");
+        }
+        int size = Integer.highestOneBit(Math.max(2, slots - 1)) << 1;
+        this.slots = new AtomicLongArray(size);
+        this.fingerprints = new AtomicIntegerArray(size);
+        this.mask = size - 1;
+        this.capacity = capacity * SCALE;
+        this.refillRate = refillPerMinute * SCALE / 60_000.0;
+    }
+
+    // Take one token for the key
+    // Returns 0 when the request may proceed, otherwise the milliseconds until a token is available.
+    public long tryAcquire(String key) {
+        return tryAcquire(key, System.currentTimeMillis());
+    }
+
+    long tryAcquire(String key, long nowMillis) {
+        long hash = hash(key);
+        long tag = Math.max(1, hash >>> 48);
+        int fingerprint = (int) (hash >>> 16);
+        int first = (int) hash & mask;
+        int second = (int) (hash >>> 24) & mask;
+        int now = (int) nowMillis;
+
+        while (true) {
+            long firstState = slots.get(first);
+            long secondState = slots.get(second);
+            int index;
+            long state;
+            long tokens;
+            int refilledAt;
+            boolean inFirst = tag(firstState) == tag && fingerprints.get(first) == fingerprint;
+            if (inFirst || tag(secondState) == tag && fingerprints.get(second) == fingerprint) {
+                index = inFirst ? first : second;
+                state = index == first ? firstState : secondState;
+                long elapsed = Integer.toUnsignedLong(now - time(state));
+                long gained = (long) (elapsed * refillRate);
+                tokens = tokens(state) + gained;
+                if (tokens >= capacity) {
+                    tokens = capacity;
+                    refilledAt = now;
+                } else {
+                    // Keep the fraction of a token that has not been credited yet
+                    refilledAt = time(state) + (int) (gained / refillRate);
+                }
+                if (tokens < SCALE) {
+                    return Math.max(1, (long) Math.ceil((SCALE - tokens) / refillRate) - (now - refilledAt));
+                }
+            } else {
+                index = idleFor(firstState, now) >= idleFor(secondState, now) ? first : second;
+                state = index == first ? firstState : secondState;
+                tokens = capacity;
+                refilledAt = now;
+                fingerprints.set(index, fingerprint);
+            }
+            if (slots.compareAndSet(index, state, pack(tag, tokens - SCALE, refilledAt))) {
+                return 0;
+            }
+        }
+    }
+
+    private static long idleFor(long state, int now) {
+        return state == 0 ? Long.MAX_VALUE : Integer.toUnsignedLong(now - time(state));
+    }
+
+    private static long pack(long tag, long tokens, int time) {
+        return tag << 48 | tokens << 32 | Integer.toUnsignedLong(time);
+    }
+
+    private static long tag(long state) {
+        return state >>> 48;
+    }
+
+    private static long tokens(long state) {
+        return (state >>> 32) & MAX_SCALED_TOKENS;
+    }
+
+    private static int time(long state) {
+        return (int) state;
+    }
+
+    // Seeded 64-bit hash of the key: FNV-1a over its chars, then the splitmix64 finalizer
+    private long hash(String key) {
+        long z = seed;
+        for (int i = 0; i < key.length(); i++) {
+            z = (z ^ key.charAt(i)) * 0x100000001B3L;
+        }
+        z *= 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,22 @@
+package com.harbaoui.iot.user_service.repository;
+
+import java.util.List;
+import java.util.Optional;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import com.harbaoui.iot.user_service.entity.Device;
+
+public interface DeviceRepository extends JpaRepository<Device, Long> {
+
+    List<Device> findByUserIdAndRevokedFalseOrderByIdAsc(long userId);
+
+    Optional<Device> findByIdAndUserIdAndRevokedFalse(long id, long userId);
+
+    List<Device> findByRevokedFalseOrderByIdAsc(Pageable limit);
+
+    // Device with the highest feed version, to seed the version counter
+    Optional<Device> findTopByOrderByVersionDesc();
+
+    // Devices changed after the given version, in version order, through the version index
+    List<Device> findByVersionGreaterThanOrderByVersionAsc(long version, Pageable limit);
+}
@@ -0,0 +1,17 @@
+package com.harbaoui.iot.user_service.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import com.harbaoui.iot.user_service.entity.DeviceVersion;
+
+public interface DeviceVersionRepository extends JpaRepository<DeviceVersion, Integer> {
+
+    // Must run in the transaction of the change; holds the counter row lock until it commits
+    @Modifying
+    @Query("UPDATE DeviceVersion v SET v.lastVersion = v.lastVersion + 1 WHERE v.id = " + DeviceVersion.ID)
+    int increment();
+
+    @Query("SELECT v.lastVersion FROM DeviceVersion v WHERE v.id = " + DeviceVersion.ID)
+    long lastVersion();
+}
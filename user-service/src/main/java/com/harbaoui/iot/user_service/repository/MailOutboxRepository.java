@@ -0,0 +1,26 @@
+package com.harbaoui.iot.user_service.repository;
+
+import com.harbaoui.iot.user_service.entity.MailOutbox;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface MailOutboxRepository extends JpaRepository<MailOutbox, Long> {
+
+    // Oldest mails that are due, through the (status, next_attempt_at) index
+    List<MailOutbox> findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(MailOutbox.Status status,
+                                                                          LocalDateTime now,
+                                                                          Pageable page);
+
+    // Take a lease on a mail; fails when another dispatcher claimed or rescheduled it first
+    @Modifying
+    @Transactional
+    @Query("UPDATE MailOutbox m SET m.nextAttemptAt = :leaseUntil WHERE m.id = :id AND m.nextAttemptAt = :expected")
+    int claim(@Param("id") Long id, @Param("expected") LocalDateTime expected, @Param("leaseUntil") LocalDateTime leaseUntil);
+}
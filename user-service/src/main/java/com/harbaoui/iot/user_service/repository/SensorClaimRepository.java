@@ -0,0 +1,19 @@
+package com.harbaoui.iot.user_service.repository;
+
+import java.util.Collection;
+import java.util.List;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import com.harbaoui.iot.user_service.entity.SensorClaim;
+
+public interface SensorClaimRepository extends JpaRepository<SensorClaim, Long> {
+
+    List<SensorClaim> findBySensorIdIn(Collection<Long> sensorIds);
+
+    // Release every sensor of a user, in one statement
+    @Modifying
+    @Query("DELETE FROM SensorClaim c WHERE c.userId = :userId")
+    int deleteByUserId(@Param("userId") long userId);
+}
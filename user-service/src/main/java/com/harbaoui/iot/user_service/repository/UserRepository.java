@@ -1,9 +1,17 @@
 package com.harbaoui.iot.user_service.repository;
 
+import com.harbaoui.iot.user_service.dto.UserSummary;
 import com.harbaoui.iot.user_service.entity.User;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,4 +19,20 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     // Update to return Optional<User> to use isPresent()
     Optional<User> findByEmail(String email); // example of a custom query
+
+    // Which of these emails are already registered, in one set-based query
+    @Query("SELECT u.email FROM User u WHERE u.email IN :emails")
+    List<String> findExistingEmails(@Param("emails") Collection<String> emails);
+
+    // Keyset page: the users after the given id, in id order, through the primary key index
+    // Pass PageRequest.of(0, limit); only the listed columns are read and no count query is run.
+    @Query("SELECT new com.harbaoui.iot.user_service.dto.UserSummary(u.id, u.email, u.name, u.phoneNumber, u.isVerified) "
+            + "FROM User u WHERE u.id > :after ORDER BY u.id")
+    List<UserSummary> findSummariesAfter(@Param("after") long after, Pageable limit);
+
+    // Replace the password hash only if it is still the expected one
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :password WHERE u.id = :id AND u.password = :previous")
+    int updatePassword(@Param("id") Long id, @Param("previous") String previous, @Param("password") String password);
 }
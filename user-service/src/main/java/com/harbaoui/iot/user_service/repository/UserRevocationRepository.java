@@ -0,0 +1,25 @@
+package com.harbaoui.iot.user_service.repository;
+
+import java.time.Instant;
+import java.util.List;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
+import com.harbaoui.iot.user_service.entity.UserRevocation;
+
+public interface UserRevocationRepository extends JpaRepository<UserRevocation, Long> {
+
+    // Revocations recorded by any instance after the given one, in (revokedAt, id) order
+    @Query("SELECT r FROM UserRevocation r WHERE r.revokedAt > :revokedAt OR (r.revokedAt = :revokedAt AND r.id > :id)"
+            + " ORDER BY r.revokedAt, r.id")
+    List<UserRevocation> findAfter(@Param("revokedAt") Instant revokedAt, @Param("id") long id, Pageable limit);
+
+    // Drop revocations that no unexpired token can predate anymore
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM UserRevocation r WHERE r.revokedAt < :cutoff")
+    int deleteRevokedBefore(@Param("cutoff") Instant cutoff);
+}
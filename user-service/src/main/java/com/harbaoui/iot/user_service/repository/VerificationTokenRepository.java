@@ -1,9 +1,18 @@
 package com.harbaoui.iot.user_service.repository;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import com.harbaoui.iot.user_service.entity.VerificationToken;
 
 public interface VerificationTokenRepository extends JpaRepository<VerificationToken, Long> {
     Optional<VerificationToken> findByToken(String token);
+
+    // Ids of tokens that expired before the cutoff, oldest first, through the expiry index
+    @Query("SELECT t.id FROM VerificationToken t WHERE t.expiryDate < :cutoff ORDER BY t.expiryDate")
+    List<Long> findExpiredIds(@Param("cutoff") LocalDateTime cutoff, Pageable limit);
 }
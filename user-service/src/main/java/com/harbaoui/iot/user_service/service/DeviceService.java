@@ -0,0 +1,245 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.harbaoui.iot.user_service.dto.DeviceChange;
+import com.harbaoui.iot.user_service.dto.DeviceChangePage;
+import com.harbaoui.iot.user_service.dto.DeviceRegistration;
+import com.harbaoui.iot.user_service.entity.Device;
+import com.harbaoui.iot.user_service.entity.DeviceVersion;
+import com.harbaoui.iot.user_service.entity.SensorClaim;
+import com.harbaoui.iot.user_service.exception.DeviceNotFoundException;
+import com.harbaoui.iot.user_service.exception.InvalidDeviceException;
+import com.harbaoui.iot.user_service.repository.DeviceRepository;
+import com.harbaoui.iot.user_service.repository.DeviceVersionRepository;
+import com.harbaoui.iot.user_service.repository.SensorClaimRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Devices and the sensors they may publish for, with the change feed other services replicate.
+ * Every change takes the next version from the single-row DeviceVersion counter in the same transaction,
+ * so a consumer that asks for the changes after the last version it saw never misses one.
+ * A sensor id belongs to the first user whose device lists it (see SensorClaim); devices of other users
+ * are refused for it, so a user cannot authorize a device to publish into someone else's sensors.
+ * Only SHA-256 hashes of the API keys are stored: the keys are random 256-bit values, a slow hash adds nothing.
+ */
+@Service
+public class DeviceService {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final DeviceRepository deviceRepository;
+    private final DeviceVersionRepository deviceVersionRepository;
+    private final SensorClaimRepository sensorClaimRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxSensors;
+    private final int maxChanges;
+
+    public DeviceService(DeviceRepository deviceRepository,
+                         DeviceVersionRepository deviceVersionRepository,
+                         SensorClaimRepository sensorClaimRepository,
+                         TransactionTemplate transactionTemplate,
+                         @Value("${devices.max-sensors:1000}") int maxSensors,
+                         @Value("${devices.changes.max-page-size:1000}") int maxChanges) {
+        this.deviceRepository = deviceRepository;
+        this.deviceVersionRepository = deviceVersionRepository;
+        this.sensorClaimRepository = sensorClaimRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.maxSensors = maxSensors;
+        this.maxChanges = maxChanges;
+    }
+
+    // Seed the feed counter, and claim the sensors of devices registered before claims existed
+    // Instances starting together may both try; the losing insert fails on the primary key and is ignored.
+    @PostConstruct
+    public void init() {
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!deviceVersionRepository.existsById(DeviceVersion.ID)) {
+                    long last = deviceRepository.findTopByOrderByVersionDesc().map(Device::getVersion).orElse(0L);
+                    deviceVersionRepository.saveAndFlush(new DeviceVersion(DeviceVersion.ID, last));
+                }
+            });
+            if (sensorClaimRepository.count() == 0) {
+                transactionTemplate.executeWithoutResult(status -> claimExistingSensors());
+            }
+        } catch (DataIntegrityViolationException e) {
+            // Seeded by another instance
+        }
+    }
+
+    // Register a device for a user
+    // Returns the device with its API key, which is not stored and cannot be shown again.
+    public DeviceRegistration register(long userId, String name, List<Long> sensorIds) {
+        List<Long> sensors = normalize(sensorIds);
+        byte[] secret = new byte[32];
+        RANDOM.nextBytes(secret);
+        String apiKey = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+        Device device = claimed(() -> transactionTemplate.execute(status -> {
+            claim(userId, sensors);
+            return deviceRepository.save(Device.builder()
+                    .userId(userId)
+                    .name(name)
+                    .apiKeyHash(hashKey(apiKey))
+                    .sensorIds(sensors)
+                    .version(nextVersion())
+                    .build());
+        }));
+        return new DeviceRegistration(device.getId(), device.getName(), device.getSensorIds(), apiKey);
+    }
+
+    // Active devices of a user
+    public List<Device> findDevices(long userId) {
+        return deviceRepository.findByUserIdAndRevokedFalseOrderByIdAsc(userId);
+    }
+
+    // Replace the sensors a device may publish for
+    public Device updateSensors(long userId, long deviceId, List<Long> sensorIds) {
+        List<Long> sensors = normalize(sensorIds);
+        return claimed(() -> transactionTemplate.execute(status -> {
+            Device device = findOwned(userId, deviceId);
+            claim(userId, sensors);
+            device.setSensorIds(sensors);
+            device.setVersion(nextVersion());
+            return deviceRepository.save(device);
+        }));
+    }
+
+    // Revoke a device; consumers of the change feed drop it at their next pull
+    public void revoke(long userId, long deviceId) {
+        transactionTemplate.executeWithoutResult(status -> revoke(findOwned(userId, deviceId)));
+    }
+
+    // Revoke every device of a user and release its sensors, e.g. when the user is deleted
+    public void revokeAllOf(long userId) {
+        transactionTemplate.executeWithoutResult(status -> {
+            deviceRepository.findByUserIdAndRevokedFalseOrderByIdAsc(userId).forEach(this::revoke);
+            sensorClaimRepository.deleteByUserId(userId);
+        });
+    }
+
+    // Revoke every device, a page per transaction
+    public void revokeAll() {
+        boolean more = true;
+        while (more) {
+            more = transactionTemplate.execute(status -> {
+                List<Device> devices = deviceRepository.findByRevokedFalseOrderByIdAsc(PageRequest.of(0, maxChanges));
+                devices.forEach(this::revoke);
+                return !devices.isEmpty();
+            });
+        }
+        sensorClaimRepository.deleteAllInBatch();
+    }
+
+    // Devices changed after the given version, oldest change first, at most maxChanges of them
+    // Each device appears once with its current state; revoked devices are reported so consumers drop them.
+    public DeviceChangePage findChanges(long since, int limit) {
+        int size = Math.max(1, Math.min(limit, maxChanges));
+        List<DeviceChange> changes = deviceRepository.findByVersionGreaterThanOrderByVersionAsc(since, PageRequest.of(0, size))
+                .stream()
+                .map(device -> new DeviceChange(device.getVersion(), device.getId(), device.getUserId(),
+                        device.getApiKeyHash(), device.getSensorIds(), device.isRevoked()))
+                .toList();
+        long version = changes.isEmpty() ? since : changes.get(changes.size() - 1).getVersion();
+        return new DeviceChangePage(changes, version);
+    }
+
+    // Hex SHA-256 of an API key, as stored and as shipped in the change feed
+    public static String hashKey(String apiKey) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(apiKey.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    private Device findOwned(long userId, long deviceId) {
+        return deviceRepository.findByIdAndUserIdAndRevokedFalse(deviceId, userId)
+                .orElseThrow(() -> new DeviceNotFoundException("Device not found with id: " + deviceId));
+    }
+
+    private void revoke(Device device) {
+        device.setRevoked(true);
+        device.setSensorIds(List.of());
+        device.setVersion(nextVersion());
+        deviceRepository.save(device);
+    }
+
+    // Take the next feed version; the caller's transaction keeps the counter row locked until it commits
+    // The row is seeded by init(), inserting it here would let two first changes both take version 1.
+    private long nextVersion() {
+        if (deviceVersionRepository.increment() == 0) {
+            throw new IllegalStateException("The device version counter is not seeded");
+        }
+        return deviceVersionRepository.lastVersion();
+    }
+
+    // Claim the sensors nobody owns yet, refuse the change if another user owns one of them
+    private void claim(long userId, List<Long> sensors) {
+        Map<Long, SensorClaim> unclaimed = new LinkedHashMap<>();
+        sensors.forEach(sensorId -> unclaimed.put(sensorId, new SensorClaim(sensorId, userId)));
+        List<Long> foreign = new ArrayList<>();
+        for (SensorClaim existing : sensorClaimRepository.findBySensorIdIn(sensors)) {
+            unclaimed.remove(existing.getSensorId());
+            if (existing.getUserId() != userId) {
+                foreign.add(existing.getSensorId());
+            }
+        }
+        if (!foreign.isEmpty()) {
+            throw new InvalidDeviceException("Sensors " + foreign + " belong to another user");
+        }
+        sensorClaimRepository.saveAllAndFlush(unclaimed.values());
+    }
+
+    // A sensor claimed by another user between the check and the insert fails on the primary key
+    private static Device claimed(Supplier<Device> change) {
+        try {
+            return change.get();
+        } catch (DataIntegrityViolationException e) {
+            throw new InvalidDeviceException("Some of the sensors were just claimed by another user");
+        }
+    }
+
+    // First active device listing a sensor claims it for its user
+    private void claimExistingSensors() {
+        Map<Long, SensorClaim> claims = new LinkedHashMap<>();
+        for (int page = 0; ; page++) {
+            List<Device> devices = deviceRepository.findByRevokedFalseOrderByIdAsc(PageRequest.of(page, maxChanges));
+            if (devices.isEmpty()) {
+                break;
+            }
+            devices.forEach(device -> device.getSensorIds().forEach(sensorId ->
+                    claims.putIfAbsent(sensorId, new SensorClaim(sensorId, device.getUserId()))));
+        }
+        sensorClaimRepository.saveAllAndFlush(claims.values());
+    }
+
+    private List<Long> normalize(List<Long> sensorIds) {
+        if (sensorIds == null || sensorIds.isEmpty()) {
+            throw new InvalidDeviceException("A device needs at least one sensor id");
+        }
+        if (sensorIds.contains(null)) {
+            throw new InvalidDeviceException("Sensor ids must not be null");
+        }
+        if (sensorIds.size() > maxSensors) {
+            throw new InvalidDeviceException("A device may publish for at most " + maxSensors + " sensors");
+        }
+        return sensorIds.stream().distinct().sorted().toList();
+    }
+}
@@ -0,0 +1,187 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.harbaoui.iot.user_service.entity.MailOutbox;
+import com.harbaoui.iot.user_service.repository.MailOutboxRepository;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Transactional outbox for outgoing mail.
+ * Callers queue a mail inside their own transaction, so it exists exactly when the change that caused it
+ * commits, and requests never wait on SMTP. A scheduled dispatcher claims due mails with a short lease,
+ * sends each batch over one SMTP connection, deletes what was sent and retries the rest with
+ * exponential backoff until {@code mail.outbox.max-attempts}.
+ * SMTP itself always runs on one platform thread: Jakarta Mail holds monitors across socket I/O,
+ * which would pin a carrier thread if the scheduler runs on virtual threads.
+ */
+@Service
+public class MailOutboxService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MailOutboxService.class);
+
+    private final MailOutboxRepository mailOutboxRepository;
+    private final MailService mailService;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+    private final long leaseMs;
+    private final ExecutorService smtpSender = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "mail-outbox-smtp");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public MailOutboxService(MailOutboxRepository mailOutboxRepository,
+                             MailService mailService,
+                             JdbcTemplate jdbcTemplate,
+                             @Value("${mail.outbox.batch-size:50}") int batchSize,
+                             @Value("${mail.outbox.max-attempts:8}") int maxAttempts,
+                             @Value("${mail.outbox.initial-backoff-ms:5000}") long initialBackoffMs,
+                             @Value("${mail.outbox.max-backoff-ms:3600000}") long maxBackoffMs,
+                             @Value("${mail.outbox.lease-ms:60000}") long leaseMs) {
+        this.mailOutboxRepository = mailOutboxRepository;
+        this.mailService = mailService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+        this.leaseMs = leaseMs;
+    }
+
+    // Queue the verification email; joins the caller's transaction
+    public MailOutbox queueVerificationEmail(String to, String verificationLink) {
+        LocalDateTime now = now();
+        return mailOutboxRepository.save(MailOutbox.builder()
+                .recipient(to)
+                .subject(MailService.VERIFICATION_SUBJECT)
+                .body(MailService.verificationText(verificationLink))
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+
+    // Queue many verification emails with one JDBC batch; joins the caller's transaction
+    // Each element is a recipient and its verification link.
+    public void queueVerificationEmails(List<String[]> recipientsAndLinks) {
+        Timestamp now = Timestamp.valueOf(now());
+        jdbcTemplate.batchUpdate(
+                "INSERT INTO mail_outbox (recipient, subject, body, status, attempts, next_attempt_at, created_at) "
+                        + "VALUES (?, ?, ?, ?, 0, ?, ?)",
+                recipientsAndLinks,
+                recipientsAndLinks.size(),
+                (statement, mail) -> {
+                    statement.setString(1, mail[0]);
+                    statement.setString(2, MailService.VERIFICATION_SUBJECT);
+                    statement.setString(3, MailService.verificationText(mail[1]));
+                    statement.setString(4, MailOutbox.Status.PENDING.name());
+                    statement.setTimestamp(5, now);
+                    statement.setTimestamp(6, now);
+                });
+    }
+
+    // Send due mails batch by batch until a batch comes back short
+    // Returns the number of mails sent.
+    @Scheduled(fixedDelayString = "${mail.outbox.poll-interval-ms:1000}")
+    public int dispatch() {
+        int sent = 0;
+        while (true) {
+            List<MailOutbox> batch = claimDueBatch();
+            if (batch.isEmpty()) {
+                return sent;
+            }
+            sent += send(batch);
+            if (batch.size() < batchSize) {
+                return sent;
+            }
+        }
+    }
+
+    private List<MailOutbox> claimDueBatch() {
+        LocalDateTime now = now();
+        LocalDateTime leaseUntil = now.plus(leaseMs, ChronoUnit.MILLIS);
+        List<MailOutbox> due = mailOutboxRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                MailOutbox.Status.PENDING, now, PageRequest.of(0, batchSize));
+        List<MailOutbox> claimed = new ArrayList<>(due.size());
+        for (MailOutbox mail : due) {
+            if (mailOutboxRepository.claim(mail.getId(), mail.getNextAttemptAt(), leaseUntil) == 1) {
+                mail.setNextAttemptAt(leaseUntil);
+                claimed.add(mail);
+            }
+        }
+        return claimed;
+    }
+
+    private int send(List<MailOutbox> batch) {
+        Map<Long, Exception> failures = sendOnPlatformThread(batch);
+        List<Long> sentIds = new ArrayList<>(batch.size());
+        List<MailOutbox> retries = new ArrayList<>(failures.size());
+        for (MailOutbox mail : batch) {
+            Exception failure = failures.get(mail.getId());
+            if (failure == null) {
+                sentIds.add(mail.getId());
+            } else {
+                reschedule(mail, failure);
+                retries.add(mail);
+            }
+        }
+        mailOutboxRepository.deleteAllByIdInBatch(sentIds);
+        mailOutboxRepository.saveAll(retries);
+        return sentIds.size();
+    }
+
+    private Map<Long, Exception> sendOnPlatformThread(List<MailOutbox> batch) {
+        try {
+            return smtpSender.submit(() -> mailService.sendBatch(batch)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending mail", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot send mail", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        smtpSender.shutdown();
+    }
+
+    // Back off exponentially: initial, 2x, 4x ... capped, then give up after maxAttempts
+    private void reschedule(MailOutbox mail, Exception failure) {
+        int attempts = mail.getAttempts() + 1;
+        mail.setAttempts(attempts);
+        String error = String.valueOf(failure.getMessage());
+        mail.setLastError(error.length() > 500 ? error.substring(0, 500) : error);
+        if (attempts >= maxAttempts) {
+            mail.setStatus(MailOutbox.Status.FAILED);
+            logger.error("Giving up on mail {} to {} after {} attempts: {}", mail.getId(), mail.getRecipient(), attempts, error);
+            return;
+        }
+        long backoff = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempts - 1, 30));
+        mail.setNextAttemptAt(now().plus(backoff, ChronoUnit.MILLIS));
+        logger.warn("Mail {} to {} failed (attempt {}), retrying in {} ms: {}", mail.getId(), mail.getRecipient(), attempts, backoff, error);
+    }
+
+    // Millisecond precision, so the value read back from any database compares equal in claim()
+    private static LocalDateTime now() {
+        return LocalDateTime.now().truncatedTo(ChronoUnit.MILLIS);
+    }
+}
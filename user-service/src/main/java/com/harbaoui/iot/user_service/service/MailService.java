@@ -1,5 +1,8 @@
 package com.harbaoui.iot.user_service.service;
 
+import com.harbaoui.iot.user_service.entity.MailOutbox;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
 import org.springframework.mail.javamail.MimeMessageHelper;
 import org.springframework.stereotype.Service;
@@ -9,9 +12,17 @@ import jakarta.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
 public class MailService {
 
+    static final String VERIFICATION_SUBJECT = "Verify your email address";
+
     private static final Logger logger = LoggerFactory.getLogger(MailService.class);
     private final JavaMailSender mailSender;
 
@@ -19,6 +30,10 @@ public class MailService {
         this.mailSender = mailSender;
     }
 
+    static String verificationText(String verificationLink) {
+        return "Click the link to verify your email: " + verificationLink;
+    }
+
     public void sendVerificationEmail(String to, String verificationLink) throws MessagingException {
         logger.info("Preparing to send verification email to: {}", to);
         MimeMessage message = mailSender.createMimeMessage();
@@ -26,8 +41,8 @@ public class MailService {
 
         try {
             helper.setTo(to);
-            helper.setSubject("Verify your email address");
-            helper.setText("Click the link to verify your email: " + verificationLink);
+            helper.setSubject(VERIFICATION_SUBJECT);
+            helper.setText(verificationText(verificationLink));
 
             logger.debug("Sending email to: {}", to); // Debug-level log
             mailSender.send(message);
@@ -37,4 +52,41 @@ public class MailService {
             throw e; // Re-throw the exception to handle it in the calling method
         }
     }
+
+    // Send outbox mails over a single SMTP connection
+    // Returns the failure of each mail that was not sent, keyed by outbox id.
+    public Map<Long, Exception> sendBatch(List<MailOutbox> mails) {
+        Map<Long, Exception> failures = new HashMap<>();
+        List<MimeMessage> messages = new ArrayList<>(mails.size());
+        Map<Object, Long> outboxIds = new IdentityHashMap<>();
+        for (MailOutbox mail : mails) {
+            try {
+                MimeMessage message = mailSender.createMimeMessage();
+                MimeMessageHelper helper = new MimeMessageHelper(message, true);
+                helper.setTo(mail.getRecipient());
+                helper.setSubject(mail.getSubject());
+                helper.setText(mail.getBody());
+                messages.add(message);
+                outboxIds.put(message, mail.getId());
+            } catch (MessagingException e) {
+                failures.put(mail.getId(), e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return failures;
+        }
+
+        try {
+            mailSender.send(messages.toArray(new MimeMessage[0]));
+        } catch (MailSendException e) {
+            if (e.getFailedMessages().isEmpty()) {
+                outboxIds.values().forEach(id -> failures.put(id, e));
+            }
+            e.getFailedMessages().forEach((message, failure) -> failures.put(outboxIds.get(message), failure));
+        } catch (MailException e) {
+            outboxIds.values().forEach(id -> failures.put(id, e));
+        }
+        logger.info("Sent {} of {} queued emails", mails.size() - failures.size(), mails.size());
+        return failures;
+    }
 }
@@ -0,0 +1,112 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.harbaoui.iot.user_service.exception.HashingOverloadedException;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Runs BCrypt on a small dedicated pool instead of the Tomcat request threads.
+ * The pool has one thread per core by default and a bounded queue; when the queue is full the
+ * request fails fast with {@link HashingOverloadedException} (503), so a login storm can only
+ * use the hashing pool and never starves cheap endpoints of request threads.
+ */
+@Service
+public class PasswordHashingService {
+
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor executor;
+    private final int poolSize;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  @Value("${security.hashing.threads:0}") int threads,
+                                  @Value("${security.hashing.queue-capacity:64}") int queueCapacity) {
+        this.passwordEncoder = passwordEncoder;
+        this.poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                task -> {
+                    Thread thread = new Thread(task, "password-hashing-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    // Hash a raw password
+    public CompletableFuture<String> encode(String rawPassword) {
+        return submit(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    // Hash many passwords for a bulk import, in parallel on the pool
+    // At most one import task per pool thread is in flight, so the queue stays free for logins.
+    // Blocks until every password is hashed; the hashes are in the order of the input.
+    public List<String> encodeAll(List<String> rawPasswords) {
+        String[] hashes = new String[rawPasswords.size()];
+        Semaphore window = new Semaphore(poolSize);
+        for (int i = 0; i < hashes.length; i++) {
+            int index = i;
+            window.acquireUninterruptibly();
+            Runnable task = () -> {
+                try {
+                    hashes[index] = passwordEncoder.encode(rawPasswords.get(index));
+                } finally {
+                    window.release();
+                }
+            };
+            while (true) {
+                try {
+                    executor.execute(task);
+                    break;
+                } catch (RejectedExecutionException e) {
+                    // Logins filled the queue; let them go first
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+                }
+            }
+        }
+        window.acquireUninterruptibly(poolSize);
+        return Arrays.asList(hashes);
+    }
+
+    // Check a raw password against a stored hash
+    public CompletableFuture<Boolean> matches(String rawPassword, String encodedPassword) {
+        return submit(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    // True when the hash was made with another strength than the configured one
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    public int queuedTasks() {
+        return executor.getQueue().size();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> work) {
+        try {
+            return CompletableFuture.supplyAsync(work, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(
+                    new HashingOverloadedException("Too many sign-ins in progress, please retry shortly"));
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.user_service.dto.UserImportReport;
+import com.harbaoui.iot.user_service.dto.UserImportRow;
+import com.harbaoui.iot.user_service.exception.InvalidImportException;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Creates many users from one CSV or NDJSON file.
+ * Instead of one lookup, hash, insert and SMTP send per user, an import checks email uniqueness
+ * with set-based queries, hashes all passwords in parallel on the hashing pool, and writes users,
+ * verification tokens and outbox mails with JDBC batches, one transaction per batch.
+ * Ids stay IDENTITY: JDBC batching does not depend on the id strategy (only Hibernate's does),
+ * and the ids of a batch are read back with one query on the unique email column.
+ * Emails are compared case-insensitively, like the unique index under MySQL's default collation,
+ * and a row the database still refuses is reported instead of failing the batches after it.
+ */
+@Service
+public class UserImportService {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserImportService.class);
+    private static final int MAX_REPORTED_ERRORS = 100;
+    private static final int IN_LIST_SIZE = 1000;
+
+    private final UserRepository userRepository;
+    private final PasswordHashingService passwordHashingService;
+    private final MailOutboxService mailOutboxService;
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final int maxRows;
+    private final int batchSize;
+
+    public UserImportService(UserRepository userRepository,
+                             PasswordHashingService passwordHashingService,
+                             MailOutboxService mailOutboxService,
+                             NamedParameterJdbcTemplate jdbcTemplate,
+                             TransactionTemplate transactionTemplate,
+                             ObjectMapper objectMapper,
+                             @Value("${users.import.max-rows:50000}") int maxRows,
+                             @Value("${users.import.batch-size:500}") int batchSize) {
+        this.userRepository = userRepository;
+        this.passwordHashingService = passwordHashingService;
+        this.mailOutboxService = mailOutboxService;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.maxRows = maxRows;
+        this.batchSize = batchSize;
+    }
+
+    // Import a CSV file with the header email,name,password,phoneNumber (columns in any order, no quoting)
+    public UserImportReport importCsv(InputStream input) throws IOException {
+        Import job = new Import();
+        try (BufferedReader reader = reader(input)) {
+            String header = reader.readLine();
+            if (header == null) {
+                throw new InvalidImportException("Empty CSV file");
+            }
+            Map<String, Integer> columns = new HashMap<>();
+            String[] names = header.split(",", -1);
+            for (int i = 0; i < names.length; i++) {
+                columns.put(names[i].trim(), i);
+            }
+            if (!columns.containsKey("email") || !columns.containsKey("password")) {
+                throw new InvalidImportException("CSV header must name the email and password columns");
+            }
+
+            String line;
+            int lineNumber = 1;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                String[] fields = line.split(",", -1);
+                UserImportRow row = new UserImportRow();
+                row.setEmail(field(fields, columns.get("email")));
+                row.setName(field(fields, columns.get("name")));
+                row.setPassword(field(fields, columns.get("password")));
+                row.setPhoneNumber(field(fields, columns.get("phoneNumber")));
+                job.add(lineNumber, row);
+            }
+        }
+        return job.run();
+    }
+
+    // Import one JSON user object per line
+    public UserImportReport importNdjson(InputStream input) throws IOException {
+        Import job = new Import();
+        try (BufferedReader reader = reader(input)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+                try {
+                    job.add(lineNumber, objectMapper.readValue(line, UserImportRow.class));
+                } catch (JsonProcessingException e) {
+                    job.reject(lineNumber, "malformed JSON");
+                }
+            }
+        }
+        return job.run();
+    }
+
+    private static BufferedReader reader(InputStream input) {
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+    }
+
+    // Key under which an email is unique
+    private static String key(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static String field(String[] fields, Integer column) {
+        if (column == null || column >= fields.length) {
+            return null;
+        }
+        String value = fields[column].trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    // State of one import, from the parsed rows to the report
+    private class Import {
+        private final long startedAt = System.nanoTime();
+        // Valid rows by lower-cased email, first occurrence wins, with their line number
+        private final Map<String, UserImportRow> rows = new LinkedHashMap<>();
+        private final Map<String, Integer> lines = new HashMap<>();
+        private final List<String> errors = new ArrayList<>();
+        private int received;
+        private int duplicates;
+        private int invalid;
+
+        void add(int lineNumber, UserImportRow row) {
+            received++;
+            if (received > maxRows) {
+                throw new InvalidImportException("Import files are limited to " + maxRows + " users");
+            }
+            if (row.getEmail() == null || !row.getEmail().contains("@") || row.getPassword() == null) {
+                invalid++;
+                error(lineNumber, "email and password are required");
+                return;
+            }
+            String key = key(row.getEmail());
+            if (rows.putIfAbsent(key, row) != null) {
+                duplicates++;
+                error(lineNumber, "duplicate email " + row.getEmail() + " in file");
+                return;
+            }
+            lines.put(key, lineNumber);
+        }
+
+        void reject(int lineNumber, String reason) {
+            received++;
+            invalid++;
+            error(lineNumber, reason);
+        }
+
+        private void error(int lineNumber, String reason) {
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add("line " + lineNumber + ": " + reason);
+            }
+        }
+
+        UserImportReport run() {
+            dropExisting(rows.values().stream().map(UserImportRow::getEmail).toList());
+
+            List<UserImportRow> toCreate = new ArrayList<>(rows.values());
+            List<String> hashes = passwordHashingService.encodeAll(
+                    toCreate.stream().map(UserImportRow::getPassword).toList());
+
+            int created = 0;
+            for (int from = 0; from < toCreate.size(); from += batchSize) {
+                int to = Math.min(from + batchSize, toCreate.size());
+                created += insertBatch(toCreate.subList(from, to), hashes.subList(from, to));
+            }
+
+            long elapsedMs = Math.max(1, (System.nanoTime() - startedAt) / 1_000_000);
+            double rate = created * 1000.0 / elapsedMs;
+            logger.info("Imported {} of {} users in {} ms ({} users/s)", created, received, elapsedMs, Math.round(rate));
+            return new UserImportReport(received, created, duplicates, invalid, elapsedMs, rate, errors);
+        }
+
+        // Remove rows whose email is already registered
+        private void dropExisting(List<String> emails) {
+            for (int from = 0; from < emails.size(); from += IN_LIST_SIZE) {
+                List<String> chunk = emails.subList(from, Math.min(from + IN_LIST_SIZE, emails.size()));
+                for (String email : userRepository.findExistingEmails(chunk)) {
+                    UserImportRow row = rows.remove(key(email));
+                    if (row != null) {
+                        alreadyRegistered(row);
+                    }
+                }
+            }
+        }
+
+        // Insert one batch; if a concurrent registration took one of its emails, drop it and retry once,
+        // then row by row, so a row the database refuses is reported and the batches after it still run
+        private int insertBatch(List<UserImportRow> batch, List<String> hashes) {
+            try {
+                return transactionTemplate.execute(status -> insert(batch, hashes));
+            } catch (DataIntegrityViolationException e) {
+                List<String> emails = batch.stream().map(UserImportRow::getEmail).toList();
+                Set<String> taken = new HashSet<>();
+                for (String email : userRepository.findExistingEmails(emails)) {
+                    taken.add(key(email));
+                }
+                List<UserImportRow> remaining = new ArrayList<>();
+                List<String> remainingHashes = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    if (taken.contains(key(batch.get(i).getEmail()))) {
+                        alreadyRegistered(batch.get(i));
+                    } else {
+                        remaining.add(batch.get(i));
+                        remainingHashes.add(hashes.get(i));
+                    }
+                }
+                if (remaining.isEmpty()) {
+                    return 0;
+                }
+                try {
+                    return transactionTemplate.execute(status -> insert(remaining, remainingHashes));
+                } catch (DataIntegrityViolationException again) {
+                    return insertEach(remaining, remainingHashes);
+                }
+            }
+        }
+
+        // One transaction per row, only for a batch that failed twice
+        private int insertEach(List<UserImportRow> batch, List<String> hashes) {
+            int created = 0;
+            for (int i = 0; i < batch.size(); i++) {
+                UserImportRow row = batch.get(i);
+                List<String> hash = List.of(hashes.get(i));
+                try {
+                    created += transactionTemplate.execute(status -> insert(List.of(row), hash));
+                } catch (DuplicateKeyException e) {
+                    alreadyRegistered(row);
+                } catch (DataIntegrityViolationException e) {
+                    invalid++;
+                    error(lines.get(key(row.getEmail())), "rejected by the database");
+                }
+            }
+            return created;
+        }
+
+        private void alreadyRegistered(UserImportRow row) {
+            duplicates++;
+            error(lines.get(key(row.getEmail())), "email " + row.getEmail() + " is already registered");
+        }
+
+        // Users, then their verification tokens and mails, each as one JDBC batch
+        private int insert(List<UserImportRow> batch, List<String> hashes) {
+            List<Object[]> users = new ArrayList<>(batch.size());
+            for (int i = 0; i < batch.size(); i++) {
+                UserImportRow row = batch.get(i);
+                users.add(new Object[]{row.getEmail(), row.getName(), hashes.get(i), row.getPhoneNumber()});
+            }
+            jdbcTemplate.getJdbcTemplate().batchUpdate(
+                    "INSERT INTO users (email, name, password, phone_number, is_verified, is_admin) VALUES (?, ?, ?, ?, false, false)", users);
+
+            List<String> emails = batch.stream().map(UserImportRow::getEmail).toList();
+            Map<String, Long> ids = new HashMap<>();
+            jdbcTemplate.query("SELECT id, email FROM users WHERE email IN (:emails)", Map.of("emails", emails),
+                    resultSet -> {
+                        ids.put(resultSet.getString("email"), resultSet.getLong("id"));
+                    });
+
+            Timestamp expiryDate = Timestamp.valueOf(LocalDateTime.now().plusDays(1));
+            List<String[]> mails = new ArrayList<>(batch.size());
+            List<Object[]> tokens = new ArrayList<>(batch.size());
+            for (String email : emails) {
+                String token = UUID.randomUUID().toString();
+                tokens.add(new Object[]{token, expiryDate, ids.get(email)});
+                mails.add(new String[]{email, UserService.verificationLink(token)});
+            }
+            jdbcTemplate.getJdbcTemplate().batchUpdate(
+                    "INSERT INTO verification_token (token, expiry_date, user_id) VALUES (?, ?, ?)", tokens);
+            mailOutboxService.queueVerificationEmails(mails);
+            return batch.size();
+        }
+    }
+}
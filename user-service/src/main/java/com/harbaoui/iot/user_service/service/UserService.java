@@ -1,6 +1,9 @@
 package com.harbaoui.iot.user_service.service;
 
+import com.harbaoui.iot.user_service.cache.UserCache;
 import com.harbaoui.iot.user_service.dto.LoginRequest;
+import com.harbaoui.iot.user_service.dto.UserPage;
+import com.harbaoui.iot.user_service.dto.UserSummary;
 import com.harbaoui.iot.user_service.entity.User;
 import com.harbaoui.iot.user_service.entity.VerificationToken;
 import com.harbaoui.iot.user_service.exception.AccountNotVerifiedException;
@@ -10,80 +13,115 @@ import com.harbaoui.iot.user_service.repository.UserRepository;
 import com.harbaoui.iot.user_service.repository.VerificationTokenRepository;
 import com.harbaoui.iot.user_service.exception.UserNotFoundException;
 import com.harbaoui.iot.user_service.jwt.JwtService;
+import com.harbaoui.iot.user_service.jwt.TokenRevocations;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.security.authentication.AuthenticationManager;
 
-import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
-import jakarta.mail.MessagingException;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 @Service
 public class UserService {
 
     private final UserRepository userRepository;
+    private final UserCache userCache;
     private final VerificationTokenRepository verificationTokenRepository;
-    private final MailService mailService;
-    private final PasswordEncoder passwordEncoder;
+    private final MailOutboxService mailOutboxService;
+    private final PasswordHashingService passwordHashingService;
     private final JwtService jwtService;
+    private final TokenRevocations tokenRevocations;
+    private final DeviceService deviceService;
+    private final Executor taskExecutor;
+    private final TransactionTemplate transactionTemplate;
+    private final int maxPageSize;
 
     @Autowired
     public UserService(
         UserRepository userRepository,
+        UserCache userCache,
         VerificationTokenRepository verificationTokenRepository,
-        MailService mailService,
-        PasswordEncoder passwordEncoder,
+        MailOutboxService mailOutboxService,
+        PasswordHashingService passwordHashingService,
         JwtService jwtService,
-        AuthenticationManager authenticationManager
+        TokenRevocations tokenRevocations,
+        DeviceService deviceService,
+        AuthenticationManager authenticationManager,
+        @Qualifier("applicationTaskExecutor") Executor taskExecutor,
+        TransactionTemplate transactionTemplate,
+        @Value("${users.page.max-size:1000}") int maxPageSize
     ) {
         this.userRepository = userRepository;
+        this.userCache = userCache;
         this.verificationTokenRepository = verificationTokenRepository;
-        this.mailService = mailService;
-        this.passwordEncoder = passwordEncoder;
+        this.mailOutboxService = mailOutboxService;
+        this.passwordHashingService = passwordHashingService;
         this.jwtService = jwtService;
- 
+        this.tokenRevocations = tokenRevocations;
+        this.deviceService = deviceService;
+        this.taskExecutor = taskExecutor;
+        this.transactionTemplate = transactionTemplate;
+        this.maxPageSize = maxPageSize;
     }
 
     // Create or update a user
     // This method is used to register a new user or update an existing user.
-    // It accepts a User object and returns the saved user.
-    public User saveUser(User user) {
-        if (userRepository.findByEmail(user.getEmail()).isPresent()) {
-            throw new UserAlreadyExistsException("Email already exists");
+    // The password is hashed on the hashing pool, then the user is saved on the task executor,
+    // so neither the Tomcat thread nor the hashing pool waits on the database.
+    // The user, its verification token and the verification email are committed in one transaction;
+    // the email itself is sent later by MailOutboxService.
+    public CompletableFuture<User> saveUser(User user) {
+        if (userCache.findByEmail(user.getEmail()).isPresent()) {
+            return CompletableFuture.failedFuture(new UserAlreadyExistsException("Email already exists"));
         }
 
-        user.setPassword(passwordEncoder.encode(user.getPassword()));  // Encode password
-        user.setVerified(false);
-        User savedUser = userRepository.save(user);
+        return passwordHashingService.encode(user.getPassword())
+                .thenApplyAsync(encodedPassword -> {
+                    User savedUser = transactionTemplate.execute(status -> {
+                        user.setPassword(encodedPassword);
+                        user.setVerified(false);
+                        User saved = userRepository.save(user);
 
-        generateVerificationToken(savedUser);  // Generate verification token for the user
+                        generateVerificationToken(saved);  // Generate verification token for the user
 
-        return savedUser;
+                        return saved;
+                    });
+                    userCache.evict(savedUser);
+                    return savedUser;
+                }, taskExecutor);
     }
 
-    // Find all users
-    // This method is used to retrieve all users from the database.
-    // It returns a list of User objects.
-    public List<User> getAllUsers() {
-        return userRepository.findAll();
+    // Find a page of users
+    // This method is used to list users with keyset pagination over the id.
+    // It returns at most maxPageSize users after the given id, and the cursor of the next page.
+    public UserPage findUserPage(long after, int limit) {
+        int size = Math.max(1, Math.min(limit, maxPageSize));
+        List<UserSummary> users = userRepository.findSummariesAfter(after, PageRequest.of(0, size));
+        Long nextCursor = users.size() < size ? null : users.get(users.size() - 1).getId();
+        return new UserPage(users, nextCursor);
     }
 
     // Find a user by ID
     // This method is used to retrieve a user by their ID.
     // It returns an Optional<User> object.
     public Optional<User> findUserById(Long id) {
-        return userRepository.findById(id);
+        return userCache.findById(id);
     }
 
     // Find a user by email
     // This method is used to retrieve a user by their email address.
     // It returns an Optional<User> object.
     public Optional<User> findUserByEmail(String email) {
-        Optional<User> user = userRepository.findByEmail(email);
+        Optional<User> user = userCache.findByEmail(email);
         if (user.isEmpty()) {
             throw new UserNotFoundException("User not found with email: " + email);
         }
@@ -93,8 +131,14 @@ public class UserService {
     // Delete a user by ID
     // This method is used to delete a user by their ID.
     // It accepts a user ID and deletes the user from the database.
+    // Tokens already issued to the user are revoked, since the filter no longer looks the user up,
+    // and so are its devices.
     public void deleteUser(Long id) {
+        Optional<User> user = userCache.findById(id);
         userRepository.deleteById(id);
+        user.ifPresent(userCache::evict);
+        tokenRevocations.revoke(id);
+        deviceService.revokeAllOf(id);
     }
 
     // Delete all users
@@ -102,11 +146,15 @@ public class UserService {
     // It deletes all user records from the database.
     public void deleteAllUsers() {
         userRepository.deleteAll();
+        userCache.evictAll();
+        tokenRevocations.revokeAll();
+        deviceService.revokeAll();
     }
 
     // Generate Verification Token
     // This method is used to generate a verification token for the user.
-    // It creates a new VerificationToken object and saves it to the database.
+    // It creates a new VerificationToken object and saves it to the database,
+    // together with the verification email in the outbox.
     private void generateVerificationToken(User user) {
         String token = UUID.randomUUID().toString();
         VerificationToken verificationToken = VerificationToken.builder()
@@ -116,13 +164,11 @@ public class UserService {
                 .build();
         verificationTokenRepository.save(verificationToken);
     
-        String verificationLink = "http://localhost:8080/users/verify?token=" + token;
-    
-        try {
-            mailService.sendVerificationEmail(user.getEmail(), verificationLink);
-        } catch (MessagingException e) {
-            throw new InvalidCredentialsException("Unable to send verification link. Please check your email address.");
-        }
+        mailOutboxService.queueVerificationEmail(user.getEmail(), verificationLink(token));
+    }
+
+    static String verificationLink(String token) {
+        return "http://localhost:8080/users/verify?token=" + token;
     }
     
     
@@ -147,30 +193,54 @@ public class UserService {
         userRepository.save(user);
 
         verificationTokenRepository.delete(verificationToken);
+        userCache.evict(user);
 
         return "Email successfully verified!";
     }
 
     // Login method
     // This method is simplified to directly validate the password without using AuthenticationManager.
-    // Inside the UserService login method
-    public String login(LoginRequest loginRequest) {
+    // The password check runs on the hashing pool; the returned future fails with the same exceptions as before.
+    public CompletableFuture<String> login(LoginRequest loginRequest) {
         // Find user by email
-        User user = userRepository.findByEmail(loginRequest.getEmail())
-                .orElseThrow(() -> new UserNotFoundException("User not found"));
-    
+        Optional<User> found = userCache.findByEmail(loginRequest.getEmail());
+        if (found.isEmpty()) {
+            return CompletableFuture.failedFuture(new UserNotFoundException("User not found"));
+        }
+        User user = found.get();
+
         // Check if the account is verified
         if (!user.isVerified()) {
-            throw new AccountNotVerifiedException("Account not activated yet. Please check your inbox for the verification link.");
+            return CompletableFuture.failedFuture(
+                    new AccountNotVerifiedException("Account not activated yet. Please check your inbox for the verification link."));
         }
-    
+
         // Validate password
-        if (!passwordEncoder.matches(loginRequest.getPassword(), user.getPassword())) {
-            throw new InvalidCredentialsException("Invalid credentials");
-        }
-    
-        // Generate JWT token using JwtService
-        return jwtService.generateJwtToken(user.getEmail());
+        String storedPassword = user.getPassword();
+        return passwordHashingService.matches(loginRequest.getPassword(), storedPassword)
+                .thenApply(matches -> {
+                    if (!matches) {
+                        throw new InvalidCredentialsException("Invalid credentials");
+                    }
+                    if (passwordHashingService.needsRehash(storedPassword)) {
+                        rehashPassword(user, loginRequest.getPassword(), storedPassword);
+                    }
+
+                    // Generate JWT token using JwtService
+                    return jwtService.generateJwtToken(user);
+                });
+    }
+
+    // Rehash password
+    // Upgrades a hash made with another BCrypt strength, in the background, without delaying the login.
+    // The update only applies if the stored hash is still the one that was checked.
+    private void rehashPassword(User user, String rawPassword, String previousPassword) {
+        passwordHashingService.encode(rawPassword)
+                .thenAcceptAsync(encodedPassword -> {
+                    if (userRepository.updatePassword(user.getId(), previousPassword, encodedPassword) > 0) {
+                        userCache.evict(user);
+                    }
+                }, taskExecutor);
     }
     
     
@@ -0,0 +1,74 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.harbaoui.iot.user_service.repository.VerificationTokenRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Deletes expired verification tokens, which are otherwise only removed when they are used.
+ * Works in chunks of {@code verification.purge.chunk-size} rows, each in its own short transaction
+ * with a pause in between, so a large backlog never holds long locks.
+ * Publishes {@code verification.tokens.purged}.
+ */
+@Service
+public class VerificationTokenPurgeService {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerificationTokenPurgeService.class);
+
+    private final VerificationTokenRepository verificationTokenRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter purged;
+    private final int chunkSize;
+    private final long pauseMs;
+
+    public VerificationTokenPurgeService(VerificationTokenRepository verificationTokenRepository,
+                                         TransactionTemplate transactionTemplate,
+                                         MeterRegistry meterRegistry,
+                                         @Value("${verification.purge.chunk-size:1000}") int chunkSize,
+                                         @Value("${verification.purge.pause-ms:50}") long pauseMs) {
+        this.verificationTokenRepository = verificationTokenRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.purged = Counter.builder("verification.tokens.purged")
+                .description("Expired verification tokens deleted").register(meterRegistry);
+        this.chunkSize = chunkSize;
+        this.pauseMs = pauseMs;
+    }
+
+    // Delete chunk after chunk until a short one signals the backlog is gone
+    // Returns the number of tokens deleted.
+    @Scheduled(fixedDelayString = "${verification.purge.interval-ms:3600000}",
+            initialDelayString = "${verification.purge.initial-delay-ms:60000}")
+    public int purgeExpired() {
+        LocalDateTime cutoff = LocalDateTime.now();
+        int total = 0;
+        while (true) {
+            int deleted = transactionTemplate.execute(status -> {
+                List<Long> ids = verificationTokenRepository.findExpiredIds(cutoff, PageRequest.of(0, chunkSize));
+                verificationTokenRepository.deleteAllByIdInBatch(ids);
+                return ids.size();
+            });
+            total += deleted;
+            purged.increment(deleted);
+            if (deleted < chunkSize) {
+                break;
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(pauseMs));
+        }
+        if (total > 0) {
+            logger.info("Purged {} expired verification tokens", total);
+        }
+        return total;
+    }
+}
@@ -0,0 +1,84 @@
+package com.harbaoui.iot.user_service.cache;
+
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.*;
+
+public class UserCacheTest {
+
+    private UserRepository userRepository;
+    private SimpleMeterRegistry meterRegistry;
+    private UserCache userCache;
+
+    private final User alice = User.builder().id(1L).email("alice@example.com").name("Alice").isVerified(false).build();
+
+    @BeforeEach
+    void setUp() {
+        userRepository = mock(UserRepository.class);
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new UserCache(userRepository, meterRegistry, 100, 60_000);
+        when(userRepository.findByEmail("alice@example.com")).thenReturn(Optional.of(alice));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(alice));
+    }
+
+    @Test
+    void shouldServeRepeatedLookupsFromMemoryUnderBothKeys() {
+        assertThat(userCache.findByEmail("alice@example.com")).contains(alice);
+        assertThat(userCache.findByEmail("alice@example.com")).contains(alice);
+        assertThat(userCache.findById(1L)).contains(alice);
+
+        verify(userRepository, times(1)).findByEmail("alice@example.com");
+        verify(userRepository, never()).findById(1L);
+        assertThat(gets("users.byEmail", "hit")).isEqualTo(1);
+        assertThat(gets("users.byEmail", "miss")).isEqualTo(1);
+        assertThat(gets("users.byId", "hit")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCacheUnknownUsers() {
+        when(userRepository.findByEmail("bob@example.com")).thenReturn(Optional.empty());
+
+        assertThat(userCache.findByEmail("bob@example.com")).isEmpty();
+        User bob = User.builder().id(2L).email("bob@example.com").build();
+        when(userRepository.findByEmail("bob@example.com")).thenReturn(Optional.of(bob));
+
+        // Registered in the meantime: found without any eviction
+        assertThat(userCache.findByEmail("bob@example.com")).contains(bob);
+    }
+
+    @Test
+    void shouldReloadAfterEviction() {
+        userCache.findById(1L);
+        User verified = User.builder().id(1L).email("alice@example.com").name("Alice").isVerified(true).build();
+        when(userRepository.findByEmail("alice@example.com")).thenReturn(Optional.of(verified));
+        when(userRepository.findById(1L)).thenReturn(Optional.of(verified));
+
+        userCache.evict(alice);
+
+        assertThat(userCache.findByEmail("alice@example.com").orElseThrow().isVerified()).isTrue();
+        assertThat(userCache.findById(1L).orElseThrow().isVerified()).isTrue();
+    }
+
+    @Test
+    void shouldForgetEveryoneOnEvictAll() {
+        userCache.findByEmail("alice@example.com");
+        when(userRepository.findByEmail("alice@example.com")).thenReturn(Optional.empty());
+        when(userRepository.findById(1L)).thenReturn(Optional.empty());
+
+        userCache.evictAll();
+
+        assertThat(userCache.findByEmail("alice@example.com")).isEmpty();
+        assertThat(userCache.findById(1L)).isEmpty();
+    }
+
+    private double gets(String cache, String result) {
+        return meterRegistry.get("cache.gets").tag("cache", cache).tag("result", result).functionCounter().count();
+    }
+}
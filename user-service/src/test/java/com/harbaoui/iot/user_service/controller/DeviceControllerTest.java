@@ -0,0 +1,179 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.jwt.JwtService;
+import com.harbaoui.iot.user_service.repository.DeviceRepository;
+import com.harbaoui.iot.user_service.repository.SensorClaimRepository;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import com.harbaoui.iot.user_service.service.DeviceService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {"devices.sync.secret=test-sync-secret", "rate-limit.enabled=false"})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class DeviceControllerTest {
+
+    private static final String SECRET = "test-sync-secret";
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private DeviceRepository deviceRepository;
+
+    @Autowired
+    private SensorClaimRepository sensorClaimRepository;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    private String owner;
+    private String stranger;
+
+    @BeforeEach
+    void setUp() {
+        // The in-memory database is shared with the other application tests
+        deviceRepository.deleteAll();
+        sensorClaimRepository.deleteAllInBatch();
+        userRepository.deleteAll();
+        owner = token("owner@example.com");
+        stranger = token("stranger@example.com");
+    }
+
+    @AfterEach
+    void tearDown() {
+        deviceRepository.deleteAll();
+        sensorClaimRepository.deleteAllInBatch();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldPublishEveryDeviceChangeInTheFeed() throws Exception {
+        // Given a registered device
+        JsonNode device = json(mockMvc.perform(post("/devices").header("Authorization", owner)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"gateway\",\"sensorIds\":[42,7,42]}"))
+                .andExpect(status().isCreated()).andReturn().getResponse().getContentAsString());
+        long deviceId = device.get("id").asLong();
+        String apiKey = device.get("apiKey").asText();
+
+        // When the feed is read from the start
+        JsonNode first = changes(0);
+
+        // Then it carries the key hash and the sorted, distinct sensors, never the key
+        assertThat(first.get("changes")).hasSize(1);
+        JsonNode change = first.get("changes").get(0);
+        assertThat(change.get("deviceId").asLong()).isEqualTo(deviceId);
+        assertThat(change.get("keyHash").asText()).isEqualTo(DeviceService.hashKey(apiKey));
+        assertThat(change.get("sensorIds").toString()).isEqualTo("[7,42]");
+        assertThat(change.get("revoked").asBoolean()).isFalse();
+        assertThat(first.toString()).doesNotContain(apiKey);
+        long version = first.get("version").asLong();
+
+        // And later reads only return what changed since
+        assertThat(changes(version).get("changes")).isEmpty();
+        mockMvc.perform(put("/devices/" + deviceId + "/sensors").header("Authorization", owner)
+                        .contentType(MediaType.APPLICATION_JSON).content("[9]"))
+                .andExpect(status().isOk());
+        JsonNode updated = changes(version);
+        assertThat(updated.get("changes")).hasSize(1);
+        assertThat(updated.get("changes").get(0).get("sensorIds").toString()).isEqualTo("[9]");
+
+        mockMvc.perform(delete("/devices/" + deviceId).header("Authorization", owner))
+                .andExpect(status().isNoContent());
+        JsonNode revoked = changes(updated.get("version").asLong());
+        assertThat(revoked.get("changes")).hasSize(1);
+        assertThat(revoked.get("changes").get(0).get("revoked").asBoolean()).isTrue();
+        assertThat(revoked.get("version").asLong()).isGreaterThan(updated.get("version").asLong());
+    }
+
+    @Test
+    void shouldHideDevicesOfOtherUsersAndGuardTheFeed() throws Exception {
+        // Given a device of another user
+        JsonNode device = json(mockMvc.perform(post("/devices").header("Authorization", owner)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"gateway\",\"sensorIds\":[1]}"))
+                .andExpect(status().isCreated()).andReturn().getResponse().getContentAsString());
+
+        // Then it can neither be changed nor listed by a stranger
+        mockMvc.perform(delete("/devices/" + device.get("id").asLong()).header("Authorization", stranger))
+                .andExpect(status().isNotFound());
+        String listed = mockMvc.perform(get("/devices").header("Authorization", stranger))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString();
+        assertThat(json(listed)).isEmpty();
+
+        // And the feed refuses callers without the sync secret
+        mockMvc.perform(get("/devices/changes")).andExpect(status().isUnauthorized());
+        mockMvc.perform(get("/devices/changes").header("X-Sync-Secret", "guess")).andExpect(status().isUnauthorized());
+    }
+
+    @Test
+    void shouldKeepSensorsToTheUserWhoClaimedThemFirst() throws Exception {
+        // Given the owner's gateway publishes for sensor 5
+        JsonNode device = json(mockMvc.perform(post("/devices").header("Authorization", owner)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"gateway\",\"sensorIds\":[5]}"))
+                .andExpect(status().isCreated()).andReturn().getResponse().getContentAsString());
+
+        // When a stranger registers or repoints a device for it
+        mockMvc.perform(post("/devices").header("Authorization", stranger)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"intruder\",\"sensorIds\":[6,5]}"))
+                .andExpect(status().isBadRequest());
+        JsonNode own = json(mockMvc.perform(post("/devices").header("Authorization", stranger)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"other\",\"sensorIds\":[6]}"))
+                .andExpect(status().isCreated()).andReturn().getResponse().getContentAsString());
+        mockMvc.perform(put("/devices/" + own.get("id").asLong() + "/sensors").header("Authorization", stranger)
+                        .contentType(MediaType.APPLICATION_JSON).content("[5]"))
+                .andExpect(status().isBadRequest());
+
+        // Then only the owner's devices may list it, and the refused change claimed nothing
+        mockMvc.perform(post("/devices").header("Authorization", owner)
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"name\":\"second\",\"sensorIds\":[5]}"))
+                .andExpect(status().isCreated());
+        assertThat(sensorClaimRepository.findById(5L).orElseThrow().getUserId())
+                .isEqualTo(userRepository.findByEmail("owner@example.com").orElseThrow().getId());
+        assertThat(deviceRepository.findById(device.get("id").asLong()).orElseThrow().getSensorIds()).containsExactly(5L);
+        assertThat(sensorClaimRepository.count()).isEqualTo(2);
+    }
+
+    private String token(String email) {
+        User user = userRepository.save(User.builder().email(email).password("$2a$10$hash").isVerified(true).build());
+        return "Bearer " + jwtService.generateJwtToken(user);
+    }
+
+    private JsonNode changes(long since) throws Exception {
+        return json(mockMvc.perform(get("/devices/changes").param("since", String.valueOf(since))
+                        .header("X-Sync-Secret", SECRET))
+                .andExpect(status().isOk()).andReturn().getResponse().getContentAsString());
+    }
+
+    private JsonNode json(String body) throws Exception {
+        return objectMapper.readTree(body);
+    }
+}
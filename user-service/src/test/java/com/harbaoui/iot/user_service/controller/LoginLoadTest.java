@@ -0,0 +1,114 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "security.bcrypt.strength=12",
+        "security.hashing.threads=1",
+        "security.hashing.queue-capacity=4",
+        // This test is about the hashing pool; the per-IP limiter would refuse the storm first
+        "rate-limit.enabled=false"
+})
+@ActiveProfiles("test")
+public class LoginLoadTest {
+
+    private static final int LOGIN_CLIENTS = 16;
+    private static final int PROBES = 200;
+    private static final long REJECTED_BACKOFF_MS = 100;
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+    @Test
+    void shouldShedLoginsWhileCheapEndpointsKeepAnsweringWhenHashingPoolSaturates() throws Exception {
+        // Given a verified user
+        userRepository.save(User.builder().email("storm@example.com").name("Storm")
+                .password(passwordEncoder.encode("secret")).isVerified(true).build());
+
+        // When logins hammer a one-thread hashing pool
+        AtomicBoolean storming = new AtomicBoolean(true);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService loginClients = Executors.newFixedThreadPool(LOGIN_CLIENTS);
+        for (int i = 0; i < LOGIN_CLIENTS; i++) {
+            loginClients.submit(() -> {
+                while (storming.get()) {
+                    int status = send(HttpRequest.newBuilder(uri("/users/login"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"email\":\"storm@example.com\",\"password\":\"secret\"}"))
+                            .build());
+                    if (status == 200) {
+                        accepted.incrementAndGet();
+                    } else {
+                        // Well-behaved clients back off on 503
+                        rejected.incrementAndGet();
+                        Thread.sleep(REJECTED_BACKOFF_MS);
+                    }
+                }
+                return null;
+            });
+        }
+        Thread.sleep(500);
+        probe();
+        storming.set(false);
+        loginClients.shutdown();
+        loginClients.awaitTermination(30, TimeUnit.SECONDS);
+
+        // Then logins are shed with 503 while the cheap endpoint kept answering (see LoginStormBenchmark for latency)
+        assertTrue(accepted.get() > 0, "Some logins must succeed");
+        assertTrue(rejected.get() > 0, "The hashing queue must overflow and shed logins");
+    }
+
+    // An unauthenticated endpoint that does a database lookup and no hashing
+    private void probe() throws InterruptedException {
+        List<Integer> statuses = new ArrayList<>();
+        for (int i = 0; i < PROBES; i++) {
+            statuses.add(send(HttpRequest.newBuilder(uri("/users/verify?token=missing")).GET().build()));
+            Thread.sleep(5);
+        }
+        assertTrue(statuses.stream().allMatch(status -> status == 400));
+    }
+
+    private int send(HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://localhost:" + port + path);
+    }
+}
@@ -0,0 +1,123 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.harbaoui.iot.user_service.UserServiceApplication;
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Latency of a cheap endpoint while logins saturate the BCrypt hashing pool: p99 of {@code /users/verify}
+ * at rest and during a login storm, and how many logins were accepted or shed with 503.
+ * Not a unit test: wall-clock numbers depend on the machine, so it is run by hand from the module directory:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.harbaoui.iot.user_service.controller.LoginStormBenchmark 16 1
+ * </pre>
+ * The arguments are the number of login clients and of hashing threads.
+ */
+public class LoginStormBenchmark {
+
+    private static final int PROBES = 1000;
+    private static final long REJECTED_BACKOFF_MS = 100;
+
+    public static void main(String[] args) throws Exception {
+        // DevTools would restart the application in another thread and class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        int loginClients = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int hashingThreads = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(UserServiceApplication.class)
+                .profiles("test")
+                .properties("server.port=0",
+                        "security.bcrypt.strength=12",
+                        "security.hashing.threads=" + hashingThreads,
+                        "security.hashing.queue-capacity=" + 4 * hashingThreads,
+                        // The per-IP limiter would refuse the storm before the hashing pool sees it
+                        "rate-limit.enabled=false",
+                        "mail.outbox.poll-interval-ms=3600000",
+                        "logging.level.root=WARN")
+                .run();
+        context.getBean(UserRepository.class).save(User.builder().email("storm@example.com").name("Storm")
+                .password(context.getBean(PasswordEncoder.class).encode("secret")).isVerified(true).build());
+        String base = "http://localhost:" + context.getEnvironment().getProperty("local.server.port");
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+        probe(client, base);
+        long[] idle = probe(client, base);
+
+        AtomicBoolean storming = new AtomicBoolean(true);
+        AtomicInteger accepted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ExecutorService clients = Executors.newFixedThreadPool(loginClients);
+        for (int i = 0; i < loginClients; i++) {
+            clients.submit(() -> {
+                while (storming.get()) {
+                    int status = send(client, HttpRequest.newBuilder(URI.create(base + "/users/login"))
+                            .header("Content-Type", "application/json")
+                            .POST(HttpRequest.BodyPublishers.ofString(
+                                    "{\"email\":\"storm@example.com\",\"password\":\"secret\"}"))
+                            .build());
+                    if (status == 200) {
+                        accepted.incrementAndGet();
+                    } else {
+                        // Well-behaved clients back off on 503
+                        rejected.incrementAndGet();
+                        Thread.sleep(REJECTED_BACKOFF_MS);
+                    }
+                }
+                return null;
+            });
+        }
+        Thread.sleep(500);
+        long[] storm = probe(client, base);
+        storming.set(false);
+        clients.shutdown();
+        clients.awaitTermination(30, TimeUnit.SECONDS);
+
+        System.out.printf("verify p99: idle %d us, login storm %d us; logins accepted %d, rejected %d%n",
+                percentile(idle, 0.99) / 1000, percentile(storm, 0.99) / 1000, accepted.get(), rejected.get());
+        context.close();
+        System.exit(0);
+    }
+
+    // Latency of an unauthenticated endpoint that does a database lookup and no hashing
+    private static long[] probe(HttpClient client, String base) throws InterruptedException {
+        long[] latencies = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            long start = System.nanoTime();
+            send(client, HttpRequest.newBuilder(URI.create(base + "/users/verify?token=missing")).GET().build());
+            latencies[i] = System.nanoTime() - start;
+            Thread.sleep(5);
+        }
+        return latencies;
+    }
+
+    private static int send(HttpClient client, HttpRequest request) {
+        try {
+            return client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+        } catch (Exception e) {
+            return -1;
+        }
+    }
+
+    private static long percentile(long[] samples, double percentile) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+}
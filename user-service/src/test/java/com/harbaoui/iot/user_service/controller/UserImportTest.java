@@ -0,0 +1,189 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.jwt.JwtService;
+import com.harbaoui.iot.user_service.repository.MailOutboxRepository;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import com.harbaoui.iot.user_service.repository.VerificationTokenRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        // Cheap hashes, so the test measures the import path rather than BCrypt
+        "security.bcrypt.strength=4",
+        "users.import.batch-size=200",
+        "users.import.max-rows=5000",
+        "mail.outbox.poll-interval-ms=3600000"
+})
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class UserImportTest {
+
+    private static final int USERS = 3000;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private VerificationTokenRepository verificationTokenRepository;
+
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Autowired
+    private PasswordEncoder passwordEncoder;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @BeforeEach
+    @AfterEach
+    void clear() {
+        // The in-memory database is shared with the other application tests
+        verificationTokenRepository.deleteAll();
+        mailOutboxRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldImportCsvWithBatchedInsertsAndQueuedMails() throws Exception {
+        userRepository.save(User.builder().email("user7@example.com").name("Existing").password("x").build());
+        StringBuilder csv = new StringBuilder("email,name,password,phoneNumber\n");
+        for (int i = 0; i < USERS; i++) {
+            csv.append("user").append(i).append("@example.com,User ").append(i).append(",secret").append(i).append(",555").append(i).append('\n');
+        }
+        csv.append("user1@example.com,Twice,secret,\n");
+        csv.append("not-an-email,Nobody,secret,\n");
+
+        JsonNode report = importFile("text/csv", csv.toString());
+
+        assertThat(report.get("received").asInt()).isEqualTo(USERS + 2);
+        assertThat(report.get("created").asInt()).isEqualTo(USERS - 1);
+        assertThat(report.get("duplicates").asInt()).isEqualTo(2);
+        assertThat(report.get("invalid").asInt()).isEqualTo(1);
+        assertThat(report.get("errors").toString()).contains("user7@example.com is already registered", "line " + (USERS + 2));
+
+        assertThat(userRepository.count()).isEqualTo(USERS);
+        assertThat(verificationTokenRepository.count()).isEqualTo(USERS - 1);
+        assertThat(mailOutboxRepository.count()).isEqualTo(USERS - 1);
+        User imported = userRepository.findByEmail("user42@example.com").orElseThrow();
+        assertThat(imported.getName()).isEqualTo("User 42");
+        assertThat(imported.getPhoneNumber()).isEqualTo("55542");
+        assertThat(imported.isVerified()).isFalse();
+        assertThat(passwordEncoder.matches("secret42", imported.getPassword())).isTrue();
+    }
+
+    @Test
+    void shouldImportNdjson() throws Exception {
+        String ndjson = """
+                {"email":"a@example.com","name":"A","password":"pa"}
+                {"email":"b@example.com","password":"pb","phoneNumber":"123"}
+                {not json
+                """;
+
+        JsonNode report = importFile("application/x-ndjson", ndjson);
+
+        assertThat(report.get("created").asInt()).isEqualTo(2);
+        assertThat(report.get("invalid").asInt()).isEqualTo(1);
+        assertThat(userRepository.findByEmail("b@example.com").orElseThrow().getPhoneNumber()).isEqualTo("123");
+        assertThat(mailOutboxRepository.findAll()).extracting("recipient")
+                .containsExactlyInAnyOrder("a@example.com", "b@example.com");
+    }
+
+    @Test
+    void shouldTreatEmailsThatDifferOnlyInCaseAsTheSameUser() throws Exception {
+        userRepository.save(User.builder().email("Carol@Example.com").name("Existing").password("x").build());
+        String csv = """
+                email,password
+                carol@example.com,pc
+                Dave@example.com,pd
+                DAVE@EXAMPLE.COM,pd
+                """;
+
+        JsonNode report = importFile("text/csv", csv);
+
+        assertThat(report.get("created").asInt()).isEqualTo(1);
+        assertThat(report.get("duplicates").asInt()).isEqualTo(2);
+        assertThat(report.get("errors").toString())
+                .contains("line 2: email carol@example.com is already registered", "line 4: duplicate email");
+        assertThat(userRepository.count()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldReportRowsTheDatabaseRefusesAndKeepImporting() throws Exception {
+        // Given a name too long for its column in the first batch, and a second batch after it
+        StringBuilder csv = new StringBuilder("email,name,password\n");
+        for (int i = 0; i < 300; i++) {
+            String name = i == 5 ? "n".repeat(300) : "User " + i;
+            csv.append("row").append(i).append("@example.com,").append(name).append(",pw\n");
+        }
+
+        JsonNode report = importFile("text/csv", csv.toString());
+
+        // Then only that row is left out and reported
+        assertThat(report.get("created").asInt()).isEqualTo(299);
+        assertThat(report.get("invalid").asInt()).isEqualTo(1);
+        assertThat(report.get("errors").toString()).contains("line 7: rejected by the database");
+        assertThat(userRepository.count()).isEqualTo(299);
+        assertThat(verificationTokenRepository.count()).isEqualTo(299);
+    }
+
+    @Test
+    void shouldRefuseImportsFromAnonymousAndNonAdminCallers() throws Exception {
+        String csv = "email,password\nsneaky@example.com,pw\n";
+        User regular = User.builder().id(1_000_001L).email("regular@example.com").build();
+
+        mockMvc.perform(post("/users/import").contentType("text/csv").content(csv))
+                .andExpect(status().isForbidden());
+        mockMvc.perform(post("/users/import").header("Authorization", "Bearer " + jwtService.generateJwtToken(regular))
+                        .contentType("text/csv").content(csv))
+                .andExpect(status().isForbidden());
+        assertThat(userRepository.count()).isZero();
+        assertThat(mailOutboxRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldRejectFilesOverTheLimit() throws Exception {
+        StringBuilder csv = new StringBuilder("email,password\n");
+        for (int i = 0; i <= 5000; i++) {
+            csv.append("big").append(i).append("@example.com,pw\n");
+        }
+
+        mockMvc.perform(post("/users/import").header("Authorization", admin()).contentType("text/csv").content(csv.toString()))
+                .andExpect(status().isBadRequest());
+        assertThat(userRepository.count()).isZero();
+    }
+
+    // The token carries the authorities, so the administrator needs no row of its own
+    private String admin() {
+        return "Bearer " + jwtService.generateJwtToken(
+                User.builder().id(1_000_000L).email("admin@example.com").isAdmin(true).build());
+    }
+
+    private JsonNode importFile(String contentType, String body) throws Exception {
+        String response = mockMvc.perform(post("/users/import").header("Authorization", admin())
+                        .contentType(contentType).content(body))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+        return objectMapper.readTree(response);
+    }
+}
@@ -0,0 +1,116 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = "users.page.max-size=10")
+@AutoConfigureMockMvc
+@ActiveProfiles("test")
+public class UserListingTest {
+
+    private static final int USERS = 25;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void setUp() {
+        // The in-memory database is shared with the other application tests
+        userRepository.deleteAll();
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < USERS; i++) {
+            users.add(User.builder().email("user" + i + "@example.com").name("User " + i)
+                    .password("$2a$10$hash" + i).isVerified(i % 2 == 0).build());
+        }
+        userRepository.saveAll(users);
+    }
+
+    @AfterEach
+    void tearDown() {
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldWalkAllUsersWithTheCursor() throws Exception {
+        List<String> emails = new ArrayList<>();
+        String after = "0";
+        int pages = 0;
+        while (after != null) {
+            String body = mockMvc.perform(get("/users/page").param("after", after).param("limit", "100"))
+                    .andExpect(status().isOk())
+                    .andReturn().getResponse().getContentAsString();
+            JsonNode page = objectMapper.readTree(body);
+            assertThat(page.get("users").size()).isLessThanOrEqualTo(10);
+            page.get("users").forEach(user -> emails.add(user.get("email").asText()));
+            after = page.get("nextCursor").isNull() ? null : page.get("nextCursor").asText();
+            pages++;
+        }
+
+        assertThat(pages).isEqualTo(3);
+        assertThat(emails).hasSize(USERS).doesNotHaveDuplicates();
+    }
+
+    @Test
+    void shouldExportOneUserPerLineWithoutPasswords() throws Exception {
+        String body = stream("/users/export");
+
+        String[] lines = body.split("\n");
+        assertThat(lines).hasSize(USERS);
+        JsonNode first = objectMapper.readTree(lines[0]);
+        assertThat(first.get("email").asText()).isEqualTo("user0@example.com");
+        assertThat(first.get("verified").asBoolean()).isTrue();
+        assertThat(body).doesNotContain("password").doesNotContain("$2a$");
+    }
+
+    @Test
+    void shouldStreamAllUsersAsAJsonArray() throws Exception {
+        JsonNode users = objectMapper.readTree(stream("/users/all"));
+
+        assertThat(users.isArray()).isTrue();
+        assertThat(users.size()).isEqualTo(USERS);
+        assertThat(users.toString()).doesNotContain("password");
+    }
+
+    @Test
+    void shouldNotReturnThePasswordHashOfOneUser() throws Exception {
+        Long id = userRepository.findByEmail("user3@example.com").orElseThrow().getId();
+
+        String body = mockMvc.perform(get("/users/" + id))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+
+        assertThat(body).contains("user3@example.com").doesNotContain("password").doesNotContain("$2a$");
+    }
+
+    private String stream(String path) throws Exception {
+        MvcResult started = mockMvc.perform(get(path)).andReturn();
+        return mockMvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString();
+    }
+}
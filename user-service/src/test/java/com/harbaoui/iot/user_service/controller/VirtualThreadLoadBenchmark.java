@@ -0,0 +1,161 @@
+package com.harbaoui.iot.user_service.controller;
+
+import com.harbaoui.iot.user_service.UserServiceApplication;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread-per-request against virtual threads at a given number of concurrent connections.
+ * Not a unit test; run one mode per JVM, on Java 21+, from the module directory:
+ * <pre>
+ * mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * java -cp target/classes:target/test-classes:$(cat target/cp.txt) \
+ *     com.harbaoui.iot.user_service.controller.VirtualThreadLoadBenchmark platform 5000
+ * java -cp ... VirtualThreadLoadBenchmark virtual 5000
+ * </pre>
+ * Every simulated client keeps one keep-alive connection and sends requests back to back to
+ * {@code /users/verify}, which does one database lookup and no hashing.
+ * Add {@code -Djdk.tracePinnedThreads=short} to list virtual threads pinned by monitors.
+ */
+public class VirtualThreadLoadBenchmark {
+
+    private static final Duration WARMUP = Duration.ofSeconds(15);
+    private static final Duration MEASURE = Duration.ofSeconds(30);
+
+    public static void main(String[] args) throws Exception {
+        // DevTools would restart the application in another thread and class loader
+        System.setProperty("spring.devtools.restart.enabled", "false");
+        boolean virtual = args.length > 0 && args[0].equals("virtual");
+        int connections = args.length > 1 ? Integer.parseInt(args[1]) : 5000;
+
+        List<String> profiles = new ArrayList<>(List.of("test"));
+        if (virtual) {
+            profiles.add("virtual-threads");
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(UserServiceApplication.class)
+                .profiles(profiles.toArray(String[]::new))
+                .properties("server.port=0",
+                        "server.tomcat.max-connections=" + (connections + 100),
+                        "server.tomcat.accept-count=" + connections,
+                        "rate-limit.enabled=false",
+                        "mail.outbox.poll-interval-ms=3600000",
+                        "logging.level.root=WARN")
+                .run();
+        int port = context.getEnvironment().getProperty("local.server.port", Integer.class);
+        URI uri = URI.create("http://localhost:" + port + "/users/verify?token=missing");
+
+        // HTTP/1.1 keep-alive: one connection per outstanding request, reused by the next one
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .executor(Executors.newFixedThreadPool(2))
+                .build();
+
+        run(client, connections, uri, WARMUP);
+        Result result = run(client, connections, uri, MEASURE);
+
+        System.out.printf("%s threads, %d connections: %.0f req/s, p50 %d ms, p99 %d ms, errors %d, "
+                        + "peak RSS %d MB, peak heap %d MB, peak platform threads %d%n",
+                virtual ? "virtual" : "platform", connections, result.throughput, result.p50Ms, result.p99Ms,
+                result.errors, result.peakRssMb, result.peakHeapMb,
+                ManagementFactory.getThreadMXBean().getPeakThreadCount());
+        context.close();
+        System.exit(0);
+    }
+
+    private static Result run(HttpClient client, int connections, URI uri, Duration duration) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong completed = new AtomicLong();
+        AtomicLong errors = new AtomicLong();
+        long[][] latencies = new long[connections][];
+        List<CompletableFuture<Void>> loops = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < connections; i++) {
+            int index = i;
+            List<Long> samples = new ArrayList<>();
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            loop(client, uri, running, completed, errors, samples, done);
+            loops.add(done.thenRun(() -> latencies[index] = samples.stream().mapToLong(Long::longValue).toArray()));
+        }
+
+        long peakRss = 0;
+        long peakHeap = 0;
+        long end = start + duration.toNanos();
+        while (System.nanoTime() < end) {
+            Thread.sleep(100);
+            peakRss = Math.max(peakRss, rssKb());
+            peakHeap = Math.max(peakHeap, ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+        running.set(false);
+        CompletableFuture.allOf(loops.toArray(CompletableFuture[]::new)).join();
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] all = Arrays.stream(latencies).flatMapToLong(Arrays::stream).sorted().toArray();
+        Result result = new Result();
+        result.throughput = completed.get() / seconds;
+        result.p50Ms = all.length == 0 ? -1 : all[all.length / 2] / 1_000_000;
+        result.p99Ms = all.length == 0 ? -1 : all[Math.min(all.length - 1, (int) (all.length * 0.99))] / 1_000_000;
+        result.errors = errors.get();
+        result.peakRssMb = peakRss / 1024;
+        result.peakHeapMb = peakHeap / (1024 * 1024);
+        return result;
+    }
+
+    // Send the next request when the previous one completes, until stopped
+    private static void loop(HttpClient client, URI uri, AtomicBoolean running, AtomicLong completed,
+                             AtomicLong errors, List<Long> samples, CompletableFuture<Void> done) {
+        if (!running.get()) {
+            done.complete(null);
+            return;
+        }
+        long sent = System.nanoTime();
+        client.sendAsync(HttpRequest.newBuilder(uri).GET().build(), HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    if (error != null || response.statusCode() != 400) {
+                        errors.incrementAndGet();
+                    } else {
+                        completed.incrementAndGet();
+                        samples.add(System.nanoTime() - sent);
+                    }
+                    loop(client, uri, running, completed, errors, samples, done);
+                });
+    }
+
+    private static long rssKb() {
+        try {
+            for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+                if (line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.replaceAll("\\D", ""));
+                }
+            }
+        } catch (Exception e) {
+            // Not on Linux
+        }
+        return 0;
+    }
+
+    private static final class Result {
+        double throughput;
+        long p50Ms;
+        long p99Ms;
+        long errors;
+        long peakRssMb;
+        long peakHeapMb;
+    }
+}
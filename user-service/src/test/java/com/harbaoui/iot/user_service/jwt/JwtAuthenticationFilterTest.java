@@ -0,0 +1,142 @@
+package com.harbaoui.iot.user_service.jwt;
+
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.entity.UserRevocation;
+import com.harbaoui.iot.user_service.repository.UserRevocationRepository;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+public class JwtAuthenticationFilterTest {
+
+    static final String SECRET = "MHJheDQ4cWxlNjVqYjVvYWF6cXRjbHRuNm5pMnd3d2k=";
+
+    static final User USER = User.builder().id(1L).email("test@example.com").isVerified(true).build();
+
+    private JwtService jwtService;
+    private UserRevocationRepository userRevocationRepository;
+    private TokenRevocations tokenRevocations;
+    private VerifiedTokenCache verifiedTokenCache;
+    private JwtAuthenticationFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        jwtService = new JwtService(SECRET);
+        userRevocationRepository = mock(UserRevocationRepository.class);
+        tokenRevocations = new TokenRevocations(userRevocationRepository, 1000, Duration.ofMinutes(1));
+        verifiedTokenCache = new VerifiedTokenCache(100, 60_000);
+        filter = new JwtAuthenticationFilter(jwtService, verifiedTokenCache, tokenRevocations);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void shouldAuthenticateFromClaimsAndServeRepeatsFromCache() throws Exception {
+        // Given
+        String token = jwtService.generateJwtToken(USER);
+
+        // When the same token is presented three times
+        for (int i = 0; i < 3; i++) {
+            FilterChain chain = mock(FilterChain.class);
+            filter.doFilter(request(token), new MockHttpServletResponse(), chain);
+            verify(chain).doFilter(any(), any());
+            assertEquals("test@example.com", SecurityContextHolder.getContext().getAuthentication().getName());
+            SecurityContextHolder.clearContext();
+        }
+
+        // Then the principal came from the claims, and the database was never asked
+        JwtPrincipal principal = verifiedTokenCache.get(token);
+        assertEquals(1L, principal.userId());
+        assertTrue(principal.verified());
+        assertEquals(List.of(), principal.authorities());
+        assertEquals(1, verifiedTokenCache.size());
+        verifyNoInteractions(userRevocationRepository);
+    }
+
+    @Test
+    void shouldRejectTamperedTokenWithUnauthorized() throws Exception {
+        // Given a token with a broken signature
+        String token = jwtService.generateJwtToken(USER);
+        String tampered = token.substring(0, token.length() - 2) + (token.endsWith("AA") ? "BB" : "AA");
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request(tampered), response, chain);
+
+        // Then
+        assertEquals(401, response.getStatus());
+        verifyNoInteractions(chain);
+        assertNull(SecurityContextHolder.getContext().getAuthentication());
+        assertEquals(0, verifiedTokenCache.size());
+    }
+
+    @Test
+    void shouldRejectCachedTokenOnceAnotherInstanceRevokedItsUser() throws Exception {
+        // Given a token that was already accepted and cached
+        String token = jwtService.generateJwtToken(USER);
+        filter.doFilter(request(token), new MockHttpServletResponse(), mock(FilterChain.class));
+        SecurityContextHolder.clearContext();
+        when(userRevocationRepository.findAfter(any(), anyLong(), any()))
+                .thenReturn(List.of(new UserRevocation(7L, 1L, Instant.now())));
+
+        // When the revocation recorded elsewhere is picked up
+        assertEquals(1, tokenRevocations.refresh());
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(token), response, chain);
+
+        // Then
+        assertEquals(401, response.getStatus());
+        verifyNoInteractions(chain);
+    }
+
+    @Test
+    void shouldRejectTokenIssuedWithoutUserClaims() throws Exception {
+        // Given a correctly signed token that only carries the email, as issued before the claims existed
+        String token = Jwts.builder()
+                .subject("test@example.com")
+                .issuedAt(new Date())
+                .expiration(new Date(System.currentTimeMillis() + 60_000))
+                .signWith(Keys.hmacShaKeyFor(Base64.getDecoder().decode(SECRET.getBytes(StandardCharsets.UTF_8))))
+                .compact();
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        // When
+        filter.doFilter(request(token), response, chain);
+
+        // Then
+        assertEquals(401, response.getStatus());
+        verifyNoInteractions(chain);
+    }
+
+    private static MockHttpServletRequest request(String token) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/devices");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+}
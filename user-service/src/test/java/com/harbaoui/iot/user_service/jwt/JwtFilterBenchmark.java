@@ -0,0 +1,100 @@
+package com.harbaoui.iot.user_service.jwt;
+
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.security.Keys;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.core.userdetails.UserDetails;
+
+import javax.crypto.SecretKey;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Per-request cost of authenticating a bearer token: the original filter (decode the key, parse and verify
+ * twice, load the user), a single parse that still loads the user, a parse that builds the principal
+ * from the claims alone, and a warm cache hit.
+ * The user lookup is simulated with a 200 µs pause, a fast local MySQL round trip.
+ * Not part of the test run: after {@code mvn test-compile}, run {@link #main} from the IDE
+ * or with {@code java} on the test classpath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtFilterBenchmark {
+
+    private static final long USER_LOOKUP_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    private JwtService jwtService;
+    private VerifiedTokenCache verifiedTokenCache;
+    private String token;
+    private final UserDetails user = JwtAuthenticationFilterTest.USER;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(JwtAuthenticationFilterTest.SECRET);
+        verifiedTokenCache = new VerifiedTokenCache(10_000, TimeUnit.MINUTES.toMillis(5));
+        token = jwtService.generateJwtToken(JwtAuthenticationFilterTest.USER);
+        Claims claims = jwtService.parseVerifiedClaims(token);
+        verifiedTokenCache.put(token, jwtService.toPrincipal(claims), claims.getExpiration().getTime());
+    }
+
+    // What JwtAuthenticationFilter did before: parse for the subject, load the user, then parse again to validate
+    @Benchmark
+    public UserDetails previousFilter() {
+        String email = legacyParse(token).getSubject();
+        UserDetails loaded = loadUser(email);
+        legacyParse(token);
+        return loaded;
+    }
+
+    // Cache miss before the user claims: one parse with the shared parser, then the user lookup
+    @Benchmark
+    public UserDetails singleParse() {
+        return loadUser(jwtService.parseVerifiedClaims(token).getSubject());
+    }
+
+    // Cache miss now: one parse, the principal comes from the claims
+    @Benchmark
+    public JwtPrincipal claimsOnly() {
+        return jwtService.toPrincipal(jwtService.parseVerifiedClaims(token));
+    }
+
+    // Cache hit: one hash lookup
+    @Benchmark
+    public JwtPrincipal cachedToken() {
+        return verifiedTokenCache.get(token);
+    }
+
+    private UserDetails loadUser(String email) {
+        LockSupport.parkNanos(USER_LOOKUP_NANOS);
+        return user;
+    }
+
+    private static Claims legacyParse(String token) {
+        byte[] decodedKey = Base64.getDecoder().decode(JwtAuthenticationFilterTest.SECRET.getBytes(StandardCharsets.UTF_8));
+        SecretKey key = Keys.hmacShaKeyFor(decodedKey);
+        return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(JwtFilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,62 @@
+package com.harbaoui.iot.user_service.jwt;
+
+import com.harbaoui.iot.user_service.entity.UserRevocation;
+import com.harbaoui.iot.user_service.repository.UserRevocationRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+class TokenRevocationsTest {
+
+    @Autowired
+    private UserRevocationRepository userRevocationRepository;
+
+    private TokenRevocations tokenRevocations;
+
+    @BeforeEach
+    void setUp() {
+        userRevocationRepository.deleteAll();
+        tokenRevocations = new TokenRevocations(userRevocationRepository, 2, Duration.ofMinutes(1));
+    }
+
+    @Test
+    void shouldApplyRevocationCommittedAfterANewerOneWasRead() {
+        // Given a refresh already applied a revocation of user 1
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        save(1L, now);
+        assertThat(tokenRevocations.refresh()).isEqualTo(1);
+
+        // When a revocation of user 2 stamped earlier commits only afterwards, next to three later ones
+        save(2L, now.minusSeconds(10));
+        save(3L, now.plusMillis(1));
+        save(4L, now.plusMillis(1));
+        save(5L, now.plusMillis(2));
+        tokenRevocations.refresh();
+
+        // Then every user is revoked, the late one included, across pages sharing an instant
+        for (long userId = 1; userId <= 5; userId++) {
+            assertThat(tokenRevocations.isRevoked(principal(userId, now.minusSeconds(30)))).isTrue();
+        }
+        assertThat(tokenRevocations.isRevoked(principal(2L, now))).isFalse();
+        assertThat(tokenRevocations.size()).isEqualTo(5);
+    }
+
+    private void save(Long userId, Instant revokedAt) {
+        userRevocationRepository.save(UserRevocation.builder().userId(userId).revokedAt(revokedAt).build());
+    }
+
+    private static JwtPrincipal principal(long userId, Instant issuedAt) {
+        return new JwtPrincipal(userId, "user" + userId + "@example.com", true, List.of(), issuedAt.toEpochMilli());
+    }
+}
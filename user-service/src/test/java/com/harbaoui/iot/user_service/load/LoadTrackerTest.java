@@ -0,0 +1,38 @@
+package com.harbaoui.iot.user_service.load;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockAsyncContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class LoadTrackerTest {
+
+    private final LoadTracker loadTracker = new LoadTracker();
+
+    @Test
+    void shouldKeepAsyncRequestsInFlightUntilTheyComplete() throws Exception {
+        // Given a handler that hands the request over to another thread
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/work");
+        request.setAsyncSupported(true);
+
+        // When the filter returns before the work is done
+        loadTracker.doFilter(request, new MockHttpServletResponse(), (req, res) -> req.startAsync());
+
+        // Then the request is still counted, and only timed once it completes
+        assertEquals(1, loadTracker.inFlight());
+        ((MockAsyncContext) request.getAsyncContext()).complete();
+        assertEquals(0, loadTracker.inFlight());
+        assertTrue(loadTracker.rollP99() > 0);
+    }
+
+    @Test
+    void shouldEndSynchronousRequestsWhenTheChainReturns() throws Exception {
+        loadTracker.doFilter(new MockHttpServletRequest("GET", "/quick"), new MockHttpServletResponse(), (req, res) -> { });
+
+        assertEquals(0, loadTracker.inFlight());
+        assertTrue(loadTracker.rollP99() > 0);
+    }
+}
@@ -0,0 +1,123 @@
+package com.harbaoui.iot.user_service.ratelimit;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class RateLimitFilterTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setLogin(new RateLimitProperties.Endpoint(
+                new RateLimitProperties.Limit(3, 1), new RateLimitProperties.Limit(2, 1)));
+        meterRegistry = new SimpleMeterRegistry();
+        filter = new RateLimitFilter(properties, meterRegistry);
+    }
+
+    @Test
+    void shouldRefuseAnIpOverItsLimitBeforeReadingTheBody() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            assertEquals(200, login("10.0.0.1", "user" + i + "@example.com").getStatus());
+        }
+
+        FilterChain chain = mock(FilterChain.class);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request("10.0.0.1", "other@example.com"), response, chain);
+
+        assertEquals(429, response.getStatus());
+        assertNotNull(response.getHeader("Retry-After"));
+        verify(chain, never()).doFilter(any(), any());
+        assertEquals(1, rejected("ip"));
+    }
+
+    @Test
+    void shouldRefuseAnAccountTargetedFromManyIps() throws Exception {
+        assertEquals(200, login("10.0.0.1", "victim@example.com").getStatus());
+        assertEquals(200, login("10.0.0.2", "Victim@Example.com").getStatus());
+
+        assertEquals(429, login("10.0.0.3", "victim@example.com").getStatus());
+        assertEquals(1, rejected("email"));
+    }
+
+    @Test
+    void shouldReplayTheBodyToTheController() throws Exception {
+        FilterChain chain = (request, response) -> {
+            String body = new String(request.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertEquals(body("a@example.com"), body);
+        };
+
+        filter.doFilter(request("10.0.0.1", "a@example.com"), new MockHttpServletResponse(), chain);
+    }
+
+    @Test
+    void shouldKeyClientsBehindATrustedProxyByTheAddressItForwards() throws Exception {
+        RateLimitProperties properties = new RateLimitProperties();
+        properties.setLogin(new RateLimitProperties.Endpoint(
+                new RateLimitProperties.Limit(1, 1), new RateLimitProperties.Limit(5, 1)));
+        properties.setClientIpHeader("X-Forwarded-For");
+        filter = new RateLimitFilter(properties, meterRegistry);
+
+        // Given two clients behind the same proxy, one of them prepending a forged address
+        assertEquals(200, loginVia("198.51.100.7", "a@example.com").getStatus());
+        assertEquals(200, loginVia("1.1.1.1, 203.0.113.9", "b@example.com").getStatus());
+
+        // Then each has its own bucket, keyed by the address the proxy appended
+        assertEquals(429, loginVia("2.2.2.2, 198.51.100.7", "c@example.com").getStatus());
+        assertEquals(429, loginVia("203.0.113.9", "d@example.com").getStatus());
+    }
+
+    @Test
+    void shouldLeaveOtherEndpointsAlone() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest("GET", "/users/verify");
+            request.setRemoteAddr("10.0.0.1");
+            FilterChain chain = mock(FilterChain.class);
+            filter.doFilter(request, new MockHttpServletResponse(), chain);
+            verify(chain).doFilter(any(), any());
+        }
+    }
+
+    private MockHttpServletResponse login(String ip, String email) throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request(ip, email), response, mock(FilterChain.class));
+        return response;
+    }
+
+    private MockHttpServletResponse loginVia(String forwardedFor, String email) throws Exception {
+        MockHttpServletRequest request = request("10.0.0.254", email);
+        request.addHeader("X-Forwarded-For", forwardedFor);
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, mock(FilterChain.class));
+        return response;
+    }
+
+    private static MockHttpServletRequest request(String ip, String email) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/users/login");
+        request.setRemoteAddr(ip);
+        request.setContentType("application/json");
+        request.setContent(body(email).getBytes(StandardCharsets.UTF_8));
+        return request;
+    }
+
+    private static String body(String email) {
+        return "{\"email\":\"" + email + "\",\"password\":\"secret\"}";
+    }
+
+    private double rejected(String key) {
+        return meterRegistry.get("ratelimit.rejected").tag("endpoint", "login").tag("key", key).counter().count();
+    }
+}
@@ -0,0 +1,83 @@
+package com.harbaoui.iot.user_service.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TokenBucketLimiterTest {
+
+    private static final long T0 = 1_700_000_000_000L;
+
+    @Test
+    void shouldAllowABurstThenRefillAtTheConfiguredRate() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1024, 5, 60); // one token per second
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, limiter.tryAcquire("1.2.3.4", T0));
+        }
+        long retryAfter = limiter.tryAcquire("1.2.3.4", T0);
+        assertTrue(retryAfter > 900 && retryAfter <= 1000, "retry after " + retryAfter);
+
+        // Many rejected calls in between do not delay the refill
+        for (int ms = 100; ms < 1000; ms += 100) {
+            assertTrue(limiter.tryAcquire("1.2.3.4", T0 + ms) > 0);
+        }
+        assertEquals(0, limiter.tryAcquire("1.2.3.4", T0 + 1000));
+        assertTrue(limiter.tryAcquire("1.2.3.4", T0 + 1000) > 0);
+
+        // Idle long enough, the bucket is full again but never above capacity
+        int allowed = 0;
+        while (limiter.tryAcquire("1.2.3.4", T0 + 3_600_000) == 0) {
+            allowed++;
+        }
+        assertEquals(5, allowed);
+    }
+
+    @Test
+    void shouldKeepKeysIndependent() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1024, 1, 1);
+
+        assertEquals(0, limiter.tryAcquire("alice@example.com", T0));
+        assertTrue(limiter.tryAcquire("alice@example.com", T0) > 0);
+        assertEquals(0, limiter.tryAcquire("bob@example.com", T0));
+    }
+
+    @Test
+    void shouldServeMoreKeysThanSlotsByForgettingIdleOnes() {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(64, 1, 1);
+
+        // Far more keys than slots, each seen once: every one gets a fresh bucket
+        for (int i = 0; i < 10_000; i++) {
+            assertEquals(0, limiter.tryAcquire("client-" + i, T0 + i));
+        }
+
+        // A key still in the table keeps its state
+        assertTrue(limiter.tryAcquire("client-9999", T0 + 10_000) > 0);
+    }
+
+    @Test
+    void shouldNeverGrantMoreThanTheCapacityUnderContention() throws Exception {
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1024, 100, 1);
+        AtomicInteger granted = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    if (limiter.tryAcquire("shared", T0) == 0) {
+                        granted.incrementAndGet();
+                    }
+                }
+            });
+        }
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(100, granted.get());
+    }
+}
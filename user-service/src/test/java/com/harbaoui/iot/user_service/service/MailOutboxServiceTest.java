@@ -0,0 +1,156 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.harbaoui.iot.user_service.entity.MailOutbox;
+import com.harbaoui.iot.user_service.repository.MailOutboxRepository;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.ServerSocket;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({MailOutboxService.class, MailService.class, MailOutboxServiceTest.SmtpConfig.class})
+@TestPropertySource(properties = {
+        "mail.outbox.batch-size=2",
+        "mail.outbox.max-attempts=3",
+        "mail.outbox.initial-backoff-ms=60000"
+})
+// The dispatcher commits on its own, like the scheduled task; no test-managed transaction around it
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class MailOutboxServiceTest {
+
+    // In-process SMTP server standing in for the real mail provider
+    @RegisterExtension
+    static final GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP);
+
+    @TestConfiguration
+    static class SmtpConfig {
+        @Bean
+        JavaMailSenderImpl javaMailSender() {
+            return new JavaMailSenderImpl();
+        }
+    }
+
+    @Autowired
+    private MailOutboxService mailOutboxService;
+
+    @Autowired
+    private MailOutboxRepository mailOutboxRepository;
+
+    @Autowired
+    private JavaMailSenderImpl mailSender;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void pointAtGreenMail() {
+        mailSender.setHost("localhost");
+        mailSender.setPort(ServerSetupTest.SMTP.getPort());
+    }
+
+    @AfterEach
+    void clearOutbox() {
+        mailOutboxRepository.deleteAll();
+    }
+
+    @Test
+    void shouldSendQueuedMailsInBatchesAndRemoveThem() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            mailOutboxService.queueVerificationEmail("user" + i + "@example.com", "http://localhost/verify?token=" + i);
+        }
+
+        int sent = mailOutboxService.dispatch();
+
+        assertThat(sent).isEqualTo(5);
+        assertThat(mailOutboxRepository.count()).isZero();
+        MimeMessage[] received = greenMail.getReceivedMessages();
+        assertThat(received).hasSize(5);
+        assertThat(received[0].getSubject()).isEqualTo(MailService.VERIFICATION_SUBJECT);
+        assertThat(GreenMailUtil.getBody(received[0])).contains("http://localhost/verify?token=");
+    }
+
+    @Test
+    void shouldNotQueueMailWhenTheTransactionRollsBack() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            mailOutboxService.queueVerificationEmail("rolled-back@example.com", "http://localhost/verify?token=x");
+            status.setRollbackOnly();
+        });
+
+        assertThat(mailOutboxRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldBackOffWhileSmtpIsDownAndDeliverOnceItIsBack() throws Exception {
+        mailSender.setPort(unusedPort());
+        MailOutbox queued = mailOutboxService.queueVerificationEmail("retry@example.com", "http://localhost/verify?token=r");
+
+        LocalDateTime before = LocalDateTime.now();
+        assertThat(mailOutboxService.dispatch()).isZero();
+
+        MailOutbox failed = mailOutboxRepository.findById(queued.getId()).orElseThrow();
+        assertThat(failed.getStatus()).isEqualTo(MailOutbox.Status.PENDING);
+        assertThat(failed.getAttempts()).isEqualTo(1);
+        assertThat(failed.getLastError()).isNotBlank();
+        assertThat(failed.getNextAttemptAt()).isAfter(before.plus(Duration.ofSeconds(50)));
+
+        // Not due yet, so nothing is attempted even once SMTP is back
+        pointAtGreenMail();
+        assertThat(mailOutboxService.dispatch()).isZero();
+        assertThat(greenMail.getReceivedMessages()).isEmpty();
+
+        failed.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+        mailOutboxRepository.save(failed);
+        assertThat(mailOutboxService.dispatch()).isEqualTo(1);
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(mailOutboxRepository.count()).isZero();
+    }
+
+    @Test
+    void shouldGiveUpAfterMaxAttempts() throws Exception {
+        mailSender.setPort(unusedPort());
+        MailOutbox queued = mailOutboxService.queueVerificationEmail("dead@example.com", "http://localhost/verify?token=d");
+
+        for (int attempt = 0; attempt < 3; attempt++) {
+            MailOutbox mail = mailOutboxRepository.findById(queued.getId()).orElseThrow();
+            mail.setNextAttemptAt(LocalDateTime.now().minusSeconds(1));
+            mailOutboxRepository.save(mail);
+            mailOutboxService.dispatch();
+        }
+
+        MailOutbox dead = mailOutboxRepository.findById(queued.getId()).orElseThrow();
+        assertThat(dead.getStatus()).isEqualTo(MailOutbox.Status.FAILED);
+        assertThat(dead.getAttempts()).isEqualTo(3);
+        List<MailOutbox> due = mailOutboxRepository.findAll();
+        assertThat(due).allMatch(mail -> mail.getStatus() == MailOutbox.Status.FAILED);
+    }
+
+    private static int unusedPort() throws Exception {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+}
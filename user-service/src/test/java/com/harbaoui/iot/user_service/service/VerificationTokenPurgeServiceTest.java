@@ -0,0 +1,92 @@
+package com.harbaoui.iot.user_service.service;
+
+import com.harbaoui.iot.user_service.entity.User;
+import com.harbaoui.iot.user_service.entity.VerificationToken;
+import com.harbaoui.iot.user_service.repository.UserRepository;
+import com.harbaoui.iot.user_service.repository.VerificationTokenRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@DataJpaTest
+@ActiveProfiles("test")
+@Import({VerificationTokenPurgeService.class, VerificationTokenPurgeServiceTest.MetricsConfig.class})
+@TestPropertySource(properties = {"verification.purge.chunk-size=7", "verification.purge.pause-ms=0"})
+// Each purge chunk commits on its own, like the scheduled task
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class VerificationTokenPurgeServiceTest {
+
+    @TestConfiguration
+    static class MetricsConfig {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    @Autowired
+    private VerificationTokenPurgeService purgeService;
+
+    @Autowired
+    private VerificationTokenRepository verificationTokenRepository;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    void clear() {
+        verificationTokenRepository.deleteAll();
+        userRepository.deleteAll();
+    }
+
+    @Test
+    void shouldDeleteOnlyExpiredTokensInChunks() {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < 20; i++) {
+            token("expired" + i, now.minusHours(i + 1));
+        }
+        for (int i = 0; i < 5; i++) {
+            token("valid" + i, now.plusHours(i + 1));
+        }
+
+        assertThat(purgeService.purgeExpired()).isEqualTo(20);
+
+        assertThat(verificationTokenRepository.count()).isEqualTo(5);
+        assertThat(verificationTokenRepository.findByToken("valid0")).isPresent();
+        assertThat(verificationTokenRepository.findByToken("expired0")).isEmpty();
+        assertThat(meterRegistry.get("verification.tokens.purged").counter().count()).isEqualTo(20);
+        assertThat(purgeService.purgeExpired()).isZero();
+    }
+
+    @Test
+    void shouldRejectADuplicateToken() {
+        token("same", LocalDateTime.now().plusDays(1));
+
+        assertThatThrownBy(() -> token("same", LocalDateTime.now().plusDays(1)))
+                .isInstanceOf(DataIntegrityViolationException.class);
+    }
+
+    private void token(String token, LocalDateTime expiryDate) {
+        User user = userRepository.save(User.builder().email(token + "@example.com").password("x").build());
+        verificationTokenRepository.save(VerificationToken.builder().token(token).expiryDate(expiryDate).user(user).build());
+    }
+}